@@ -0,0 +1,161 @@
+package com.example.benchmarks;
+
+import com.example.photostorage.cache.BlobCache;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.FileSystemBlobStore;
+import com.example.photostorage.storage.FsyncPolicy;
+import com.example.photostorage.storage.StagedBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a Zipfian (power-law) request trace, the typical popularity curve of photo downloads,
+ * against the {@link BlobCache} in front of a {@link FileSystemBlobStore}.
+ *
+ * The working set (2000 blobs of 64 KB, 125 MB) is larger than the cache, so the replay exercises
+ * W-TinyLFU admission and eviction. A miss is streamed from the BlobStore, as the download endpoints do, and a
+ * blob is only loaded into the cache (in the background) when it misses a second time. Besides throughput,
+ * every iteration reports "hits" and "misses"; hit ratio = hits / (hits + misses).
+ * A lower exponent means a flatter curve and therefore fewer hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=512m")
+public class BlobCacheBenchmark {
+
+    private static final int BLOB_COUNT = 2000;
+    private static final int BLOB_SIZE = 64 * 1024;
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    @Param({"0.8", "0.99", "1.2"})
+    private double zipfExponent;
+
+    @Param({"16", "64"})
+    private int cacheMegabytes;
+
+    private Path rootDirectory;
+    private BlobStore blobStore;
+    private BlobCache cache;
+    private String[] keys;
+    private int[] trace;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rootDirectory = Files.createTempDirectory("photo-cache-bench");
+        blobStore = new FileSystemBlobStore(rootDirectory, FsyncPolicy.NONE);
+        Random random = new Random(42);
+        keys = new String[BLOB_COUNT];
+        for (int i = 0; i < BLOB_COUNT; i++) {
+            byte[] content = new byte[BLOB_SIZE];
+            random.nextBytes(content);
+            StagedBlob staged = blobStore.stage(new ByteArrayInputStream(content));
+            blobStore.commit(staged, staged.sha256());
+            keys[i] = staged.sha256();
+        }
+        trace = zipfTrace(BLOB_COUNT, zipfExponent, TRACE_LENGTH, random);
+
+        PhotoStorageProperties properties = new PhotoStorageProperties();
+        properties.getCache().setMaxBytes(DataSize.ofMegabytes(cacheMegabytes));
+        cache = new BlobCache(blobStore, properties, new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.shutdown();
+        BenchmarkFiles.deleteRecursively(rootDirectory);
+    }
+
+    /**
+     * Hit and miss counts, reported by JMH next to the throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Benchmark
+    public int replay(Outcome outcome) throws IOException {
+        String key = keys[trace[next]];
+        next = (next + 1) & (TRACE_LENGTH - 1);
+        Optional<ByteBuffer> cached = cache.get(key, BLOB_SIZE, true);
+        if (cached.isPresent()) {
+            outcome.hits++;
+            return cached.get().get(BLOB_SIZE - 1);
+        }
+        outcome.misses++;
+        try (InputStream in = blobStore.open(key)) {
+            return (int) in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * Draws {@code length} ranks in [0, n) with probability proportional to 1 / (rank + 1)^exponent,
+     * by inverting the cumulative distribution. Ranks are then shuffled onto blob indexes,
+     * so popularity does not follow the order in which the blobs were written.
+     */
+    private static int[] zipfTrace(int n, double exponent, int length, Random random) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        int[] blobOfRank = new int[n];
+        for (int i = 0; i < n; i++) {
+            blobOfRank[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = blobOfRank[i];
+            blobOfRank[i] = blobOfRank[j];
+            blobOfRank[j] = swap;
+        }
+
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            trace[i] = blobOfRank[rank >= 0 ? rank : Math.min(n - 1, -rank - 1)];
+        }
+        return trace;
+    }
+}
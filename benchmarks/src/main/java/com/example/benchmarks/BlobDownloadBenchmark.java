@@ -0,0 +1,161 @@
+package com.example.benchmarks;
+
+import com.example.photostorage.storage.FileRegion;
+import com.example.photostorage.storage.FileSystemBlobStore;
+import com.example.photostorage.storage.FsyncPolicy;
+import com.example.photostorage.storage.StagedBlob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent photo downloads from the {@link FileSystemBlobStore}, measured in blobs per second.
+ * Every benchmark thread sends to its own loopback TCP connection, drained by a background thread,
+ * so the zero-copy path really goes through sendfile as it does behind Tomcat.
+ *
+ * "transferTo" is the production path (FileChannel.transferTo, what BlobResponseWriter and Tomcat's sendfile do),
+ * "streamCopy" the former path that copied every blob through a heap buffer, and "cachedBuffer" sends
+ * content already held in a direct buffer, as served by the BlobCache. Compare the allocation rates as well as throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=1g")
+@Threads(8)
+public class BlobDownloadBenchmark {
+
+    private static final int BLOB_COUNT = 64;
+
+    @Param({"102400", "1048576", "8388608"}) // 100 KB, 1 MB, 8 MB
+    private int blobSize;
+
+    private Path rootDirectory;
+    private FileSystemBlobStore blobStore;
+    private String[] keys;
+    private ByteBuffer[] inMemory;
+
+    @Setup(Level.Trial)
+    public void createBlobs() throws IOException {
+        rootDirectory = Files.createTempDirectory("photo-download-bench");
+        blobStore = new FileSystemBlobStore(rootDirectory, FsyncPolicy.NONE);
+        keys = new String[BLOB_COUNT];
+        inMemory = new ByteBuffer[BLOB_COUNT];
+        Random random = new Random(42);
+        for (int i = 0; i < BLOB_COUNT; i++) {
+            byte[] content = new byte[blobSize];
+            random.nextBytes(content);
+            StagedBlob staged = blobStore.stage(new ByteArrayInputStream(content));
+            blobStore.commit(staged, staged.sha256());
+            keys[i] = staged.sha256();
+            inMemory[i] = ByteBuffer.allocateDirect(blobSize).put(content).flip().asReadOnlyBuffer();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBlobs() throws IOException {
+        BenchmarkFiles.deleteRecursively(rootDirectory);
+    }
+
+    /**
+     * One loopback connection per benchmark thread, standing in for a client socket.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private ServerSocketChannel server;
+        private SocketChannel socket;
+        private Thread drain;
+
+        @Setup(Level.Trial)
+        public void connect() throws IOException {
+            server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            socket = SocketChannel.open(server.getLocalAddress());
+            SocketChannel accepted = server.accept();
+            drain = new Thread(() -> {
+                ByteBuffer sink = ByteBuffer.allocateDirect(1024 * 1024);
+                try (accepted) {
+                    while (accepted.read(sink.clear()) >= 0) {
+                        // Discard everything the benchmark sends
+                    }
+                } catch (IOException e) {
+                    // Connection closed at teardown
+                }
+            }, "download-bench-drain");
+            drain.setDaemon(true);
+            drain.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException, InterruptedException {
+            socket.close();
+            server.close();
+            drain.join(1000);
+        }
+    }
+
+    @Benchmark
+    public long transferTo(Connection connection) throws IOException {
+        FileRegion region = blobStore.locate(randomKey()).orElseThrow();
+        try (FileChannel channel = FileChannel.open(region.path(), StandardOpenOption.READ)) {
+            long position = region.position();
+            long remaining = region.length();
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, connection.socket);
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        return region.length();
+    }
+
+    @Benchmark
+    public long streamCopy(Connection connection) throws IOException {
+        try (InputStream in = blobStore.open(randomKey())) {
+            return in.transferTo(Channels.newOutputStream(connection.socket));
+        }
+    }
+
+    @Benchmark
+    public long cachedBuffer(Connection connection) throws IOException {
+        ByteBuffer content = inMemory[ThreadLocalRandom.current().nextInt(BLOB_COUNT)].duplicate();
+        long sent = content.remaining();
+        while (content.hasRemaining()) {
+            connection.socket.write(content);
+        }
+        return sent;
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(BLOB_COUNT)];
+    }
+}
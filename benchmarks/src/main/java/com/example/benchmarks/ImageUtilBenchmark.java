@@ -0,0 +1,51 @@
+package com.example.benchmarks;
+
+import com.example.common.util.ImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The size checks of {@link ImageUtil} that run on every upload, for an accepted photo.
+ * Both variants should be a handful of nanoseconds and allocate nothing; anything else is a regression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageUtilBenchmark {
+
+    private static final long MAX_IMAGE_SIZE = 100L * 1024 * 1024;
+
+    @Param({"102400", "1048576", "10485760"})
+    private int payloadSize;
+
+    private byte[] imageData;
+
+    @Setup
+    public void setUp() {
+        imageData = new byte[payloadSize];
+    }
+
+    @Benchmark
+    public boolean validateByteArray() {
+        return ImageUtil.isValidImageSize(imageData, MAX_IMAGE_SIZE);
+    }
+
+    @Benchmark
+    public boolean validateContentLength() {
+        return ImageUtil.isValidImageSize((long) payloadSize, MAX_IMAGE_SIZE);
+    }
+}
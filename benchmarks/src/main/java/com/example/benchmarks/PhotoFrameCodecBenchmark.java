@@ -0,0 +1,84 @@
+package com.example.benchmarks;
+
+import com.example.common.codec.PhotoFrame;
+import com.example.common.dto.PhotoUploadRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two body formats of the upload -> storage forwarding call side by side:
+ * JSON with a Base64 image (Jackson, as before) against the binary {@link PhotoFrame}.
+ *
+ * Scores are microseconds per request, so at payloadSize=1048576 they read directly as CPU time per MB;
+ * -prof gc adds the bytes allocated per request. The bytes on the wire of both formats are printed by the setup.
+ *
+ * "encode" is what the upload service does per forwarded photo, "decode" what the storage service does,
+ * both from and to byte arrays so only the codec is measured. frameEncode copies the image into its output array;
+ * PhotoFrameEncoder in the upload service wraps it instead, so this is an upper bound for the frame path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoFrameCodecBenchmark {
+
+    @Param({"102400", "1048576", "10485760"}) // 100 KB, 1 MB, 10 MB
+    private int payloadSize;
+
+    private ObjectMapper objectMapper;
+    private PhotoUploadRequest request;
+    private byte[] json;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        byte[] imageData = new byte[payloadSize];
+        new Random(42).nextBytes(imageData); // Incompressible, like JPEG data
+        request = new PhotoUploadRequest("IMG_0001.jpg", "image/jpeg", imageData, "Benchmark photo");
+        json = objectMapper.writeValueAsBytes(request);
+        frame = frameEncode();
+        System.out.printf("%nwire bytes: json %d, photo frame %d (%.1f%% of json)%n",
+                json.length, frame.length, 100.0 * frame.length / json.length);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws IOException {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public PhotoUploadRequest jsonDecode() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(json), PhotoUploadRequest.class);
+    }
+
+    @Benchmark
+    public byte[] frameEncode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payloadSize + 256);
+        PhotoFrame.write(request, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public PhotoUploadRequest frameDecode() throws IOException {
+        return PhotoFrame.read(new ByteArrayInputStream(frame), Long.MAX_VALUE);
+    }
+}
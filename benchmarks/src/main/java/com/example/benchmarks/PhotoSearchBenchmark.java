@@ -0,0 +1,136 @@
+package com.example.benchmarks;
+
+import com.example.photostorage.search.InvertedIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The search index behind GET /api/v1/photos/search ({@link InvertedIndex}) over a synthetic photo collection:
+ * camera-style and word-style filenames, and descriptions of up to 12 words drawn from a 50,000-word vocabulary
+ * with a Zipf-like skew, so a few words occur in a large share of the photos as in real captions.
+ *
+ * - build: indexing the whole collection, as on startup (minus reading the rows); single shot per iteration.
+ * - rareWord / commonPrefix / twoWords / filenamePrefix: first page (50 hits) of typical queries.
+ *
+ * The setup prints the heap the index takes, scaled to a million photos; keep the properties' estimate
+ * (photo-storage.search.enabled) in line with it. It needs a few GB of heap: -Pjmh.args="-jvmArgs -Xmx4g".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhotoSearchBenchmark {
+
+    private static final int VOCABULARY_SIZE = 50_000;
+    private static final int PAGE = 50;
+
+    @Param({"1000000"})
+    private int photos;
+
+    private String[] vocabulary;
+    private String[] filenames;
+    private String[] descriptions;
+    private InvertedIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        filenames = new String[photos];
+        descriptions = new String[photos];
+        for (int i = 0; i < photos; i++) {
+            filenames[i] = random.nextInt(3) == 0
+                    ? word(random) + "_" + word(random) + (random.nextBoolean() ? ".png" : ".jpg")
+                    : String.format("IMG_%08d.JPG", i);
+            StringBuilder description = new StringBuilder();
+            for (int w = random.nextInt(13); w > 0; w--) {
+                description.append(word(random)).append(' ');
+            }
+            descriptions[i] = description.toString();
+        }
+
+        long before = usedHeap();
+        index = build();
+        long after = usedHeap();
+        System.out.printf("%nindex: %,d photos, %,d terms, %,d postings, %.1f MB heap per million photos%n",
+                index.size(), index.termCount(), index.postingCount(),
+                (after - before) / 1e6 * 1_000_000 / photos);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public InvertedIndex build() {
+        InvertedIndex built = new InvertedIndex();
+        for (int i = 0; i < photos; i++) {
+            built.add(i + 1, filenames[i], descriptions[i]);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int[] rareWord() {
+        return index.search(vocabulary[VOCABULARY_SIZE - 1], Integer.MAX_VALUE, PAGE);
+    }
+
+    @Benchmark
+    public int[] commonPrefix() {
+        return index.search(vocabulary[0].substring(0, 2), Integer.MAX_VALUE, PAGE);
+    }
+
+    @Benchmark
+    public int[] twoWords() {
+        return index.search(vocabulary[3] + " " + vocabulary[40], Integer.MAX_VALUE, PAGE);
+    }
+
+    @Benchmark
+    public int[] filenamePrefix() {
+        return index.search("img 0001", Integer.MAX_VALUE, PAGE);
+    }
+
+    /**
+     * A vocabulary word, low indexes far more often than high ones (roughly Zipf).
+     */
+    private String word(Random random) {
+        double u = random.nextDouble();
+        return vocabulary[(int) (Math.pow(u, 3) * VOCABULARY_SIZE)];
+    }
+
+    private static String randomWord(Random random) {
+        char[] letters = new char[3 + random.nextInt(8)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.benchmarks;
+
+import com.example.common.dto.PhotoUploadRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of {@link PhotoUploadRequest}, the body of the JSON upload endpoints of both services.
+ * The image travels Base64-encoded inside the JSON, so both directions scale with the payload size;
+ * the allocation rate reported by -prof gc shows how many bytes each request costs on the heap.
+ *
+ * "deserializeStream" reads from an InputStream like Spring's message converter does,
+ * "deserialize" from a byte array like the upload service's WebClient codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoUploadRequestJsonBenchmark {
+
+    @Param({"102400", "1048576", "10485760"}) // 100 KB, 1 MB, 10 MB
+    private int payloadSize;
+
+    private ObjectMapper objectMapper;
+    private PhotoUploadRequest request;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        byte[] imageData = new byte[payloadSize];
+        new Random(42).nextBytes(imageData); // Incompressible, like JPEG data
+        request = new PhotoUploadRequest("IMG_0001.jpg", "image/jpeg", imageData, "Benchmark photo");
+        json = objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public PhotoUploadRequest deserialize() throws IOException {
+        return objectMapper.readValue(json, PhotoUploadRequest.class);
+    }
+
+    @Benchmark
+    public PhotoUploadRequest deserializeStream() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(json), PhotoUploadRequest.class);
+    }
+}
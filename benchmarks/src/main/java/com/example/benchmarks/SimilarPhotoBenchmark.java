@@ -0,0 +1,148 @@
+package com.example.benchmarks;
+
+import com.example.photostorage.search.HammingIndex;
+import com.example.photostorage.search.PerceptualHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The near-duplicate index behind GET /api/v1/photos/{id}/similar ({@link HammingIndex}) over synthetic hashes:
+ * mostly random, one in ten a copy of an earlier photo with 1-6 bits flipped (a resized or re-compressed copy), and
+ * one in fifty close to the all-zero hash, as dark or flat images are. Real hashes are less evenly spread than
+ * random ones, so expect somewhat more candidates per query in production than here.
+ *
+ * - build: indexing the whole collection, as on startup (minus reading the rows); single shot per iteration.
+ * - distance4 / distance8 / distance12: near-duplicates of a stored photo, 50 at most.
+ * - hash: the dHash of an image already decoded at {@link PerceptualHash#DECODE_SIZE}; decoding itself costs
+ *   far more and is covered by ThumbnailResizeBenchmark.
+ *
+ * The setup prints the heap the index takes, scaled to a million photos; keep the properties' estimate
+ * (photo-storage.similarity.enabled) in line with it. It needs about 2 GB of heap: -Pjmh.args="-jvmArgs -Xmx2g".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimilarPhotoBenchmark {
+
+    private static final int LIMIT = 50;
+
+    @Param({"1000000"})
+    private int photos;
+
+    private long[] hashes;
+    private HammingIndex index;
+    private BufferedImage image;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        hashes = new long[photos];
+        for (int i = 0; i < photos; i++) {
+            int kind = random.nextInt(50);
+            if (kind < 5 && i > 0) {
+                hashes[i] = flipBits(hashes[random.nextInt(i)], 1 + random.nextInt(6), random);
+            } else if (kind == 5) {
+                hashes[i] = flipBits(0L, random.nextInt(8), random);
+            } else {
+                hashes[i] = random.nextLong();
+            }
+        }
+
+        long before = usedHeap();
+        index = build();
+        long after = usedHeap();
+        System.out.printf("%nindex: %,d photos, %.1f MB estimated, %.1f MB heap per million photos%n",
+                index.size(), index.estimatedBytes() / 1e6, (after - before) / 1e6 * 1_000_000 / photos);
+
+        image = new BufferedImage(PerceptualHash.DECODE_SIZE, PerceptualHash.DECODE_SIZE * 3 / 4, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, image.getWidth(), image.getHeight(), Color.BLUE));
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.WHITE);
+            graphics.fillOval(20, 10, 50, 50);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public HammingIndex build() {
+        HammingIndex built = new HammingIndex();
+        for (int i = 0; i < photos; i++) {
+            built.add(i + 1, hashes[i]);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public List<HammingIndex.Match> distance4() {
+        return query(4);
+    }
+
+    @Benchmark
+    public List<HammingIndex.Match> distance8() {
+        return query(8);
+    }
+
+    @Benchmark
+    public List<HammingIndex.Match> distance12() {
+        return query(12);
+    }
+
+    @Benchmark
+    public long hash() {
+        return PerceptualHash.dHash(image, 1);
+    }
+
+    /**
+     * Near-duplicates of the next photo, cycling through a spread of the collection.
+     */
+    private List<HammingIndex.Match> query(int maxDistance) {
+        next = (next + 7919) % photos;
+        return index.search(hashes[next], maxDistance, next + 1, LIMIT);
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
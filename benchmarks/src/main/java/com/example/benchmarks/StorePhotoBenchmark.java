@@ -0,0 +1,129 @@
+package com.example.benchmarks;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.photostorage.PhotoStorageApplication;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.service.PhotoStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PhotoStorageService#storePhoto(PhotoMetadata, java.io.InputStream, long)} end to end:
+ * sniffing the image header, staging and hashing the bytes, the deduplication lookup, the blob commit and the metadata insert,
+ * against the real Spring context of the storage service with an embedded H2 database and a temporary blob directory.
+ *
+ * "storeNew" stores different content every time (the usual case), "storeDuplicate" the same content over and over,
+ * which only costs the hash and a reference-count update. The fsync policy is a parameter because it dominates
+ * the latency of new content on most disks.
+ *
+ * Stored photos and blobs are wiped after every iteration to keep disk usage bounded; still, leave a few GB free.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorePhotoBenchmark {
+
+    @Param({"102400", "1048576"}) // 100 KB, 1 MB
+    private int payloadSize;
+
+    @Param({"NONE", "DATA"})
+    private String fsyncPolicy;
+
+    private Path dataDirectory;
+    private ConfigurableApplicationContext context;
+    private PhotoStorageService photoStorageService;
+    private JdbcTemplate jdbcTemplate;
+    private byte[] content;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void startContext() throws IOException {
+        dataDirectory = Files.createTempDirectory("photo-storage-bench");
+        context = new SpringApplicationBuilder(PhotoStorageApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:store-bench;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "logging.level.root=WARN",
+                        "photo-storage.align-id-sequence=false",
+                        "photo-storage.blob-store.migrate-legacy-rows=false",
+                        "photo-storage.blob-store.root-directory=" + dataDirectory.resolve("blobs"),
+                        "photo-storage.blob-store.fsync-policy=" + fsyncPolicy,
+                        "photo-storage.uploads.directory=" + dataDirectory.resolve("uploads"),
+                        "photo-storage.derivatives.enabled=false") // Thumbnails would compete for the CPU being measured
+                .run();
+        photoStorageService = context.getBean(PhotoStorageService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        content = new byte[payloadSize];
+        new Random(42).nextBytes(content);
+        // A JPEG header (SOI, then a baseline frame header of a 4000x3000 image) so the content passes header sniffing;
+        // the random bytes after it stand in for the compressed image data
+        ByteBuffer.wrap(content)
+                .putShort((short) 0xFFD8)
+                .putShort((short) 0xFFC0).putShort((short) 17)
+                .put((byte) 8).putShort((short) 3000).putShort((short) 4000)
+                .put((byte) 3).put(new byte[]{1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+    }
+
+    @TearDown(Level.Iteration)
+    public void wipeStoredPhotos() throws IOException {
+        jdbcTemplate.update("DELETE FROM photos");
+        jdbcTemplate.update("DELETE FROM content_blobs");
+        try (var shards = Files.list(dataDirectory.resolve("blobs"))) {
+            for (Path shard : shards.filter(path -> !path.getFileName().toString().equals("tmp")).toList()) {
+                BenchmarkFiles.deleteRecursively(shard);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() throws IOException {
+        context.close();
+        BenchmarkFiles.deleteRecursively(dataDirectory);
+    }
+
+    @Benchmark
+    public Photo storeNew() {
+        // A fresh counter in the last bytes makes every photo new content without regenerating the payload
+        ByteBuffer.wrap(content).putLong(content.length - Long.BYTES, ++sequence);
+        return store();
+    }
+
+    @Benchmark
+    public Photo storeDuplicate() {
+        return store();
+    }
+
+    private Photo store() {
+        PhotoMetadata metadata = new PhotoMetadata("IMG_" + sequence + ".jpg", "image/jpeg", "Benchmark photo");
+        return photoStorageService.storePhoto(metadata, new ByteArrayInputStream(content), content.length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.benchmarks;
+
+import com.example.common.util.ImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thumbnail generation as done by the storage service's ThumbnailService, for a 24 MP JPEG.
+ *
+ * "subsampled" is the production path: decode with source subsampling, scale in halving steps, encode.
+ * "fullDecode" decodes every pixel first and is kept as the baseline the subsampling is measured against;
+ * the allocation rate (-prof gc) shows the memory the full decode costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ThumbnailResizeBenchmark {
+
+    private static final int SOURCE_WIDTH = 6000;
+    private static final int SOURCE_HEIGHT = 4000;
+
+    @Param({"128", "512", "2048"}) // The default derivative sizes
+    private int size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Smooth gradients plus noise, so the JPEG compresses like a photo rather than a flat test card
+        BufferedImage source = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < SOURCE_HEIGHT; y++) {
+            for (int x = 0; x < SOURCE_WIDTH; x++) {
+                int r = (x * 255 / SOURCE_WIDTH + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / SOURCE_HEIGHT + random.nextInt(16)) & 0xff;
+                int b = ((x + y) * 127 / (SOURCE_WIDTH + SOURCE_HEIGHT) + random.nextInt(16)) & 0xff;
+                source.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageUtil.writeImage(source, "jpeg", out);
+        jpeg = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] subsampled() throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            return encode(ImageUtil.resizeImage(ImageUtil.readSubsampled(input, size), size));
+        }
+    }
+
+    @Benchmark
+    public byte[] fullDecode() throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        return encode(ImageUtil.resizeImage(decoded, size));
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageUtil.writeImage(image, "jpeg", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.common.codec;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoUploadRequest;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary wire format for a single photo upload ("photo frame"), content type {@value #MEDIA_TYPE}.
+ * An alternative to the JSON form of {@link PhotoUploadRequest}: the image travels as raw bytes instead of
+ * Base64 text, so it is a third smaller on the wire and needs no encoding or decoding on either side.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ * int32   magic            0x50465231 ("PFR1")
+ * int32   header length    bytes of the header that follows
+ * header:
+ *   string  filename       uint16 byte length + UTF-8, length 0xFFFF means null
+ *   string  content type
+ *   string  description
+ *   int64   image length
+ * bytes   image            exactly "image length" bytes
+ * </pre>
+ * Readers skip header bytes they do not know, so fields can be appended to the header
+ * without breaking older readers; anything else needs a new magic.
+ *
+ * Both services register HTTP message converters for this format (see PhotoFrameHttpMessageConverter in each);
+ * JSON stays accepted for existing clients.
+ */
+public final class PhotoFrame {
+
+    /** Content type of a photo frame body. */
+    public static final String MEDIA_TYPE = "application/x-photo-frame";
+
+    /** First four bytes of every frame, "PFR1"; the trailing digit is the format version. */
+    public static final int MAGIC = 0x50465231;
+
+    /** Upper bound for the header length, well above three maximum-length strings; guards against garbage input. */
+    public static final int MAX_HEADER_LENGTH = 256 * 1024;
+
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int MAX_STRING_LENGTH = NULL_STRING - 1;
+
+    private PhotoFrame() {
+        // Static codec, not intended for instantiation
+    }
+
+    /**
+     * Encodes everything in front of the image bytes: magic, header length and header.
+     * Send the returned bytes followed by exactly {@code imageLength} image bytes, e.g. as two buffers,
+     * so the image itself is never copied.
+     *
+     * @param metadata The photo's filename, content type and description (any of them may be null).
+     * @param imageLength The exact size of the image in bytes.
+     * @return The frame prefix.
+     * @throws IllegalArgumentException if a string is longer than 65534 bytes in UTF-8.
+     */
+    public static byte[] encodePrefix(PhotoMetadata metadata, long imageLength) {
+        byte[] filename = utf8(metadata.getFilename());
+        byte[] contentType = utf8(metadata.getContentType());
+        byte[] description = utf8(metadata.getDescription());
+        int headerLength = stringLength(filename) + stringLength(contentType) + stringLength(description) + Long.BYTES;
+
+        ByteBuffer prefix = ByteBuffer.allocate(2 * Integer.BYTES + headerLength);
+        prefix.putInt(MAGIC);
+        prefix.putInt(headerLength);
+        putString(prefix, filename);
+        putString(prefix, contentType);
+        putString(prefix, description);
+        prefix.putLong(imageLength);
+        return prefix.array();
+    }
+
+    /**
+     * @return The total size of the frame for the given metadata and image size, e.g. for a Content-Length header.
+     */
+    public static long frameLength(PhotoMetadata metadata, long imageLength) {
+        return 2L * Integer.BYTES
+                + stringLength(utf8(metadata.getFilename()))
+                + stringLength(utf8(metadata.getContentType()))
+                + stringLength(utf8(metadata.getDescription()))
+                + Long.BYTES
+                + imageLength;
+    }
+
+    /**
+     * Writes a whole upload request as a frame.
+     *
+     * @param request The request; its image data must not be null.
+     * @param out The stream to write to; it is not closed.
+     */
+    public static void write(PhotoUploadRequest request, OutputStream out) throws IOException {
+        byte[] imageData = request.getImageData();
+        out.write(encodePrefix(toMetadata(request), imageData.length));
+        out.write(imageData);
+    }
+
+    /**
+     * Reads the frame prefix and leaves the stream positioned at the first image byte.
+     * Use this to stream the image on without holding it in memory.
+     *
+     * @param in The stream positioned at the start of a frame.
+     * @return The metadata and the number of image bytes that follow.
+     * @throws IOException if the stream fails, ends early or does not hold a photo frame.
+     */
+    public static PhotoFrameHeader readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int magic = data.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a photo frame (magic 0x" + Integer.toHexString(magic) + ").");
+        }
+        int headerLength = data.readInt();
+        if (headerLength < 3 * Short.BYTES + Long.BYTES || headerLength > MAX_HEADER_LENGTH) {
+            throw new IOException("Malformed photo frame: header length " + headerLength + ".");
+        }
+        byte[] header = data.readNBytes(headerLength);
+        if (header.length < headerLength) {
+            throw new EOFException("Photo frame ended inside its header.");
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            PhotoMetadata metadata = new PhotoMetadata(getString(buffer), getString(buffer), getString(buffer));
+            long imageLength = buffer.getLong();
+            if (imageLength < 0) {
+                throw new IOException("Malformed photo frame: image length " + imageLength + ".");
+            }
+            // Anything left in the header was appended by a newer writer and is skipped
+            return new PhotoFrameHeader(metadata, imageLength);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException: the strings claim more bytes than the header has
+            throw new IOException("Malformed photo frame: header fields overrun the header length.", e);
+        }
+    }
+
+    /**
+     * Reads a whole frame into an upload request, image bytes included.
+     *
+     * @param in The stream positioned at the start of a frame.
+     * @param maxImageSize The largest image accepted; bigger frames are rejected before the image is read.
+     * @return The decoded request.
+     * @throws IOException if the stream fails, ends early, does not hold a photo frame or the image is too large.
+     */
+    public static PhotoUploadRequest read(InputStream in, long maxImageSize) throws IOException {
+        PhotoFrameHeader header = readHeader(in);
+        long limit = Math.min(maxImageSize, Integer.MAX_VALUE - 8); // Largest byte[] the JVM allocates
+        if (header.imageLength() > limit) {
+            throw new IOException("Photo frame image of " + header.imageLength() + " bytes exceeds the limit of " + limit + " bytes.");
+        }
+        byte[] imageData = in.readNBytes((int) header.imageLength());
+        if (imageData.length < header.imageLength()) {
+            throw new EOFException("Photo frame ended after " + imageData.length + " of " + header.imageLength() + " image bytes.");
+        }
+        PhotoMetadata metadata = header.metadata();
+        return new PhotoUploadRequest(metadata.getFilename(), metadata.getContentType(), imageData, metadata.getDescription());
+    }
+
+    private static PhotoMetadata toMetadata(PhotoUploadRequest request) {
+        return new PhotoMetadata(request.getFilename(), request.getContentType(), request.getDescription());
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Photo frame strings are limited to " + MAX_STRING_LENGTH + " bytes, got " + bytes.length + ".");
+        }
+        return bytes;
+    }
+
+    private static int stringLength(byte[] bytes) {
+        return Short.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) NULL_STRING);
+        } else {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == NULL_STRING) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.common.codec;
+
+import com.example.common.dto.PhotoMetadata;
+
+/**
+ * The decoded front of a {@link PhotoFrame}: everything except the image bytes.
+ *
+ * @param metadata The photo's filename, content type and description.
+ * @param imageLength The number of image bytes that follow the header.
+ */
+public record PhotoFrameHeader(PhotoMetadata metadata, long imageLength) {
+}
@@ -0,0 +1,36 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) describing the outcome of one photo in a batch upload.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class BatchUploadItemResult {
+
+    /**
+     * Outcome of a single item.
+     */
+    public enum Status {
+        STORED,
+        FAILED
+    }
+
+    private int index; // Position of the photo in the batch request, starting at 0
+    private String filename;
+    private Status status;
+    private Long id; // ID of the stored photo, null if it was not stored
+    private String message; // Human-readable reason when the item failed
+
+    public static BatchUploadItemResult stored(int index, String filename, Long id) {
+        return new BatchUploadItemResult(index, filename, Status.STORED, id, null);
+    }
+
+    public static BatchUploadItemResult failed(int index, String filename, String message) {
+        return new BatchUploadItemResult(index, filename, Status.FAILED, null, message);
+    }
+}
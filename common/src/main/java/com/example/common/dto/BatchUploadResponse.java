@@ -0,0 +1,32 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) returned by the batch upload endpoints.
+ * Contains one result per photo in the request, in request order.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class BatchUploadResponse {
+
+    private int storedCount;
+    private int failedCount;
+    private List<BatchUploadItemResult> items;
+
+    /**
+     * Builds a response from the per-item results, filling in the counts.
+     *
+     * @param items One result per photo, in request order.
+     * @return The response.
+     */
+    public static BatchUploadResponse of(List<BatchUploadItemResult> items) {
+        int stored = (int) items.stream().filter(item -> item.getStatus() == BatchUploadItemResult.Status.STORED).count();
+        return new BatchUploadResponse(stored, items.size() - stored, items);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.common.dto;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP header names shared by the streaming upload endpoints.
+ * On the streaming path the request body is the raw image and the metadata
+ * travels in these headers. Values are URL-encoded (UTF-8) because HTTP headers
+ * cannot safely carry arbitrary filenames or descriptions.
+ * Chunks of a resumable upload session carry their checksum in {@link #CHUNK_SHA256}.
+ */
+public final class PhotoHeaders {
+
+    /** Original filename of the photo, URL-encoded. */
+    public static final String FILENAME = "X-Photo-Filename";
+
+    /** Optional free-text description of the photo, URL-encoded. */
+    public static final String DESCRIPTION = "X-Photo-Description";
+
+    /** Lower-case hex SHA-256 of the body of one resumable upload chunk (not encoded). */
+    public static final String CHUNK_SHA256 = "X-Chunk-SHA256";
+
+    private PhotoHeaders() {
+        // Constants holder, not intended for instantiation
+    }
+
+    /**
+     * Encodes a header value so it can be sent safely over HTTP.
+     *
+     * @param value The raw value (may be null).
+     * @return The URL-encoded value, or null if the input was null.
+     */
+    public static String encode(String value) {
+        return value == null ? null : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a header value previously produced by {@link #encode(String)}.
+     *
+     * @param value The encoded value (may be null).
+     * @return The decoded value, or null if the input was null.
+     */
+    public static String decode(String value) {
+        return value == null ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) carrying only the descriptive metadata of a photo.
+ * Used by the streaming upload path, where the image bytes travel separately
+ * as the raw request body instead of being embedded in a JSON document.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class PhotoMetadata {
+
+    private String filename;
+    private String contentType; // e.g., "image/jpeg", "image/png"
+    private String description;
+}
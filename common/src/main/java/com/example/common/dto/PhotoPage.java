@@ -0,0 +1,21 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) holding one page of a photo listing.
+ * Pages are chained with an opaque cursor instead of page numbers, so every page costs the same
+ * however deep into the listing it is.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class PhotoPage {
+
+    private List<PhotoSummary> items; // Newest first
+    private String nextCursor; // Pass as ?cursor= to get the next page; null on the last page
+}
@@ -0,0 +1,28 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object (DTO) with the metadata of a stored photo, as returned by the listing API.
+ * It never carries image bytes; fetch those from GET /api/v1/photos/{id}.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields (also used by the JPA query projection)
+public class PhotoSummary {
+
+    private Long id;
+    private String filename;
+    private String contentType;
+    private String description;
+    private Long sizeBytes;
+    private LocalDateTime uploadTimestamp;
+    private Integer width; // In pixels, as stored; null if unknown
+    private Integer height;
+    private Integer orientation; // EXIF orientation 1-8, or null
+    private LocalDateTime captureTimestamp; // EXIF capture time (camera local time), or null
+}
@@ -0,0 +1,17 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) for one near-duplicate of a photo, as returned by GET /api/v1/photos/{id}/similar.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class SimilarPhoto {
+
+    private PhotoSummary photo;
+    private int distance; // Bits in which the perceptual hashes differ: 0 looks the same, a handful is a resized or re-compressed copy
+}
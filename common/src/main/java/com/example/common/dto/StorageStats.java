@@ -0,0 +1,37 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Transfer Object (DTO) with storage statistics, as returned by GET /api/v1/photos/stats:
+ * how many photos are stored and how large they are, in total, per content type and per upload day.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class StorageStats {
+
+    private List<Long> sizeBucketLimits; // Exclusive upper bound in bytes of each histogram bucket but the last, which has none
+    private Totals total;
+    private Map<String, Totals> byContentType;
+    private Map<LocalDate, Totals> byDay; // Only the days of the requested range that have photos, in ascending order
+
+    /**
+     * Photo count, total size and size histogram of a group of photos.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Totals {
+
+        private long photoCount;
+        private long totalBytes;
+        private List<Long> sizeHistogram; // Photos per size bucket, see sizeBucketLimits
+    }
+}
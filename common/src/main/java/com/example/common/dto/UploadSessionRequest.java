@@ -0,0 +1,21 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) used to open a resumable upload session.
+ * The image bytes are not part of this request; they are sent afterwards as numbered chunks.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class UploadSessionRequest {
+
+    private String filename;
+    private String contentType; // e.g., "image/jpeg", "image/png"
+    private String description;
+    private long totalSize; // Exact size of the whole image in bytes
+    private Long chunkSize; // Optional; the server picks its default chunk size when null
+}
@@ -0,0 +1,32 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object (DTO) describing the progress of a resumable upload session.
+ * Returned when a session is opened, after every chunk and when the session is queried,
+ * so a client that lost its connection can ask where to continue.
+ */
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+@Builder // Lombok: Provides a builder pattern for creating instances
+public class UploadSessionStatus {
+
+    private String sessionId;
+    private String filename;
+    private String state; // "OPEN" while chunks are accepted, "COMMITTED" once the photo is stored
+    private long totalSize;
+    private long chunkSize; // Every chunk has this size, except possibly the last one
+    private int chunkCount;
+    private long receivedBytes; // Bytes of all chunks received so far, in any order
+    private long receivedOffset; // Length of the prefix received without gaps; sequential clients resume here
+    private Integer nextMissingChunk; // Index of the first chunk not yet received, null when all are there
+    private Long photoId; // ID of the stored photo once the session is committed
+    private LocalDateTime expiresAt; // The session is discarded if nothing happens until then
+}
@@ -0,0 +1,25 @@
+package com.example.common.image;
+
+/**
+ * The image formats accepted for upload, as recognized by {@link ImageHeaderSniffer} from their first bytes.
+ */
+public enum ImageFormat {
+
+    JPEG("image/jpeg"),
+    PNG("image/png"),
+    GIF("image/gif"),
+    WEBP("image/webp");
+
+    private final String mimeType;
+
+    ImageFormat(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * @return The content type stored and served for photos of this format, e.g. "image/jpeg".
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+}
@@ -0,0 +1,464 @@
+package com.example.common.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Determines the real format of an image, its dimensions, EXIF orientation and capture time from its first bytes,
+ * without decoding it: magic bytes, then the JPEG frame header (SOF), PNG IHDR, GIF logical screen descriptor or
+ * WebP VP8/VP8L/VP8X header, and the EXIF block (JPEG APP1, PNG eXIf, WebP EXIF) if it lies within those bytes.
+ *
+ * This is cheap enough to run on every upload before the rest of the body is read: junk is rejected after a few
+ * KB instead of being stored, and the client's Content-Type no longer has to be trusted. Sniffing never reads past
+ * the bytes it is given. For PNG, GIF and WebP the dimensions are always within the first 30 bytes; a JPEG's frame
+ * header follows its metadata segments, which fit in {@link #DEFAULT_SNIFF_BYTES} for practically every camera file.
+ * If it does not, the dimensions are reported as unknown rather than guessed.
+ *
+ * EXIF is advisory: a damaged EXIF block is ignored, never a reason to reject the image.
+ */
+public final class ImageHeaderSniffer {
+
+    /**
+     * Bytes to inspect by default: the largest possible JPEG APP1 (EXIF) segment plus a little.
+     */
+    public static final int DEFAULT_SNIFF_BYTES = 64 * 1024;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] EXIF_PREFIX = {'E', 'x', 'i', 'f', 0, 0}; // Precedes the TIFF structure in JPEG APP1
+
+    // TIFF tags read from EXIF
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TIFF_TYPE_ASCII = 2;
+
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    // Private constructor to prevent instantiation
+    private ImageHeaderSniffer() {
+    }
+
+    /**
+     * Reads the first bytes of a stream for {@link #sniff(byte[])}. The caller continues with the rest of the stream,
+     * e.g. by putting the header back in front of it with a {@link java.io.SequenceInputStream}.
+     *
+     * @param input The image bytes.
+     * @param maxBytes How many bytes to read at most.
+     * @return The bytes read; shorter than maxBytes only if the stream ended first.
+     * @throws IOException if reading fails.
+     */
+    public static byte[] readHeader(InputStream input, int maxBytes) throws IOException {
+        return input.readNBytes(maxBytes);
+    }
+
+    /**
+     * Sniffs the first bytes of a file.
+     *
+     * @param file The image file.
+     * @param maxBytes How many bytes to inspect at most.
+     * @return The image information, or empty if the file is not in one of the {@link ImageFormat}s.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file claims a supported format but its header is malformed.
+     */
+    public static Optional<ImageInfo> sniff(Path file, int maxBytes) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            return sniff(readHeader(input, maxBytes));
+        }
+    }
+
+    /**
+     * Sniffs the first bytes of an image.
+     *
+     * @param header The first bytes of the image; all of them, if it is shorter than the sniffing window.
+     * @return The image information, or empty if the bytes are not in one of the {@link ImageFormat}s.
+     * @throws IllegalArgumentException if the bytes claim a supported format but the header is malformed.
+     */
+    public static Optional<ImageInfo> sniff(byte[] header) {
+        return sniff(header, header.length);
+    }
+
+    /**
+     * Like {@link #sniff(byte[])}, for a header in the first {@code length} bytes of a larger buffer.
+     */
+    public static Optional<ImageInfo> sniff(byte[] data, int length) {
+        length = Math.min(length, data.length);
+        if (length >= 3 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8 && u8(data, 2) == 0xFF) {
+            return Optional.of(sniffJpeg(data, length));
+        }
+        if (startsWith(data, length, 0, PNG_SIGNATURE)) {
+            return Optional.of(sniffPng(data, length));
+        }
+        if (isAscii(data, length, 0, "GIF87a") || isAscii(data, length, 0, "GIF89a")) {
+            return Optional.of(sniffGif(data, length));
+        }
+        if (isAscii(data, length, 0, "RIFF") && isAscii(data, length, 8, "WEBP")) {
+            return Optional.of(sniffWebp(data, length));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Walks the JPEG segments up to the first frame header (SOFn), which holds the dimensions.
+     * APP1 segments before it are checked for EXIF.
+     */
+    private static ImageInfo sniffJpeg(byte[] data, int length) {
+        Exif exif = Exif.NONE;
+        int pos = 2;
+        while (pos < length) {
+            if (u8(data, pos) != 0xFF) {
+                throw malformed(ImageFormat.JPEG, "expected a marker at byte " + pos);
+            }
+            while (pos < length && u8(data, pos) == 0xFF) { // Markers may be padded with any number of 0xFF
+                pos++;
+            }
+            if (pos >= length) {
+                break;
+            }
+            int marker = u8(data, pos++);
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue; // TEM and RSTn have no length
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                throw malformed(ImageFormat.JPEG, "no frame header before the image data");
+            }
+            if (pos + 2 > length) {
+                break;
+            }
+            int segmentLength = u16be(data, pos); // Includes the two length bytes
+            if (segmentLength < 2) {
+                throw malformed(ImageFormat.JPEG, "segment length " + segmentLength + " at byte " + pos);
+            }
+            int start = pos + 2;
+            int end = pos + segmentLength;
+            if (isStartOfFrame(marker)) {
+                if (start + 5 > length) {
+                    break;
+                }
+                int height = u16be(data, start + 1); // After the sample precision byte
+                int width = u16be(data, start + 3);
+                if (width == 0) {
+                    throw malformed(ImageFormat.JPEG, "zero width");
+                }
+                // A height of 0 is legal: it is then defined later, by a DNL segment after the first scan
+                return new ImageInfo(ImageFormat.JPEG, height == 0 ? null : width, height == 0 ? null : height,
+                        exif.orientation(), exif.captureTime());
+            }
+            if (marker == 0xE1 && exif == Exif.NONE && end <= length && startsWith(data, end, start, EXIF_PREFIX)) {
+                exif = parseExif(data, start + EXIF_PREFIX.length, end);
+            }
+            pos = end;
+        }
+        // The frame header lies beyond the inspected bytes
+        return new ImageInfo(ImageFormat.JPEG, null, null, exif.orientation(), exif.captureTime());
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0-SOF15, except DHT (C4), JPG (C8) and DAC (CC), which share the range
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * IHDR must be the first chunk and holds the dimensions; an eXIf chunk, if any, comes before the image data.
+     */
+    private static ImageInfo sniffPng(byte[] data, int length) {
+        if (length < 24 || !isAscii(data, length, 12, "IHDR")) {
+            throw malformed(ImageFormat.PNG, "IHDR is not the first chunk");
+        }
+        long width = u32be(data, 16);
+        long height = u32be(data, 20);
+        if (width == 0 || height == 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            throw malformed(ImageFormat.PNG, "dimensions " + width + "x" + height);
+        }
+
+        Exif exif = Exif.NONE;
+        int pos = PNG_SIGNATURE.length;
+        while (pos + 8 <= length) {
+            long dataEnd = pos + 8 + u32be(data, pos); // Chunk: length, type, data, CRC
+            if (isAscii(data, length, pos + 4, "IDAT") || isAscii(data, length, pos + 4, "IEND")) {
+                break;
+            }
+            if (isAscii(data, length, pos + 4, "eXIf")) {
+                if (dataEnd <= length) {
+                    exif = parseExif(data, pos + 8, (int) dataEnd);
+                }
+                break;
+            }
+            long next = dataEnd + 4;
+            if (next > length) {
+                break;
+            }
+            pos = (int) next;
+        }
+        return new ImageInfo(ImageFormat.PNG, (int) width, (int) height, exif.orientation(), exif.captureTime());
+    }
+
+    /**
+     * The logical screen descriptor follows the signature; GIF has no EXIF.
+     */
+    private static ImageInfo sniffGif(byte[] data, int length) {
+        if (length < 10) {
+            throw malformed(ImageFormat.GIF, "truncated logical screen descriptor");
+        }
+        int width = u16le(data, 6);
+        int height = u16le(data, 8);
+        if (width == 0 || height == 0) {
+            throw malformed(ImageFormat.GIF, "dimensions " + width + "x" + height);
+        }
+        return new ImageInfo(ImageFormat.GIF, width, height, null, null);
+    }
+
+    /**
+     * The first chunk after the RIFF header is VP8 (lossy), VP8L (lossless) or VP8X (extended, which may be
+     * followed by an EXIF chunk; usually that sits after the image data, beyond the inspected bytes).
+     */
+    private static ImageInfo sniffWebp(byte[] data, int length) {
+        if (length < 30) {
+            throw malformed(ImageFormat.WEBP, "truncated header");
+        }
+        int width;
+        int height;
+        boolean hasExif = false;
+        if (isAscii(data, length, 12, "VP8 ")) {
+            // Frame tag (3 bytes), start code 9D 01 2A, then 14-bit width and height
+            if (u8(data, 23) != 0x9D || u8(data, 24) != 0x01 || u8(data, 25) != 0x2A) {
+                throw malformed(ImageFormat.WEBP, "missing VP8 start code");
+            }
+            width = u16le(data, 26) & 0x3FFF;
+            height = u16le(data, 28) & 0x3FFF;
+        } else if (isAscii(data, length, 12, "VP8L")) {
+            // Signature 0x2F, then 14 bits width - 1 and 14 bits height - 1
+            if (u8(data, 20) != 0x2F) {
+                throw malformed(ImageFormat.WEBP, "missing VP8L signature");
+            }
+            long bits = u32le(data, 21);
+            width = (int) (bits & 0x3FFF) + 1;
+            height = (int) ((bits >> 14) & 0x3FFF) + 1;
+        } else if (isAscii(data, length, 12, "VP8X")) {
+            // Flags (1 byte), reserved (3), then 24 bits canvas width - 1 and 24 bits canvas height - 1
+            hasExif = (u8(data, 20) & 0x08) != 0;
+            width = u24le(data, 24) + 1;
+            height = u24le(data, 27) + 1;
+        } else {
+            throw malformed(ImageFormat.WEBP, "unknown first chunk");
+        }
+        if (width == 0 || height == 0) {
+            throw malformed(ImageFormat.WEBP, "dimensions " + width + "x" + height);
+        }
+
+        Exif exif = Exif.NONE;
+        int pos = 12;
+        while (hasExif && pos + 8 <= length) {
+            long size = u32le(data, pos);
+            long dataEnd = pos + 8 + size;
+            if (isAscii(data, length, pos + 4, "EXIF")) {
+                if (dataEnd <= length) {
+                    int start = pos + 8;
+                    // Some writers keep the JPEG-style "Exif\0\0" prefix
+                    exif = parseExif(data, startsWith(data, length, start, EXIF_PREFIX) ? start + EXIF_PREFIX.length : start, (int) dataEnd);
+                }
+                break;
+            }
+            long next = dataEnd + (size & 1); // Chunks are padded to an even size
+            if (next > length) {
+                break;
+            }
+            pos = (int) next;
+        }
+        return new ImageInfo(ImageFormat.WEBP, width, height, exif.orientation(), exif.captureTime());
+    }
+
+    /**
+     * Reads orientation and capture time from a TIFF structure (the body of an EXIF block) in data[start, end).
+     * Only IFD0 and the EXIF sub-IFD are visited, and every offset is bounds-checked, so a hostile
+     * EXIF block costs at most a few hundred entry reads and yields {@link Exif#NONE} or partial results.
+     */
+    private static Exif parseExif(byte[] data, int start, int end) {
+        Tiff tiff;
+        if (startsWith(data, end, start, new byte[]{'I', 'I'})) {
+            tiff = new Tiff(data, start, end, true);
+        } else if (startsWith(data, end, start, new byte[]{'M', 'M'})) {
+            tiff = new Tiff(data, start, end, false);
+        } else {
+            return Exif.NONE;
+        }
+        if (tiff.u16(2) != 42) {
+            return Exif.NONE;
+        }
+
+        Integer orientation = null;
+        String dateTime = null;
+        String dateTimeOriginal = null;
+        String dateTimeDigitized = null;
+        long exifIfd = -1;
+
+        long ifd0 = tiff.u32(4);
+        for (int i = 0, count = tiff.entryCount(ifd0); i < count; i++) {
+            int entry = (int) ifd0 + 2 + i * 12;
+            switch (tiff.u16(entry)) {
+                case TAG_ORIENTATION -> {
+                    int value = tiff.u16(entry + 8);
+                    if (value >= 1 && value <= 8) {
+                        orientation = value;
+                    }
+                }
+                case TAG_DATE_TIME -> dateTime = tiff.ascii(entry);
+                case TAG_EXIF_IFD -> exifIfd = tiff.u32(entry + 8);
+                default -> {
+                }
+            }
+        }
+        for (int i = 0, count = tiff.entryCount(exifIfd); i < count; i++) {
+            int entry = (int) exifIfd + 2 + i * 12;
+            switch (tiff.u16(entry)) {
+                case TAG_DATE_TIME_ORIGINAL -> dateTimeOriginal = tiff.ascii(entry);
+                case TAG_DATE_TIME_DIGITIZED -> dateTimeDigitized = tiff.ascii(entry);
+                default -> {
+                }
+            }
+        }
+
+        LocalDateTime captureTime = parseExifDateTime(dateTimeOriginal);
+        if (captureTime == null) {
+            captureTime = parseExifDateTime(dateTimeDigitized);
+        }
+        if (captureTime == null) {
+            captureTime = parseExifDateTime(dateTime);
+        }
+        return new Exif(orientation, captureTime);
+    }
+
+    /**
+     * @return The EXIF date ("2024:06:30 14:05:09", camera local time), or null if absent or not a valid date
+     * (cameras without a set clock write "0000:00:00 00:00:00" or blanks).
+     */
+    private static LocalDateTime parseExifDateTime(String value) {
+        if (value == null || value.length() < 19) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.substring(0, 19), EXIF_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static IllegalArgumentException malformed(ImageFormat format, String detail) {
+        return new IllegalArgumentException("Malformed " + format + " header: " + detail + ".");
+    }
+
+    private static boolean startsWith(byte[] data, int length, int offset, byte[] prefix) {
+        if (offset < 0 || offset + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(byte[] data, int length, int offset, String expected) {
+        return startsWith(data, length, offset, expected.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int offset) {
+        return (u8(data, offset) << 8) | u8(data, offset + 1);
+    }
+
+    private static int u16le(byte[] data, int offset) {
+        return u8(data, offset) | (u8(data, offset + 1) << 8);
+    }
+
+    private static int u24le(byte[] data, int offset) {
+        return u8(data, offset) | (u8(data, offset + 1) << 8) | (u8(data, offset + 2) << 16);
+    }
+
+    private static long u32be(byte[] data, int offset) {
+        return ((long) u16be(data, offset) << 16) | u16be(data, offset + 2);
+    }
+
+    private static long u32le(byte[] data, int offset) {
+        return u16le(data, offset) | ((long) u16le(data, offset + 2) << 16);
+    }
+
+    /**
+     * The EXIF fields of interest; both null if the image has no (readable) EXIF.
+     */
+    private record Exif(Integer orientation, LocalDateTime captureTime) {
+        static final Exif NONE = new Exif(null, null);
+    }
+
+    /**
+     * Bounds-checked reads from a TIFF structure in data[start, end), at offsets relative to its start
+     * and in its byte order. Reads outside the structure return -1 (or null) instead of throwing.
+     */
+    private record Tiff(byte[] data, int start, int end, boolean littleEndian) {
+
+        boolean fits(long offset, long count) {
+            return offset >= 0 && count >= 0 && start + offset + count <= end;
+        }
+
+        int u16(long offset) {
+            if (!fits(offset, 2)) {
+                return -1;
+            }
+            int at = start + (int) offset;
+            return littleEndian ? u16le(data, at) : u16be(data, at);
+        }
+
+        long u32(long offset) {
+            if (!fits(offset, 4)) {
+                return -1;
+            }
+            int at = start + (int) offset;
+            return littleEndian ? u32le(data, at) : u32be(data, at);
+        }
+
+        /**
+         * @return The number of entries of the IFD at the offset that lie within the structure, or 0.
+         */
+        int entryCount(long ifdOffset) {
+            int count = u16(ifdOffset);
+            if (count <= 0) {
+                return 0;
+            }
+            long available = (end - start - ifdOffset - 2) / 12;
+            return (int) Math.max(0, Math.min(count, available));
+        }
+
+        /**
+         * @return The ASCII value of the IFD entry at the offset without trailing NULs, or null if it is not ASCII
+         * or lies outside the structure.
+         */
+        String ascii(int entry) {
+            if (u16(entry + 2) != TIFF_TYPE_ASCII) {
+                return null;
+            }
+            long count = u32(entry + 4);
+            long valueOffset = count <= 4 ? entry + 8 : u32(entry + 8); // Values of up to 4 bytes are stored inline
+            if (count <= 0 || !fits(valueOffset, count)) {
+                return null;
+            }
+            int from = start + (int) valueOffset;
+            int to = from + (int) count;
+            while (to > from && data[to - 1] == 0) {
+                to--;
+            }
+            return new String(data, from, to - from, StandardCharsets.US_ASCII);
+        }
+    }
+}
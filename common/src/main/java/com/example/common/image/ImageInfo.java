@@ -0,0 +1,24 @@
+package com.example.common.image;
+
+import java.time.LocalDateTime;
+
+/**
+ * What {@link ImageHeaderSniffer} learned about an image from its header, without decoding any pixels.
+ *
+ * @param format The real format of the image, whatever content type the client declared.
+ * @param width Width in pixels as stored (before applying the orientation), or null if the header did not say
+ * within the bytes inspected (a JPEG whose frame header follows a very large metadata block).
+ * @param height Height in pixels as stored, or null like the width.
+ * @param orientation EXIF orientation, 1 (upright) to 8, or null if the image has none.
+ * @param captureTime EXIF DateTimeOriginal (or DateTimeDigitized, or DateTime), camera local time, or null.
+ */
+public record ImageInfo(ImageFormat format, Integer width, Integer height, Integer orientation,
+                        LocalDateTime captureTime) {
+
+    /**
+     * @return width x height, or 0 if the dimensions are unknown.
+     */
+    public long pixelCount() {
+        return width != null && height != null ? (long) width * height : 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.common.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Utility class for common image-related operations and validations
+ * shared by the photo-upload-service and the photo-storage-service.
+ * This class contains static methods and is not intended for instantiation.
+ */
+public class ImageUtil {
+
+    // Private constructor to prevent instantiation
+    private ImageUtil() {
+        // Utility classes typically don't need to be instantiated
+    }
+
+    /**
+     * Validates if the given image data array is within an acceptable size limit.
+     * This is a simple example; real-world validation might check dimensions, format, etc.
+     *
+     * @param imageData The byte array of the image.
+     * @param maxSizeInBytes The maximum allowed size for the image in bytes.
+     * @return true if the image data size is within the limit and not null/empty, false otherwise.
+     */
+    public static boolean isValidImageSize(byte[] imageData, long maxSizeInBytes) {
+        return imageData != null && imageData.length > 0 && imageData.length <= maxSizeInBytes;
+    }
+
+    /**
+     * Validates if an image of the given size (e.g. taken from a Content-Length header)
+     * is within an acceptable size limit. Used on the streaming path, where the image
+     * bytes are never held in a single array.
+     *
+     * @param sizeInBytes The declared size of the image in bytes.
+     * @param maxSizeInBytes The maximum allowed size for the image in bytes.
+     * @return true if the size is positive and within the limit, false otherwise.
+     */
+    public static boolean isValidImageSize(long sizeInBytes, long maxSizeInBytes) {
+        return sizeInBytes > 0 && sizeInBytes <= maxSizeInBytes;
+    }
+
+    /**
+     * Decodes an image at reduced resolution, so that its longer side is still at least
+     * {@code minLongSide} pixels but no more pixels than necessary are inflated into memory.
+     * Uses {@link ImageReadParam#setSourceSubsampling}: the decoder skips rows and columns
+     * while reading, so a 6000x4000 JPEG decoded for a 512 px thumbnail costs about 1/100 of the memory.
+     *
+     * @param input The encoded image, e.g. from {@link ImageIO#createImageInputStream(Object)}.
+     * @param minLongSide The smallest acceptable length of the longer side of the decoded image.
+     * @return The decoded (possibly subsampled) image.
+     * @throws IOException if no decoder supports the input or decoding fails.
+     */
+    public static BufferedImage readSubsampled(ImageInputStream input, int minLongSide) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format.");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true); // seekForwardOnly, ignoreMetadata: nothing is read twice
+            int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int step = Math.max(1, longSide / Math.max(1, minLongSide));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(step, step, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Scales an image down so that its longer side is at most {@code maxDimension} pixels,
+     * keeping the aspect ratio. Images that are already small enough are returned unchanged.
+     * Large reductions are done in halving steps with bilinear filtering, which is much
+     * sharper than a single bilinear step and much cheaper than bicubic.
+     *
+     * @param image The source image.
+     * @param maxDimension The maximum length of the longer side.
+     * @return The scaled image (RGB, or ARGB if the source has transparency).
+     */
+    public static BufferedImage resizeImage(BufferedImage image, int maxDimension) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        if (targetWidth == width && targetHeight == height) {
+            return image;
+        }
+
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        while (width != targetWidth || height != targetHeight) {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        }
+        return current;
+    }
+
+    /**
+     * Encodes an image in the given format.
+     *
+     * @param image The image to encode.
+     * @param formatName An ImageIO format name, e.g. "jpeg" or "png".
+     * @param out Where to write the encoded image.
+     * @throws IOException if no encoder exists for the format or writing fails.
+     */
+    public static void writeImage(BufferedImage image, String formatName, OutputStream out) throws IOException {
+        if (!ImageIO.write(image, formatName, out)) {
+            throw new IOException("No image writer for format " + formatName);
+        }
+    }
+
+    /**
+     * Convenience variant of {@link #readSubsampled} + {@link #resizeImage} + {@link #writeImage}
+     * for callers that already hold the image in memory.
+     *
+     * @param originalImage The encoded source image.
+     * @param maxDimension The maximum length of the longer side of the result.
+     * @param formatName An ImageIO format name for the result, e.g. "jpeg" or "png".
+     * @return The encoded, resized image.
+     * @throws IOException if the image cannot be decoded or encoded.
+     */
+    public static byte[] resizeImage(byte[] originalImage, int maxDimension, String formatName) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(originalImage))) {
+            BufferedImage resized = resizeImage(readSubsampled(input, maxDimension), maxDimension);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeImage(resized, formatName, out);
+            return out.toByteArray();
+        }
+    }
+
+    // You could add more utility methods here, such as:
+    // public static boolean isValidImageContentType(String contentType) { ... }
+    // public static String generateUniqueFilename(String originalFilename) { ... }
+}
@@ -0,0 +1,185 @@
+package com.example.desktop;
+
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.image.ImageFormat;
+import javafx.application.Platform;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads many files to the streaming upload endpoint with bounded parallelism.
+ *
+ * Every request body is streamed from disk with {@link HttpRequest.BodyPublishers#ofFile(Path)},
+ * so memory use does not depend on file size. At most {@code parallelism} uploads are in flight
+ * over the shared HttpClient; failed uploads (network errors, 429 and 5xx responses) are retried
+ * with exponential backoff. Progress is reported on the JavaFX Application Thread.
+ */
+public class BulkUploader {
+
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    // Extensions of the formats the services accept (ImageFormat); other files are not offered for upload
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", ImageFormat.JPEG.getMimeType(),
+            "jpeg", ImageFormat.JPEG.getMimeType(),
+            "png", ImageFormat.PNG.getMimeType(),
+            "gif", ImageFormat.GIF.getMimeType(),
+            "webp", ImageFormat.WEBP.getMimeType());
+
+    private final HttpClient httpClient;
+    private final URI uploadUri;
+    private final int maxAttempts;
+    private final Semaphore inFlight;
+
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param httpClient Shared client; its connections are reused across uploads.
+     * @param uploadUri The streaming upload endpoint, e.g. http://localhost:8081/api/v1/upload/stream
+     * @param parallelism Maximum number of concurrent uploads.
+     * @param maxAttempts Maximum attempts per file, including the first.
+     */
+    public BulkUploader(HttpClient httpClient, URI uploadUri, int parallelism, int maxAttempts) {
+        this.httpClient = httpClient;
+        this.uploadUri = uploadUri;
+        this.maxAttempts = maxAttempts;
+        this.inFlight = new Semaphore(parallelism);
+    }
+
+    /**
+     * @param file A file in the folder being uploaded.
+     * @return true if the file's extension is that of a format the services accept (JPEG, PNG, GIF or WebP).
+     */
+    public static boolean isImageFile(Path file) {
+        return CONTENT_TYPES.containsKey(extension(file));
+    }
+
+    /**
+     * Uploads all items. Blocks the calling thread (never the FX thread) until every upload has finished.
+     *
+     * @param items The files to upload.
+     * @param description Description sent with every file (may be empty).
+     * @param onItemFinished Called on the FX thread after each file finishes, successfully or not.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public void uploadAll(List<UploadItem> items, String description, Runnable onItemFinished) throws InterruptedException {
+        CompletableFuture<?>[] uploads = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            inFlight.acquire(); // Bounded parallelism: wait for a free slot before starting the next file
+            UploadItem item = items.get(i);
+            uploads[i] = upload(item, description, 1)
+                    .whenComplete((ignored, error) -> {
+                        inFlight.release();
+                        Platform.runLater(onItemFinished);
+                    });
+        }
+        CompletableFuture.allOf(uploads).exceptionally(e -> null).join();
+    }
+
+    private CompletableFuture<Void> upload(UploadItem item, String description, int attempt) {
+        Platform.runLater(() -> {
+            item.attemptsProperty().set(attempt);
+            item.update(attempt == 1 ? UploadItem.Status.UPLOADING : UploadItem.Status.RETRYING, "");
+        });
+
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uploadUri)
+                    .header("Content-Type", CONTENT_TYPES.getOrDefault(extension(item.getPath()), "application/octet-stream"))
+                    .header(PhotoHeaders.FILENAME, PhotoHeaders.encode(item.getFileName()))
+                    .POST(HttpRequest.BodyPublishers.ofFile(item.getPath())); // Streams from disk, sets Content-Length
+            if (description != null && !description.isBlank()) {
+                builder.header(PhotoHeaders.DESCRIPTION, PhotoHeaders.encode(description));
+            }
+            request = builder.build();
+        } catch (FileNotFoundException e) {
+            finish(item, UploadItem.Status.FAILED, "File not found");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    if (error == null && response.statusCode() / 100 == 2) {
+                        bytesUploaded.addAndGet(item.getSizeBytes());
+                        finish(item, UploadItem.Status.DONE, "");
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    boolean retryable = error != null || response.statusCode() == 429 || response.statusCode() >= 500;
+                    String reason = error != null
+                            ? (error.getCause() != null ? error.getCause().getMessage() : error.getMessage())
+                            : "HTTP " + response.statusCode() + ": " + response.body();
+                    if (!retryable || attempt >= maxAttempts) {
+                        finish(item, UploadItem.Status.FAILED, reason);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Duration backoff = backoff(attempt, response);
+                    Platform.runLater(() -> item.update(UploadItem.Status.RETRYING, reason + " (retrying in " + backoff.toSeconds() + "s)"));
+                    return CompletableFuture.runAsync(() -> { },
+                                    CompletableFuture.delayedExecutor(backoff.toMillis(), TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> upload(item, description, attempt + 1));
+                })
+                .thenCompose(next -> next);
+    }
+
+    private void finish(UploadItem item, UploadItem.Status status, String message) {
+        if (status == UploadItem.Status.DONE) {
+            completed.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            System.err.println("Upload failed for " + item.getPath() + ": " + message);
+        }
+        Platform.runLater(() -> item.update(status, message));
+    }
+
+    /**
+     * Exponential backoff, honouring a Retry-After header (in seconds) from 429/503 responses.
+     */
+    private static Duration backoff(int attempt, HttpResponse<String> response) {
+        if (response != null) {
+            String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+            if (retryAfter != null) {
+                try {
+                    return Duration.ofSeconds(Math.max(1, Long.parseLong(retryAfter.trim())));
+                } catch (NumberFormatException ignored) {
+                    // HTTP-date form; fall through to exponential backoff
+                }
+            }
+        }
+        Duration backoff = INITIAL_BACKOFF.multipliedBy(1L << Math.min(attempt - 1, 10));
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+}
@@ -4,6 +4,8 @@ import javafx.application.Application; // The base class for all JavaFX applicat
 import javafx.fxml.FXMLLoader;       // To load FXML files
 import javafx.scene.Parent;          // The base class for all nodes that have children
 import javafx.scene.Scene;           // The container for all content in a scene graph
+import javafx.scene.control.Tab;     // One page of a TabPane
+import javafx.scene.control.TabPane; // Switches between the upload and gallery views
 import javafx.stage.Stage;           // The top-level container for JavaFX applications
 
 import java.io.IOException;          // For handling potential FXML loading errors
@@ -15,6 +17,8 @@ import java.io.IOException;          // For handling potential FXML loading erro
  */
 public class DesktopClientApplication extends Application {
 
+    private GalleryController galleryController; // Stopped on exit, so its download threads do not linger
+
     /**
      * The main entry point for all JavaFX applications.
      * The start method is called after the init method has returned,
@@ -33,13 +37,21 @@ public class DesktopClientApplication extends Application {
 
         // Load the FXML file and get the root node of the scene graph.
         // Parent is the base class for all nodes that can have children in a scene graph.
-        Parent root = loader.load();
+        Parent uploadView = loader.load();
+
+        // The gallery of stored photos has its own FXML and controller
+        FXMLLoader galleryLoader = new FXMLLoader(getClass().getResource("/GalleryView.fxml"));
+        Parent galleryView = galleryLoader.load();
+        galleryController = galleryLoader.getController();
+
+        TabPane root = new TabPane(new Tab("Upload", uploadView), new Tab("Gallery", galleryView));
+        root.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
 
         // Set the title of the application window.
         primaryStage.setTitle("Photo Uploader Client");
 
         // Create a new scene with the loaded root node and define its initial dimensions.
-        Scene scene = new Scene(root, 700, 500); // Width, Height
+        Scene scene = new Scene(root, 900, 650); // Width, Height
 
         // Set the scene onto the primary stage.
         primaryStage.setScene(scene);
@@ -48,6 +60,16 @@ public class DesktopClientApplication extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Called when the application exits.
+     */
+    @Override
+    public void stop() {
+        if (galleryController != null) {
+            galleryController.shutdown();
+        }
+    }
+
     /**
      * The main method is ignored in a JavaFX application when it is launched from the command line,
      * or from a JAR file by double-clicking.
@@ -1,14 +1,23 @@
 package com.example.desktop;
 
-import com.example.common.dto.PhotoUploadRequest;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.common.dto.PhotoHeaders;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
@@ -17,21 +26,39 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.ResourceBundle; // <--- Import ResourceBundle
+import java.util.stream.Stream;
 
 public class DesktopClientController {
 
     @FXML private TextField filePathField;
     @FXML private TextField descriptionField;
     @FXML private Button uploadButton;
+    @FXML private Button uploadFolderButton;
     @FXML private Label statusLabel;
+    @FXML private Label throughputLabel;
+    @FXML private ProgressBar folderProgressBar;
+    @FXML private TableView<UploadItem> uploadTable;
+    @FXML private TableColumn<UploadItem, String> fileColumn;
+    @FXML private TableColumn<UploadItem, String> sizeColumn;
+    @FXML private TableColumn<UploadItem, String> statusColumn;
+    @FXML private TableColumn<UploadItem, Number> attemptsColumn;
+    @FXML private TableColumn<UploadItem, String> messageColumn;
 
     private File selectedFile;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // One HTTP/2-capable client for all uploads, so connections are reused instead of re-established per file
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(java.time.Duration.ofSeconds(10))
+            .build();
 
     // Use a field to store the loaded URL
     private String uploadServiceUrl; // <--- Declare field to hold the URL
+    private int uploadParallelism;
+    private int uploadMaxAttempts;
 
     /**
      * Initializes the controller. This method is called automatically after the FXML file has been loaded.
@@ -43,14 +70,23 @@ public class DesktopClientController {
             // "application" refers to application.properties (without the .properties extension)
             ResourceBundle bundle = ResourceBundle.getBundle("application");
             this.uploadServiceUrl = bundle.getString("photo.upload.service.url");
+            this.uploadParallelism = Integer.parseInt(bundle.getString("photo.upload.parallelism"));
+            this.uploadMaxAttempts = Integer.parseInt(bundle.getString("photo.upload.max-attempts"));
             System.out.println("Loaded upload service URL: " + this.uploadServiceUrl);
         } catch (Exception e) {
             System.err.println("Error loading application properties: " + e.getMessage());
             statusLabel.setText("Error: Could not load service URL from properties.");
             uploadButton.setDisable(true); // Disable upload if config fails
+            uploadFolderButton.setDisable(true);
             return; // Prevent further execution if critical config is missing
         }
 
+        fileColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getPath().toString()));
+        sizeColumn.setCellValueFactory(cell -> new SimpleStringProperty((cell.getValue().getSizeBytes() / 1024) + " KB"));
+        statusColumn.setCellValueFactory(cell -> cell.getValue().statusProperty());
+        attemptsColumn.setCellValueFactory(cell -> cell.getValue().attemptsProperty());
+        messageColumn.setCellValueFactory(cell -> cell.getValue().messageProperty());
+
         updateUploadButtonState();
         filePathField.textProperty().addListener((obs, oldText, newText) -> updateUploadButtonState());
     }
@@ -79,7 +115,8 @@ public class DesktopClientController {
 
     /**
      * Handles the action when the "Upload Photo" button is clicked.
-     * Reads the selected file, constructs a DTO, and sends it to the backend.
+     * Streams the selected file from disk to the streaming upload endpoint;
+     * the metadata travels in headers, so the file is never read into memory.
      */
     @FXML
     private void handleUploadButton() {
@@ -89,7 +126,6 @@ public class DesktopClientController {
         }
 
         try {
-            byte[] imageData = Files.readAllBytes(selectedFile.toPath());
             String filename = selectedFile.getName();
             String contentType = Files.probeContentType(selectedFile.toPath());
 
@@ -98,21 +134,16 @@ public class DesktopClientController {
                 System.out.println("Warning: Could not determine content type for " + filename + ". Using default.");
             }
 
-            PhotoUploadRequest requestDto = new PhotoUploadRequest(
-                    filename,
-                    contentType,
-                    imageData,
-                    descriptionField.getText()
-            );
-
-            String requestBodyJson = objectMapper.writeValueAsString(requestDto);
-
             // Use the loaded URL here!
-            HttpRequest request = HttpRequest.newBuilder()
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                     .uri(URI.create(this.uploadServiceUrl)) // <--- Use the loaded URL
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBodyJson))
-                    .build();
+                    .header("Content-Type", contentType)
+                    .header(PhotoHeaders.FILENAME, PhotoHeaders.encode(filename))
+                    .POST(HttpRequest.BodyPublishers.ofFile(selectedFile.toPath())); // Streams the file from disk
+            if (!descriptionField.getText().isBlank()) {
+                requestBuilder.header(PhotoHeaders.DESCRIPTION, PhotoHeaders.encode(descriptionField.getText()));
+            }
+            HttpRequest request = requestBuilder.build();
 
             statusLabel.setText("Uploading " + filename + "...");
             System.out.println("Sending upload request to: " + this.uploadServiceUrl); // <--- Use the loaded URL
@@ -148,8 +179,100 @@ public class DesktopClientController {
         }
     }
 
+    /**
+     * Handles the action when the "Upload Folder" button is clicked.
+     * Collects every image file in the chosen directory tree and uploads them with bounded parallelism,
+     * showing per-file status, overall progress and throughput.
+     */
+    @FXML
+    private void handleUploadFolderButton() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select Photo Folder");
+        File directory = directoryChooser.showDialog(filePathField.getScene().getWindow());
+        if (directory == null) {
+            return;
+        }
+
+        uploadFolderButton.setDisable(true);
+        statusLabel.setText("Scanning " + directory + "...");
+        String description = descriptionField.getText();
+
+        Thread worker = new Thread(() -> {
+            List<UploadItem> items;
+            try (Stream<Path> files = Files.walk(directory.toPath())) {
+                items = files.filter(Files::isRegularFile)
+                        .filter(BulkUploader::isImageFile)
+                        .map(path -> new UploadItem(path, sizeOf(path)))
+                        .toList();
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    statusLabel.setText("Error scanning folder: " + e.getMessage());
+                    uploadFolderButton.setDisable(false);
+                });
+                return;
+            }
+            runFolderUpload(items, description);
+        }, "folder-upload");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Runs on the folder-upload worker thread; all UI updates go through Platform.runLater.
+     */
+    private void runFolderUpload(List<UploadItem> items, String description) {
+        BulkUploader uploader = new BulkUploader(httpClient, URI.create(uploadServiceUrl), uploadParallelism, uploadMaxAttempts);
+        long totalBytes = items.stream().mapToLong(UploadItem::getSizeBytes).sum();
+        long startNanos = System.nanoTime();
+        ObservableList<UploadItem> rows = FXCollections.observableArrayList(items);
+
+        // Refresh progress and throughput once per second rather than on every byte
+        Timeline ticker = new Timeline(new KeyFrame(Duration.seconds(1),
+                event -> showFolderProgress(uploader, items.size(), totalBytes, startNanos)));
+        ticker.setCycleCount(Timeline.INDEFINITE);
+        Platform.runLater(() -> {
+            uploadTable.setItems(rows);
+            folderProgressBar.setProgress(0);
+            statusLabel.setText("Uploading " + items.size() + " files...");
+            ticker.play();
+        });
+
+        try {
+            uploader.uploadAll(items, description,
+                    () -> folderProgressBar.setProgress((double) (uploader.getCompletedCount() + uploader.getFailedCount()) / items.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Platform.runLater(() -> {
+            ticker.stop();
+            showFolderProgress(uploader, items.size(), totalBytes, startNanos);
+            folderProgressBar.setProgress(1);
+            statusLabel.setText("Folder upload finished: " + uploader.getCompletedCount() + " uploaded, "
+                    + uploader.getFailedCount() + " failed.");
+            uploadFolderButton.setDisable(false);
+        });
+    }
+
+    private void showFolderProgress(BulkUploader uploader, int totalFiles, long totalBytes, long startNanos) {
+        double seconds = Math.max(0.001, (System.nanoTime() - startNanos) / 1e9);
+        double megabytes = uploader.getBytesUploaded() / (1024.0 * 1024.0);
+        throughputLabel.setText(String.format("%d/%d files, %.1f of %.1f MB, %.2f MB/s, %.1f files/s",
+                uploader.getCompletedCount() + uploader.getFailedCount(), totalFiles,
+                megabytes, totalBytes / (1024.0 * 1024.0),
+                megabytes / seconds, uploader.getCompletedCount() / seconds));
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
     private void updateUploadButtonState() {
         // Ensure upload button is disabled if URL failed to load
         uploadButton.setDisable(selectedFile == null || filePathField.getText().isEmpty() || uploadServiceUrl == null);
     }
-}
\ No newline at end of file
+}
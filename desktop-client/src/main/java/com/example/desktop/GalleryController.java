@@ -0,0 +1,300 @@
+package com.example.desktop;
+
+import com.example.common.dto.PhotoPage;
+import com.example.common.dto.PhotoSummary;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Controller of the gallery tab: a scrollable grid of the thumbnails of all stored photos, newest first.
+ *
+ * The grid is a ListView whose items are row numbers; each cell lays out one row of thumbnails. ListView only
+ * creates cells for the rows on screen and reuses them while scrolling, so the number of image views (and of
+ * decoded images) depends on the window size, not on the number of photos. The photo listing is fetched a page
+ * at a time as the user scrolls towards its end.
+ *
+ * A thumbnail comes from a small in-memory cache of decoded images, else from the {@link ThumbnailDiskCache}
+ * (or the server, through {@link ThumbnailLoader}), and is decoded by JavaFX's background loader at the displayed
+ * size. Nothing is read, fetched or decoded on the FX thread.
+ */
+public class GalleryController {
+
+    private static final int TILE_GAP = 6;
+    private static final int SCROLL_BAR_ALLOWANCE = 24;
+
+    @FXML private ListView<Integer> galleryList;
+    @FXML private Button refreshButton;
+    @FXML private Label galleryStatusLabel;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(java.time.Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private String photosUrl;
+    private int pageSize;
+    private int thumbnailSize;
+    private ThumbnailLoader thumbnailLoader;
+
+    // All below only touched on the FX thread
+    private final List<PhotoSummary> photos = new ArrayList<>();
+    private final ObservableList<Integer> rows = FXCollections.observableArrayList();
+    private Map<Long, Image> decodedImages; // LRU of decoded thumbnails, so scrolling back does not decode again
+    private int columns = 1;
+    private String nextCursor;
+    private boolean endReached;
+    private boolean pageLoading;
+    private int generation; // Bumped on refresh, so a page requested before it is ignored
+
+    /**
+     * Initializes the controller. This method is called automatically after the FXML file has been loaded.
+     */
+    @FXML
+    public void initialize() {
+        int memoryCacheImages;
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle("application");
+            this.photosUrl = bundle.getString("photo.storage.service.url");
+            this.pageSize = Integer.parseInt(bundle.getString("photo.gallery.page-size"));
+            this.thumbnailSize = Integer.parseInt(bundle.getString("photo.gallery.thumbnail-size"));
+            memoryCacheImages = Integer.parseInt(bundle.getString("photo.gallery.memory-cache-images"));
+            String directory = bundle.getString("photo.gallery.cache-directory");
+            Path cacheDirectory = directory.isBlank()
+                    ? Path.of(System.getProperty("user.home"), ".photo-uploader", "thumbnails")
+                    : Path.of(directory);
+            long cacheBytes = Long.parseLong(bundle.getString("photo.gallery.cache-max-mb")) * 1024 * 1024;
+            ThumbnailDiskCache diskCache = new ThumbnailDiskCache(cacheDirectory, cacheBytes);
+            this.thumbnailLoader = new ThumbnailLoader(httpClient, photosUrl, thumbnailSize, diskCache,
+                    Integer.parseInt(bundle.getString("photo.gallery.download-parallelism")));
+        } catch (Exception e) {
+            System.err.println("Error setting up the gallery: " + e.getMessage());
+            galleryStatusLabel.setText("Error: Could not set up the gallery (" + e.getMessage() + ").");
+            refreshButton.setDisable(true);
+            return;
+        }
+        this.decodedImages = new LinkedHashMap<>(memoryCacheImages, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+                return size() > memoryCacheImages;
+            }
+        };
+
+        galleryList.setItems(rows);
+        galleryList.setFixedCellSize(thumbnailSize + TILE_GAP); // Lets the ListView skip measuring every row
+        galleryList.setCellFactory(list -> new RowCell());
+        galleryList.widthProperty().addListener((obs, oldWidth, newWidth) -> updateColumns(newWidth.doubleValue()));
+        loadNextPage();
+    }
+
+    @FXML
+    private void handleRefreshButton() {
+        generation++;
+        photos.clear();
+        rows.clear();
+        nextCursor = null;
+        endReached = false;
+        pageLoading = false;
+        loadNextPage();
+    }
+
+    /**
+     * Stops the thumbnail downloads; called when the application exits.
+     */
+    public void shutdown() {
+        if (thumbnailLoader != null) {
+            thumbnailLoader.close();
+        }
+    }
+
+    /**
+     * Fetches the next page of the listing, unless one is on its way or the end has been reached.
+     */
+    private void loadNextPage() {
+        if (pageLoading || endReached) {
+            return;
+        }
+        pageLoading = true;
+        int requestGeneration = generation;
+        String uri = photosUrl + "?limit=" + pageSize
+                + (nextCursor != null ? "&cursor=" + URLEncoder.encode(nextCursor, StandardCharsets.UTF_8) : "");
+        galleryStatusLabel.setText("Loading photos...");
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).GET().build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode() + ": " + new String(response.body(), StandardCharsets.UTF_8));
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), PhotoPage.class); // Parsed off the FX thread
+                    } catch (java.io.IOException e) {
+                        throw new IllegalStateException("Unreadable photo listing: " + e.getMessage(), e);
+                    }
+                })
+                .whenComplete((page, error) -> Platform.runLater(() -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    pageLoading = false;
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        System.err.println("Loading the photo listing failed: " + cause.getMessage());
+                        galleryStatusLabel.setText("Could not load photos: " + cause.getMessage());
+                        return;
+                    }
+                    photos.addAll(page.getItems());
+                    nextCursor = page.getNextCursor();
+                    endReached = nextCursor == null;
+                    updateRows();
+                    galleryStatusLabel.setText(photos.size() + (endReached ? " photos" : "+ photos"));
+                }));
+    }
+
+    private void updateColumns(double width) {
+        int fitting = Math.max(1, (int) ((width - SCROLL_BAR_ALLOWANCE) / (thumbnailSize + TILE_GAP)));
+        if (fitting != columns) {
+            columns = fitting;
+            rows.clear(); // Every row now holds different photos
+            updateRows();
+        }
+    }
+
+    private void updateRows() {
+        int rowCount = (photos.size() + columns - 1) / columns;
+        if (rowCount > rows.size()) {
+            rows.addAll(IntStream.range(rows.size(), rowCount).boxed().toList());
+        } else if (!rows.isEmpty()) {
+            // The last row may have gained photos; refresh its cell
+            int last = rows.size() - 1;
+            rows.set(last, last);
+        }
+    }
+
+    /**
+     * One row of the grid. Reused by the ListView for whichever row scrolls into view.
+     */
+    private final class RowCell extends ListCell<Integer> {
+
+        private final HBox tiles = new HBox(TILE_GAP);
+
+        RowCell() {
+            tiles.setAlignment(Pos.CENTER_LEFT);
+            setPadding(Insets.EMPTY);
+            setGraphic(tiles);
+        }
+
+        @Override
+        protected void updateItem(Integer row, boolean empty) {
+            super.updateItem(row, empty);
+            while (tiles.getChildren().size() < columns) {
+                tiles.getChildren().add(new Tile());
+            }
+            for (int column = 0; column < tiles.getChildren().size(); column++) {
+                Tile tile = (Tile) tiles.getChildren().get(column);
+                int index = empty || row == null || column >= columns ? -1 : row * columns + column;
+                tile.show(index >= 0 && index < photos.size() ? photos.get(index) : null);
+            }
+            // Near the end of what is loaded: fetch more before the user gets there
+            if (!empty && row != null && row >= rows.size() - 3) {
+                loadNextPage();
+            }
+        }
+    }
+
+    /**
+     * One thumbnail of the grid.
+     */
+    private final class Tile extends StackPane {
+
+        private final ImageView view = new ImageView();
+        private final Tooltip tooltip = new Tooltip();
+        private long photoId = -1;
+        private CompletableFuture<Path> pending;
+
+        Tile() {
+            setPrefSize(thumbnailSize, thumbnailSize);
+            setMinSize(thumbnailSize, thumbnailSize);
+            setStyle("-fx-background-color: #eee;");
+            view.setFitWidth(thumbnailSize);
+            view.setFitHeight(thumbnailSize);
+            view.setPreserveRatio(true);
+            getChildren().add(view);
+            Tooltip.install(this, tooltip);
+        }
+
+        void show(PhotoSummary photo) {
+            long id = photo != null ? photo.getId() : -1;
+            if (id == photoId) {
+                return;
+            }
+            photoId = id;
+            if (pending != null) {
+                pending.cancel(false); // Not needed here any more; the download is dropped if no other tile waits for it
+                pending = null;
+            }
+            setVisible(photo != null);
+            if (photo == null) {
+                view.setImage(null);
+                return;
+            }
+            tooltip.setText(photo.getFilename() + (photo.getDescription() != null ? "\n" + photo.getDescription() : ""));
+
+            Image decoded = decodedImages.get(id);
+            if (decoded != null && !decoded.isError()) {
+                view.setImage(decoded);
+                return;
+            }
+            view.setImage(null);
+            CompletableFuture<Path> load = thumbnailLoader.load(id);
+            pending = load;
+            load.whenComplete((file, error) -> {
+                if (error != null) {
+                    return; // Placeholder stays; retried when the photo is shown again
+                }
+                Platform.runLater(() -> {
+                    if (photoId != id) {
+                        return;
+                    }
+                    // Decoded in the background, straight at the displayed size
+                    Image image = new Image(file.toUri().toString(), thumbnailSize, thumbnailSize, true, true, true);
+                    decodedImages.put(id, image);
+                    view.setImage(image);
+                    pending = null;
+                });
+            });
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.desktop;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Thumbnails fetched from the storage service, kept on disk between runs of the client and bounded in size.
+ *
+ * One file per thumbnail, named {@code <photo id>-<size>-<etag>.thumb} with the ETag the server sent in URL-safe
+ * Base64. The ETag is the server's key for the thumbnail's content: the first time a run of the client needs a file
+ * kept from an earlier run, {@link ThumbnailLoader} revalidates it with If-None-Match, which costs a 304 without a
+ * body unless the thumbnail was regenerated differently (e.g. after a format change on the server); then the new
+ * one replaces the file. So a second launch transfers almost nothing but still never shows an outdated thumbnail.
+ *
+ * Least recently used files are deleted once the total exceeds the limit. The order survives restarts through the
+ * files' modification times, which {@link #touch} updates on every hit.
+ *
+ * Thread-safe. Files are written outside the lock and then renamed into place, so readers never see partial files.
+ */
+public class ThumbnailDiskCache {
+
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d+)-(\\d+)-([A-Za-z0-9_-]*)\\.thumb");
+
+    private final Path directory;
+    private final long maxBytes;
+    // Keyed by "<photo id>-<size>", in access order: the eldest entry is evicted first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @param current Whether the file was fetched or revalidated during this run, so it needs no check.
+     */
+    private record Entry(Path file, long size, String etag, boolean current) {
+    }
+
+    /**
+     * A cached thumbnail file.
+     *
+     * @param file The file.
+     * @param etag The ETag the server sent with it, or null.
+     * @param current Whether it was fetched or revalidated during this run; otherwise revalidate before relying on it.
+     */
+    public record CachedThumbnail(Path file, String etag, boolean current) {
+    }
+
+    /**
+     * Opens the cache, indexing the files left by earlier runs.
+     *
+     * @param directory Where the thumbnails are kept. Created if missing.
+     * @param maxBytes Most bytes of thumbnails kept.
+     * @throws IOException if the directory cannot be created or listed.
+     */
+    public ThumbnailDiskCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        // Oldest first, so the most recently used end up at the young end of the access order
+        files.stream()
+                .sorted(Comparator.comparing(ThumbnailDiskCache::lastModified))
+                .forEach(file -> {
+                    Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+                    if (!name.matches()) {
+                        deleteQuietly(file); // Left-over temporary file of an interrupted write
+                        return;
+                    }
+                    long size = sizeOf(file);
+                    Entry previous = entries.put(name.group(1) + "-" + name.group(2),
+                            new Entry(file, size, decodeEtag(name.group(3)), false));
+                    if (previous != null) {
+                        totalBytes -= previous.size();
+                        deleteQuietly(previous.file());
+                    }
+                    totalBytes += size;
+                });
+        synchronized (this) {
+            evict();
+        }
+        System.out.println("Thumbnail cache: " + entries.size() + " thumbnails, " + totalBytes / 1024 + " KB in " + directory);
+    }
+
+    /**
+     * @return The cached thumbnail, if there is one.
+     */
+    public synchronized Optional<CachedThumbnail> get(long photoId, int size) {
+        Entry entry = entries.get(photoId + "-" + size);
+        return Optional.ofNullable(entry).map(found -> new CachedThumbnail(found.file(), found.etag(), found.current()));
+    }
+
+    /**
+     * Records that the server confirmed the cached thumbnail (304 Not Modified), so it is not asked again this run.
+     */
+    public synchronized void revalidated(long photoId, int size) {
+        entries.computeIfPresent(photoId + "-" + size,
+                (key, entry) -> new Entry(entry.file(), entry.size(), entry.etag(), true));
+    }
+
+    /**
+     * Marks a cached file as just used, so it survives restarts in the right place of the LRU order.
+     * A file system call; keep it off the FX thread.
+     */
+    public void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted meanwhile; nothing to keep fresh
+        }
+    }
+
+    /**
+     * Stores a thumbnail, replacing any earlier one of the same photo and size, and evicts the least recently used
+     * thumbnails if the cache has grown too large.
+     *
+     * @param etag The ETag the server sent with it, or null.
+     * @return The cached file.
+     * @throws IOException if the file cannot be written.
+     */
+    public Path put(long photoId, int size, String etag, byte[] content) throws IOException {
+        String encodedEtag = etag != null
+                ? Base64.getUrlEncoder().withoutPadding().encodeToString(etag.getBytes(StandardCharsets.UTF_8))
+                : "";
+        Path file = directory.resolve(photoId + "-" + size + "-" + encodedEtag + ".thumb");
+        Path temp = directory.resolve(UUID.randomUUID() + ".tmp");
+        Files.write(temp, content);
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        synchronized (this) {
+            Entry previous = entries.put(photoId + "-" + size, new Entry(file, content.length, etag, true));
+            if (previous != null) {
+                totalBytes -= previous.size();
+                if (!previous.file().equals(file)) {
+                    deleteQuietly(previous.file());
+                }
+            }
+            totalBytes += content.length;
+            evict();
+        }
+        return file;
+    }
+
+    // Called with the lock held
+    private void evict() {
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); totalBytes > maxBytes && it.hasNext(); ) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            totalBytes -= eldest.size();
+            deleteQuietly(eldest.file());
+        }
+    }
+
+    private static String decodeEtag(String encoded) {
+        if (encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            String etag = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.US_ASCII);
+            if (etag.matches("(W/)?\"[\\x21-\\x7e]*\"")) {
+                return etag;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not Base64
+        }
+        return null; // Not an ETag we wrote; the server sends the thumbnail again
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete cached thumbnail " + file + ": " + e.getMessage());
+        }
+    }
+}
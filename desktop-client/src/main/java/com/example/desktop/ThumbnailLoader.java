@@ -0,0 +1,188 @@
+package com.example.desktop;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gets thumbnail files for the gallery: from the {@link ThumbnailDiskCache} if present, otherwise from the
+ * storage service's GET /api/v1/photos/{id}/thumbnail?size= endpoint into the cache. A file kept from an earlier
+ * run is revalidated once per run with If-None-Match (its ETag); it is still used if the server cannot be reached.
+ *
+ * Downloads run on a few worker threads and are taken newest request first: while the user scrolls, the cells
+ * that just came into view are served before those requested on the way there. A request cancelled before its
+ * turn (its cell was reused for another photo) is dropped without touching the network. Cells showing the same
+ * photo share one download but each gets its own future, so one of them cancelling does not fail the others:
+ * the download is only dropped once every caller has cancelled.
+ */
+public class ThumbnailLoader implements AutoCloseable {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final String photosUrl;
+    private final int size;
+    private final ThumbnailDiskCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, SharedDownload> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param httpClient Shared client.
+     * @param photosUrl The storage service's photo API, e.g. http://localhost:8082/api/v1/photos
+     * @param size Thumbnail size to request; one of the derivative sizes configured on the server.
+     * @param cache Where fetched thumbnails are kept.
+     * @param parallelism Most downloads at once.
+     */
+    public ThumbnailLoader(HttpClient httpClient, String photosUrl, int size, ThumbnailDiskCache cache, int parallelism) {
+        this.httpClient = httpClient;
+        this.photosUrl = photosUrl.endsWith("/") ? photosUrl.substring(0, photosUrl.length() - 1) : photosUrl;
+        this.size = size;
+        this.cache = cache;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingDeque<>() {
+                    @Override
+                    public boolean offer(Runnable task) {
+                        return offerFirst(task); // LIFO: the most recently requested thumbnail goes next
+                    }
+                },
+                task -> {
+                    Thread thread = new Thread(task, "thumbnail-loader-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param photoId The photo.
+     * @return The thumbnail file, completed right away if it is cached and was fetched or revalidated during this
+     * run. Cancel it if it is no longer needed.
+     * Fails if the server has no thumbnail for the photo (yet).
+     */
+    public CompletableFuture<Path> load(long photoId) {
+        Optional<ThumbnailDiskCache.CachedThumbnail> cached = cache.get(photoId, size);
+        if (cached.isPresent() && cached.get().current()) {
+            executor.execute(() -> cache.touch(cached.get().file()));
+            return CompletableFuture.completedFuture(cached.get().file());
+        }
+        while (true) {
+            SharedDownload shared = inFlight.computeIfAbsent(photoId, id -> {
+                SharedDownload started = new SharedDownload(id);
+                started.result.whenComplete((file, error) -> inFlight.remove(id, started));
+                executor.execute(() -> download(id, cached.orElse(null), started.result));
+                return started;
+            });
+            CompletableFuture<Path> forCaller = shared.join();
+            if (forCaller != null) {
+                return forCaller;
+            }
+            // Its last caller cancelled it just now; start another
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A download of one thumbnail and the callers waiting for it.
+     */
+    private final class SharedDownload {
+
+        private final long photoId;
+        private final CompletableFuture<Path> result = new CompletableFuture<>();
+        private int callers; // Guarded by this
+        private boolean abandoned; // Guarded by this; every caller cancelled before the download finished
+
+        SharedDownload(long photoId) {
+            this.photoId = photoId;
+        }
+
+        /**
+         * @return A future for one more caller, completed with the download; null if the download was abandoned.
+         */
+        synchronized CompletableFuture<Path> join() {
+            if (abandoned) {
+                return null;
+            }
+            callers++;
+            CompletableFuture<Path> forCaller = result.thenApply(file -> file);
+            forCaller.whenComplete((file, error) -> {
+                if (forCaller.isCancelled()) {
+                    leave();
+                }
+            });
+            return forCaller;
+        }
+
+        private synchronized void leave() {
+            if (--callers == 0 && !result.isDone()) {
+                abandoned = true;
+                inFlight.remove(photoId, this);
+                result.cancel(false); // Dropped if the download has not started
+            }
+        }
+    }
+
+    /**
+     * Fetches the thumbnail, or with {@code cached} set, asks the server whether that copy is still current.
+     */
+    private void download(long photoId, ThumbnailDiskCache.CachedThumbnail cached, CompletableFuture<Path> result) {
+        if (result.isDone()) {
+            return; // Cancelled while queued
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(photosUrl + "/" + photoId + "/thumbnail?size=" + size))
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+        if (cached != null && cached.etag() != null) {
+            builder.header("If-None-Match", cached.etag());
+        }
+        try {
+            HttpResponse<byte[]> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 304 && cached != null) {
+                cache.revalidated(photoId, size);
+                cache.touch(cached.file());
+                result.complete(cached.file());
+                return;
+            }
+            if (response.statusCode() != 200) {
+                if (cached != null) {
+                    result.complete(cached.file()); // Better than nothing; revalidated when it is shown next
+                    return;
+                }
+                // 503: still being generated on the server; the cell asks again when it is shown next
+                result.completeExceptionally(new IOException("HTTP " + response.statusCode() + " for the thumbnail of photo " + photoId));
+                return;
+            }
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            result.complete(cache.put(photoId, size, etag, response.body()));
+        } catch (IOException e) {
+            if (cached != null) {
+                result.complete(cached.file()); // Server unreachable: show what we have
+            } else {
+                result.completeExceptionally(e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(false);
+        }
+    }
+}
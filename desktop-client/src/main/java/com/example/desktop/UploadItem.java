@@ -0,0 +1,65 @@
+package com.example.desktop;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.nio.file.Path;
+
+/**
+ * One file in a folder upload, as shown in the upload table.
+ * The observable properties must only be changed on the JavaFX Application Thread.
+ */
+public class UploadItem {
+
+    /**
+     * Lifecycle of a single file upload.
+     */
+    public enum Status {
+        QUEUED, UPLOADING, RETRYING, DONE, FAILED
+    }
+
+    private final Path path;
+    private final long sizeBytes;
+    private final StringProperty status = new SimpleStringProperty(Status.QUEUED.name());
+    private final IntegerProperty attempts = new SimpleIntegerProperty(0);
+    private final StringProperty message = new SimpleStringProperty("");
+
+    public UploadItem(Path path, long sizeBytes) {
+        this.path = path;
+        this.sizeBytes = sizeBytes;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getFileName() {
+        return path.getFileName().toString();
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public StringProperty statusProperty() {
+        return status;
+    }
+
+    public IntegerProperty attemptsProperty() {
+        return attempts;
+    }
+
+    public StringProperty messageProperty() {
+        return message;
+    }
+
+    /**
+     * Updates status and message together (call on the JavaFX Application Thread).
+     */
+    public void update(Status newStatus, String newMessage) {
+        status.set(newStatus.name());
+        message.set(newMessage);
+    }
+}
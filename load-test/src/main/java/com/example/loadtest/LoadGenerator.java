@@ -0,0 +1,212 @@
+package com.example.loadtest;
+
+import com.example.common.dto.PhotoHeaders;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator: uploads arrive as a Poisson process at the scenario's current rate,
+ * whether or not earlier uploads have completed, the way independent users would send them.
+ * A closed loop of N clients would instead slow down with the system and understate its latency.
+ *
+ * Each upload carries a unique prefix followed by one shared 1 MB random pattern, repeated as often as needed,
+ * so content deduplication does not turn the run into a metadata-only benchmark. The prefix is a JPEG header
+ * (see {@link #jpegPrefix}), so the uploads pass the services' header sniffing; the pattern after it is not decodable,
+ * which only makes thumbnail generation fail fast. Raw-body uploads are streamed from
+ * the pattern, so the generator needs no memory per request and can send uploads larger than the heap it shares
+ * with the services.
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final int PATTERN_SIZE = 1024 * 1024;
+    private static final int JPEG_PREFIX_LENGTH = 33;
+
+    private final LoadTestOptions options;
+    private final LoadRecorder recorder;
+    private final HttpClient client;
+    private final ExecutorService responseExecutor;
+    private final URI uri;
+    private final byte[] pattern;
+    private final Semaphore inFlight;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoadGenerator(LoadTestOptions options, LoadRecorder recorder, String uploadUrl) {
+        this.options = options;
+        this.recorder = recorder;
+        this.responseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // Tomcat serves HTTP/1.1 unless h2c is configured
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(responseExecutor)
+                .build();
+        this.uri = URI.create(uploadUrl + (options.getEndpoint().equals("json") ? "/api/v1/upload" : "/api/v1/upload/stream"));
+        this.pattern = new byte[PATTERN_SIZE];
+        new Random(42).nextBytes(this.pattern);
+        this.inFlight = new Semaphore(options.getMaxConcurrency());
+    }
+
+    /**
+     * Generates load for the warmup plus the measured duration, then waits for uploads still in flight.
+     *
+     * @param start The System.nanoTime() at which the run started.
+     * @param measureFrom The System.nanoTime() at which the warmup ends; uploads scheduled earlier are not recorded.
+     */
+    public void run(long start, long measureFrom) throws InterruptedException {
+        long end = measureFrom + options.getDuration().toNanos();
+        Random random = new Random();
+        long next = start;
+        while (next < end) {
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            dispatch(next, next >= measureFrom, options.getSizes().sample(random));
+
+            // Exponential inter-arrival times make a Poisson process at the current rate
+            double rate = options.rateAt(Duration.ofNanos(next - start));
+            next += (long) (-Math.log(1 - random.nextDouble()) / rate * 1_000_000_000L);
+        }
+
+        if (!inFlight.tryAcquire(options.getMaxConcurrency(), 5, TimeUnit.MINUTES)) {
+            log.warn("{} uploads still in flight after 5 minutes; not waiting any longer.",
+                    options.getMaxConcurrency() - inFlight.availablePermits());
+        }
+        responseExecutor.shutdownNow();
+    }
+
+    /**
+     * @return Uploads sent and not yet answered.
+     */
+    public int getInFlight() {
+        return options.getMaxConcurrency() - inFlight.availablePermits();
+    }
+
+    private void dispatch(long intendedStart, boolean measured, int size) {
+        if (!inFlight.tryAcquire()) {
+            if (measured) {
+                recorder.dropped();
+            }
+            return;
+        }
+        long id = sequence.incrementAndGet();
+        int length = Math.max(size, JPEG_PREFIX_LENGTH);
+        client.sendAsync(buildRequest(id, length), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    inFlight.release();
+                    if (!measured) {
+                        return;
+                    }
+                    if (error != null) {
+                        recorder.error(error);
+                    } else if (response.statusCode() / 100 == 2) {
+                        recorder.success(System.nanoTime() - intendedStart, length);
+                    } else {
+                        recorder.status(response.statusCode());
+                    }
+                });
+    }
+
+    private HttpRequest buildRequest(long id, int length) {
+        String filename = "load-" + id + ".jpg";
+        byte[] prefix = jpegPrefix(id);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5));
+
+        if (options.getEndpoint().equals("json")) {
+            // The JSON endpoint needs the whole image Base64-encoded in the body, as real JSON clients send it
+            byte[] image = new byte[length];
+            System.arraycopy(prefix, 0, image, 0, prefix.length);
+            for (int offset = prefix.length; offset < length; offset += PATTERN_SIZE) {
+                System.arraycopy(pattern, 0, image, offset, Math.min(PATTERN_SIZE, length - offset));
+            }
+            String json = "{\"filename\":\"" + filename + "\",\"contentType\":\"image/jpeg\","
+                    + "\"description\":\"load test\",\"imageData\":\"" + Base64.getEncoder().encodeToString(image) + "\"}";
+            return request.header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                    .build();
+        }
+
+        // A known length keeps the request out of chunked encoding, as a real client uploading a file would send it
+        return request.header("Content-Type", "image/jpeg")
+                .header(PhotoHeaders.FILENAME, PhotoHeaders.encode(filename))
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> new PatternInputStream(prefix, pattern, length)),
+                        length))
+                .build();
+    }
+
+    /**
+     * The start of every upload: a JPEG start-of-image marker, a comment segment holding the upload's ID
+     * (which makes the content unique) and a baseline frame header of a 4000x3000 image.
+     */
+    private static byte[] jpegPrefix(long id) {
+        return ByteBuffer.allocate(JPEG_PREFIX_LENGTH)
+                .putShort((short) 0xFFD8) // SOI
+                .putShort((short) 0xFFFE).putShort((short) (2 + Long.BYTES)).putLong(id) // COM
+                .putShort((short) 0xFFC0).putShort((short) 17) // SOF0: precision, height, width, 3 components
+                .put((byte) 8).putShort((short) 3000).putShort((short) 4000)
+                .put((byte) 3).put(new byte[]{1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1})
+                .array();
+    }
+
+    /**
+     * The body of one raw upload: the prefix, then the pattern repeated until {@code length} bytes have been read.
+     */
+    private static final class PatternInputStream extends InputStream {
+
+        private final byte[] prefix;
+        private final byte[] pattern;
+        private final long length;
+        private long position;
+
+        PatternInputStream(byte[] prefix, byte[] pattern, long length) {
+            this.prefix = prefix;
+            this.pattern = pattern;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            int value = position < prefix.length ? prefix[(int) position] : pattern[(int) ((position - prefix.length) % pattern.length)];
+            position++;
+            return value & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) {
+            if (position >= length) {
+                return -1;
+            }
+            if (position < prefix.length) {
+                int n = (int) Math.min(count, prefix.length - position);
+                System.arraycopy(prefix, (int) position, buffer, offset, n);
+                position += n;
+                return n;
+            }
+            int patternOffset = (int) ((position - prefix.length) % pattern.length);
+            int n = (int) Math.min(Math.min(count, pattern.length - patternOffset), length - position);
+            System.arraycopy(pattern, patternOffset, buffer, offset, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the outcome of every upload of a load-test run.
+ *
+ * Latencies of successful uploads go into an HdrHistogram {@link Recorder} in microseconds, measured from the
+ * moment the upload was scheduled to start (not when it was actually sent), so a stalled system cannot hide its
+ * queueing delay from the percentiles (coordinated omission). Every report interval the recorder is swapped out:
+ * the interval histogram is printed, appended to the .hlog interval log, and added to the run total.
+ * Uploads scheduled during the warmup are not counted.
+ */
+public class LoadRecorder {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram total = new Histogram(3);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder bytesStored = new LongAdder();
+    private final LongAdder intervalBytes = new LongAdder();
+    private final LongAdder intervalRejected = new LongAdder();
+    private final LongAdder intervalFailed = new LongAdder();
+    private final HistogramLogWriter logWriter;
+    private final PrintStream logStream;
+    private Histogram interval;
+
+    /**
+     * @param intervalLog File for the interval histograms (HdrHistogram log format, readable by HistogramLogAnalyzer).
+     * @param startTimeMillis Wall-clock start of the run, written to the log header.
+     */
+    public LoadRecorder(Path intervalLog, long startTimeMillis) throws IOException {
+        Files.createDirectories(intervalLog.getParent());
+        this.logStream = new PrintStream(Files.newOutputStream(intervalLog), false);
+        this.logWriter = new HistogramLogWriter(logStream);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(startTimeMillis);
+        logWriter.setBaseTime(startTimeMillis);
+        logWriter.outputLegend();
+    }
+
+    /**
+     * Records a completed upload that the service accepted (2xx).
+     */
+    public void success(long latencyNanos, int bytes) {
+        recorder.recordValue(Math.max(1, latencyNanos / 1000));
+        bytesStored.add(bytes);
+        intervalBytes.add(bytes);
+        count("2xx");
+    }
+
+    /**
+     * Records an upload the service answered with a non-2xx status; 429 means admission control turned it away.
+     */
+    public void status(int statusCode) {
+        if (statusCode == 429) {
+            intervalRejected.increment();
+        } else {
+            intervalFailed.increment();
+        }
+        count(String.valueOf(statusCode));
+    }
+
+    /**
+     * Records an upload that failed without a response (e.g. connection refused or reset).
+     */
+    public void error(Throwable error) {
+        intervalFailed.increment();
+        count(error.getClass().getSimpleName());
+    }
+
+    /**
+     * Records an arrival that was not sent because --max-concurrency uploads were already in flight.
+     */
+    public void dropped() {
+        count("dropped");
+    }
+
+    /**
+     * Closes the current interval and adds it to the total.
+     *
+     * @return A snapshot of the interval, for the progress line.
+     */
+    public synchronized IntervalSummary closeInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        logWriter.outputIntervalHistogram(interval);
+        return new IntervalSummary(
+                interval.getTotalCount(),
+                intervalBytes.sumThenReset(),
+                intervalRejected.sumThenReset(),
+                intervalFailed.sumThenReset(),
+                interval.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                interval.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                interval.getMaxValue() / MICROS_PER_MILLI);
+    }
+
+    /**
+     * @return The latency histogram of all measured successful uploads, in microseconds.
+     */
+    public synchronized Histogram getTotal() {
+        return total.copy();
+    }
+
+    public long getBytesStored() {
+        return bytesStored.sum();
+    }
+
+    /**
+     * @return Upload outcomes ("2xx", "429", "500", "dropped", exception names) with their counts, sorted by name.
+     */
+    public Map<String, Long> getOutcomes() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Writes the percentile distribution of the whole run (.hgrm, milliseconds) and closes the interval log.
+     */
+    public synchronized void writeDistribution(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false)) {
+            total.outputPercentileDistribution(out, MICROS_PER_MILLI);
+        }
+        logStream.close();
+    }
+
+    private void count(String outcome) {
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * One report interval: successful uploads and their bytes, rejections (429) and other failures,
+     * and latency percentiles in milliseconds.
+     */
+    public record IntervalSummary(long succeeded, long bytes, long rejected, long failed,
+                                  double p50Millis, double p99Millis, double maxMillis) {
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the upload path: starts photo-storage-service and photo-upload-service in this JVM
+ * (or targets a running upload service with --target), drives them with an open-model workload
+ * and reports throughput and latency percentiles as HdrHistogram output.
+ *
+ * Output, under --output:
+ * - {@code <scenario>-<timestamp>.hlog}   interval histograms, one per --report-interval (HistogramLogAnalyzer)
+ * - {@code <scenario>-<timestamp>.hgrm}   percentile distribution of the whole run (HdrHistogram plotter)
+ *
+ * Memory of this JVM is sampled throughout. With --max-heap the run fails (exit code 1) if the live heap ever
+ * exceeds the limit, which is how "uploads larger than the heap succeed" and "memory stays flat under
+ * saturation" are checked. Those checks are only meaningful when the services run in-process.
+ *
+ * See {@link LoadTestOptions} for all options.
+ */
+@Slf4j
+public class LoadTestApplication {
+
+    private static final double MB = 1024.0 * 1024.0;
+    private static final long MEMORY_SAMPLE_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        String runName = options.getScenario().name().toLowerCase() + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path hlog = options.getOutput().resolve(runName + ".hlog");
+        Path hgrm = options.getOutput().resolve(runName + ".hgrm");
+
+        LocalServices services = options.getTarget() == null ? LocalServices.start(options) : null;
+        String uploadUrl = services != null ? services.getUploadUrl() : options.getTarget();
+
+        MemorySampler memory = new MemorySampler();
+        LoadRecorder recorder = new LoadRecorder(hlog, System.currentTimeMillis());
+        LoadGenerator generator = new LoadGenerator(options, recorder, uploadUrl);
+
+        System.out.printf("Scenario %s at %.1f uploads/s for %s (+%s warmup), sizes %s, endpoint %s, target %s%n",
+                options.getScenario(), options.getRate(), options.getDuration(), options.getWarmup(),
+                options.getSizes(), options.getEndpoint(), uploadUrl);
+
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        scheduler.scheduleAtFixedRate(memory::sample, 0, MEMORY_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        long reportMillis = options.getReportInterval().toMillis();
+        scheduler.scheduleAtFixedRate(() -> report(options, recorder, memory, generator, start, measureFrom),
+                reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+
+        boolean heapExceeded;
+        try {
+            generator.run(start, measureFrom);
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            recorder.closeInterval();
+            memory.sample();
+            recorder.writeDistribution(hgrm);
+            heapExceeded = summarize(options, recorder, memory, hlog, hgrm);
+            if (services != null) {
+                services.close();
+            }
+        }
+        System.exit(heapExceeded ? 1 : 0);
+    }
+
+    private static void report(LoadTestOptions options, LoadRecorder recorder, MemorySampler memory,
+                               LoadGenerator generator, long start, long measureFrom) {
+        try {
+            long now = System.nanoTime();
+            double seconds = options.getReportInterval().toMillis() / 1000.0;
+            LoadRecorder.IntervalSummary interval = recorder.closeInterval();
+            MemorySampler.Sample sample = memory.sample();
+            System.out.printf("%6ds %-7s target %7.1f/s | ok %7.1f/s %8.1f MB/s | p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms"
+                            + " | 429 %5d  failed %5d  in flight %4d | heap %5.0f MB (after GC %5.0f MB)  direct %5.0f MB%n",
+                    Duration.ofNanos(now - start).toSeconds(),
+                    now < measureFrom ? "warmup" : "measure",
+                    options.rateAt(Duration.ofNanos(now - start)),
+                    interval.succeeded() / seconds,
+                    interval.bytes() / MB / seconds,
+                    interval.p50Millis(), interval.p99Millis(), interval.maxMillis(),
+                    interval.rejected(), interval.failed(), generator.getInFlight(),
+                    sample.heapUsed() / MB, sample.heapAfterGc() / MB, sample.direct() / MB);
+        } catch (RuntimeException e) {
+            // A failed report line must not cancel the scheduled reports that follow
+            log.warn("Could not report interval: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the summary of the run.
+     *
+     * @return true if --max-heap was given and the live heap exceeded it.
+     */
+    private static boolean summarize(LoadTestOptions options, LoadRecorder recorder, MemorySampler memory,
+                                     Path hlog, Path hgrm) {
+        Histogram total = recorder.getTotal();
+        double seconds = options.getDuration().toMillis() / 1000.0;
+
+        System.out.println();
+        System.out.printf("Uploads:     %s%n", recorder.getOutcomes());
+        System.out.printf("Throughput:  %.1f uploads/s, %.1f MB/s%n",
+                total.getTotalCount() / seconds, recorder.getBytesStored() / MB / seconds);
+        System.out.printf("Latency:     p50 %.1f ms  p95 %.1f ms  p99 %.1f ms  p99.9 %.1f ms  max %.1f ms%n",
+                total.getValueAtPercentile(50) / 1000.0,
+                total.getValueAtPercentile(95) / 1000.0,
+                total.getValueAtPercentile(99) / 1000.0,
+                total.getValueAtPercentile(99.9) / 1000.0,
+                total.getMaxValue() / 1000.0);
+        System.out.printf("Memory:      peak heap after GC %.0f MB, peak direct %.0f MB (max heap %.0f MB)%n",
+                memory.getPeakHeapAfterGc() / MB, memory.getPeakDirect() / MB,
+                Runtime.getRuntime().maxMemory() / MB);
+        System.out.printf("Histograms:  %s, %s%n", hlog, hgrm);
+
+        if (options.getMaxHeap() != null && memory.getPeakHeapAfterGc() > options.getMaxHeap().toBytes()) {
+            System.out.printf("FAILED: peak heap after GC %.0f MB exceeds --max-heap %.0f MB%n",
+                    memory.getPeakHeapAfterGc() / MB, options.getMaxHeap().toBytes() / MB);
+            return true;
+        }
+        return false;
+    }
+}
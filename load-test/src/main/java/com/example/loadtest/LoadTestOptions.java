@@ -0,0 +1,126 @@
+package com.example.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Options of a load-test run, parsed from {@code --name=value} command-line arguments.
+ *
+ * Workload:
+ * --scenario=steady|burst|soak        Shape of the arrival rate over time (default steady, see {@link Scenario})
+ * --rate=50                           Base arrival rate in uploads per second (open model: independent of response times)
+ * --duration=60s                      Length of the measured run (soak defaults to 1h)
+ * --warmup=10s                        Load applied before measuring, to let JIT and connection pools settle
+ * --sizes=lognormal:2MB:0.8           Upload size distribution (see {@link SizeDistribution})
+ * --max-concurrency=256               Uploads in flight at most; arrivals beyond it are counted as dropped
+ * --endpoint=stream|json              POST /api/v1/upload/stream (raw body) or POST /api/v1/upload (JSON)
+ * --burst-multiplier=5                burst: rate during a burst, as a multiple of --rate
+ * --burst-length=5s                   burst: length of each burst
+ * --burst-period=30s                  burst: time from the start of one burst to the next
+ *
+ * Environment:
+ * --target=http://host:8081           Drive an already running upload service instead of starting both services here
+ * --db=mem|file                       H2 in memory, or file-backed under the output directory (default mem)
+ * --storage-nodes=1                   Storage service instances to start, each on its own port, database and blob directory
+ * --replication-factor=1              Storage nodes each photo is written to (see photo-storage.sharding)
+ * --output=build/load-test            Where histograms, logs and stored blobs go
+ * --report-interval=5s                How often a progress line is printed
+ * --max-heap=768MB                    Fail (exit code 1) if the live heap (heap after GC) ever exceeds this
+ */
+@Data
+public class LoadTestOptions {
+
+    private Scenario scenario = Scenario.STEADY;
+    private double rate = 50;
+    private Duration duration;
+    private Duration warmup = Duration.ofSeconds(10);
+    private SizeDistribution sizes = SizeDistribution.parse("lognormal:2MB:0.8");
+    private int maxConcurrency = 256;
+    private String endpoint = "stream";
+    private double burstMultiplier = 5;
+    private Duration burstLength = Duration.ofSeconds(5);
+    private Duration burstPeriod = Duration.ofSeconds(30);
+
+    private String target;
+    private String db = "mem";
+    private int storageNodes = 1;
+    private int replicationFactor = 1;
+    private Path output = Path.of("build", "load-test");
+    private Duration reportInterval = Duration.ofSeconds(5);
+    private DataSize maxHeap;
+
+    /**
+     * @param args Command-line arguments of the form {@code --name=value}.
+     * @return The parsed options, with defaults for everything not given.
+     * @throws IllegalArgumentException if an argument is unknown or malformed.
+     */
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "scenario" -> options.scenario = Scenario.valueOf(value.toUpperCase());
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "duration" -> options.duration = DurationStyle.detectAndParse(value);
+                case "warmup" -> options.warmup = DurationStyle.detectAndParse(value);
+                case "sizes" -> options.sizes = SizeDistribution.parse(value);
+                case "max-concurrency" -> options.maxConcurrency = Integer.parseInt(value);
+                case "endpoint" -> options.endpoint = value;
+                case "burst-multiplier" -> options.burstMultiplier = Double.parseDouble(value);
+                case "burst-length" -> options.burstLength = DurationStyle.detectAndParse(value);
+                case "burst-period" -> options.burstPeriod = DurationStyle.detectAndParse(value);
+                case "target" -> options.target = value;
+                case "db" -> options.db = value;
+                case "storage-nodes" -> options.storageNodes = Integer.parseInt(value);
+                case "replication-factor" -> options.replicationFactor = Integer.parseInt(value);
+                case "output" -> options.output = Path.of(value);
+                case "report-interval" -> options.reportInterval = DurationStyle.detectAndParse(value);
+                case "max-heap" -> options.maxHeap = DataSize.parse(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        if (options.duration == null) {
+            options.duration = options.scenario == Scenario.SOAK ? Duration.ofHours(1) : Duration.ofSeconds(60);
+        }
+        if (options.rate <= 0) {
+            throw new IllegalArgumentException("--rate must be positive.");
+        }
+        if (options.maxConcurrency <= 0) {
+            throw new IllegalArgumentException("--max-concurrency must be positive.");
+        }
+        if (!options.endpoint.equals("stream") && !options.endpoint.equals("json")) {
+            throw new IllegalArgumentException("--endpoint must be stream or json.");
+        }
+        if (!options.db.equals("mem") && !options.db.equals("file")) {
+            throw new IllegalArgumentException("--db must be mem or file.");
+        }
+        if (options.storageNodes < 1) {
+            throw new IllegalArgumentException("--storage-nodes must be at least 1.");
+        }
+        if (options.replicationFactor < 1 || options.replicationFactor > options.storageNodes) {
+            throw new IllegalArgumentException("--replication-factor must be between 1 and --storage-nodes.");
+        }
+        return options;
+    }
+
+    /**
+     * @param elapsed Time since the start of the run (warmup included).
+     * @return The target arrival rate at that moment, in uploads per second.
+     */
+    public double rateAt(Duration elapsed) {
+        if (scenario != Scenario.BURST) {
+            return rate;
+        }
+        long intoPeriod = elapsed.toNanos() % burstPeriod.toNanos();
+        return intoPeriod < burstLength.toNanos() ? rate * burstMultiplier : rate;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.loadtest;
+
+import com.example.photostorage.PhotoStorageApplication;
+import com.example.photoupload.PhotoUploadApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local stand-ins for the production deployment: photo-storage-service and photo-upload-service started in this JVM,
+ * each on a free port, with H2 instead of PostgreSQL and blobs under the load-test output directory.
+ * With --storage-nodes above 1 several storage services are started, each with its own database and directories,
+ * and the upload service spreads the photos over them (photo-storage.nodes).
+ *
+ * Both services ship an application.yml, and only one of them would be found on the shared classpath,
+ * so each context is pointed at its own file in this module (loadtest-storage.yml, loadtest-upload.yml)
+ * and the per-run settings are passed as command-line arguments, which take precedence over both.
+ */
+@Slf4j
+public class LocalServices implements AutoCloseable {
+
+    private final List<ConfigurableApplicationContext> storage;
+    private final ConfigurableApplicationContext upload;
+    private final String uploadUrl;
+
+    private LocalServices(List<ConfigurableApplicationContext> storage, ConfigurableApplicationContext upload, String uploadUrl) {
+        this.storage = storage;
+        this.upload = upload;
+        this.uploadUrl = uploadUrl;
+    }
+
+    /**
+     * Starts the storage services, then the upload service pointing at them.
+     *
+     * @param options The run options (database mode, storage nodes, replication factor and output directory are used here).
+     * @return The running services; close them when the run is over.
+     */
+    public static LocalServices start(LoadTestOptions options) {
+        List<ConfigurableApplicationContext> storage = new ArrayList<>();
+        List<String> storageUrls = new ArrayList<>();
+        ConfigurableApplicationContext upload;
+        try {
+            for (int node = 0; node < options.getStorageNodes(); node++) {
+                ConfigurableApplicationContext context = startStorage(options, node);
+                storage.add(context);
+                storageUrls.add("http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort());
+            }
+            upload = new SpringApplicationBuilder(PhotoUploadApplication.class)
+                    .run("--spring.config.location=classpath:/loadtest-upload.yml",
+                            "--server.port=0",
+                            "--photo-storage.nodes=" + String.join(",", storageUrls),
+                            "--photo-storage.sharding.replication-factor=" + options.getReplicationFactor());
+        } catch (RuntimeException e) {
+            storage.forEach(ConfigurableApplicationContext::close);
+            throw e;
+        }
+        int uploadPort = ((WebServerApplicationContext) upload).getWebServer().getPort();
+        log.info("photo-upload-service started on port {}", uploadPort);
+
+        return new LocalServices(storage, upload, "http://localhost:" + uploadPort);
+    }
+
+    /**
+     * Starts one storage service. A single node keeps its data directly under data/, as before;
+     * with several nodes each gets data/node-&lt;n&gt;/ and its own in-memory database.
+     */
+    private static ConfigurableApplicationContext startStorage(LoadTestOptions options, int node) {
+        Path data = options.getOutput().resolve("data").toAbsolutePath();
+        String databaseName = "photos";
+        if (options.getStorageNodes() > 1) {
+            data = data.resolve("node-" + node);
+            databaseName = "photos-" + node;
+        }
+        String datasourceUrl = options.getDb().equals("file")
+                ? "jdbc:h2:file:" + data.resolve("db/photos")
+                : "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1";
+
+        ConfigurableApplicationContext storage = new SpringApplicationBuilder(PhotoStorageApplication.class)
+                .run("--spring.config.location=classpath:/loadtest-storage.yml",
+                        "--server.port=0",
+                        "--spring.datasource.url=" + datasourceUrl,
+                        "--photo-storage.blob-store.root-directory=" + data.resolve("blobs"),
+                        "--photo-storage.uploads.directory=" + data.resolve("uploads"));
+        int storagePort = ((WebServerApplicationContext) storage).getWebServer().getPort();
+        log.info("photo-storage-service {} started on port {} ({})", node, storagePort, datasourceUrl);
+        return storage;
+    }
+
+    /**
+     * @return The base URL of the upload service, e.g. http://localhost:53124.
+     */
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+
+    @Override
+    public void close() {
+        upload.close();
+        storage.forEach(ConfigurableApplicationContext::close);
+    }
+}
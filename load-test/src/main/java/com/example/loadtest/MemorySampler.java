@@ -0,0 +1,63 @@
+package com.example.loadtest;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * Samples the memory of this JVM, which holds both services when they run in-process.
+ *
+ * "Heap after GC" (the heap pools' usage as of their last collection) approximates the live set, which is what
+ * must stay flat under saturation: uploads are streamed and admission-controlled, so it should not grow with the
+ * number or size of requests in flight. Plain "heap used" also counts garbage and saw-tooths with every GC.
+ */
+public class MemorySampler {
+
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+            .toList();
+    private final BufferPoolMXBean directPool = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(pool -> pool.getName().equals("direct"))
+            .findFirst()
+            .orElse(null);
+
+    private long peakHeapAfterGc;
+    private long peakDirect;
+
+    /**
+     * Takes a sample and updates the peaks.
+     */
+    public synchronized Sample sample() {
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long heapAfterGc = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            if (afterGc != null) {
+                heapAfterGc += afterGc.getUsed();
+            }
+        }
+        long direct = directPool != null ? directPool.getMemoryUsed() : 0;
+        peakHeapAfterGc = Math.max(peakHeapAfterGc, heapAfterGc);
+        peakDirect = Math.max(peakDirect, direct);
+        return new Sample(heapUsed, heapAfterGc, direct);
+    }
+
+    public synchronized long getPeakHeapAfterGc() {
+        return peakHeapAfterGc;
+    }
+
+    public synchronized long getPeakDirect() {
+        return peakDirect;
+    }
+
+    /**
+     * @param heapUsed Heap in use right now, garbage included.
+     * @param heapAfterGc Heap in use after the last collection of each pool.
+     * @param direct Direct (off-heap) buffer memory in use.
+     */
+    public record Sample(long heapUsed, long heapAfterGc, long direct) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.loadtest;
+
+/**
+ * Shape of the arrival rate over a load-test run.
+ */
+public enum Scenario {
+
+    /**
+     * Constant arrival rate; the baseline for capacity numbers.
+     */
+    STEADY,
+
+    /**
+     * The base rate with periodic bursts at a multiple of it, to see how admission control
+     * (429 + Retry-After) and the queues behave and how quickly latency recovers.
+     */
+    BURST,
+
+    /**
+     * Constant arrival rate for a long time (1 hour by default), to expose leaks and slow drifts
+     * in heap, direct memory, disk usage and latency.
+     */
+    SOAK
+}
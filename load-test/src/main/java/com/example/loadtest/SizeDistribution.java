@@ -0,0 +1,62 @@
+package com.example.loadtest;
+
+import org.springframework.util.unit.DataSize;
+
+import java.util.Random;
+
+/**
+ * Distribution of upload sizes, parsed from a short spec:
+ * - {@code fixed:2MB}              every upload has the same size
+ * - {@code uniform:100KB:10MB}     uniformly between the two sizes
+ * - {@code lognormal:2MB:0.8}      log-normal with the given median and sigma, the usual shape of photo sizes;
+ *                                  capped at 20 times the median so one draw cannot dominate a run
+ *
+ * @param kind fixed, uniform or lognormal.
+ * @param first The fixed size, the lower bound or the median, in bytes.
+ * @param second The upper bound in bytes or the sigma; unused for fixed.
+ */
+public record SizeDistribution(String kind, long first, double second) {
+
+    public static SizeDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        return switch (parts[0]) {
+            case "fixed" -> new SizeDistribution("fixed", DataSize.parse(parts[1]).toBytes(), 0);
+            case "uniform" -> new SizeDistribution("uniform", DataSize.parse(parts[1]).toBytes(), DataSize.parse(parts[2]).toBytes());
+            case "lognormal" -> new SizeDistribution("lognormal", DataSize.parse(parts[1]).toBytes(), Double.parseDouble(parts[2]));
+            default -> throw new IllegalArgumentException("Unknown size distribution: " + spec);
+        };
+    }
+
+    /**
+     * @return The size of the next upload in bytes, at least 1.
+     */
+    public int sample(Random random) {
+        long size = switch (kind) {
+            case "fixed" -> first;
+            case "uniform" -> first + (long) (random.nextDouble() * (second - first));
+            default -> Math.min((long) (first * Math.exp(second * random.nextGaussian())), first * 20);
+        };
+        return (int) Math.max(1, Math.min(size, max()));
+    }
+
+    /**
+     * @return The largest size this distribution can produce.
+     */
+    public int max() {
+        long max = switch (kind) {
+            case "fixed" -> first;
+            case "uniform" -> (long) second;
+            default -> first * 20;
+        };
+        return (int) Math.min(max, Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case "fixed" -> "fixed " + DataSize.ofBytes(first).toKilobytes() + " KB";
+            case "uniform" -> "uniform " + DataSize.ofBytes(first).toKilobytes() + "-" + DataSize.ofBytes((long) second).toKilobytes() + " KB";
+            default -> "lognormal median " + DataSize.ofBytes(first).toKilobytes() + " KB, sigma " + second;
+        };
+    }
+}
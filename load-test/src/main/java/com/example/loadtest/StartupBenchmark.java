@@ -0,0 +1,366 @@
+package com.example.loadtest;
+
+import com.example.common.dto.PhotoHeaders;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Startup benchmark: how long after launch a new pair of photo-storage-service and photo-upload-service
+ * instances accepts its first upload. That, not "Started ... in", is what matters when instances are
+ * added during an upload burst.
+ *
+ * Unlike {@link LocalServices}, each service runs from its boot jar in its own JVM, as deployed, so class loading,
+ * JIT warm-up and CDS are measured too. Both processes are launched at once; the clock stops at the first 2xx
+ * answer to POST /api/v1/upload/stream, which is retried every few milliseconds until then.
+ *
+ * Modes:
+ * - DEFAULT: java -jar, with ddl-auto: update as the services are run today.
+ * - FAST:    the fast-start profile on the AOT-processed jars (-Dspring.aot.enabled=true), extracted and started
+ *            with a CDS archive recorded by a training run before the first measured start (see README, Fast startup).
+ *
+ * The storage service uses a file-backed H2 database whose schema is created once, before the measured runs,
+ * by a start in DEFAULT mode; FAST instances never touch the schema.
+ *
+ * Output, under --output:
+ * - {@code results.csv}                  one line per measured start, appended across runs of the benchmark
+ * - {@code logs/<mode>-<run>-<service>.log}   console output of every service process
+ *
+ * See {@link StartupBenchmarkOptions} for all options.
+ */
+@Slf4j
+public class StartupBenchmark {
+
+    enum Mode {
+        DEFAULT,
+        FAST
+    }
+
+    private static final Pattern STARTED = Pattern.compile("Started \\w+ in ([\\d.]+) seconds");
+    private static final long POLL_MILLIS = 20;
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final StartupBenchmarkOptions options;
+    private final Path output;
+    private final String java;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    /**
+     * One measured start.
+     *
+     * @param firstUploadMillis Launch of both processes until the first successful upload.
+     * @param storageStartedSeconds What photo-storage-service logged as its startup time, or NaN if not found.
+     * @param uploadStartedSeconds What photo-upload-service logged as its startup time, or NaN if not found.
+     */
+    record Result(Mode mode, int run, long firstUploadMillis, double storageStartedSeconds, double uploadStartedSeconds) {
+    }
+
+    StartupBenchmark(StartupBenchmarkOptions options) {
+        this.options = options;
+        this.output = options.getOutput().toAbsolutePath();
+        // The JVM running the benchmark also runs the services, so CDS archives match the JDK they are used with
+        this.java = ProcessHandle.current().info().command().orElse("java");
+    }
+
+    public static void main(String[] args) throws Exception {
+        StartupBenchmarkOptions options = StartupBenchmarkOptions.parse(args);
+        StartupBenchmark benchmark = new StartupBenchmark(options);
+        Map<Mode, List<Result>> results = benchmark.run();
+        System.exit(benchmark.summarize(results) ? 1 : 0);
+    }
+
+    Map<Mode, List<Result>> run() throws IOException, InterruptedException {
+        FileSystemUtils.deleteRecursively(output.resolve("data"));
+        FileSystemUtils.deleteRecursively(output.resolve("logs"));
+        Files.createDirectories(output.resolve("logs"));
+
+        System.out.println("Creating the schema in " + output.resolve("data"));
+        prepareSchema();
+        if (options.getModes().contains(Mode.FAST)) {
+            System.out.println("Extracting the jars and recording CDS archives (training runs)");
+            train("photo-storage-service", options.getStorageJar(), storageArguments(Mode.FAST, 0));
+            train("photo-upload-service", options.getUploadJar(), uploadArguments(Mode.FAST, 0, 0));
+        }
+
+        Map<Mode, List<Result>> results = new EnumMap<>(Mode.class);
+        for (Mode mode : options.getModes()) {
+            for (int run = 1; run <= options.getRuns(); run++) {
+                Result result = measure(mode, run);
+                results.computeIfAbsent(mode, m -> new ArrayList<>()).add(result);
+                record(result);
+                System.out.printf("%-7s run %2d: first upload after %6d ms (storage started in %.1f s, upload in %.1f s)%n",
+                        mode, run, result.firstUploadMillis(), result.storageStartedSeconds(), result.uploadStartedSeconds());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Launches both services in the given mode and uploads a photo until one is accepted.
+     */
+    private Result measure(Mode mode, int run) throws IOException, InterruptedException {
+        int storagePort = freePort();
+        int uploadPort = freePort();
+        String name = mode.name().toLowerCase() + "-" + run;
+        Path storageLog = output.resolve("logs/" + name + "-storage.log");
+        Path uploadLog = output.resolve("logs/" + name + "-upload.log");
+        HttpRequest upload = HttpRequest.newBuilder(URI.create("http://localhost:" + uploadPort + "/api/v1/upload/stream"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "image/jpeg")
+                .header(PhotoHeaders.FILENAME, PhotoHeaders.encode("startup-" + name + ".jpg"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jpeg(run + mode.ordinal() * 1000)))
+                .build();
+
+        long start = System.nanoTime();
+        Process storage = launch(command(mode, "photo-storage-service", options.getStorageJar(), storageArguments(mode, storagePort)), storageLog);
+        Process uploadService = launch(command(mode, "photo-upload-service", options.getUploadJar(), uploadArguments(mode, uploadPort, storagePort)), uploadLog);
+        try {
+            long deadline = start + options.getTimeout().toNanos();
+            while (true) {
+                if (!storage.isAlive() || !uploadService.isAlive()) {
+                    throw new IllegalStateException("A service exited during startup, see " + storageLog + " and " + uploadLog);
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("No successful upload within " + options.getTimeout() + ", see " + uploadLog);
+                }
+                try {
+                    HttpResponse<String> response = client.send(upload, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() / 100 == 2) {
+                        break;
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new Result(mode, run, elapsed, startedSeconds(storageLog), startedSeconds(uploadLog));
+        } finally {
+            stop(uploadService);
+            stop(storage);
+        }
+    }
+
+    /**
+     * Starts the storage service once with ddl-auto: update and stops it once it is up, the way a deployment
+     * creates the schema before fast-start instances are rolled out.
+     */
+    private void prepareSchema() throws IOException, InterruptedException {
+        int port = freePort();
+        Path log = output.resolve("logs/schema-storage.log");
+        Process storage = launch(command(Mode.DEFAULT, "photo-storage-service", options.getStorageJar(), storageArguments(Mode.DEFAULT, port)), log);
+        try {
+            HttpRequest health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).GET().build();
+            long deadline = System.nanoTime() + options.getTimeout().toNanos();
+            while (true) {
+                if (!storage.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Could not create the schema, see " + log);
+                }
+                try {
+                    if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return;
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(POLL_MILLIS * 10);
+            }
+        } finally {
+            stop(storage);
+        }
+    }
+
+    /**
+     * Extracts a boot jar into plain jars (which CDS requires) under --output, and records its CDS archive:
+     * the application context is started once and the JVM exits right after the refresh,
+     * dumping every class it loaded into app.jsa.
+     */
+    private void train(String service, Path jar, List<String> arguments) throws IOException, InterruptedException {
+        Path app = appDirectory(service);
+        run(List.of(java, "-Djarmode=tools", "-jar", jar.toAbsolutePath().toString(),
+                "extract", "--destination", app.toString(), "--force"), output.resolve("logs/" + service + "-extract.log"));
+        List<String> command = new ArrayList<>(List.of(java,
+                "-XX:ArchiveClassesAtExit=" + app.resolve("app.jsa"),
+                "-Dspring.aot.enabled=true",
+                "-Dspring.context.exit=onRefresh",
+                "-jar", app.resolve(service + ".jar").toString()));
+        command.addAll(arguments);
+        run(command, output.resolve("logs/" + service + "-training.log"));
+    }
+
+    private List<String> command(Mode mode, String service, Path jar, List<String> arguments) {
+        List<String> command = new ArrayList<>(List.of(java));
+        if (mode == Mode.FAST) {
+            Path app = appDirectory(service);
+            command.addAll(List.of("-XX:SharedArchiveFile=" + app.resolve("app.jsa"), "-Dspring.aot.enabled=true",
+                    "-jar", app.resolve(service + ".jar").toString()));
+        } else {
+            command.addAll(List.of("-jar", jar.toAbsolutePath().toString()));
+        }
+        command.addAll(arguments);
+        return command;
+    }
+
+    private List<String> storageArguments(Mode mode, int port) {
+        Path data = output.resolve("data");
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:file:" + data.resolve("db/photos"),
+                "--photo-storage.blob-store.root-directory=" + data.resolve("blobs"),
+                "--photo-storage.uploads.directory=" + data.resolve("uploads")));
+        if (mode == Mode.FAST) {
+            arguments.add("--spring.profiles.active=fast-start");
+            // Set by the docker profile in production; Hibernate does not look it up from the database in fast-start
+            arguments.add("--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect");
+        } else {
+            arguments.add("--spring.jpa.hibernate.ddl-auto=update");
+        }
+        return arguments;
+    }
+
+    private List<String> uploadArguments(Mode mode, int port, int storagePort) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=" + port,
+                "--photo-storage.service-url=http://localhost:" + storagePort));
+        if (mode == Mode.FAST) {
+            arguments.add("--spring.profiles.active=fast-start");
+        }
+        return arguments;
+    }
+
+    private Path appDirectory(String service) {
+        return output.resolve("app").resolve(service);
+    }
+
+    private static Process launch(List<String> command, Path log) throws IOException {
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    /**
+     * Runs a command to completion.
+     *
+     * @throws IllegalStateException if it fails.
+     */
+    private void run(List<String> command, Path log) throws IOException, InterruptedException {
+        Process process = launch(command, log);
+        if (!process.waitFor(options.getTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Timed out: " + String.join(" ", command) + ", see " + log);
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("Exit code " + process.exitValue() + ": " + String.join(" ", command) + ", see " + log);
+        }
+    }
+
+    /**
+     * Stops a service the way the orchestrator does (SIGTERM, then SIGKILL after a grace period).
+     */
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Process {} did not stop within {}; killing it.", process.pid(), STOP_TIMEOUT);
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @return The startup time Spring Boot logged ("Started ... in 3.2 seconds"), or NaN.
+     */
+    private static double startedSeconds(Path log) {
+        try {
+            Matcher matcher = STARTED.matcher(Files.readString(log, StandardCharsets.UTF_8));
+            return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * A small, decodable JPEG whose colour depends on the seed, so every run stores new content
+     * instead of hitting deduplication.
+     */
+    private static byte[] jpeg(int seed) {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color((seed * 0x9E3779B9) & 0xFFFFFF)); // Spreads consecutive seeds over the colour space
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void record(Result result) throws IOException {
+        Path csv = output.resolve("results.csv");
+        String header = Files.exists(csv) ? "" : "time,mode,run,first_upload_ms,storage_started_s,upload_started_s\n";
+        Files.writeString(csv, header + String.format("%s,%s,%d,%d,%.3f,%.3f%n", LocalDateTime.now(), result.mode(),
+                        result.run(), result.firstUploadMillis(), result.storageStartedSeconds(), result.uploadStartedSeconds()),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Prints min, median and max per mode.
+     *
+     * @return true if --fail-above was given and the median of the last mode exceeds it.
+     */
+    boolean summarize(Map<Mode, List<Result>> results) {
+        System.out.println();
+        long lastMedian = 0;
+        for (Mode mode : options.getModes()) {
+            List<Long> millis = results.get(mode).stream().map(Result::firstUploadMillis).sorted().toList();
+            lastMedian = millis.get(millis.size() / 2);
+            System.out.printf("%-7s time to first upload: min %6d ms  median %6d ms  max %6d ms  (%d runs)%n",
+                    mode, millis.get(0), lastMedian, millis.get(millis.size() - 1), millis.size());
+        }
+        System.out.println("Results: " + output.resolve("results.csv") + ", service logs: " + output.resolve("logs"));
+
+        Duration failAbove = options.getFailAbove();
+        if (failAbove != null && lastMedian > failAbove.toMillis()) {
+            System.out.printf("FAILED: median time to first upload %d ms exceeds --fail-above %d ms%n", lastMedian, failAbove.toMillis());
+            return true;
+        }
+        return false;
+    }
+}
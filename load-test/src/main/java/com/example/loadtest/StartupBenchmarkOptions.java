@@ -0,0 +1,74 @@
+package com.example.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options of a startup benchmark run, parsed from {@code --name=value} command-line arguments.
+ *
+ * --storage-jar=path                  Boot jar of photo-storage-service (set by the startupBenchmark Gradle task)
+ * --upload-jar=path                   Boot jar of photo-upload-service (set by the startupBenchmark Gradle task)
+ * --modes=default,fast                Modes to measure, in this order (see {@link StartupBenchmark.Mode})
+ * --runs=5                            Cold starts per mode
+ * --timeout=2m                        Give up on a start that has not served an upload after this long
+ * --output=build/startup              Where extracted jars, CDS archives, the database, blobs and service logs go
+ * --fail-above=10s                    Fail (exit code 1) if the median time to first upload of the last mode exceeds this
+ */
+@Data
+public class StartupBenchmarkOptions {
+
+    private Path storageJar;
+    private Path uploadJar;
+    private List<StartupBenchmark.Mode> modes = List.of(StartupBenchmark.Mode.DEFAULT, StartupBenchmark.Mode.FAST);
+    private int runs = 5;
+    private Duration timeout = Duration.ofMinutes(2);
+    private Path output = Path.of("build", "startup");
+    private Duration failAbove;
+
+    /**
+     * @param args Command-line arguments of the form {@code --name=value}.
+     * @return The parsed options, with defaults for everything not given.
+     * @throws IllegalArgumentException if an argument is unknown or malformed, or a jar is missing.
+     */
+    public static StartupBenchmarkOptions parse(String[] args) {
+        StartupBenchmarkOptions options = new StartupBenchmarkOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "storage-jar" -> options.storageJar = Path.of(value);
+                case "upload-jar" -> options.uploadJar = Path.of(value);
+                case "modes" -> options.modes = Arrays.stream(value.split(","))
+                        .map(mode -> StartupBenchmark.Mode.valueOf(mode.trim().toUpperCase()))
+                        .toList();
+                case "runs" -> options.runs = Integer.parseInt(value);
+                case "timeout" -> options.timeout = DurationStyle.detectAndParse(value);
+                case "output" -> options.output = Path.of(value);
+                case "fail-above" -> options.failAbove = DurationStyle.detectAndParse(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        if (options.storageJar == null || !options.storageJar.toFile().isFile()) {
+            throw new IllegalArgumentException("--storage-jar must point at photo-storage-service.jar (./gradlew :services:photo-storage-service:bootJar).");
+        }
+        if (options.uploadJar == null || !options.uploadJar.toFile().isFile()) {
+            throw new IllegalArgumentException("--upload-jar must point at photo-upload-service.jar (./gradlew :services:photo-upload-service:bootJar).");
+        }
+        if (options.modes.isEmpty()) {
+            throw new IllegalArgumentException("--modes must name at least one mode.");
+        }
+        if (options.runs < 1) {
+            throw new IllegalArgumentException("--runs must be at least 1.");
+        }
+        return options;
+    }
+}
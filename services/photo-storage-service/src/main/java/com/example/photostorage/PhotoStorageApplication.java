@@ -3,6 +3,7 @@ package com.example.photostorage;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories; // Import for JPA repositories
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main application class for the Photo Storage Service.
@@ -15,6 +16,8 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories; //
 @EnableJpaRepositories(basePackages = "com.example.photostorage.repository")
 // This annotation explicitly enables Spring Data JPA repositories.
 // It tells Spring where to find repository interfaces that extend JpaRepository.
+@EnableScheduling
+// Runs @Scheduled background jobs, e.g. the sweeper that discards expired upload sessions.
 public class PhotoStorageApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,164 @@
+package com.example.photostorage.cache;
+
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.event.ContentDeletedEvent;
+import com.example.photostorage.storage.BlobStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process read cache for blob bytes (originals and derivatives), bounded by the total number of bytes held.
+ *
+ * Backed by Caffeine, whose W-TinyLFU policy only admits a new entry if it is likely to be requested more often
+ * than the entry it would evict, so a one-off scan (e.g. an export) cannot flush the hot set of recent photos.
+ * Entries are weighed by their size in bytes; blobs larger than the per-entry limit are never cached and keep
+ * being served straight from the file (sendfile). Payloads can be kept off-heap in direct ByteBuffers, so a few
+ * hundred MB of cached images neither enlarge the heap nor lengthen GC pauses.
+ *
+ * A miss never holds up the response: the caller streams the blob from the BlobStore as usual (sendfile where
+ * possible). Only a key that misses a second time while it is still remembered from its first miss is loaded,
+ * on a background thread and outside the cache's locks, so a scan that touches every photo once allocates no
+ * buffers at all. Partial (Range) reads are served from the cache when it has the blob but never load it.
+ *
+ * Blobs are immutable and content-addressed, so a key never changes its bytes: writes need no invalidation,
+ * and deleted content (with its derivatives) is evicted on {@link ContentDeletedEvent}.
+ *
+ * Exposes the standard cache metrics under the name "photo.blob.cache" (cache.gets{result=hit|miss},
+ * cache.evictions, cache.eviction.weight, ...) plus the gauge "photo.blob.cache.bytes".
+ */
+@Component
+@Slf4j
+public class BlobCache {
+
+    private static final int REMEMBERED_MISSES = 10_000;
+    private static final int MAX_QUEUED_LOADS = 64;
+
+    private final BlobStore blobStore;
+    private final PhotoStorageProperties.CacheSettings settings;
+    private final Cache<String, ByteBuffer> cache;
+    private final Cache<String, Boolean> missedOnce; // Keys missed once; a second miss loads them
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor loader;
+
+    public BlobCache(BlobStore blobStore, PhotoStorageProperties properties, MeterRegistry meterRegistry) {
+        this.blobStore = blobStore;
+        this.settings = properties.getCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxBytes().toBytes())
+                .weigher((String key, ByteBuffer content) -> content.capacity())
+                .recordStats()
+                .build();
+        this.missedOnce = Caffeine.newBuilder().maximumSize(REMEMBERED_MISSES).build();
+        // One thread is plenty: loads are best effort and dropped when it falls behind
+        this.loader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_LOADS),
+                task -> {
+                    Thread thread = new Thread(task, "blob-cache-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "photo.blob.cache");
+        Gauge.builder("photo.blob.cache.bytes", cache, c -> c.policy().eviction().orElseThrow().weightedSize().orElse(0))
+                .baseUnit("bytes")
+                .description("Bytes of blob content currently held by the cache")
+                .register(meterRegistry);
+        log.info("BlobCache initialized: {}, entries up to {}{}", (settings.isEnabled() ? settings.getMaxBytes() : "disabled"), settings.getMaxEntrySize(), (settings.isOffHeap() ? ", off-heap" : ", on-heap"));
+    }
+
+    /**
+     * Returns the bytes of a blob if they are cached. On a miss of a whole-blob read, remembers the key, or, if
+     * it missed before, starts loading it in the background so later reads hit.
+     *
+     * @param key The BlobStore key.
+     * @param size The size of the blob in bytes.
+     * @param wholeBlob Whether the caller is about to send the whole blob (not a Range of it).
+     * @return A read-only view of the blob (position 0, limit = size), or empty on a miss, if the cache is
+     * disabled or the blob is too large to be cached; callers then stream it from the BlobStore.
+     */
+    public Optional<ByteBuffer> get(String key, long size, boolean wholeBlob) {
+        if (!settings.isEnabled() || size > settings.getMaxEntrySize().toBytes()) {
+            return Optional.empty();
+        }
+        ByteBuffer content = cache.getIfPresent(key);
+        if (content != null) {
+            return Optional.of(content.asReadOnlyBuffer()); // Independent position/limit for every reader
+        }
+        if (wholeBlob && missedOnce.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            missedOnce.invalidate(key);
+            loadInBackground(key, (int) size);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Evicts a single blob, e.g. one that was deleted outside the usual content lifecycle.
+     *
+     * @param key The BlobStore key.
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Evicts deleted content together with its derivatives (whose keys start with the content hash).
+     */
+    @EventListener
+    public void onContentDeleted(ContentDeletedEvent event) {
+        cache.asMap().keySet().removeIf(key -> key.startsWith(event.contentHash()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void loadInBackground(String key, int size) {
+        if (!loading.add(key)) {
+            return; // Already queued or loading
+        }
+        try {
+            loader.execute(() -> {
+                try {
+                    cache.put(key, load(key, size)); // Caffeine may still decline to keep it (W-TinyLFU)
+                } catch (IOException e) {
+                    log.debug("BlobCache: Could not load {}: {}", key, e.getMessage());
+                } finally {
+                    loading.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key); // Loader busy; a later miss tries again
+        }
+    }
+
+    private ByteBuffer load(String key, int size) throws IOException {
+        ByteBuffer content = settings.isOffHeap() ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        try (InputStream in = blobStore.open(key); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content) == -1) {
+                    throw new IOException("Blob " + key + " is shorter than its recorded size of " + size + " bytes");
+                }
+            }
+        }
+        return content.flip();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.photostorage.codec;
+
+import com.example.common.codec.PhotoFrame;
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoUploadRequest;
+import com.example.photostorage.config.PhotoStorageProperties;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes {@link PhotoUploadRequest} bodies in the binary {@link PhotoFrame} format
+ * ({@value PhotoFrame#MEDIA_TYPE}), which the photo-upload-service uses to forward photos without Base64.
+ * Spring Boot adds every HttpMessageConverter bean to Spring MVC's converters, so POST /api/v1/photos accepts
+ * this format next to JSON and picks the converter by the request's Content-Type.
+ */
+@Component
+public class PhotoFrameHttpMessageConverter extends AbstractHttpMessageConverter<PhotoUploadRequest> {
+
+    public static final MediaType PHOTO_FRAME = MediaType.parseMediaType(PhotoFrame.MEDIA_TYPE);
+
+    private final PhotoStorageProperties properties;
+
+    public PhotoFrameHttpMessageConverter(PhotoStorageProperties properties) {
+        super(PHOTO_FRAME);
+        this.properties = properties;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PhotoUploadRequest.class.equals(clazz);
+    }
+
+    @Override
+    protected PhotoUploadRequest readInternal(Class<? extends PhotoUploadRequest> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return PhotoFrame.read(inputMessage.getBody(), properties.getMaxImageSize().toBytes());
+        } catch (IOException e) {
+            // A malformed or oversized frame is the client's fault (400), not an I/O failure of this service
+            throw new HttpMessageNotReadableException("Invalid photo frame: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(PhotoUploadRequest request, HttpOutputMessage outputMessage) throws IOException {
+        PhotoFrame.write(request, outputMessage.getBody());
+    }
+
+    @Override
+    protected Long getContentLength(PhotoUploadRequest request, MediaType contentType) {
+        PhotoMetadata metadata = new PhotoMetadata(request.getFilename(), request.getContentType(), request.getDescription());
+        return PhotoFrame.frameLength(metadata, request.getImageData().length);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.photostorage.config;
+
+import com.example.photostorage.controller.PhotoStorageController;
+import com.example.photostorage.journal.JournaledPhotoWriter;
+import com.example.photostorage.journal.PhotoJournal;
+import com.example.photostorage.service.UploadSessionService;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Part of the fast-start profile (application-fast-start.yml), in which every bean is created on first use
+ * instead of during startup.
+ *
+ * Making everything lazy would only move the work into the first upload, which is what a freshly scaled-out
+ * instance is there for. The beans excluded here are still created at startup:
+ * - the photo controller, and through it the storage service, Hibernate, the blob store, the cache and thumbnails,
+ * - beans with work of their own: journal replay and flushing, and the sweeper of expired upload sessions
+ *   (a lazy bean's @Scheduled methods only start once something uses it).
+ * What remains lazy is what an upload does not need, e.g. the resumable-upload endpoints and parts of Actuator.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("fast-start")
+public class FastStartConfig {
+
+    // Static: read before any other bean is created
+    @Bean
+    static LazyInitializationExcludeFilter eagerStorageBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(PhotoStorageController.class,
+                PhotoJournal.class, JournaledPhotoWriter.class, UploadSessionService.class);
+    }
+}
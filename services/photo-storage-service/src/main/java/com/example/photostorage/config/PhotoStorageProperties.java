@@ -0,0 +1,418 @@
+package com.example.photostorage.config;
+
+import com.example.photostorage.storage.FsyncPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration properties of the Photo Storage Service.
+ * Binds properties prefixed with "photo-storage" from application.yml.
+ */
+@Component // Makes this class a Spring managed component (a bean)
+@ConfigurationProperties(prefix = "photo-storage") // Binds properties starting with "photo-storage."
+@Data // Lombok annotation to automatically generate getters, setters, toString, equals, and hashCode methods
+public class PhotoStorageProperties {
+
+    /**
+     * The largest image accepted in a single request body on POST /api/v1/photos
+     * (application/x-photo-frame; larger photos go through the streaming or session endpoints).
+     */
+    private DataSize maxImageSize = DataSize.ofMegabytes(100);
+
+    /**
+     * How much of each photo is inspected to determine its real format, dimensions, orientation and capture time
+     * before it is stored (see ImageHeaderSniffer). The sniffed format replaces the declared content type.
+     */
+    private DataSize sniffSize = DataSize.ofKilobytes(64);
+
+    /**
+     * The largest image, in pixels (width x height), accepted; bigger ones are rejected before they are stored,
+     * as they would take gigabytes of memory to decode for their thumbnails.
+     */
+    private long maxImagePixels = 200_000_000L;
+
+    /**
+     * Where and how photo bytes are stored.
+     */
+    private BlobStoreSettings blobStore = new BlobStoreSettings();
+
+    /**
+     * How resized copies (thumbnails) of stored photos are generated.
+     */
+    private DerivativeSettings derivatives = new DerivativeSettings();
+
+    /**
+     * How resumable (chunked) upload sessions are handled.
+     */
+    private UploadSettings uploads = new UploadSettings();
+
+    /**
+     * In-process read cache for photo and thumbnail bytes.
+     */
+    private CacheSettings cache = new CacheSettings();
+
+    /**
+     * Optional write-ahead journal that acknowledges single uploads before their row reaches the database.
+     */
+    private JournalSettings journal = new JournalSettings();
+
+    /**
+     * In-memory full-text index over photo filenames and descriptions.
+     */
+    private SearchSettings search = new SearchSettings();
+
+    /**
+     * Perceptual hashes of photos and the in-memory index that finds near-duplicates by them.
+     */
+    private SimilaritySettings similarity = new SimilaritySettings();
+
+    /**
+     * Running totals of stored photos per content type and day, behind GET /api/v1/photos/stats.
+     */
+    private StatsSettings stats = new StatsSettings();
+
+    /**
+     * Bulk export and import of photo archives (ZIP).
+     */
+    private ArchiveSettings archive = new ArchiveSettings();
+
+    /**
+     * Settings for the blob store backend ("photo-storage.blob-store.*").
+     */
+    @Data
+    public static class BlobStoreSettings {
+
+        /**
+         * Which BlobStore implementation to use: "filesystem" (one file per blob) or "packed"
+         * (small blobs appended to shared segment files, larger ones as files; see {@link PackSettings}).
+         */
+        private String type = "filesystem";
+
+        /**
+         * Root directory of the filesystem blob store.
+         * Example: ./data/blobs or /var/lib/photo-storage/blobs (in Docker)
+         */
+        private String rootDirectory = "./data/blobs";
+
+        /**
+         * How writes are made durable before a photo is acknowledged.
+         */
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.DATA;
+
+        /**
+         * Whether to move image bytes of rows created before the blob store existed
+         * out of the legacy 'image_data' column on startup.
+         */
+        private boolean migrateLegacyRows = true;
+
+        /**
+         * Settings of the "packed" blob store.
+         */
+        private PackSettings pack = new PackSettings();
+    }
+
+    /**
+     * Settings for the packed blob store ("photo-storage.blob-store.pack.*").
+     *
+     * Worth it for many small blobs, where a file per blob costs more in inodes, directory entries and
+     * file opens than the bytes themselves. The store keeps an index of all packed blobs in memory,
+     * roughly 200 bytes of heap per blob.
+     */
+    @Data
+    public static class PackSettings {
+
+        /**
+         * Blobs of at most this size are packed; larger ones are stored as files, as with "filesystem".
+         */
+        private DataSize threshold = DataSize.ofKilobytes(256);
+
+        /**
+         * Size from which a new segment file is started.
+         */
+        private DataSize segmentSize = DataSize.ofGigabytes(1);
+
+        /**
+         * How often the in-memory index is written to disk, bounding how much has to be replayed on startup.
+         */
+        private Duration checkpointInterval = Duration.ofMinutes(1);
+
+        /**
+         * How often sealed segments are checked for garbage (deleted or replaced blobs).
+         */
+        private Duration compactionInterval = Duration.ofMinutes(5);
+
+        /**
+         * Share of garbage from which the oldest segments are rewritten, between 0 and 1. Compaction takes the
+         * longest run of sealed segments, oldest first, that has at least this share of garbage in total.
+         * Lower values reclaim disk space sooner at the cost of copying more live blobs.
+         */
+        private double compactionGarbageRatio = 0.5;
+    }
+
+    /**
+     * Settings for the derivative (thumbnail) pipeline ("photo-storage.derivatives.*").
+     */
+    @Data
+    public static class DerivativeSettings {
+
+        /**
+         * Whether derivatives are generated in the background after each upload.
+         * When disabled they are still generated on first request.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Longer-side lengths, in pixels, of the derivatives to generate.
+         */
+        private List<Integer> sizes = List.of(128, 512, 2048);
+
+        /**
+         * Number of worker threads. 0 means one per available processor.
+         */
+        private int workerThreads = 0;
+
+        /**
+         * How many photos may wait for derivative generation before new ones are skipped
+         * (skipped photos get their derivatives on first request instead).
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * How long a thumbnail request waits for on-demand generation.
+         */
+        private Duration onDemandTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Settings for resumable upload sessions ("photo-storage.uploads.*").
+     */
+    @Data
+    public static class UploadSettings {
+
+        /**
+         * Directory where the chunks of open sessions are assembled.
+         * Keep it on the same filesystem as the blob store, so a committed upload is moved, not copied.
+         */
+        private String directory = "./data/uploads";
+
+        /**
+         * Chunk size used when the client does not ask for one.
+         */
+        private DataSize defaultChunkSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Smallest chunk size a client may ask for (bounds the number of chunks per session).
+         */
+        private DataSize minChunkSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Largest chunk size a client may ask for.
+         */
+        private DataSize maxChunkSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Largest photo that may be uploaded through a session.
+         */
+        private DataSize maxTotalSize = DataSize.ofGigabytes(10);
+
+        /**
+         * How long a session lives without receiving a chunk before it is discarded.
+         */
+        private Duration sessionTtl = Duration.ofHours(24);
+
+        /**
+         * How often expired sessions are looked for.
+         */
+        private Duration sweepInterval = Duration.ofMinutes(15);
+    }
+
+    /**
+     * Settings for the blob read cache ("photo-storage.cache.*").
+     */
+    @Data
+    public static class CacheSettings {
+
+        /**
+         * Whether photo and thumbnail bytes are cached in memory.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Total bytes the cache may hold. With off-heap storage, -XX:MaxDirectMemorySize must leave room for this.
+         */
+        private DataSize maxBytes = DataSize.ofMegabytes(256);
+
+        /**
+         * Largest blob that is cached; bigger ones are always streamed from disk.
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(8);
+
+        /**
+         * Whether cached bytes live in direct (off-heap) buffers, keeping them out of the GC's way.
+         */
+        private boolean offHeap = true;
+    }
+
+    /**
+     * Settings for the write-ahead journal ("photo-storage.journal.*"), see JournaledPhotoWriter.
+     */
+    @Data
+    public static class JournalSettings {
+
+        /**
+         * Whether single-photo uploads are acknowledged once journaled (202 Accepted) and written to the database
+         * in the background. When disabled, every upload inserts its row before it is acknowledged (201 Created).
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the journal segments. Keep it on a local disk; it must survive restarts.
+         */
+        private String directory = "./data/journal";
+
+        /**
+         * A new segment is started once the current one reaches this size; flushed segments are deleted.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Most appends made durable by a single fsync (group commit).
+         */
+        private int maxGroupSize = 512;
+
+        /**
+         * How long an upload waits for its journal append before it fails.
+         */
+        private Duration appendTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Most journal entries written to the database in one transaction.
+         */
+        private int flushBatchSize = 500;
+
+        /**
+         * How long the flusher waits for more entries before writing a partial batch.
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * Pause before a failed database flush is retried.
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Whether the service starts even though a journal segment other than the last is damaged, giving up the
+         * acknowledged uploads after the damage (counted in "photo.storage.journal.dropped"). By default startup
+         * fails, so the segment can be restored first.
+         */
+        private boolean ignoreDamagedSegments = false;
+    }
+
+    /**
+     * Settings for photo search ("photo-storage.search.*").
+     */
+    @Data
+    public static class SearchSettings {
+
+        /**
+         * Whether GET /api/v1/photos/search is served. The index takes roughly 140 MB of heap per million photos
+         * with camera-style filenames and short descriptions (see PhotoSearchBenchmark) and is rebuilt from the
+         * database on every start.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Rows read from the database per query while the index is rebuilt on startup.
+         */
+        private int rebuildBatchSize = 10_000;
+    }
+
+    /**
+     * Settings for near-duplicate search ("photo-storage.similarity.*"), see SimilarPhotoIndex.
+     */
+    @Data
+    public static class SimilaritySettings {
+
+        /**
+         * Whether photos are hashed after upload and GET /api/v1/photos/{id}/similar is served. The index takes
+         * roughly 70 MB of heap per million photos (see SimilarPhotoBenchmark) and is rebuilt from the stored
+         * hashes on every start.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Threads that decode and hash new photos. Decoding competes with thumbnail generation for the CPU.
+         */
+        private int workerThreads = 1;
+
+        /**
+         * How many photos may wait to be hashed before new ones are skipped
+         * (skipped photos are hashed by the backfill on the next start, or when they are queried).
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * Rows read from the database per query while the index is rebuilt on startup.
+         */
+        private int rebuildBatchSize = 10_000;
+
+        /**
+         * Whether photos stored without a hash (before hashing existed, or skipped) are hashed in the background
+         * after the rebuild, one at a time.
+         */
+        private boolean backfill = true;
+    }
+
+    /**
+     * Settings for storage statistics ("photo-storage.stats.*"), see StorageStatistics.
+     */
+    @Data
+    public static class StatsSettings {
+
+        /**
+         * Whether the statistics are kept and GET /api/v1/photos/stats is served.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How often the totals are written to the storage_stats_checkpoints table (also on shutdown).
+         * After a crash, only the days since the last checkpoint are recounted from the photos table, so deletes
+         * and imports of older photos within this interval before the crash are lost until a full reconcile.
+         */
+        private Duration checkpointInterval = Duration.ofMinutes(1);
+
+        /**
+         * Whether the next start recounts all photos instead of only the days since the last checkpoint.
+         * Reads the whole photos table once; use it after a crash or after changing rows by hand.
+         */
+        private boolean fullReconcile = false;
+    }
+
+    /**
+     * Settings for bulk export and import ("photo-storage.archive.*"), see PhotoArchiveService.
+     */
+    @Data
+    public static class ArchiveSettings {
+
+        /**
+         * Rows read from the database per query while exporting.
+         */
+        private int exportPageSize = 500;
+
+        /**
+         * Imported photos whose rows are inserted together, in one transaction (sent as JDBC batches).
+         * Their bytes are already in the blob store by then; only the metadata waits for the batch.
+         */
+        private int importBatchSize = 500;
+
+        /**
+         * Largest metadata file (the JSON next to each photo in an archive) read on import.
+         */
+        private DataSize maxMetadataSize = DataSize.ofKilobytes(64);
+    }
+}
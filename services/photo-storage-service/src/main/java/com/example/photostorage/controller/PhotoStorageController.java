@@ -1,13 +1,57 @@
 package com.example.photostorage.controller;
 
+import com.example.common.dto.BatchUploadItemResult;
+import com.example.common.dto.BatchUploadResponse;
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoPage;
 import com.example.common.dto.PhotoUploadRequest; // Import the shared DTO
+import com.example.common.dto.SimilarPhoto;
+import com.example.common.dto.StorageStats;
+import com.example.photostorage.cache.BlobCache;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.search.HammingIndex;
+import com.example.photostorage.service.PhotoArchiveService;
+import com.example.photostorage.service.PhotoArchiveService.ExportResult;
+import com.example.photostorage.service.PhotoArchiveService.ImportResult;
 import com.example.photostorage.service.PhotoStorageService;
+import com.example.photostorage.service.PhotoStorageService.BatchPhoto;
+import com.example.photostorage.service.ThumbnailService;
+import com.example.photostorage.util.BlobResponseWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * REST Controller for handling photo storage requests.
@@ -15,13 +59,23 @@ import org.springframework.web.bind.annotation.RestController;
  */
 @RestController // Marks this class as a REST Controller
 @RequestMapping("/api/v1/photos") // Base path for photo storage operations
+@Slf4j
 public class PhotoStorageController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final PhotoStorageService photoStorageService;
+    private final ThumbnailService thumbnailService;
+    private final BlobCache blobCache;
+    private final PhotoArchiveService photoArchiveService;
 
-    // Spring will automatically inject an instance of PhotoStorageService
-    public PhotoStorageController(PhotoStorageService photoStorageService) {
+    // Spring will automatically inject an instance of PhotoStorageService, ThumbnailService, BlobCache and PhotoArchiveService
+    public PhotoStorageController(PhotoStorageService photoStorageService, ThumbnailService thumbnailService,
+                                  BlobCache blobCache, PhotoArchiveService photoArchiveService) {
         this.photoStorageService = photoStorageService;
+        this.thumbnailService = thumbnailService;
+        this.blobCache = blobCache;
+        this.photoArchiveService = photoArchiveService;
     }
 
     /**
@@ -35,30 +89,480 @@ public class PhotoStorageController {
     public ResponseEntity<String> storePhoto(@RequestBody PhotoUploadRequest request) {
         // --- Basic Input Validation (can be expanded with @Valid and JSR-380 annotations) ---
         if (request.getImageData() == null || request.getImageData().length == 0) {
-            System.err.println("Validation Error: Image data is empty for storage request.");
+            log.warn("Validation Error: Image data is empty for storage request.");
             return ResponseEntity.badRequest().body("Image data cannot be empty.");
         }
         if (request.getFilename() == null || request.getFilename().trim().isEmpty()) {
-            System.err.println("Validation Error: Filename is empty for storage request.");
+            log.warn("Validation Error: Filename is empty for storage request.");
             return ResponseEntity.badRequest().body("Filename cannot be empty.");
         }
-        if (request.getContentType() == null || request.getContentType().trim().isEmpty()) {
-            System.err.println("Validation Error: Content type is empty for storage request.");
-            return ResponseEntity.badRequest().body("Content type cannot be empty.");
-        }
 
-        System.out.println("Received photo storage request for file: " + request.getFilename() +
-                ", Size: " + (request.getImageData().length / 1024) + " KB");
+        log.debug("Received photo storage request for file: {}, Size: {} KB", request.getFilename(), (request.getImageData().length / 1024));
 
         try {
             // Delegate the actual photo saving logic to the PhotoStorageService
             String storedFilename = photoStorageService.storePhoto(request);
-            System.out.println("Photo successfully stored: " + storedFilename);
+            log.debug("Photo successfully stored: {}", storedFilename);
+            if (photoStorageService.isJournaled()) {
+                // Durable in the journal, but not listed until its row has been flushed to the database
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body("Photo accepted: " + storedFilename);
+            }
             return ResponseEntity.status(HttpStatus.CREATED).body("Photo stored successfully: " + storedFilename);
+        } catch (IllegalArgumentException e) {
+            log.warn("Validation Error: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
-            System.err.println("Failed to store photo " + request.getFilename() + ". Error: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Failed to store photo {}. Error: {}", request.getFilename(), e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to store photo: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Handles POST requests that stream a photo as the raw request body.
+     * The metadata is read from the {@link PhotoHeaders} headers (the content type is sniffed from the image),
+     * and the body is passed to the service as an InputStream so it is never buffered in full.
+     *
+     * @param encodedFilename The URL-encoded filename from the X-Photo-Filename header.
+     * @param encodedDescription The optional URL-encoded description from the X-Photo-Description header.
+     * @param servletRequest The raw servlet request, used to read the body as a stream.
+     * @return A ResponseEntity<String> indicating the success or failure of the storage operation.
+     */
+    @PostMapping("/stream")
+    public ResponseEntity<String> storePhotoStream(
+            @RequestHeader(PhotoHeaders.FILENAME) String encodedFilename,
+            @RequestHeader(value = PhotoHeaders.DESCRIPTION, required = false) String encodedDescription,
+            HttpServletRequest servletRequest) {
+        PhotoMetadata metadata = new PhotoMetadata(
+                PhotoHeaders.decode(encodedFilename),
+                servletRequest.getContentType(),
+                PhotoHeaders.decode(encodedDescription)
+        );
+        long contentLength = servletRequest.getContentLengthLong();
+
+        // --- Basic Input Validation (on headers only, before any body byte is read) ---
+        if (metadata.getFilename() == null || metadata.getFilename().trim().isEmpty()) {
+            log.warn("Validation Error: Filename is empty for streaming storage request.");
+            return ResponseEntity.badRequest().body("Filename cannot be empty.");
+        }
+        if (contentLength < 0) {
+            log.warn("Validation Error: Missing Content-Length for streaming storage request.");
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body("A Content-Length header is required.");
+        }
+        if (contentLength == 0) {
+            log.warn("Validation Error: Empty body for streaming storage request.");
+            return ResponseEntity.badRequest().body("Image data cannot be empty.");
+        }
+
+        log.debug("Received streaming storage request for file: {}, Size: {} KB", metadata.getFilename(), contentLength / 1024);
+
+        try (InputStream imageData = servletRequest.getInputStream()) {
+            Photo storedPhoto = photoStorageService.storePhoto(metadata, imageData, contentLength);
+            log.debug("Photo successfully stored: {}", storedPhoto.getFilename());
+            if (storedPhoto.getId() == null) {
+                // Journaled: durable, but it has no ID (and so no Location) until its row has been flushed
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body("Photo accepted: " + storedPhoto.getFilename());
+            }
+            return ResponseEntity.created(URI.create("/api/v1/photos/" + storedPhoto.getId()))
+                    .body("Photo stored successfully: " + storedPhoto.getFilename());
+        } catch (IllegalArgumentException e) {
+            log.warn("Validation Error: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to store photo {}. Error: {}", metadata.getFilename(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to store photo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles POST requests that store many photos in one request and one database transaction.
+     * Expects multipart/form-data with one "files" part per photo (the part filename is used as metadata,
+     * the content type is sniffed from the image) and optionally one "descriptions" part per photo, in the same order.
+     * The servlet container spools the parts to disk, so the photos are not held in memory.
+     *
+     * @param files The photo parts.
+     * @param descriptions Optional descriptions, matched to the files by position; a blank one means none.
+     * @return A BatchUploadResponse with the outcome of every photo, in request order.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BatchUploadResponse> storePhotoBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "descriptions", required = false) List<String> descriptions) {
+        log.debug("Received batch storage request with {} photos.", files.size());
+
+        BatchUploadItemResult[] rejected = new BatchUploadItemResult[files.size()];
+        List<BatchPhoto> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String filename = file.getOriginalFilename();
+            // --- Basic Input Validation, per item ---
+            if (file.isEmpty()) {
+                rejected[i] = BatchUploadItemResult.failed(i, filename, "Image data cannot be empty.");
+            } else if (filename == null || filename.trim().isEmpty()) {
+                rejected[i] = BatchUploadItemResult.failed(i, filename, "Filename cannot be empty.");
+            } else {
+                String description = descriptions != null && i < descriptions.size() ? descriptions.get(i) : null;
+                if (description != null && description.isBlank()) {
+                    description = null; // An empty part keeps the positions of the descriptions that follow
+                }
+                accepted.add(new BatchPhoto(new PhotoMetadata(filename, file.getContentType(), description), file));
+                acceptedIndexes.add(i);
+            }
+        }
+
+        // Results of the stored photos are indexed within 'accepted'; map them back to request positions
+        List<BatchUploadItemResult> stored = photoStorageService.storePhotos(accepted);
+        List<BatchUploadItemResult> items = Arrays.asList(rejected);
+        for (int j = 0; j < stored.size(); j++) {
+            BatchUploadItemResult result = stored.get(j);
+            result.setIndex(acceptedIndexes.get(j));
+            items.set(result.getIndex(), result);
+        }
+
+        BatchUploadResponse response = BatchUploadResponse.of(items);
+        log.debug("Batch storage finished: {} stored, {} failed.", response.getStoredCount(), response.getFailedCount());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Handles GET requests that list stored photos, newest first, e.g.
+     * /api/v1/photos?limit=100&contentType=image/jpeg&from=2024-01-01T00:00:00
+     * or, by the time the photos were taken, /api/v1/photos?capturedFrom=2023-07-01T00:00:00&capturedTo=2023-08-01T00:00:00
+     * Only metadata is returned. Follow nextCursor to get the next page; unlike page numbers,
+     * the cursor keeps deep pages as fast as the first one and is not disturbed by concurrent uploads.
+     *
+     * @param contentType Optional exact content type filter.
+     * @param from Optional lower bound of the upload timestamp (inclusive, ISO date-time).
+     * @param to Optional upper bound of the upload timestamp (exclusive, ISO date-time).
+     * @param capturedFrom Optional lower bound of the EXIF capture time (inclusive, ISO date-time, camera local time).
+     * @param capturedTo Optional upper bound of the EXIF capture time (exclusive).
+     * @param cursor The nextCursor of the previous page; omit for the first page.
+     * @param limit Page size, between 1 and 1000 (default 50).
+     * @return The page of photo metadata, or 400 if a parameter is invalid.
+     */
+    @GetMapping
+    public ResponseEntity<?> listPhotos(
+            @RequestParam(required = false) String contentType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime capturedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime capturedTo,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        try {
+            PhotoPage page = photoStorageService.listPhotos(contentType, from, to, capturedFrom, capturedTo, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET requests that search photos by filename and description, newest first.
+     * Every word of the query must start a word of the photo's filename or description, ignoring case:
+     * "sun beach" finds "Sunset at the beach.jpg". Follow nextCursor to get the next page.
+     *
+     * @param q The search words.
+     * @param cursor The nextCursor of the previous page; omit for the first page.
+     * @param limit Page size, between 1 and 1000 (default 50).
+     * @return The page of photo metadata, 400 if a parameter is invalid, or 503 while the search index is being built.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchPhotos(
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        try {
+            return ResponseEntity.ok(photoStorageService.searchPhotos(q, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET requests for storage statistics: photo count, total size and size histogram over all photos,
+     * per content type, and per upload day, e.g. /api/v1/photos/stats?from=2024-06-01&to=2024-06-30.
+     * Answered from running totals kept in memory, without reading photo rows.
+     *
+     * @param from First upload day to report per day (ISO date); defaults to 29 days before to.
+     * @param to Last upload day to report per day (ISO date); defaults to today.
+     * @return The statistics, 400 if from is after to, or 503 while the totals are being reconciled on startup.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStorageStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate lastDay = to != null ? to : LocalDate.now();
+        LocalDate firstDay = from != null ? from : lastDay.minusDays(29);
+        if (firstDay.isAfter(lastDay)) {
+            return ResponseEntity.badRequest().body("from must not be after to.");
+        }
+        try {
+            StorageStats stats = photoStorageService.getStorageStats(firstDay, lastDay);
+            return ResponseEntity.ok(stats);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET requests for the near-duplicates of a photo: other photos of the same picture, even if re-saved,
+     * resized or re-compressed, e.g. /api/v1/photos/42/similar?maxDistance=8. Closest first.
+     *
+     * @param id The ID of the photo.
+     * @param maxDistance Largest difference between perceptual hashes, in bits, between 0 and 12 (default 8).
+     * Identical-looking photos are usually within 2.
+     * @param limit Maximum number of photos, between 1 and 1000 (default 50).
+     * @return The near-duplicates with their distance, 400 if a parameter is invalid, 404 if the photo does not exist
+     * or cannot be decoded, or 503 while the similarity index is being built.
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<?> findSimilarPhotos(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "8") int maxDistance,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (maxDistance < 0 || maxDistance > HammingIndex.MAX_DISTANCE) {
+            return ResponseEntity.badRequest().body("maxDistance must be between 0 and " + HammingIndex.MAX_DISTANCE + ".");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        Optional<Photo> found = photoStorageService.findPhoto(id);
+        if (found.isEmpty() || found.get().getBlobKey() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Photo " + id + " not found.");
+        }
+        try {
+            Optional<List<SimilarPhoto>> similar = photoStorageService.findSimilarPhotos(found.get(), maxDistance, limit);
+            if (similar.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Photo " + id + " cannot be decoded, so it cannot be compared.");
+            }
+            return ResponseEntity.ok(similar.get());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET requests that export photos as a ZIP archive: the original bytes of each photo, its metadata,
+     * and a manifest.jsonl listing all of them (layout: see {@link PhotoArchiveService}). Oldest first.
+     * The archive is streamed as it is written, so exports of any size run in constant memory.
+     *
+     * If the export fails midway, the response has already started and is cut off; the truncated archive
+     * lacks its central directory, which unzip tools report.
+     *
+     * @param from Only photos uploaded at or after this time (ISO date-time); omit for no lower bound.
+     * @param to Only photos uploaded before this time (ISO date-time); omit for no upper bound.
+     * @param response The response the archive is written to.
+     * @throws IOException if a photo cannot be read or the client goes away.
+     */
+    @GetMapping("/export")
+    public void exportPhotos(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletResponse response) throws IOException {
+        if (from != null && to != null && !from.isBefore(to)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "from must be before to.");
+            return;
+        }
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"photos-export.zip\"");
+        ExportResult result = photoArchiveService.exportPhotos(from, to, response.getOutputStream());
+        log.info("Exported {} photos ({} bytes, {} skipped) uploaded between {} and {}.",
+                result.photos(), result.bytes(), result.skipped(), from, to);
+    }
+
+    /**
+     * Handles POST requests that import a ZIP archive, as written by {@link #exportPhotos}, or a ZIP of plain image
+     * files. The archive is read from the request body as it arrives and the photos are saved in batches, so imports
+     * of any size run in constant memory. Photos get new IDs but keep their upload time.
+     *
+     * @param request The current request; its body is the archive.
+     * @return 200 with the import result (photos imported, photos rejected and why), 400 with the result if the
+     * archive could not be read to its end (the photos before that point are imported), or 500 if photos could not
+     * be saved.
+     */
+    @PostMapping(path = "/import", consumes = {"application/zip", "application/x-zip-compressed", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> importPhotos(HttpServletRequest request) {
+        try (InputStream archive = request.getInputStream()) {
+            ImportResult result = photoArchiveService.importPhotos(archive);
+            log.info("Imported {} photos, {} rejected.", result.imported(), result.failed());
+            return result.error() == null ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("Error importing photos: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Import failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET (and HEAD) requests that download the original bytes of a photo.
+     * The bytes are streamed from the BlobStore without being loaded into memory, and the endpoint supports:
+     * - conditional requests: a strong ETag (the blob key; blobs never change) and Last-Modified
+     *   (the upload timestamp), answering If-None-Match / If-Modified-Since with 304 Not Modified,
+     * - a single HTTP Range (206 Partial Content), honouring If-Range, for progressive viewers and resumed downloads.
+     *   Multi-range requests are answered with the full photo, which HTTP allows.
+     *
+     * @param id The ID of the photo.
+     * @param request The current request.
+     * @param response The response the photo bytes are written to.
+     * @throws IOException if the photo bytes cannot be read or the client goes away.
+     */
+    @GetMapping("/{id}")
+    public void downloadPhoto(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Photo> found = photoStorageService.findPhoto(id);
+        if (found.isEmpty() || found.get().getBlobKey() == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Photo " + id + " not found.");
+            return;
+        }
+        Photo photo = found.get();
+        String etag = "\"" + photo.getBlobKey() + "\"";
+        long lastModified = photo.getUploadTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        // Sets ETag / Last-Modified and answers 304 if the client's copy is still current
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        long length = photo.getSizeBytes();
+        response.setContentType(photo.getContentType());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache"); // Clients revalidate and get a cheap 304
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && rangeApplies(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of(); // Malformed Range headers are ignored, as HTTP requires
+            }
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = Math.min(ranges.get(0).getRangeEnd(length), length - 1);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        if ("HEAD".equals(request.getMethod())) {
+            response.setContentLengthLong(count);
+            return;
+        }
+        writeBlob(photo.getBlobKey(), length, start, count, request, response);
+    }
+
+    /**
+     * Handles GET requests for a resized copy of a photo, e.g. /api/v1/photos/42/thumbnail?size=512.
+     * Derivatives are normally generated in the background right after upload; if one is missing
+     * it is generated on demand. Supports the same ETag / Last-Modified revalidation as the original.
+     *
+     * @param id The ID of the photo.
+     * @param size Longer-side length in pixels; must be one of the configured derivative sizes.
+     * @param request The current request.
+     * @param response The response the thumbnail bytes are written to.
+     * @throws IOException if the thumbnail cannot be read or the client goes away.
+     */
+    @GetMapping("/{id}/thumbnail")
+    public void downloadThumbnail(@PathVariable Long id, @RequestParam int size,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!thumbnailService.isSupportedSize(size)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Unsupported thumbnail size: " + size);
+            return;
+        }
+        Optional<Photo> found = photoStorageService.findPhoto(id);
+        if (found.isEmpty() || found.get().getBlobKey() == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Photo " + id + " not found.");
+            return;
+        }
+        Photo photo = found.get();
+
+        Optional<String> thumbnailKey;
+        try {
+            thumbnailKey = thumbnailService.getOrCreateThumbnail(photo, size);
+        } catch (RejectedExecutionException | TimeoutException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Thumbnail is being generated, retry shortly.");
+            return;
+        }
+        if (thumbnailKey.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "No thumbnail available for photo " + id + ".");
+            return;
+        }
+
+        String etag = "\"" + thumbnailKey.get() + "\"";
+        long lastModified = photo.getUploadTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        response.setContentType(thumbnailService.derivativeContentType(photo.getContentType()));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        long length = photoStorageService.getBlobStore().size(thumbnailKey.get());
+        if ("HEAD".equals(request.getMethod())) {
+            response.setContentLengthLong(length);
+            return;
+        }
+        writeBlob(thumbnailKey.get(), length, 0, length, request, response);
+    }
+
+    /**
+     * Handles DELETE requests for a photo. The stored bytes are removed once no other photo shares them.
+     *
+     * @param id The ID of the photo.
+     * @return 204 No Content if the photo was deleted, 404 Not Found if it did not exist.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deletePhoto(@PathVariable Long id) {
+        return photoStorageService.deletePhoto(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Sends a byte range of a blob from the read cache if it is held there, otherwise straight from the BlobStore
+     * (a miss never waits for the cache to load the blob).
+     */
+    private void writeBlob(String blobKey, long blobSize, long offset, long count,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<ByteBuffer> cached = blobCache.get(blobKey, blobSize, offset == 0 && count == blobSize);
+        if (cached.isPresent()) {
+            BlobResponseWriter.write(cached.get(), offset, count, response);
+        } else {
+            BlobResponseWriter.write(photoStorageService.getBlobStore(), blobKey, offset, count, request, response);
+        }
+    }
+
+    /**
+     * A Range only applies if there is no If-Range header or it still matches the current representation.
+     */
+    private static boolean rangeApplies(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.IF_RANGE, ifRange);
+            return headers.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
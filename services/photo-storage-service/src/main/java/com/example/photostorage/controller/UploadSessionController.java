@@ -0,0 +1,152 @@
+package com.example.photostorage.controller;
+
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.dto.UploadSessionRequest;
+import com.example.common.dto.UploadSessionStatus;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * REST Controller for resumable uploads.
+ * A client opens a session, PUTs numbered chunks (each with its SHA-256 in the X-Chunk-SHA256 header),
+ * asks for the session status after a dropped connection to learn where to continue, and finally commits.
+ * Like the other storage endpoints, this API is primarily consumed by the photo-upload-service.
+ */
+@RestController
+@RequestMapping("/api/v1/photos/uploads") // Base path for upload session operations
+@Slf4j
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+
+    public UploadSessionController(UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    /**
+     * Handles POST requests that open a resumable upload session.
+     *
+     * @param request The photo's metadata and total size, and optionally the desired chunk size.
+     * @return 201 Created with the session status (including its ID and chunk size), or 400 if the request is invalid.
+     */
+    @PostMapping
+    public ResponseEntity<?> openSession(@RequestBody UploadSessionRequest request) {
+        try {
+            UploadSessionStatus status = uploadSessionService.open(request);
+            return ResponseEntity.created(URI.create("/api/v1/photos/uploads/" + status.getSessionId())).body(status);
+        } catch (IllegalArgumentException e) {
+            log.warn("Validation Error: {} (upload session for {})", e.getMessage(), request.getFilename());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to open upload session for {}. Error: {}", request.getFilename(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to open upload session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles GET (and HEAD) requests for the progress of a session.
+     *
+     * @param sessionId The ID of the session.
+     * @return The session status, or 404 if the session does not exist or has expired.
+     */
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionStatus> getSession(@PathVariable String sessionId) {
+        return ResponseEntity.of(uploadSessionService.getStatus(sessionId));
+    }
+
+    /**
+     * Handles PUT requests carrying one chunk as the raw request body.
+     * The chunk is written straight to its place in the session file; sending a chunk again overwrites it.
+     *
+     * @param sessionId The ID of the session.
+     * @param index The chunk index, starting at 0.
+     * @param sha256 Hex SHA-256 of the chunk body.
+     * @param servletRequest The raw servlet request, used to read the body as a stream.
+     * @return The session status after this chunk; 400 if the chunk is malformed or its checksum does not match,
+     * 404 if the session does not exist, 409 if it is already committed, 411 without a Content-Length.
+     */
+    @PutMapping("/{sessionId}/chunks/{index}")
+    public ResponseEntity<?> putChunk(@PathVariable String sessionId, @PathVariable int index,
+                                      @RequestHeader(PhotoHeaders.CHUNK_SHA256) String sha256,
+                                      HttpServletRequest servletRequest) {
+        long contentLength = servletRequest.getContentLengthLong();
+        if (contentLength < 0) {
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body("Content-Length header is required.");
+        }
+
+        try (InputStream chunk = servletRequest.getInputStream()) {
+            Optional<UploadSessionStatus> status = uploadSessionService.writeChunk(sessionId, index, chunk, contentLength, sha256);
+            if (status.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload session " + sessionId + " not found.");
+            }
+            return ResponseEntity.ok(status.get());
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected chunk {} of upload session {}: {}", index, sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            log.warn("Failed to receive chunk {} of upload session {}: {}", index, sessionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to receive chunk, send it again: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles POST requests that commit a session once all chunks have arrived.
+     * Repeating the call for a committed session returns the same photo.
+     *
+     * @param sessionId The ID of the session.
+     * @return 201 Created with the location of the stored photo; 404 if the session does not exist,
+     * 409 if chunks are still missing, 400 if the assembled file is not an acceptable image (the session is discarded).
+     */
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<String> commitSession(@PathVariable String sessionId) {
+        try {
+            Optional<Photo> photo = uploadSessionService.commit(sessionId);
+            if (photo.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload session " + sessionId + " not found.");
+            }
+            log.debug("Photo successfully stored: {}", photo.get().getFilename());
+            return ResponseEntity.created(URI.create("/api/v1/photos/" + photo.get().getId()))
+                    .body("Photo stored successfully: " + photo.get().getFilename());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to commit upload session {}. Error: {}", sessionId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to store photo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles DELETE requests that abandon a session and free its disk space.
+     *
+     * @param sessionId The ID of the session.
+     * @return 204 No Content if the session was discarded, 404 Not Found if it did not exist.
+     */
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(@PathVariable String sessionId) {
+        return uploadSessionService.abort(sessionId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
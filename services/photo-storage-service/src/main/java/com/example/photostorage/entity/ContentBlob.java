@@ -0,0 +1,41 @@
+package com.example.photostorage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A unique piece of image content shared by every photo with the same bytes.
+ * Maps to the 'content_blobs' table. The SHA-256 of the content is both the primary key
+ * (and therefore the unique index used for deduplication) and the key in the BlobStore.
+ */
+@Entity
+@Table(name = "content_blobs")
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+@Builder // Lombok: Provides a builder pattern for creating instances
+public class ContentBlob {
+
+    @Id
+    @Column(name = "content_hash", length = 64) // Lower-case hex SHA-256
+    private String contentHash;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "ref_count", nullable = false) // Number of photos pointing at this content
+    private long refCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,34 @@
+package com.example.photostorage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far the write-ahead journal has been flushed to the database.
+ * Maps to the 'journal_checkpoints' table, one row per journal. The row is updated in the same transaction
+ * as the photo rows of each flushed batch, so after a crash exactly the entries above it are replayed.
+ */
+@Entity
+@Table(name = "journal_checkpoints")
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class JournalCheckpoint {
+
+    /**
+     * Name of the journal of photo uploads; the only journal so far.
+     */
+    public static final String PHOTOS = "photos";
+
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Column(name = "last_sequence", nullable = false) // Highest journal sequence number whose photo row is in the database
+    private long lastSequence;
+}
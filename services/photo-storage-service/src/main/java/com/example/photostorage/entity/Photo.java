@@ -5,7 +5,6 @@ import lombok.AllArgsConstructor;
 import lombok.Builder; // Useful for creating Photo objects in tests/builders
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
 
@@ -14,31 +13,85 @@ import java.time.LocalDateTime;
  * Maps to the 'photos' table.
  */
 @Entity // Marks this class as a JPA entity, mapping to a database table
-@Table(name = "photos") // Specifies the name of the database table (optional, defaults to class name)
+@Table(name = "photos", // Specifies the name of the database table (optional, defaults to class name)
+        indexes = {
+                @Index(name = "idx_photos_blob_key", columnList = "blob_key"), // Finds photos sharing the same content
+                @Index(name = "idx_photos_upload_ts_id", columnList = "upload_timestamp, id"), // Keyset pagination of the listing
+                @Index(name = "idx_photos_content_type_upload_ts_id", columnList = "content_type, upload_timestamp, id"), // Listing filtered by content type
+                @Index(name = "idx_photos_capture_ts_id", columnList = "capture_timestamp, id") // Listing filtered by capture time
+        })
 @Data // Lombok: Generates getters, setters, toString, equals, and hashCode
 @NoArgsConstructor // Lombok: Generates a no-argument constructor
 @AllArgsConstructor // Lombok: Generates a constructor with all fields
 @Builder // Lombok: Provides a builder pattern for creating instances
 public class Photo {
 
+    /**
+     * Allocation size of the photo ID sequence. Hibernate's pooled optimizer reserves this many IDs
+     * per sequence call, and (unlike IDENTITY) knowing IDs before the INSERT lets it send JDBC batches.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Column lengths; PhotoStorageService.checkColumnLengths rejects metadata that would not fit
+    public static final int MAX_FILENAME_LENGTH = 255;
+    public static final int MAX_CONTENT_TYPE_LENGTH = 100;
+    public static final int MAX_DESCRIPTION_LENGTH = 1000;
+
     @Id // Marks this field as the primary key
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Auto-increments the ID using database identity column
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "photos_seq") // IDs come from the photos_seq sequence
+    @SequenceGenerator(name = "photos_seq", sequenceName = "photos_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @Column(nullable = false, length = 255) // Maps to a column, not nullable, max length 255
+    @Column(nullable = false, length = MAX_FILENAME_LENGTH) // Maps to a column, not nullable, max length 255
     private String filename;
 
-    @Column(name = "content_type", nullable = false, length = 100) // Custom column name, not nullable, max length 100
+    @Column(name = "content_type", nullable = false, length = MAX_CONTENT_TYPE_LENGTH) // Custom column name, not nullable, max length 100
     private String contentType;
 
-    @Lob // Specifies that this field holds a large object (BLOB for binary data)
-    @Column(nullable = false, columnDefinition = "BYTEA") // Maps to a column, not nullable. BYTEA is PostgreSQL's type for binary data.
-    private byte[] imageData;
+    // The image bytes themselves live in the BlobStore; the row only keeps the key to find them.
+    // For new photos the key is the SHA-256 of the content (see ContentBlob), shared by duplicates.
+    // Nullable only so the column can be added to tables that still hold legacy 'image_data' rows.
+    @Column(name = "blob_key", length = 200)
+    private String blobKey;
+
+    @Column(name = "size_bytes") // Size of the image in bytes, so it can be reported without opening the blob
+    private Long sizeBytes;
 
-    @Column(length = 1000) // Optional description, max length 1000
+    @Column(length = MAX_DESCRIPTION_LENGTH) // Optional description, max length 1000
     private String description;
 
-    @CreationTimestamp // Hibernate annotation: automatically sets the timestamp when the entity is first persisted
+    // Read from the image header when the photo is stored (see ImageHeaderSniffer); no pixels are decoded.
+    // All four are null for photos stored before they were recorded, and any of them may be null if the
+    // header does not say (e.g. no EXIF).
+    @Column(name = "width") // In pixels, as stored (before applying the orientation)
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    @Column(name = "orientation") // EXIF orientation, 1 (upright) to 8
+    private Integer orientation;
+
+    @Column(name = "capture_timestamp") // EXIF DateTimeOriginal, camera local time
+    private LocalDateTime captureTimestamp;
+
+    // 64-bit dHash of the pixels (see PerceptualHash), set in the background after the photo is stored;
+    // null until then, and for photos that cannot be decoded.
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+
+    // Set by setUploadTimestampIfMissing() when the photo is first persisted, unless it already has one
     @Column(name = "upload_timestamp", nullable = false, updatable = false) // Column name, not nullable, not updatable after creation
     private LocalDateTime uploadTimestamp;
+
+    /**
+     * Stamps new photos with the time they are inserted. Photos restored from an export archive
+     * (see PhotoArchiveService) keep their original upload time, and with it their place in the listing.
+     */
+    @PrePersist
+    void setUploadTimestampIfMissing() {
+        if (uploadTimestamp == null) {
+            uploadTimestamp = LocalDateTime.now();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.example.photostorage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Checkpointed storage statistics (see StorageStatistics): how many photos of one content type were uploaded on
+ * one day with a size in one histogram bucket, and their total size.
+ * Maps to the 'storage_stats_checkpoints' table. Rows hold absolute values, not increments, so writing the same
+ * checkpoint twice is harmless; they are read once on startup and never on a request.
+ */
+@Entity
+@Table(name = "storage_stats_checkpoints")
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+public class StorageStatsCheckpoint {
+
+    @EmbeddedId
+    private Key key;
+
+    @Column(name = "photo_count", nullable = false)
+    private long photoCount;
+
+    @Column(name = "total_bytes", nullable = false)
+    private long totalBytes;
+
+    @Column(name = "checkpointed_at", nullable = false) // When this row was last written
+    private LocalDateTime checkpointedAt;
+
+    /**
+     * @param contentType Content type of the photos, as stored.
+     * @param uploadDay Day of their upload timestamp.
+     * @param sizeBucket Index of their size bucket (see StorageStatistics.SIZE_BUCKET_LIMITS).
+     */
+    @Embeddable
+    public record Key(
+            @Column(name = "content_type", length = 100) String contentType,
+            @Column(name = "upload_day") LocalDate uploadDay,
+            @Column(name = "size_bucket") int sizeBucket) implements Serializable {
+    }
+}
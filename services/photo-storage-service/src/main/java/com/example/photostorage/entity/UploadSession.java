@@ -0,0 +1,101 @@
+package com.example.photostorage.entity;
+
+import jakarta.persistence.*; // Import Jakarta Persistence API annotations
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+
+/**
+ * Server-side state of a resumable upload.
+ * Maps to the 'upload_sessions' table. The bytes themselves are assembled in a preallocated
+ * file (see UploadSessionService); the row records which chunks of it have arrived intact.
+ */
+@Entity
+@Table(name = "upload_sessions",
+        indexes = @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at")) // Used by the expiry sweeper
+@Data // Lombok: Generates getters, setters, toString, equals, and hashCode
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all fields
+@Builder // Lombok: Provides a builder pattern for creating instances
+public class UploadSession {
+
+    /**
+     * Largest number of chunks a session may have; bounds the size of the 'received_chunks' bitmap.
+     */
+    public static final int MAX_CHUNK_COUNT = 65536;
+
+    /**
+     * Lifecycle of a session.
+     */
+    public enum State {
+        OPEN, // Accepting chunks
+        COMMITTED // The photo has been stored; kept until expiry so a repeated commit returns the same photo
+    }
+
+    @Id
+    @Column(length = 36) // Random UUID, hard to guess, used in the session URLs
+    private String id;
+
+    @Column(nullable = false, length = 255)
+    private String filename;
+
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType;
+
+    @Column(length = 1000)
+    private String description;
+
+    @Column(name = "total_size", nullable = false)
+    private long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private long chunkSize;
+
+    @Column(name = "chunk_count", nullable = false)
+    private int chunkCount;
+
+    // One bit per chunk (BitSet.toByteArray), set once the chunk has been written and its checksum verified
+    @Column(name = "received_chunks", length = MAX_CHUNK_COUNT / 8)
+    private byte[] receivedChunks;
+
+    @Column(name = "received_bytes", nullable = false)
+    private long receivedBytes;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private State state;
+
+    @Column(name = "photo_id") // Set once the session is committed
+    private Long photoId;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false) // Pushed forward on every chunk
+    private LocalDateTime expiresAt;
+
+    /**
+     * @return The received-chunks bitmap as a BitSet (a copy; write it back with {@link #setReceived(BitSet)}).
+     */
+    public BitSet received() {
+        return receivedChunks == null ? new BitSet(chunkCount) : BitSet.valueOf(receivedChunks);
+    }
+
+    public void setReceived(BitSet received) {
+        this.receivedChunks = received.toByteArray();
+    }
+
+    /**
+     * @param index A chunk index.
+     * @return The byte length of that chunk; only the last chunk may be shorter than the chunk size.
+     */
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, totalSize - index * chunkSize);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.photostorage.event;
+
+/**
+ * Published after a piece of content has been removed from the BlobStore
+ * because no photo references it any more. Listeners drop anything derived from it.
+ *
+ * @param contentHash The BlobStore key of the deleted content.
+ */
+public record ContentDeletedEvent(String contentHash) {
+}
@@ -0,0 +1,19 @@
+package com.example.photostorage.event;
+
+import com.example.photostorage.entity.Photo;
+
+/**
+ * Published after a photo's metadata row has been deleted.
+ * Its content may still be shared with other photos; see {@link ContentDeletedEvent} for that.
+ *
+ * @param photo The deleted photo, as it was stored.
+ */
+public record PhotoDeletedEvent(Photo photo) {
+
+    /**
+     * @return The ID of the deleted photo.
+     */
+    public Long photoId() {
+        return photo.getId();
+    }
+}
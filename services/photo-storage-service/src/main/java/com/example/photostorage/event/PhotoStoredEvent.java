@@ -0,0 +1,13 @@
+package com.example.photostorage.event;
+
+import com.example.photostorage.entity.Photo;
+
+/**
+ * Published after a photo's bytes and metadata row have been stored.
+ * Listeners use it for work that must not slow down the upload itself,
+ * such as generating derivatives.
+ *
+ * @param photo The stored photo, including its ID and blob key.
+ */
+public record PhotoStoredEvent(Photo photo) {
+}
@@ -0,0 +1,19 @@
+package com.example.photostorage.journal;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.image.ImageInfo;
+
+/**
+ * One acknowledged upload in the write-ahead journal: everything needed to insert its photo row later.
+ * The image bytes themselves are already in the BlobStore under {@code blobKey}.
+ *
+ * @param sequence Position in the journal, assigned on append; strictly increasing, starting at 1.
+ * @param appendedAtMillis Wall-clock time of the append, used to report the flush lag.
+ * @param metadata The photo's filename, content type and description.
+ * @param image What the image header told about the photo, or null (entries written before it was journaled).
+ * @param blobKey The content hash (BlobStore key) of the image.
+ * @param size Size of the image in bytes.
+ */
+public record JournalEntry(long sequence, long appendedAtMillis, PhotoMetadata metadata, ImageInfo image,
+                           String blobKey, long size) {
+}
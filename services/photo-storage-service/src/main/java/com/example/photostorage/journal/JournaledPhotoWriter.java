@@ -0,0 +1,336 @@
+package com.example.photostorage.journal;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.image.ImageInfo;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.JournalCheckpoint;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.metrics.StorageMetrics;
+import com.example.photostorage.repository.JournalCheckpointRepository;
+import com.example.photostorage.repository.PhotoRepository;
+import com.example.photostorage.service.ContentDeduplicationService;
+import com.example.photostorage.service.ContentDeduplicationService.StoredContent;
+import com.example.photostorage.service.PhotoStorageService;
+import com.example.photostorage.storage.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind persistence of single-photo uploads ("photo-storage.journal.enabled=true").
+ *
+ * An upload is acknowledged as soon as its bytes are in the BlobStore and its metadata has been appended to the
+ * {@link PhotoJournal} and fsynced (group commit), so its latency no longer includes a database commit and a
+ * database outage does not fail uploads. A background flusher drains the journal into the database in large
+ * batches: one transaction per batch inserts the photo rows, adds the content references and moves the journal
+ * checkpoint, then PhotoStoredEvents are published as usual. Until then the photo is not listed and has no ID,
+ * which is why the upload endpoints answer 202 Accepted instead of 201 Created in this mode.
+ *
+ * On startup the entries above the checkpoint are read back from the journal and queued again, before the web
+ * server accepts requests. If a batch fails because the database is unreachable it is retried after a pause;
+ * if it violates a constraint its entries are retried one by one, and entries that still fail are dropped
+ * (logged and counted) so a single bad entry cannot stall the journal forever.
+ *
+ * Meters:
+ * - "photo.storage.journal.depth" gauge: entries acknowledged but not yet in the database
+ * - "photo.storage.journal.flush.lag" gauge in seconds: age of the oldest such entry
+ * - "photo.storage.journal.flush.batch.size" summary: entries per flush transaction
+ * - "photo.storage.journal.flush.failures" counter: failed flush attempts
+ * - "photo.storage.journal.dropped" counter: entries given up on (constraint violations, missing content,
+ *   damaged journal segments skipped on startup)
+ * - "photo.storage.journal.group.size" summary: appends per fsync (see PhotoJournal)
+ * - "photo.storage.stage" timer with stage=journal_append (acknowledgement) and stage=db_write, operation=journal
+ */
+@Service
+@ConditionalOnProperty(prefix = "photo-storage.journal", name = "enabled", havingValue = "true")
+@Slf4j
+public class JournaledPhotoWriter {
+
+    private final PhotoJournal journal;
+    private final PhotoStorageProperties.JournalSettings settings;
+    private final ContentDeduplicationService deduplicationService;
+    private final PhotoRepository photoRepository;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageMetrics metrics;
+    private final BlockingDeque<JournalEntry> pending = new LinkedBlockingDeque<>(); // Journaled, not yet flushed, in sequence order
+    private final DistributionSummary flushBatchSizes;
+    private final Counter flushFailures;
+    private final Counter dropped;
+    private final Thread flusher;
+
+    private volatile List<JournalEntry> flushing = List.of(); // The batch the flusher is working on
+    private volatile boolean running = true;
+
+    public JournaledPhotoWriter(PhotoStorageProperties properties, ContentDeduplicationService deduplicationService,
+                                PhotoRepository photoRepository, JournalCheckpointRepository checkpointRepository,
+                                BlobStore blobStore, PlatformTransactionManager transactionManager,
+                                ApplicationEventPublisher eventPublisher, StorageMetrics metrics,
+                                MeterRegistry meterRegistry) {
+        this.settings = properties.getJournal();
+        this.deduplicationService = deduplicationService;
+        this.photoRepository = photoRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.metrics = metrics;
+
+        this.flushBatchSizes = DistributionSummary.builder("photo.storage.journal.flush.batch.size")
+                .description("Journal entries written to the database per transaction")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("photo.storage.journal.flush.failures")
+                .description("Failed attempts to flush a batch of journal entries").register(meterRegistry);
+        this.dropped = Counter.builder("photo.storage.journal.dropped")
+                .description("Journal entries that could not be written to the database and were given up").register(meterRegistry);
+        Gauge.builder("photo.storage.journal.depth", this, JournaledPhotoWriter::getDepth)
+                .description("Acknowledged uploads whose photo row is not in the database yet")
+                .register(meterRegistry);
+        TimeGauge.builder("photo.storage.journal.flush.lag", this, TimeUnit.MILLISECONDS, JournaledPhotoWriter::getFlushLagMillis)
+                .description("Age of the oldest acknowledged upload whose photo row is not in the database yet")
+                .register(meterRegistry);
+
+        // Recovery: queue everything above the checkpoint again, before the first upload can be acknowledged.
+        // New entries are appended to 'pending' by the journal's writer thread only after these.
+        long checkpoint = checkpointRepository.findById(JournalCheckpoint.PHOTOS)
+                .map(JournalCheckpoint::getLastSequence)
+                .orElse(0L);
+        try {
+            this.journal = new PhotoJournal(Paths.get(settings.getDirectory()), checkpoint,
+                    settings.getSegmentSize().toBytes(), settings.getMaxGroupSize(),
+                    pending::addAll, // In sequence order, so the checkpoint only ever moves forward
+                    settings.isIgnoreDamagedSegments(), meterRegistry);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the photo journal in " + settings.getDirectory(), e);
+        }
+        dropped.increment(journal.getLostEntries());
+        List<JournalEntry> recovered = journal.takeRecovered();
+        for (JournalEntry entry : recovered.reversed()) {
+            if (!blobStore.exists(entry.blobKey())) {
+                log.error("Journal entry {} ({}) refers to missing content {}; the photo is lost.",
+                        entry.sequence(), entry.metadata().getFilename(), entry.blobKey());
+                dropped.increment();
+                continue;
+            }
+            deduplicationService.pin(entry.blobKey());
+            pending.addFirst(entry); // Ahead of anything appended since the journal opened
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Replaying {} journaled uploads that were not yet in the database (checkpoint {}).", recovered.size(), checkpoint);
+        }
+
+        this.flusher = new Thread(this::flushLoop, "photo-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("JournaledPhotoWriter initialized: journal in {}, flush batches of up to {}", settings.getDirectory(), settings.getFlushBatchSize());
+    }
+
+    /**
+     * Acknowledges a photo whose content has been pinned with {@link ContentDeduplicationService#storePinned}:
+     * appends it to the journal and waits for the fsync. Its row is written later by the flusher.
+     * If the append fails, the pin is dropped again.
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param image What the image header told about the photo.
+     * @param content The pinned content.
+     * @return The journal entry.
+     * @throws IllegalArgumentException if the metadata would not fit the database columns.
+     * @throws RuntimeException if the journal append fails or times out.
+     */
+    public JournalEntry append(PhotoMetadata metadata, ImageInfo image, StoredContent content) {
+        try {
+            PhotoStorageService.checkColumnLengths(metadata); // Longer values would only fail the flush
+            return journal.append(metadata, image, content.contentHash(), content.size(), settings.getAppendTimeout());
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            deduplicationService.abandonPinned(content.contentHash());
+            if (e instanceof IllegalArgumentException invalid) {
+                throw invalid;
+            }
+            throw new RuntimeException("Failed to journal photo " + metadata.getFilename() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Acknowledged uploads whose photo row is not in the database yet.
+     */
+    public int getDepth() {
+        return pending.size() + flushing.size();
+    }
+
+    /**
+     * @return Milliseconds since the oldest acknowledged upload that is not in the database yet was journaled, or 0.
+     */
+    public long getFlushLagMillis() {
+        List<JournalEntry> batch = flushing;
+        JournalEntry oldest = !batch.isEmpty() ? batch.get(0) : pending.peekFirst();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.appendedAtMillis());
+    }
+
+    private void flushLoop() {
+        while (running) {
+            List<JournalEntry> remaining = nextBatch();
+            flushing = remaining;
+            while (!remaining.isEmpty() && running) {
+                remaining = flushWithFallback(remaining);
+                flushing = remaining;
+                if (!remaining.isEmpty()) {
+                    sleep(settings.getRetryBackoff().toMillis());
+                }
+            }
+            // When shutting down, whatever is left stays in the journal and is replayed on the next start
+        }
+    }
+
+    private List<JournalEntry> nextBatch() {
+        List<JournalEntry> batch = new ArrayList<>(settings.getFlushBatchSize());
+        try {
+            JournalEntry first = pending.pollFirst(settings.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+            // Wait for the batch to fill up, but not longer than one flush interval
+            long deadline = System.nanoTime() + settings.getFlushInterval().toNanos();
+            while (batch.size() < settings.getFlushBatchSize()) {
+                pending.drainTo(batch, settings.getFlushBatchSize() - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= settings.getFlushBatchSize() || remaining <= 0) {
+                    break;
+                }
+                JournalEntry next = pending.pollFirst(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return batch;
+    }
+
+    /**
+     * Flushes the batch in one transaction. On a constraint violation the entries are flushed one by one,
+     * dropping those that fail on their own.
+     *
+     * @return The entries still to be written, in order: empty if the batch is done with (written or dropped),
+     * otherwise the entries to retry after a pause (the database is probably unreachable).
+     */
+    private List<JournalEntry> flushWithFallback(List<JournalEntry> batch) {
+        try {
+            flush(batch);
+            return List.of();
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Journal batch {}..{} violates a constraint; flushing its entries one by one.",
+                    batch.get(0).sequence(), batch.get(batch.size() - 1).sequence());
+        } catch (RuntimeException e) {
+            log.warn("Could not flush {} journal entries to the database (will retry): {}", batch.size(), e.getMessage());
+            return batch;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            JournalEntry entry = batch.get(i);
+            try {
+                flush(List.of(entry));
+            } catch (DataIntegrityViolationException e) {
+                drop(entry, e);
+            } catch (RuntimeException e) {
+                log.warn("Could not flush journal entry {} to the database (will retry): {}", entry.sequence(), e.getMessage());
+                return List.copyOf(batch.subList(i, batch.size()));
+            }
+        }
+        return List.of();
+    }
+
+    private void flush(List<JournalEntry> batch) {
+        List<StoredContent> contents = batch.stream()
+                .map(entry -> new StoredContent(entry.blobKey(), entry.size(), false))
+                .toList();
+        List<String> hashes = batch.stream().map(JournalEntry::blobKey).toList();
+        long lastSequence = batch.get(batch.size() - 1).sequence();
+
+        List<Photo> saved = new ArrayList<>(batch.size());
+        Timer.Sample dbWrite = metrics.startStage();
+        try {
+            deduplicationService.withLocks(hashes, () -> transactionTemplate.executeWithoutResult(status -> {
+                deduplicationService.registerPinned(contents);
+                // uploadTimestamp is set on insert (Photo's @PrePersist), i.e. when the entry is flushed
+                saved.addAll(photoRepository.saveAll(batch.stream()
+                        .map(entry -> PhotoStorageService.toPhoto(entry.metadata(), entry.image(), entry.blobKey(), entry.size()))
+                        .toList()));
+                checkpointRepository.save(new JournalCheckpoint(JournalCheckpoint.PHOTOS, lastSequence));
+            }));
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            metrics.recordError(StorageMetrics.STAGE_DB_WRITE, e);
+            throw e;
+        }
+        metrics.stopStage(dbWrite, StorageMetrics.STAGE_DB_WRITE, StorageMetrics.OPERATION_JOURNAL);
+        flushBatchSizes.record(batch.size());
+
+        deduplicationService.unpin(hashes);
+        journal.deleteFlushedSegments(lastSequence);
+        log.debug("Flushed journal entries up to {} ({} photos) to the database.", lastSequence, saved.size());
+        saved.forEach(photo -> eventPublisher.publishEvent(new PhotoStoredEvent(photo)));
+    }
+
+    /**
+     * Gives up on an entry that cannot be written: moves the checkpoint past it and releases its content.
+     */
+    private void drop(JournalEntry entry, RuntimeException cause) {
+        log.error("Dropping journal entry {} ({}): it cannot be written to the database: {}",
+                entry.sequence(), entry.metadata().getFilename(), cause.getMessage());
+        dropped.increment();
+        try {
+            checkpointRepository.save(new JournalCheckpoint(JournalCheckpoint.PHOTOS, entry.sequence()));
+        } catch (RuntimeException e) {
+            log.warn("Could not move the journal checkpoint past dropped entry {}; it will be dropped again after a restart.", entry.sequence());
+        }
+        deduplicationService.abandonPinned(entry.blobKey());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the flusher after the batch it is working on and closes the journal.
+     * Entries that have not been flushed stay in the journal and are replayed on the next start.
+     */
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        try {
+            flusher.join(settings.getFlushInterval().toMillis() + TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        log.info("JournaledPhotoWriter stopped with {} uploads still to be flushed on the next start.", getDepth());
+    }
+}
@@ -0,0 +1,530 @@
+package com.example.photostorage.journal;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.image.ImageFormat;
+import com.example.common.image.ImageInfo;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, fsynced log of acknowledged uploads, split into segment files
+ * ({@code segment-<first sequence>.journal}) that are deleted once everything in them has been flushed.
+ *
+ * Appends are made durable with group commit: callers hand their entry to a single writer thread and wait;
+ * the writer takes every entry that is waiting (up to maxGroupSize), writes them with one write and makes them
+ * durable with one fsync, then releases all their callers. Under load, one fsync therefore covers many uploads,
+ * and the fsync rate, not the upload rate, is bounded by the disk.
+ *
+ * Each record is {@code int32 length, int32 CRC-32C, payload}. On startup every segment is read back;
+ * a record that is cut short or fails its checksum at the end of the last segment is the remains of an append
+ * that was never acknowledged (the process died before its fsync returned), so the segment is truncated there.
+ * The same damage in an earlier segment means acknowledged uploads are unreadable: opening the journal fails,
+ * unless damaged segments are explicitly ignored, in which case the entries lost are counted
+ * (see {@link #getLostEntries()}).
+ */
+@Slf4j
+public class PhotoJournal implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024; // Metadata only; anything bigger is corruption
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxGroupSize;
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>(); // First sequence -> file
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final List<JournalEntry> recovered = new ArrayList<>();
+    private final DistributionSummary groupSizes;
+    private final Consumer<List<JournalEntry>> onDurable;
+    private final boolean ignoreDamagedSegments;
+    private final Thread writer;
+    private long lostEntries; // Above the checkpoint, in damaged segments skipped on startup
+
+    // Written by the writer thread only, once the constructor has returned
+    private FileChannel channel;
+    private long lastSequence;
+
+    private volatile boolean running = true;
+    private volatile IOException failure; // Set if a failed append could not be rolled back; the journal then refuses appends
+
+    /**
+     * Opens the journal in the given directory, reading back every entry above the checkpoint.
+     *
+     * @param directory Directory of the segment files. Created if missing.
+     * @param checkpoint Highest sequence number already flushed to the database; lower entries are not returned
+     * by {@link #takeRecovered()}.
+     * @param segmentSize A new segment is started once the current one reaches this size.
+     * @param maxGroupSize Most appends made durable by a single fsync.
+     * @param onDurable Receives every group of new entries once it is durable, on the writer thread, in sequence
+     * order and before the appending callers are released; this is how the flusher learns about new entries.
+     * @param ignoreDamagedSegments Whether to open the journal even though a segment other than the last is
+     * damaged, giving up the entries after the damage.
+     * @param meterRegistry Registry for the "photo.storage.journal.group.size" summary.
+     * @throws IOException if the directory or a segment cannot be read or created, or a segment other than the
+     * last is damaged and damaged segments are not ignored.
+     */
+    public PhotoJournal(Path directory, long checkpoint, long segmentSize, int maxGroupSize,
+                        Consumer<List<JournalEntry>> onDurable, boolean ignoreDamagedSegments,
+                        MeterRegistry meterRegistry) throws IOException {
+        this.directory = directory.toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.maxGroupSize = maxGroupSize;
+        this.onDurable = onDurable;
+        this.ignoreDamagedSegments = ignoreDamagedSegments;
+        this.groupSizes = DistributionSummary.builder("photo.storage.journal.group.size")
+                .description("Journal appends made durable by one fsync (group commit)")
+                .register(meterRegistry);
+        Files.createDirectories(this.directory);
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> segments.put(firstSequenceOf(file), file));
+        }
+        this.lastSequence = checkpoint;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            recoverSegment(segment.getValue(), segments.higherKey(segment.getKey()), checkpoint);
+        }
+
+        Path active = segments.isEmpty() || Files.size(segments.lastEntry().getValue()) >= segmentSize
+                ? createSegment(lastSequence + 1)
+                : segments.lastEntry().getValue();
+        this.channel = FileChannel.open(active, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+
+        log.info("PhotoJournal opened at {}: {} segment(s), {} entries to replay, last sequence {}",
+                this.directory, segments.size(), recovered.size(), lastSequence);
+        this.writer = new Thread(this::writeLoop, "photo-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return Number of entries above the checkpoint that were in damaged segments and could not be read back
+     * (only ever non-zero if damaged segments are ignored).
+     */
+    public long getLostEntries() {
+        return lostEntries;
+    }
+
+    /**
+     * @return The entries above the checkpoint found on startup, in sequence order; empty on later calls.
+     */
+    public synchronized List<JournalEntry> takeRecovered() {
+        List<JournalEntry> entries = List.copyOf(recovered);
+        recovered.clear();
+        return entries;
+    }
+
+    /**
+     * Appends an entry and waits until it is durable.
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param blobKey The content hash of the image, already stored in the BlobStore.
+     * @param size Size of the image in bytes.
+     * @param timeout How long to wait for the append.
+     * @return The entry as written, with its sequence number.
+     * @throws IOException if the entry cannot be written, or the journal is closed or broken.
+     * @throws TimeoutException if the entry was not written in time; it is then guaranteed not to be written.
+     */
+    public JournalEntry append(PhotoMetadata metadata, ImageInfo image, String blobKey, long size, Duration timeout)
+            throws IOException, TimeoutException {
+        if (!running) {
+            throw new IOException("The journal is closed.");
+        }
+        if (failure != null) {
+            throw new IOException("The journal is unusable after a failed write.", failure);
+        }
+        PendingAppend pending = new PendingAppend(new JournalEntry(0, System.currentTimeMillis(), metadata, image, blobKey, size));
+        queue.add(pending);
+        try {
+            return pending.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (pending.claimed.compareAndSet(false, true)) {
+                throw e; // The writer had not picked it up; it never will
+            }
+            return awaitClaimed(pending); // Already being written; the outcome is only a write and fsync away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.claimed.compareAndSet(false, true)) {
+                throw new IOException("Interrupted while waiting for the journal.", e);
+            }
+            return awaitClaimed(pending);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Deletes the segments whose entries have all been flushed. The segment being written is never deleted.
+     *
+     * @param flushedSequence The checkpoint: every entry up to this sequence number is in the database.
+     */
+    public void deleteFlushedSegments(long flushedSequence) {
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            Long next = segments.higherKey(segment.getKey());
+            if (next == null || next - 1 > flushedSequence) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(segment.getValue());
+                segments.remove(segment.getKey());
+                log.debug("Deleted flushed journal segment {}", segment.getValue().getFileName());
+            } catch (IOException e) {
+                log.warn("Could not delete flushed journal segment {}: {}", segment.getValue(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting appends, writes those already waiting and closes the current segment.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close journal segment: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            PendingAppend first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (first == null) {
+                if (!running) {
+                    break;
+                }
+                continue;
+            }
+            group.add(first);
+            queue.drainTo(group, maxGroupSize - 1);
+            writeGroup(group);
+            group.clear();
+        }
+        PendingAppend left;
+        while ((left = queue.poll()) != null) {
+            if (left.claimed.compareAndSet(false, true)) {
+                left.result.completeExceptionally(new IOException("The journal is closed."));
+            }
+        }
+    }
+
+    private void writeGroup(List<PendingAppend> group) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        List<PendingAppend> written = new ArrayList<>(group.size());
+        List<JournalEntry> entries = new ArrayList<>(group.size());
+        long sequence = lastSequence;
+        for (PendingAppend pending : group) {
+            if (!pending.claimed.compareAndSet(false, true)) {
+                continue; // The caller gave up waiting
+            }
+            if (failure != null) {
+                pending.result.completeExceptionally(new IOException("The journal is unusable after a failed write.", failure));
+                continue;
+            }
+            JournalEntry draft = pending.draft;
+            JournalEntry entry = new JournalEntry(sequence + 1, draft.appendedAtMillis(), draft.metadata(), draft.image(), draft.blobKey(), draft.size());
+            try {
+                writeRecord(records, encode(entry));
+            } catch (IOException e) {
+                pending.result.completeExceptionally(e); // E.g. a string too long to encode; only this entry fails
+                continue;
+            }
+            sequence++;
+            written.add(pending);
+            entries.add(entry);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+
+        long start = -1;
+        try {
+            start = channel.position();
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Journal append of {} entries failed: {}", written.size(), e.getMessage());
+            rollBack(start, e);
+            written.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        lastSequence = sequence;
+        groupSizes.record(written.size());
+        onDurable.accept(entries);
+        for (int i = 0; i < written.size(); i++) {
+            written.get(i).result.complete(entries.get(i));
+        }
+
+        try {
+            if (channel.size() >= segmentSize) {
+                channel.close();
+                channel = FileChannel.open(createSegment(lastSequence + 1), StandardOpenOption.WRITE);
+            }
+        } catch (IOException e) {
+            log.error("Could not start a new journal segment: {}", e.getMessage());
+            failure = e;
+        }
+    }
+
+    /**
+     * Cuts a partially written group off the segment, so later appends do not end up behind a torn record
+     * (recovery stops reading a segment at the first bad record).
+     */
+    private void rollBack(long start, IOException cause) {
+        try {
+            if (start < 0) {
+                throw cause;
+            }
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            log.error("Could not roll back the failed journal append; refusing further appends.", e);
+            failure = e;
+        }
+    }
+
+    /**
+     * Reads a segment back into {@link #recovered}.
+     *
+     * @param nextSegment First sequence of the following segment, or null if this is the last one.
+     */
+    private void recoverSegment(Path file, Long nextSegment, long checkpoint) throws IOException {
+        long validLength = 0;
+        long segmentLastSequence = firstSequenceOf(file) - 1;
+        String problem = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // Clean end of the segment
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        problem = "invalid record length " + length;
+                        break;
+                    }
+                    byte[] payload = in.readNBytes(length);
+                    if (payload.length < length) {
+                        problem = "record cut short";
+                        break;
+                    }
+                    if (crc(payload) != checksum) {
+                        problem = "checksum mismatch";
+                        break;
+                    }
+                    JournalEntry entry = decode(payload);
+                    if (entry.sequence() > checkpoint) {
+                        recovered.add(entry);
+                    }
+                    lastSequence = Math.max(lastSequence, entry.sequence());
+                    segmentLastSequence = entry.sequence();
+                    validLength += RECORD_HEADER_SIZE + length;
+                } catch (EOFException e) {
+                    problem = "record header cut short";
+                    break;
+                }
+            }
+        }
+        if (problem == null) {
+            return;
+        }
+        if (nextSegment == null) {
+            // The tail of an append that never completed its fsync, so it was never acknowledged
+            log.warn("Truncating journal segment {} at byte {}: {}", file.getFileName(), validLength, problem);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+                truncate.force(true);
+            }
+            return;
+        }
+        // Everything up to the next segment's first sequence was acknowledged; what is not yet flushed is lost
+        long lost = Math.max(0, nextSegment - 1 - Math.max(segmentLastSequence, checkpoint));
+        if (!ignoreDamagedSegments) {
+            throw new IOException(String.format("Journal segment %s is damaged at byte %d (%s): %d acknowledged "
+                            + "upload(s) after that point cannot be read back. Restore the segment, or set "
+                            + "photo-storage.journal.ignore-damaged-segments=true to start without them.",
+                    file.getFileName(), validLength, problem, lost));
+        }
+        log.error("Journal segment {} is damaged at byte {} ({}); {} acknowledged upload(s) after that point are lost.",
+                file.getFileName(), validLength, problem, lost);
+        lostEntries += lost;
+    }
+
+    private Path createSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        Files.createFile(file);
+        // Make the new directory entry durable before anything acknowledged is written into the file
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync journal directory (not supported on this platform?): {}", e.getMessage());
+        }
+        segments.put(firstSequence, file);
+        return file;
+    }
+
+    private static long firstSequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void writeRecord(ByteArrayOutputStream records, byte[] payload) {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(payload.length).putInt(crc(payload));
+        records.writeBytes(header.array());
+        records.writeBytes(payload);
+    }
+
+    private static byte[] encode(JournalEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(entry.sequence());
+            out.writeLong(entry.appendedAtMillis());
+            writeNullableString(out, entry.metadata().getFilename());
+            writeNullableString(out, entry.metadata().getContentType());
+            writeNullableString(out, entry.metadata().getDescription());
+            out.writeUTF(entry.blobKey());
+            out.writeLong(entry.size());
+            ImageInfo image = entry.image();
+            if (image != null) { // Appended last, so entries written without it still decode
+                out.writeUTF(image.format().name());
+                out.writeInt(image.width() != null ? image.width() : -1);
+                out.writeInt(image.height() != null ? image.height() : -1);
+                out.writeInt(image.orientation() != null ? image.orientation() : -1);
+                writeNullableString(out, image.captureTime() != null ? image.captureTime().toString() : null);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JournalEntry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long sequence = in.readLong();
+        long appendedAt = in.readLong();
+        PhotoMetadata metadata = new PhotoMetadata(readNullableString(in), readNullableString(in), readNullableString(in));
+        String blobKey = in.readUTF();
+        long size = in.readLong();
+        ImageInfo image = null;
+        if (in.available() > 0) {
+            ImageFormat format = ImageFormat.valueOf(in.readUTF());
+            Integer width = nullIfNegative(in.readInt());
+            Integer height = nullIfNegative(in.readInt());
+            Integer orientation = nullIfNegative(in.readInt());
+            String captureTime = readNullableString(in);
+            image = new ImageInfo(format, width, height, orientation, captureTime != null ? LocalDateTime.parse(captureTime) : null);
+        }
+        return new JournalEntry(sequence, appendedAt, metadata, image, blobKey, size);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Integer nullIfNegative(int value) {
+        return value < 0 ? null : value;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static JournalEntry awaitClaimed(PendingAppend pending) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw unwrap(e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        return e.getCause() instanceof IOException io ? io : new IOException("Journal append failed.", e.getCause());
+    }
+
+    /**
+     * An entry waiting for the writer. Whoever flips {@code claimed} first decides its fate:
+     * the writer (it will be written) or a caller that stopped waiting (it will not).
+     */
+    private static final class PendingAppend {
+        private final JournalEntry draft;
+        private final CompletableFuture<JournalEntry> result = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private PendingAppend(JournalEntry draft) {
+            this.draft = draft;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.photostorage.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-stage latency and throughput meters of the write path, so a slow upload can be pinned on one stage
+ * (JSON decode, header sniffing, blob write, database write, chunk write, journal append) instead of only showing up in http.server.requests.
+ *
+ * Meters (all exported on /actuator/prometheus):
+ * - "photo.storage.stage" timer, tags stage=decode|sniff|blob_write|db_write|chunk_write|journal_append
+ *   and operation=single|batch|session|journal (journal: rows written by the journal flusher, one sample per batch)
+ * - "photo.storage.payload.size" summary in bytes, tag operation
+ * - "photo.storage.errors" counter, tags stage and cause (the exception's simple class name)
+ * - "photo.storage.in.flight" long task timer: writes in progress right now and how long they have been running
+ * The write-ahead journal adds its own "photo.storage.journal.*" meters, see JournaledPhotoWriter.
+ *
+ * Histogram buckets for the timers and the summary are switched on in application.yml
+ * (management.metrics.distribution.percentiles-histogram), not here, so they can be turned off per deployment.
+ */
+@Component
+public class StorageMetrics {
+
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_SNIFF = "sniff";
+    public static final String STAGE_BLOB_WRITE = "blob_write";
+    public static final String STAGE_DB_WRITE = "db_write";
+    public static final String STAGE_CHUNK_WRITE = "chunk_write";
+    public static final String STAGE_JOURNAL_APPEND = "journal_append";
+
+    public static final String OPERATION_SINGLE = "single";
+    public static final String OPERATION_BATCH = "batch";
+    public static final String OPERATION_SESSION = "session";
+    public static final String OPERATION_JOURNAL = "journal";
+    public static final String OPERATION_IMPORT = "import";
+
+    private final MeterRegistry registry;
+    private final LongTaskTimer inFlight;
+
+    public StorageMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.inFlight = LongTaskTimer.builder("photo.storage.in.flight")
+                .description("Photo writes in progress")
+                .register(registry);
+    }
+
+    /**
+     * @return A running sample, to be passed to {@link #stopStage} when the stage is done.
+     */
+    public Timer.Sample startStage() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Records the time since {@code sample} was started as one execution of the given stage.
+     */
+    public void stopStage(Timer.Sample sample, String stage, String operation) {
+        sample.stop(Timer.builder("photo.storage.stage")
+                .description("Time spent in one stage of storing a photo")
+                .tag("stage", stage)
+                .tag("operation", operation)
+                .register(registry));
+    }
+
+    /**
+     * Marks the start of a photo write; the returned sample must be stopped when the write is over, however it ended.
+     */
+    public LongTaskTimer.Sample startWrite() {
+        return inFlight.start();
+    }
+
+    public void recordPayloadSize(String operation, long bytes) {
+        DistributionSummary.builder("photo.storage.payload.size")
+                .description("Size of stored photos")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void recordError(String stage, Throwable error) {
+        Counter.builder("photo.storage.errors")
+                .description("Failed stages of storing a photo, by cause")
+                .tag("stage", stage)
+                .tag("cause", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+}
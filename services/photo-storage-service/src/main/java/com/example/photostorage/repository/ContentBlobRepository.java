@@ -0,0 +1,58 @@
+package com.example.photostorage.repository;
+
+import com.example.photostorage.entity.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Spring Data JPA Repository for the ContentBlob entity.
+ * The reference count is only ever changed with single UPDATE statements,
+ * so a duplicate upload costs one primary-key lookup and never loads the entity.
+ */
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    /**
+     * Adds a reference to existing content.
+     *
+     * @return 1 if the content exists (a deduplication hit), 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + 1 where b.contentHash = :hash")
+    int incrementRefCount(@Param("hash") String contentHash);
+
+    /**
+     * Adds several references to existing content at once (a journal flush storing the same content repeatedly).
+     *
+     * @return 1 if the content exists, 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + :count where b.contentHash = :hash")
+    int addRefCount(@Param("hash") String contentHash, @Param("count") long count);
+
+    /**
+     * Removes a reference to existing content.
+     *
+     * @return 1 if the content exists, 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount - 1 where b.contentHash = :hash and b.refCount > 0")
+    int decrementRefCount(@Param("hash") String contentHash);
+
+    /**
+     * Deletes the content row once nothing references it any more.
+     *
+     * @return 1 if the row was deleted, 0 if it is still referenced or does not exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from ContentBlob b where b.contentHash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String contentHash);
+}
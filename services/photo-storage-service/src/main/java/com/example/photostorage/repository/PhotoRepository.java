@@ -2,14 +2,19 @@ package com.example.photostorage.repository;
 
 import com.example.photostorage.entity.Photo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Spring Data JPA Repository for the Photo entity.
  * Provides standard CRUD operations and allows for custom query methods.
+ * Listing queries live in {@link PhotoRepositoryCustom}; avoid findAll(), which loads every row.
  */
 @Repository // Marks this interface as a Spring Data JPA repository component
-public interface PhotoRepository extends JpaRepository<Photo, Long> {
+public interface PhotoRepository extends JpaRepository<Photo, Long>, PhotoRepositoryCustom {
     // JpaRepository<Entity, ID_Type>
     // - 'Photo' is the entity class this repository manages.
     // - 'Long' is the data type of the primary key (id) of the Photo entity.
@@ -24,4 +29,16 @@ public interface PhotoRepository extends JpaRepository<Photo, Long> {
     // You can define custom query methods here by following Spring Data JPA's naming conventions,
     // e.g., Photo findByFilename(String filename);
     // Or by using @Query annotation for more complex queries.
-}
\ No newline at end of file
+
+    /**
+     * Deletes a photo row with a single DELETE statement. Unlike delete(Photo), which silently does nothing
+     * when the row is already gone, the result tells concurrent deletes of the same photo apart:
+     * only one of them sees 1 and may release the photo's content.
+     *
+     * @return 1 if the row was deleted, 0 if it did not exist (any more).
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Photo p where p.id = :id")
+    int deleteRow(@Param("id") Long id);
+}
@@ -0,0 +1,61 @@
+package com.example.photostorage.repository;
+
+import com.example.common.dto.PhotoSummary;
+import com.example.photostorage.entity.Photo;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Custom queries of the PhotoRepository that Spring Data cannot derive from method names
+ * (implemented in PhotoRepositoryImpl).
+ */
+public interface PhotoRepositoryCustom {
+
+    /**
+     * Lists photo metadata newest first, using keyset (seek) pagination on (upload_timestamp, id):
+     * instead of skipping an OFFSET, the query starts right after the last photo of the previous page,
+     * so it reads only the rows it returns and deep pages are as fast as the first one.
+     * Only the metadata columns are selected; no entity is loaded or tracked by the persistence context.
+     *
+     * @param contentType Only photos of this content type, or null for all.
+     * @param from Only photos uploaded at or after this time, or null.
+     * @param to Only photos uploaded before this time, or null.
+     * @param capturedFrom Only photos captured (EXIF) at or after this time, or null.
+     * @param capturedTo Only photos captured before this time, or null. Either bound leaves out photos without a capture time.
+     * @param afterTimestamp Upload timestamp of the last photo of the previous page, or null for the first page.
+     * @param afterId ID of the last photo of the previous page, or null for the first page.
+     * @param limit Maximum number of photos to return.
+     * @return The matching photos, ordered by upload timestamp and then ID, both descending.
+     */
+    List<PhotoSummary> findSummaries(String contentType, LocalDateTime from, LocalDateTime to,
+                                     LocalDateTime capturedFrom, LocalDateTime capturedTo,
+                                     LocalDateTime afterTimestamp, Long afterId, int limit);
+
+    /**
+     * Loads the metadata of the given photos in one query, e.g. for the hits of a search.
+     *
+     * @param ids The photo IDs; at most a page worth, as they end up in an IN list.
+     * @return The summaries of those photos that exist, in no particular order.
+     */
+    List<PhotoSummary> findSummariesByIds(Collection<Long> ids);
+
+    /**
+     * Streams every photo uploaded in the given range, oldest first, e.g. for an export of the whole collection.
+     * Rows are fetched lazily, one keyset page on (upload_timestamp, id) at a time, each page in its own short query:
+     * memory stays at one page however many photos there are, and no connection or transaction is held while the
+     * caller works through a page (an export may take hours). Photos uploaded into the range while it is being
+     * streamed are included if they sort after the current position.
+     *
+     * Call it outside a transaction (and with open-in-view off, as configured), so the loaded entities are detached
+     * and collected page by page instead of piling up in a persistence context.
+     *
+     * @param from Only photos uploaded at or after this time, or null.
+     * @param to Only photos uploaded before this time, or null.
+     * @param pageSize Rows fetched per query.
+     * @return The photos, ordered by upload timestamp and then ID, both ascending.
+     */
+    Stream<Photo> streamPhotos(LocalDateTime from, LocalDateTime to, int pageSize);
+}
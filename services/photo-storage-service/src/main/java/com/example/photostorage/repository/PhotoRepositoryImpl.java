@@ -0,0 +1,173 @@
+package com.example.photostorage.repository;
+
+import com.example.common.dto.PhotoSummary;
+import com.example.photostorage.entity.Photo;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CompoundSelection;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implementation of {@link PhotoRepositoryCustom}, picked up by Spring Data through the "Impl" suffix.
+ * The query is built with the Criteria API so that only the filters actually given end up in the SQL,
+ * which keeps it matching the (content_type, upload_timestamp, id) and (upload_timestamp, id) indexes.
+ * A capture-time range can use the (capture_timestamp, id) index when it is more selective than the upload range.
+ */
+public class PhotoRepositoryImpl implements PhotoRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<PhotoSummary> findSummaries(String contentType, LocalDateTime from, LocalDateTime to,
+                                            LocalDateTime capturedFrom, LocalDateTime capturedTo,
+                                            LocalDateTime afterTimestamp, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PhotoSummary> query = cb.createQuery(PhotoSummary.class);
+        Root<Photo> photo = query.from(Photo.class);
+        Path<LocalDateTime> uploadTimestamp = photo.get("uploadTimestamp");
+        Path<Long> id = photo.get("id");
+        Path<LocalDateTime> captureTimestamp = photo.get("captureTimestamp");
+
+        // Select only metadata columns, straight into the DTO
+        query.select(summary(cb, photo));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (contentType != null) {
+            predicates.add(cb.equal(photo.get("contentType"), contentType));
+        }
+        if (from != null) {
+            predicates.add(cb.greaterThanOrEqualTo(uploadTimestamp, from));
+        }
+        if (to != null) {
+            predicates.add(cb.lessThan(uploadTimestamp, to));
+        }
+        if (capturedFrom != null) {
+            predicates.add(cb.greaterThanOrEqualTo(captureTimestamp, capturedFrom));
+        }
+        if (capturedTo != null) {
+            predicates.add(cb.lessThan(captureTimestamp, capturedTo));
+        }
+        if (afterTimestamp != null && afterId != null) {
+            // (upload_timestamp, id) < (afterTimestamp, afterId), spelled out because JPQL has no row-value comparison.
+            // The redundant "upload_timestamp <= afterTimestamp" gives the database a plain range to seek the index with.
+            predicates.add(cb.lessThanOrEqualTo(uploadTimestamp, afterTimestamp));
+            predicates.add(cb.or(
+                    cb.lessThan(uploadTimestamp, afterTimestamp),
+                    cb.lessThan(id, afterId)));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.desc(uploadTimestamp), cb.desc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<PhotoSummary> findSummariesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PhotoSummary> query = cb.createQuery(PhotoSummary.class);
+        Root<Photo> photo = query.from(Photo.class);
+        query.select(summary(cb, photo));
+        query.where(photo.get("id").in(ids));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public Stream<Photo> streamPhotos(LocalDateTime from, LocalDateTime to, int pageSize) {
+        Iterator<Photo> photos = new Iterator<>() {
+            private List<Photo> page = List.of();
+            private int position;
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (lastPage) {
+                    return false;
+                }
+                Photo previous = page.isEmpty() ? null : page.get(page.size() - 1);
+                page = findPageAfter(from, to, previous, pageSize);
+                position = 0;
+                lastPage = page.size() < pageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Photo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(photos, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return The next page of {@link #streamPhotos}: up to pageSize photos in the range that sort after previous.
+     */
+    private List<Photo> findPageAfter(LocalDateTime from, LocalDateTime to, Photo previous, int pageSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Photo> query = cb.createQuery(Photo.class);
+        Root<Photo> photo = query.from(Photo.class);
+        Path<LocalDateTime> uploadTimestamp = photo.get("uploadTimestamp");
+        Path<Long> id = photo.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (from != null) {
+            predicates.add(cb.greaterThanOrEqualTo(uploadTimestamp, from));
+        }
+        if (to != null) {
+            predicates.add(cb.lessThan(uploadTimestamp, to));
+        }
+        if (previous != null) {
+            // (upload_timestamp, id) > previous, the ascending counterpart of the seek in findSummaries
+            predicates.add(cb.greaterThanOrEqualTo(uploadTimestamp, previous.getUploadTimestamp()));
+            predicates.add(cb.or(
+                    cb.greaterThan(uploadTimestamp, previous.getUploadTimestamp()),
+                    cb.greaterThan(id, previous.getId())));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.asc(uploadTimestamp), cb.asc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
+    private static CompoundSelection<PhotoSummary> summary(CriteriaBuilder cb, Root<Photo> photo) {
+        return cb.construct(PhotoSummary.class,
+                photo.get("id"),
+                photo.get("filename"),
+                photo.get("contentType"),
+                photo.get("description"),
+                photo.get("sizeBytes"),
+                photo.get("uploadTimestamp"),
+                photo.get("width"),
+                photo.get("height"),
+                photo.get("orientation"),
+                photo.get("captureTimestamp"));
+    }
+}
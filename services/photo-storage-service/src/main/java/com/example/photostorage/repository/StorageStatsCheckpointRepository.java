@@ -0,0 +1,22 @@
+package com.example.photostorage.repository;
+
+import com.example.photostorage.entity.StorageStatsCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Spring Data JPA Repository for the StorageStatsCheckpoint entity.
+ */
+@Repository
+public interface StorageStatsCheckpointRepository extends JpaRepository<StorageStatsCheckpoint, StorageStatsCheckpoint.Key> {
+
+    /**
+     * @return When the statistics were last checkpointed, or empty if they never were.
+     */
+    @Query("select max(c.checkpointedAt) from StorageStatsCheckpoint c")
+    Optional<LocalDateTime> findLastCheckpointTime();
+}
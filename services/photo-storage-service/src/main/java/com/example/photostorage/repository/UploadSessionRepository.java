@@ -0,0 +1,21 @@
+package com.example.photostorage.repository;
+
+import com.example.photostorage.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Spring Data JPA Repository for the UploadSession entity.
+ */
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    /**
+     * @param now The current time.
+     * @return Sessions (open or committed) whose expiry time has passed.
+     */
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime now);
+}
@@ -0,0 +1,283 @@
+package com.example.photostorage.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of 64-bit hashes (see {@link PerceptualHash}) that finds all documents (photos) whose hash is
+ * within a Hamming distance of a given one, without comparing against every document.
+ *
+ * Multi-index hashing: each hash is split into four 16-bit chunks, and each chunk position has a table from the
+ * 65,536 possible chunk values to the documents with that chunk. Two hashes within distance r agree to within
+ * r / 4 bits (rounded down) in at least one chunk, so a query only looks at the buckets within that distance of its
+ * own chunks (1 + 16 + 120 buckets per table for r = 8) and checks the full distance of the documents found there.
+ * With uniformly spread hashes a bucket holds about one document per 65,536, so a query over a million photos
+ * looks at a few thousand candidates (see SimilarPhotoBenchmark). A BK-tree answers the same queries, but at the
+ * distances that matter for near-duplicates it visits a large share of its nodes, each one a pointer chase.
+ *
+ * Everything is primitive: a bucket is a {@code long[]} of hashes and an {@code int[]} of IDs, and a query scans the
+ * hashes of a bucket front to back instead of following a reference per candidate. Each document is in one bucket
+ * per table, so it takes 48 bytes plus array slack, next to about 20 MB for the tables once every bucket is in use.
+ *
+ * Removing a document only marks its ID deleted, so queries skip it; the tables are rebuilt without deleted
+ * documents once those make up a quarter of the index. As in {@link InvertedIndex}, a removed ID is never indexed
+ * again, so a rebuild that read a row just before it was deleted cannot bring it back.
+ *
+ * Thread-safe: queries share a read lock, changes take the write lock.
+ */
+public class HammingIndex {
+
+    /**
+     * Largest distance a query may ask for. Beyond it the number of buckets to probe grows quickly
+     * (697 per table at 12, 2,517 at 16), and hashes that far apart are rarely the same picture.
+     */
+    public static final int MAX_DISTANCE = 12;
+
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+
+    /**
+     * Every 16-bit mask, ordered by the number of bits set; the first MASKS_WITHIN[k] flip at most k bits.
+     */
+    private static final int[] MASKS = new int[BUCKETS];
+    private static final int[] MASKS_WITHIN = new int[CHUNK_BITS + 1];
+
+    static {
+        int count = 0;
+        for (int bits = 0; bits <= CHUNK_BITS; bits++) {
+            for (int mask = 0; mask < BUCKETS; mask++) {
+                if (Integer.bitCount(mask) == bits) {
+                    MASKS[count++] = mask;
+                }
+            }
+            MASKS_WITHIN[bits] = count;
+        }
+    }
+
+    // Per chunk position and chunk value, the hashes and IDs of the documents with that chunk; allocated on first use
+    private final long[][][] bucketHashes = new long[CHUNKS][BUCKETS][];
+    private final int[][][] bucketIds = new int[CHUNKS][BUCKETS][];
+    private final int[][] bucketSizes = new int[CHUNKS][BUCKETS];
+    private final BitSet indexed = new BitSet(); // Every ID ever added, including deleted ones
+    private final BitSet deleted = new BitSet();
+    private int liveCount;
+    private int deletedSincePurge; // Deleted documents still in the buckets
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * A document found by {@link #search}.
+     *
+     * @param id The document ID.
+     * @param distance Hamming distance between its hash and the queried one.
+     */
+    public record Match(int id, int distance) {
+    }
+
+    /**
+     * Adds a document. Does nothing if the ID was added (or removed) before.
+     *
+     * @param id The document ID, at least 0.
+     * @param hash Its hash.
+     * @return Whether the document was added.
+     */
+    public boolean add(int id, long hash) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Document IDs must not be negative: " + id);
+        }
+        lock.writeLock().lock();
+        try {
+            if (indexed.get(id)) {
+                return false;
+            }
+            indexed.set(id);
+            liveCount++;
+            insert(id, hash);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document from future query results.
+     *
+     * @param id The document ID.
+     * @return Whether the document was indexed and not removed yet.
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (id < 0 || !indexed.get(id) || deleted.get(id)) {
+                if (id >= 0) {
+                    indexed.set(id); // Never index it later, e.g. from a rebuild that read it before it was deleted
+                    deleted.set(id);
+                }
+                return false;
+            }
+            deleted.set(id);
+            liveCount--;
+            deletedSincePurge++;
+            if (deletedSincePurge >= 1024 && deletedSincePurge > liveCount / 4) {
+                purge();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents whose hash differs from the given one in at most maxDistance bits.
+     *
+     * @param hash The hash to compare with.
+     * @param maxDistance Largest Hamming distance to include, 0 to {@link #MAX_DISTANCE}.
+     * @param excludeId A document to leave out (typically the one whose hash is queried), or -1.
+     * @param limit Maximum number of documents to return.
+     * @return The closest documents, by distance and then ID.
+     */
+    public List<Match> search(long hash, int maxDistance, int excludeId, int limit) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance must be between 0 and " + MAX_DISTANCE + ": " + maxDistance);
+        }
+        if (limit <= 0) {
+            return List.of();
+        }
+        int chunkDistance = maxDistance / CHUNKS;
+        int probes = MASKS_WITHIN[chunkDistance];
+        lock.readLock().lock();
+        try {
+            long[] found = new long[16]; // distance << 32 | id, so sorting orders by distance, then ID
+            int count = 0;
+            for (int table = 0; table < CHUNKS; table++) {
+                int chunk = chunk(hash, table);
+                for (int probe = 0; probe < probes; probe++) {
+                    int value = chunk ^ MASKS[probe];
+                    long[] candidates = bucketHashes[table][value];
+                    int size = bucketSizes[table][value];
+                    for (int i = 0; i < size; i++) {
+                        long candidate = candidates[i];
+                        int distance = Long.bitCount(candidate ^ hash);
+                        if (distance > maxDistance || foundInEarlierTable(candidate, hash, table, chunkDistance)) {
+                            continue;
+                        }
+                        int id = bucketIds[table][value][i];
+                        if (id == excludeId || deleted.get(id)) {
+                            continue;
+                        }
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = (long) distance << 32 | id;
+                    }
+                }
+            }
+            Arrays.sort(found, 0, count);
+            Match[] matches = new Match[Math.min(limit, count)];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = new Match((int) found[i], (int) (found[i] >>> 32));
+            }
+            return List.of(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of indexed documents that have not been removed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Rough heap taken by the index, in bytes: the tables and the allocated buckets.
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) CHUNKS * BUCKETS * (4 + 4 + 4); // Bucket references and sizes
+            for (int table = 0; table < CHUNKS; table++) {
+                for (long[] bucket : bucketHashes[table]) {
+                    if (bucket != null) {
+                        bytes += 16 + bucket.length * 8L + 16 + bucket.length * 4L;
+                    }
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a query would have met the candidate in an earlier table already: every table is probed with the
+     * same chunk distance, so that is the case if some earlier chunk is within it.
+     */
+    private static boolean foundInEarlierTable(long candidate, long hash, int table, int chunkDistance) {
+        for (int earlier = 0; earlier < table; earlier++) {
+            if (Integer.bitCount(chunk(candidate, earlier) ^ chunk(hash, earlier)) <= chunkDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int chunk(long hash, int table) {
+        return (int) (hash >>> (table * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+
+    // Called with the write lock held
+    private void insert(int id, long hash) {
+        for (int table = 0; table < CHUNKS; table++) {
+            int value = chunk(hash, table);
+            long[] hashes = bucketHashes[table][value];
+            int size = bucketSizes[table][value];
+            if (hashes == null) {
+                bucketHashes[table][value] = new long[4];
+                bucketIds[table][value] = new int[4];
+            } else if (size == hashes.length) {
+                int capacity = size + (size >> 1) + 1;
+                bucketHashes[table][value] = Arrays.copyOf(hashes, capacity);
+                bucketIds[table][value] = Arrays.copyOf(bucketIds[table][value], capacity);
+            }
+            bucketHashes[table][value][size] = hash;
+            bucketIds[table][value][size] = id;
+            bucketSizes[table][value] = size + 1;
+        }
+    }
+
+    // Called with the write lock held
+    private void purge() {
+        for (int table = 0; table < CHUNKS; table++) {
+            for (int value = 0; value < BUCKETS; value++) {
+                long[] hashes = bucketHashes[table][value];
+                int[] ids = bucketIds[table][value];
+                int kept = 0;
+                for (int i = 0; i < bucketSizes[table][value]; i++) {
+                    if (!deleted.get(ids[i])) {
+                        hashes[kept] = hashes[i];
+                        ids[kept++] = ids[i];
+                    }
+                }
+                bucketSizes[table][value] = kept;
+                if (kept == 0) {
+                    bucketHashes[table][value] = null;
+                    bucketIds[table][value] = null;
+                } else if (hashes.length > kept * 2) {
+                    bucketHashes[table][value] = Arrays.copyOf(hashes, kept);
+                    bucketIds[table][value] = Arrays.copyOf(ids, kept);
+                }
+            }
+        }
+        deletedSincePurge = 0;
+    }
+}
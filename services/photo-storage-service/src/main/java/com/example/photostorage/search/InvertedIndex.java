@@ -0,0 +1,361 @@
+package com.example.photostorage.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index from lower-cased words to the IDs of the documents (photos) containing them.
+ *
+ * Terms are kept sorted, so a query word matches every term it is a prefix of ("sun" finds "sunset" and
+ * "sunflower") with one range lookup. Each term's postings are a sorted primitive {@code int[]}: four bytes
+ * per occurrence and no boxing. Most of the memory goes to the terms themselves, especially words that occur
+ * only once such as the numbers in camera filenames (see PhotoSearchBenchmark for the heap per million photos).
+ * Documents are expected to arrive in roughly ascending ID order (database sequence), so adding one usually
+ * appends to the end of each of its lists.
+ *
+ * Documents are never changed once added. Removing one only marks its ID deleted, so removal is cheap and
+ * queries skip it; the posting lists are rewritten without deleted IDs once those make up a quarter of the index.
+ * A removed ID is never indexed again, so a rebuild that read a row just before it was deleted cannot bring it back.
+ *
+ * Thread-safe: queries share a read lock, changes take the write lock.
+ */
+public class InvertedIndex {
+
+    /**
+     * Longer words are cut to this length, for index and queries alike.
+     */
+    public static final int MAX_TERM_LENGTH = 40;
+
+    /**
+     * Query words whose prefix range spans more posting lists than this are merged into a bit set
+     * instead of being probed by binary search.
+     */
+    private static final int MAX_PROBED_LISTS = 8;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final BitSet indexed = new BitSet(); // Every ID ever added, including deleted ones
+    private final BitSet deleted = new BitSet();
+    private int liveCount;
+    private int deletedSincePurge; // Deleted IDs still present in posting lists
+    private long postingCount;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * A sorted, growable list of document IDs.
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                insert(id);
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            ids[size++] = id;
+        }
+
+        // Out-of-order arrival: IDs handed out by another instance's sequence block, or a rebuild page
+        // overtaken by newer uploads. Usually only a few positions from the end.
+        private void insert(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * Indexes a document under the words of the given texts. Does nothing if the ID was added before.
+     *
+     * @param id The document ID, at least 0.
+     * @param texts The texts to index; null entries are skipped.
+     * @return Whether the document was added.
+     */
+    public boolean add(int id, String... texts) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Document IDs must not be negative: " + id);
+        }
+        Set<String> words = new LinkedHashSet<>();
+        for (String text : texts) {
+            words.addAll(tokenize(text));
+        }
+        lock.writeLock().lock();
+        try {
+            if (indexed.get(id)) {
+                return false;
+            }
+            indexed.set(id);
+            liveCount++;
+            for (String word : words) {
+                terms.computeIfAbsent(word, w -> new Postings()).add(id);
+            }
+            postingCount += words.size();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document from future query results.
+     *
+     * @param id The document ID.
+     * @return Whether the document was indexed and not removed yet.
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (id < 0 || !indexed.get(id) || deleted.get(id)) {
+                if (id >= 0) {
+                    indexed.set(id); // Never index it later, e.g. from a rebuild that read it before it was deleted
+                    deleted.set(id);
+                }
+                return false;
+            }
+            deleted.set(id);
+            liveCount--;
+            deletedSincePurge++;
+            if (deletedSincePurge >= 1024 && deletedSincePurge > liveCount / 4) {
+                purge();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents containing, for every word of the query, a word starting with it.
+     *
+     * @param query Free text; split into words the same way as indexed texts.
+     * @param beforeId Only documents with a lower ID, for paging; Integer.MAX_VALUE for the first page.
+     * @param limit Maximum number of IDs to return.
+     * @return Matching document IDs, highest (newest) first.
+     */
+    public int[] search(String query, int beforeId, int limit) {
+        List<String> words = List.copyOf(new LinkedHashSet<>(tokenize(query)));
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            // Resolve each word to the posting lists of the terms it is a prefix of; start from the rarest word
+            List<List<Postings>> matches = new ArrayList<>(words.size());
+            for (String word : words) {
+                Collection<Postings> range = terms.subMap(word, true, word + Character.MAX_VALUE, false).values();
+                if (range.isEmpty()) {
+                    return new int[0];
+                }
+                matches.add(new ArrayList<>(range));
+            }
+            matches.sort(Comparator.comparingLong(InvertedIndex::totalSize));
+
+            int[] candidates = union(matches.get(0), beforeId);
+            int count = candidates.length;
+            for (int i = 1; i < matches.size() && count > 0; i++) {
+                count = retain(candidates, count, matches.get(i), beforeId);
+            }
+
+            // Candidates are ascending; walk them from the end for newest first
+            int[] result = new int[Math.min(limit, count)];
+            int found = 0;
+            for (int i = count - 1; i >= 0 && found < result.length; i--) {
+                if (!deleted.get(candidates[i])) {
+                    result[found++] = candidates[i];
+                }
+            }
+            return found == result.length ? result : Arrays.copyOf(result, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of indexed documents that have not been removed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of distinct terms.
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of (term, document) pairs, including those of removed documents not purged yet.
+     */
+    public long postingCount() {
+        lock.readLock().lock();
+        try {
+            return postingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a text into lower-case words: maximal runs of letters and digits, cut to {@link #MAX_TERM_LENGTH}.
+     * "IMG_2041.JPG" becomes [img, 2041, jpg], "Beach-Day 2" becomes [beach, day, 2].
+     *
+     * @param text The text, or null.
+     * @return The words in order of appearance, with repetitions.
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() < MAX_TERM_LENGTH) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static long totalSize(List<Postings> lists) {
+        long total = 0;
+        for (Postings postings : lists) {
+            total += postings.size;
+        }
+        return total;
+    }
+
+    /**
+     * @return The sorted, distinct IDs below beforeId in any of the lists.
+     */
+    private static int[] union(List<Postings> lists, int beforeId) {
+        if (lists.size() == 1) {
+            Postings postings = lists.get(0);
+            int end = upperBound(postings, beforeId);
+            return Arrays.copyOf(postings.ids, end);
+        }
+        BitSet union = new BitSet();
+        for (Postings postings : lists) {
+            int end = upperBound(postings, beforeId);
+            for (int i = 0; i < end; i++) {
+                union.set(postings.ids[i]);
+            }
+        }
+        return union.stream().toArray();
+    }
+
+    /**
+     * Keeps those of the first count candidates that are in any of the lists, in place.
+     *
+     * @return The number of candidates kept.
+     */
+    private static int retain(int[] candidates, int count, List<Postings> lists, int beforeId) {
+        int kept = 0;
+        if (lists.size() <= MAX_PROBED_LISTS) {
+            for (int i = 0; i < count; i++) {
+                for (Postings postings : lists) {
+                    if (postings.contains(candidates[i])) {
+                        candidates[kept++] = candidates[i];
+                        break;
+                    }
+                }
+            }
+        } else {
+            BitSet union = new BitSet();
+            for (Postings postings : lists) {
+                int end = upperBound(postings, beforeId);
+                for (int i = 0; i < end; i++) {
+                    union.set(postings.ids[i]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (union.get(candidates[i])) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return The number of IDs in the list that are below beforeId.
+     */
+    private static int upperBound(Postings postings, int beforeId) {
+        if (postings.size == 0 || postings.ids[postings.size - 1] < beforeId) {
+            return postings.size;
+        }
+        int position = Arrays.binarySearch(postings.ids, 0, postings.size, beforeId);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    // Called with the write lock held
+    private void purge() {
+        long remaining = 0;
+        for (Iterator<Map.Entry<String, Postings>> it = terms.entrySet().iterator(); it.hasNext(); ) {
+            Postings postings = it.next().getValue();
+            int kept = 0;
+            for (int i = 0; i < postings.size; i++) {
+                if (!deleted.get(postings.ids[i])) {
+                    postings.ids[kept++] = postings.ids[i];
+                }
+            }
+            if (kept == 0) {
+                it.remove();
+                continue;
+            }
+            postings.size = kept;
+            if (postings.ids.length > kept * 2) {
+                postings.ids = Arrays.copyOf(postings.ids, kept);
+            }
+            remaining += kept;
+        }
+        postingCount = remaining;
+        deletedSincePurge = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.photostorage.search;
+
+import com.example.common.util.ImageUtil;
+
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * 64-bit difference hash (dHash) of an image: a fingerprint that stays (nearly) the same when a photo is
+ * re-saved, resized or re-compressed, unlike a hash of its bytes. Near-duplicates are photos whose hashes differ
+ * in few bits (Hamming distance, {@link #distance(long, long)}), see {@link HammingIndex}.
+ *
+ * The image is reduced to a 9x8 grid of average luminance; each bit says whether a cell is brighter than its right
+ * neighbour, row by row (first row in the highest bits). Only relative brightness matters, so changes of size,
+ * JPEG quality, gamma or color profile flip few bits, while crops, rotations by other than the EXIF orientation
+ * and heavy edits flip many. The grid is taken from the image as displayed (EXIF orientation applied), so a
+ * device that bakes the rotation into the pixels produces the same hash as one that only tags it.
+ */
+public final class PerceptualHash {
+
+    /**
+     * Images are decoded with source subsampling to at least this long side, which is plenty for a 9x8 grid
+     * and much cheaper than a full decode (see {@link ImageUtil#readSubsampled}).
+     */
+    public static final int DECODE_SIZE = 128;
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Decodes an image at reduced size and hashes it.
+     *
+     * @param input The encoded image.
+     * @param orientation EXIF orientation 1-8 of the image, or null if unknown (treated as upright).
+     * @return The hash.
+     * @throws IOException if no decoder supports the input or decoding fails.
+     */
+    public static long of(ImageInputStream input, Integer orientation) throws IOException {
+        return dHash(ImageUtil.readSubsampled(input, DECODE_SIZE), orientation);
+    }
+
+    /**
+     * @param image The decoded image; small images (e.g. {@link #DECODE_SIZE}) are hashed fastest.
+     * @param orientation EXIF orientation 1-8 of the image, or null if unknown (treated as upright).
+     * @return The hash.
+     */
+    public static long dHash(BufferedImage image, Integer orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int exif = orientation != null && orientation >= 1 && orientation <= 8 ? orientation : 1;
+        boolean transposed = exif >= 5; // Orientations 5-8 swap width and height
+        int displayedWidth = transposed ? height : width;
+        int displayedHeight = transposed ? width : height;
+
+        // Sum of luminance (x1000) and pixel count per grid cell, over the image as displayed
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] counts = new int[GRID_WIDTH * GRID_HEIGHT];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int displayedX;
+                int displayedY;
+                switch (exif) {
+                    case 2 -> { displayedX = width - 1 - x; displayedY = y; }
+                    case 3 -> { displayedX = width - 1 - x; displayedY = height - 1 - y; }
+                    case 4 -> { displayedX = x; displayedY = height - 1 - y; }
+                    case 5 -> { displayedX = y; displayedY = x; }
+                    case 6 -> { displayedX = height - 1 - y; displayedY = x; }
+                    case 7 -> { displayedX = height - 1 - y; displayedY = width - 1 - x; }
+                    case 8 -> { displayedX = y; displayedY = width - 1 - x; }
+                    default -> { displayedX = x; displayedY = y; }
+                }
+                int cell = (int) ((long) displayedY * GRID_HEIGHT / displayedHeight) * GRID_WIDTH
+                        + (int) ((long) displayedX * GRID_WIDTH / displayedWidth);
+                sums[cell] += luminance(row[x]);
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int left = y * GRID_WIDTH + x;
+                // Cross-multiplied averages; empty cells (images under 9x8 pixels) count as black
+                boolean brighter = sums[left] * Math.max(counts[left + 1], 1) > sums[left + 1] * Math.max(counts[left], 1);
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return The number of bits in which the two hashes differ, 0 (same picture) to 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * @return Luminance (Rec. 601) of an ARGB pixel times 1000, transparent parts shown over white.
+     */
+    private static int luminance(int argb) {
+        int alpha = argb >>> 24;
+        int red = (argb >> 16) & 0xFF;
+        int green = (argb >> 8) & 0xFF;
+        int blue = argb & 0xFF;
+        int luminance = 299 * red + 587 * green + 114 * blue;
+        return (luminance * alpha + 255_000 * (255 - alpha)) / 255;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.photostorage.search;
+
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.event.PhotoDeletedEvent;
+import com.example.photostorage.event.PhotoStoredEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Full-text search over the filename and description of every photo, answered from an {@link InvertedIndex}
+ * in this process instead of a {@code LIKE '%word%'} scan of the photos table.
+ *
+ * The index is not persisted. On startup it is rebuilt in the background by reading (id, filename, description)
+ * in ID order, a batch at a time with keyset pagination, so no long transaction or large result set is held.
+ * Photos stored or deleted meanwhile are applied right away through {@link PhotoStoredEvent} and
+ * {@link PhotoDeletedEvent}, like afterwards; until the rebuild is done, searches answer 503.
+ *
+ * Photos stored through another instance of this service are not seen until the next restart:
+ * the index is per instance, like the blob cache.
+ *
+ * Gauges: "photo.storage.search.documents" (indexed photos) and "photo.storage.search.terms" (distinct words).
+ */
+@Component
+@Slf4j
+public class PhotoSearchIndex implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PhotoStorageProperties.SearchSettings settings;
+    private final InvertedIndex index = new InvertedIndex();
+    private volatile boolean ready;
+
+    public PhotoSearchIndex(JdbcTemplate jdbcTemplate, PhotoStorageProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = properties.getSearch();
+        Gauge.builder("photo.storage.search.documents", index, InvertedIndex::size)
+                .description("Photos in the search index")
+                .register(meterRegistry);
+        Gauge.builder("photo.storage.search.terms", index, InvertedIndex::termCount)
+                .description("Distinct words in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the rebuild once the application is up; it does not delay startup.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Thread rebuild = new Thread(this::rebuild, "photo-search-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    @EventListener
+    public void onPhotoStored(PhotoStoredEvent event) {
+        if (settings.isEnabled()) {
+            add(event.photo().getId(), event.photo().getFilename(), event.photo().getDescription());
+        }
+    }
+
+    @EventListener
+    public void onPhotoDeleted(PhotoDeletedEvent event) {
+        if (settings.isEnabled() && event.photoId() <= Integer.MAX_VALUE) {
+            index.remove(event.photoId().intValue());
+        }
+    }
+
+    /**
+     * @return Whether searches can be answered: search is enabled and the startup rebuild has finished.
+     */
+    public boolean isReady() {
+        return settings.isEnabled() && ready;
+    }
+
+    /**
+     * Finds the photos whose filename or description contains, for every word of the query,
+     * a word starting with it (case-insensitive). "sun beach" finds "Sunset at the beach.jpg".
+     *
+     * @param query Free text.
+     * @param beforeId Only photos with a lower ID (for paging), or null.
+     * @param limit Maximum number of IDs to return.
+     * @return The IDs of matching photos, newest (highest ID) first.
+     * @throws IllegalStateException if the index is not ready (see {@link #isReady()}).
+     */
+    public List<Long> search(String query, Long beforeId, int limit) {
+        if (!isReady()) {
+            throw new IllegalStateException(settings.isEnabled()
+                    ? "The search index is still being built. Try again shortly."
+                    : "Search is disabled.");
+        }
+        int before = beforeId == null || beforeId > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(beforeId, 0);
+        return Arrays.stream(index.search(query, before, limit)).mapToObj(id -> (long) id).toList();
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        long lastId = 0;
+        int read;
+        try {
+            do {
+                List<Object[]> rows = jdbcTemplate.query(
+                        "SELECT id, filename, description FROM photos WHERE id > ? ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3)},
+                        lastId, settings.getRebuildBatchSize());
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    add(lastId, (String) row[1], (String) row[2]);
+                }
+                read = rows.size();
+            } while (read == settings.getRebuildBatchSize());
+            ready = true;
+            log.info("Search index built in {} ms: {} photos, {} distinct words, {} postings",
+                    (System.nanoTime() - start) / 1_000_000, index.size(), index.termCount(), index.postingCount());
+        } catch (RuntimeException e) {
+            log.error("Building the search index failed after photo ID {}; search stays unavailable until restart.", lastId, e);
+        }
+    }
+
+    private void add(Long id, String filename, String description) {
+        if (id == null || id > Integer.MAX_VALUE) {
+            // Postings hold int IDs to halve their memory; a sequence needs ~2 billion photos to get here
+            log.warn("Photo ID {} is beyond the search index's range; the photo is not searchable.", id);
+            return;
+        }
+        index.add(id.intValue(), filename, description);
+    }
+}
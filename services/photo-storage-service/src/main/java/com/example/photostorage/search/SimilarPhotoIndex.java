@@ -0,0 +1,272 @@
+package com.example.photostorage.search;
+
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.event.PhotoDeletedEvent;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.search.HammingIndex.Match;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.FileRegion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Near-duplicate search: finds the photos that look like a given one (the same picture re-saved, resized or
+ * re-compressed), which the content hash behind deduplication cannot, as it changes with every byte.
+ *
+ * After each upload the photo is decoded at reduced size on a small worker pool and its {@link PerceptualHash}
+ * is stored in photos.perceptual_hash (photos sharing content share the hash, which is copied rather than
+ * computed again). The hashes of all photos are held in a {@link HammingIndex} in this process.
+ *
+ * As with {@link PhotoSearchIndex}, the index is not persisted but rebuilt on startup in the background, from the
+ * stored hashes in ID order with keyset pagination; stores and deletes meanwhile are applied through
+ * {@link PhotoStoredEvent} and {@link PhotoDeletedEvent}, and queries answer 503 until it is done. Afterwards,
+ * photos without a hash (stored before hashing existed, or skipped because the queue was full) are hashed one at a
+ * time in the same background thread. A photo that is queried before it has a hash is hashed right away.
+ *
+ * Photos stored through another instance of this service are not seen until the next restart.
+ *
+ * Gauge: "photo.storage.similarity.photos" (indexed photos).
+ */
+@Component
+@Slf4j
+public class SimilarPhotoIndex implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+    private final PhotoStorageProperties.SimilaritySettings settings;
+    private final HammingIndex index = new HammingIndex();
+    private final ThreadPoolExecutor executor;
+    private volatile boolean ready;
+
+    public SimilarPhotoIndex(JdbcTemplate jdbcTemplate, BlobStore blobStore, PhotoStorageProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobStore = blobStore;
+        this.settings = properties.getSimilarity();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(settings.getWorkerThreads(), settings.getWorkerThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "photo-hash-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("photo.storage.similarity.photos", index, HammingIndex::size)
+                .description("Photos in the near-duplicate index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the rebuild once the application is up; it does not delay startup.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Thread rebuild = new Thread(this::rebuild, "photo-similarity-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Queues hashing of a freshly stored photo.
+     * If the queue is full the photo is skipped; it is then hashed by the next backfill or when it is queried.
+     */
+    @EventListener
+    public void onPhotoStored(PhotoStoredEvent event) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Photo photo = event.photo();
+        if (photo.getBlobKey() == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> hashAndIndex(photo.getId(), photo.getBlobKey(), photo.getOrientation()));
+        } catch (RejectedExecutionException e) {
+            log.warn("Hash queue full; photo {} will be hashed by the next backfill or when queried.", photo.getId());
+        }
+    }
+
+    @EventListener
+    public void onPhotoDeleted(PhotoDeletedEvent event) {
+        if (settings.isEnabled() && event.photoId() <= Integer.MAX_VALUE) {
+            index.remove(event.photoId().intValue());
+        }
+    }
+
+    /**
+     * @return Whether near-duplicates can be searched: the feature is enabled and the startup rebuild has finished.
+     */
+    public boolean isReady() {
+        return settings.isEnabled() && ready;
+    }
+
+    /**
+     * Finds the photos that look like the given one.
+     *
+     * @param photo The photo to compare with. If it has no hash yet, it is hashed now (and stored and indexed).
+     * @param maxDistance Largest Hamming distance between the hashes, 0 to {@link HammingIndex#MAX_DISTANCE}.
+     * Identical-looking photos are usually within 2; re-compressed and resized copies within 8 or so.
+     * @param limit Maximum number of photos to return.
+     * @return The matching photos (not including the given one), closest first, or empty if the photo cannot be
+     * decoded and so has no hash.
+     * @throws IllegalStateException if the index is not ready (see {@link #isReady()}).
+     * @throws IllegalArgumentException if maxDistance is out of range.
+     */
+    public Optional<List<Match>> findSimilar(Photo photo, int maxDistance, int limit) {
+        if (!isReady()) {
+            throw new IllegalStateException(settings.isEnabled()
+                    ? "The similarity index is still being built. Try again shortly."
+                    : "Similarity search is disabled.");
+        }
+        OptionalLong hash = photo.getPerceptualHash() != null
+                ? OptionalLong.of(photo.getPerceptualHash())
+                : hashAndIndex(photo.getId(), photo.getBlobKey(), photo.getOrientation());
+        if (hash.isEmpty()) {
+            return Optional.empty();
+        }
+        int self = photo.getId() <= Integer.MAX_VALUE ? photo.getId().intValue() : -1;
+        return Optional.of(index.search(hash.getAsLong(), maxDistance, self, limit));
+    }
+
+    /**
+     * Computes (or copies from a photo with the same content) the hash of a photo, stores it in its row and
+     * adds the photo to the index.
+     *
+     * @return The hash, or empty if the photo cannot be decoded.
+     */
+    private OptionalLong hashAndIndex(long id, String blobKey, Integer orientation) {
+        if (blobKey == null) {
+            return OptionalLong.empty();
+        }
+        List<Long> known = jdbcTemplate.queryForList(
+                "SELECT perceptual_hash FROM photos WHERE blob_key = ? AND perceptual_hash IS NOT NULL LIMIT 1",
+                Long.class, blobKey);
+        long hash;
+        if (!known.isEmpty()) {
+            hash = known.get(0);
+        } else {
+            try {
+                hash = computeHash(blobKey, orientation);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not hash photo {} (blob {}): {}", id, blobKey, e.getMessage());
+                return OptionalLong.empty();
+            }
+        }
+        jdbcTemplate.update("UPDATE photos SET perceptual_hash = ? WHERE id = ?", hash, id);
+        add(id, hash);
+        return OptionalLong.of(hash);
+    }
+
+    private long computeHash(String blobKey, Integer orientation) throws IOException {
+        Optional<FileRegion> region = blobStore.locate(blobKey);
+        if (region.isPresent() && region.get().position() == 0) {
+            // Random access straight on the file, no stream caching
+            try (ImageInputStream input = new FileImageInputStream(region.get().path().toFile())) {
+                return PerceptualHash.of(input, orientation);
+            }
+        }
+        try (InputStream in = blobStore.open(blobKey);
+             ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            return PerceptualHash.of(input, orientation);
+        }
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        long lastId = 0;
+        int read;
+        try {
+            do {
+                List<Object[]> rows = jdbcTemplate.query(
+                        "SELECT id, perceptual_hash FROM photos WHERE id > ? AND perceptual_hash IS NOT NULL ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getLong(2)},
+                        lastId, settings.getRebuildBatchSize());
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    add(lastId, (Long) row[1]);
+                }
+                read = rows.size();
+            } while (read == settings.getRebuildBatchSize());
+            ready = true;
+            log.info("Similarity index built in {} ms: {} photos, about {} MB",
+                    (System.nanoTime() - start) / 1_000_000, index.size(), index.estimatedBytes() / (1024 * 1024));
+        } catch (RuntimeException e) {
+            log.error("Building the similarity index failed after photo ID {}; near-duplicate search stays unavailable until restart.", lastId, e);
+            return;
+        }
+        if (settings.isBackfill()) {
+            backfill();
+        }
+    }
+
+    /**
+     * Hashes the photos that have none yet, oldest first. Photos that cannot be decoded keep a null hash
+     * and are tried again on the next start.
+     */
+    private void backfill() {
+        long start = System.nanoTime();
+        long lastId = 0;
+        int hashed = 0;
+        int read;
+        try {
+            do {
+                List<Object[]> rows = jdbcTemplate.query(
+                        "SELECT id, blob_key, orientation FROM photos WHERE id > ? AND perceptual_hash IS NULL AND blob_key IS NOT NULL ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getObject(3, Integer.class)},
+                        lastId, settings.getRebuildBatchSize());
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    if (hashAndIndex(lastId, (String) row[1], (Integer) row[2]).isPresent()) {
+                        hashed++;
+                    }
+                }
+                read = rows.size();
+            } while (read == settings.getRebuildBatchSize());
+            if (hashed > 0) {
+                log.info("Hashed {} photos stored without a perceptual hash in {} s", hashed, (System.nanoTime() - start) / 1_000_000_000);
+            }
+        } catch (RuntimeException e) {
+            log.error("Hashing photos without a perceptual hash failed after photo ID {}; the rest is tried on the next start.", lastId, e);
+        }
+    }
+
+    private void add(long id, long hash) {
+        if (id > Integer.MAX_VALUE) {
+            // The index holds int IDs, like the search index; a sequence needs ~2 billion photos to get here
+            log.warn("Photo ID {} is beyond the similarity index's range; the photo is not searchable.", id);
+            return;
+        }
+        index.add((int) id, hash);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.photostorage.service;
+
+import com.example.photostorage.entity.ContentBlob;
+import com.example.photostorage.event.ContentDeletedEvent;
+import com.example.photostorage.repository.ContentBlobRepository;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.StagedBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service that stores image content exactly once, however many photos share it.
+ *
+ * Incoming bytes are staged and hashed (SHA-256) in a single pass. If the hash is already known,
+ * the staged copy is thrown away and the existing content's reference count is bumped;
+ * otherwise the staged blob is committed under its hash. Photos then point at the hash.
+ *
+ * Registering and releasing content for the same hash is serialized with striped locks,
+ * so a concurrent delete can never remove a blob that an upload has just re-referenced.
+ * The locks are per process, which matches the per-node filesystem BlobStore.
+ *
+ * With the write-ahead journal (see JournaledPhotoWriter) an upload is acknowledged before its rows exist,
+ * so its content is "pinned" instead: committed to the BlobStore without touching the database and protected
+ * from deletion until the journal flusher has added the reference in the database and unpinned it.
+ *
+ * Exposes the counters "photo.dedup.lookups" (tag result=hit|miss) and "photo.dedup.bytes.saved".
+ */
+@Service
+@Slf4j
+public class ContentDeduplicationService {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final BlobStore blobStore;
+    private final ContentBlobRepository contentBlobRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>(); // Content hash -> journaled, unflushed photos
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bytesSaved;
+
+    public ContentDeduplicationService(BlobStore blobStore, ContentBlobRepository contentBlobRepository,
+                                       ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.blobStore = blobStore;
+        this.contentBlobRepository = contentBlobRepository;
+        this.eventPublisher = eventPublisher;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.hits = Counter.builder("photo.dedup.lookups").tag("result", "hit")
+                .description("Uploads whose content was already stored").register(meterRegistry);
+        this.misses = Counter.builder("photo.dedup.lookups").tag("result", "miss")
+                .description("Uploads that stored new content").register(meterRegistry);
+        this.bytesSaved = Counter.builder("photo.dedup.bytes.saved").baseUnit("bytes")
+                .description("Bytes not written because the content was already stored").register(meterRegistry);
+    }
+
+    /**
+     * Stores the given content, or references the existing copy if identical content is already stored.
+     * Every successful call adds one reference that must later be dropped with {@link #release(String)}.
+     *
+     * @param data The content, read until exhausted. The caller is responsible for closing it.
+     * @return The content hash (the BlobStore key), its size, and whether it was a duplicate.
+     * @throws IOException if the content cannot be received or stored.
+     */
+    public StoredContent store(InputStream data) throws IOException {
+        StagedBlob staged = blobStore.stage(data);
+        return register(staged);
+    }
+
+    /**
+     * Like {@link #store(InputStream)}, for content that has already been staged in the BlobStore.
+     *
+     * @param staged The staged content. It is committed or discarded by this call.
+     * @return The content hash (the BlobStore key), its size, and whether it was a duplicate.
+     * @throws IOException if the content cannot be stored.
+     */
+    public StoredContent register(StagedBlob staged) throws IOException {
+        String hash = staged.sha256();
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            if (contentBlobRepository.incrementRefCount(hash) == 1) {
+                blobStore.discard(staged);
+                hits.increment();
+                bytesSaved.increment(staged.size());
+                return new StoredContent(hash, staged.size(), true);
+            }
+            try {
+                blobStore.commit(staged, hash);
+            } catch (IOException | RuntimeException e) {
+                blobStore.discard(staged);
+                throw e;
+            }
+            contentBlobRepository.save(ContentBlob.builder()
+                    .contentHash(hash)
+                    .sizeBytes(staged.size())
+                    .refCount(1)
+                    .build());
+            misses.increment();
+            return new StoredContent(hash, staged.size(), false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Journal mode: stores the given content, or finds the existing copy, without touching the database.
+     * The content is pinned: it is not deleted, whatever its reference count, until {@link #unpin(Collection)}.
+     * The journal flusher later adds the reference with {@link #registerPinned(Collection)}.
+     *
+     * @param data The content, read until exhausted. The caller is responsible for closing it.
+     * @return The content hash (the BlobStore key), its size, and whether it was already stored.
+     * @throws IOException if the content cannot be received or stored.
+     */
+    public StoredContent storePinned(InputStream data) throws IOException {
+        StagedBlob staged = blobStore.stage(data);
+        String hash = staged.sha256();
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            boolean duplicate = blobStore.exists(hash);
+            if (duplicate) {
+                blobStore.discard(staged);
+                hits.increment();
+                bytesSaved.increment(staged.size());
+            } else {
+                try {
+                    blobStore.commit(staged, hash);
+                } catch (IOException | RuntimeException e) {
+                    blobStore.discard(staged);
+                    throw e;
+                }
+                misses.increment();
+            }
+            pins.merge(hash, 1, Integer::sum);
+            return new StoredContent(hash, staged.size(), duplicate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pins content referenced by a journal entry that is replayed after a restart.
+     *
+     * @param contentHash The BlobStore key of the content.
+     */
+    public void pin(String contentHash) {
+        ReentrantLock lock = lockFor(contentHash);
+        lock.lock();
+        try {
+            pins.merge(contentHash, 1, Integer::sum);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the database references of pinned content, one per element (the same content may appear repeatedly).
+     * Must run inside the caller's transaction and within {@link #withLocks(Collection, Runnable)} for the same
+     * hashes, so no direct upload of the same content can insert its row concurrently.
+     *
+     * @param contents The pinned content of the photos being written to the database.
+     */
+    public void registerPinned(Collection<StoredContent> contents) {
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        for (StoredContent content : contents) {
+            counts.merge(content.contentHash(), 1L, Long::sum);
+            sizes.put(content.contentHash(), content.size());
+        }
+        counts.forEach((hash, count) -> {
+            if (contentBlobRepository.addRefCount(hash, count) == 0) {
+                contentBlobRepository.save(ContentBlob.builder()
+                        .contentHash(hash)
+                        .sizeBytes(sizes.get(hash))
+                        .refCount(count)
+                        .build());
+            }
+        });
+    }
+
+    /**
+     * Drops one pin per element, once the references have been committed to the database.
+     *
+     * @param contentHashes The hashes passed to {@link #registerPinned(Collection)}, repeats included.
+     */
+    public void unpin(Collection<String> contentHashes) {
+        withLocks(contentHashes, () -> contentHashes.forEach(
+                hash -> pins.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null)));
+    }
+
+    /**
+     * Drops the pin of content whose journal append failed, and deletes the content again
+     * if nothing else pins or references it.
+     *
+     * @param contentHash The BlobStore key of the content.
+     */
+    public void abandonPinned(String contentHash) {
+        ReentrantLock lock = lockFor(contentHash);
+        lock.lock();
+        try {
+            pins.computeIfPresent(contentHash, (key, count) -> count > 1 ? count - 1 : null);
+            if (!pins.containsKey(contentHash) && !contentBlobRepository.existsById(contentHash)) {
+                blobStore.delete(contentHash);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Most likely the database is unreachable (which is why the journal exists); the blob is merely orphaned
+            log.warn("Could not clean up content {} of a failed journal append: {}", contentHash, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the locks of all given hashes, taken in a fixed order to avoid deadlocks.
+     *
+     * @param contentHashes The hashes to lock; repeats are fine.
+     * @param action The action, e.g. a database transaction touching the content rows.
+     */
+    public void withLocks(Collection<String> contentHashes, Runnable action) {
+        boolean[] stripes = new boolean[LOCK_STRIPES];
+        contentHashes.forEach(hash -> stripes[stripeOf(hash)] = true);
+        int locked = 0;
+        try {
+            for (; locked < LOCK_STRIPES; locked++) {
+                if (stripes[locked]) {
+                    locks[locked].lock();
+                }
+            }
+            action.run();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (stripes[i]) {
+                    locks[i].unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops one reference to the content and deletes the blob once nothing references it.
+     * Keys of photos migrated from the legacy 'image_data' column have no content row;
+     * those blobs belong to a single photo and are deleted directly.
+     *
+     * @param contentHash The BlobStore key of the content.
+     */
+    public void release(String contentHash) {
+        ReentrantLock lock = lockFor(contentHash);
+        lock.lock();
+        try {
+            boolean tracked = contentBlobRepository.decrementRefCount(contentHash) == 1;
+            if (pins.containsKey(contentHash)) {
+                return; // A journaled photo that is not in the database yet still needs the content
+            }
+            if (!tracked || contentBlobRepository.deleteIfUnreferenced(contentHash) == 1) {
+                blobStore.delete(contentHash);
+                eventPublisher.publishEvent(new ContentDeletedEvent(contentHash));
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete unreferenced blob {}: {}", contentHash, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(String contentHash) {
+        return locks[stripeOf(contentHash)];
+    }
+
+    private static int stripeOf(String contentHash) {
+        return Math.floorMod(contentHash.hashCode(), LOCK_STRIPES);
+    }
+
+    /**
+     * Result of storing a piece of content.
+     *
+     * @param contentHash Lower-case hex SHA-256, also the BlobStore key.
+     * @param size Size of the content in bytes.
+     * @param duplicate Whether identical content was already stored.
+     */
+    public record StoredContent(String contentHash, long size, boolean duplicate) {
+    }
+}
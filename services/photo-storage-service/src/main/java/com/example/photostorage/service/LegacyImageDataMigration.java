@@ -0,0 +1,120 @@
+package com.example.photostorage.service;
+
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.service.ContentDeduplicationService.StoredContent;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * One-off migration for databases created before the BlobStore existed,
+ * when image bytes lived in the 'photos.image_data' BYTEA column.
+ *
+ * On startup it:
+ * 1. drops the NOT NULL constraint on 'image_data' (new rows no longer fill it),
+ * 2. copies the bytes of every legacy row into the BlobStore (deduplicated by content hash), one row at a time,
+ * 3. sets 'blob_key' / 'size_bytes' and clears 'image_data' for that row.
+ *
+ * It is safe to run repeatedly and does nothing once all rows are migrated.
+ * After that the column can be dropped manually with: ALTER TABLE photos DROP COLUMN image_data
+ */
+@Component
+@Slf4j
+public class LegacyImageDataMigration implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentDeduplicationService deduplicationService;
+    private final PhotoStorageProperties properties;
+
+    private boolean legacyColumnPresent;
+
+    public LegacyImageDataMigration(JdbcTemplate jdbcTemplate, ContentDeduplicationService deduplicationService,
+                                    PhotoStorageProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deduplicationService = deduplicationService;
+        this.properties = properties;
+    }
+
+    /**
+     * Runs before the web server starts, so new uploads never hit the old NOT NULL constraint.
+     */
+    @PostConstruct
+    void relaxLegacyColumn() {
+        if (!properties.getBlobStore().isMigrateLegacyRows()) {
+            return;
+        }
+        legacyColumnPresent = columnExists("photos", "image_data");
+        if (legacyColumnPresent) {
+            log.info("Legacy column photos.image_data found; making it nullable.");
+            jdbcTemplate.execute("ALTER TABLE photos ALTER COLUMN image_data DROP NOT NULL");
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!legacyColumnPresent) {
+            return;
+        }
+        long migrated = 0;
+        List<Long> ids;
+        do {
+            ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM photos WHERE blob_key IS NULL AND image_data IS NOT NULL ORDER BY id LIMIT " + BATCH_SIZE,
+                    Long.class);
+            for (Long id : ids) {
+                migrateRow(id);
+                migrated++;
+            }
+        } while (ids.size() == BATCH_SIZE);
+
+        if (migrated > 0) {
+            log.info("Moved image data of {} legacy photos into the blob store.", migrated);
+        }
+        log.info("No legacy image data left in photos.image_data. The column can be dropped with: ALTER TABLE photos DROP COLUMN image_data");
+    }
+
+    private void migrateRow(long id) {
+        StoredContent content = jdbcTemplate.query("SELECT image_data FROM photos WHERE id = ?", rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            try (InputStream imageData = rs.getBinaryStream(1)) {
+                return deduplicationService.store(imageData);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to migrate image data of photo " + id, e);
+            }
+        }, id);
+        if (content != null) {
+            jdbcTemplate.update("UPDATE photos SET blob_key = ?, size_bytes = ?, image_data = NULL WHERE id = ?",
+                    content.contentHash(), content.size(), id);
+        }
+    }
+
+    private boolean columnExists(String table, String column) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // PostgreSQL reports lower-case identifiers, H2 upper-case
+            for (String[] names : new String[][] {{table, column}, {table.toUpperCase(), column.toUpperCase()}}) {
+                try (ResultSet columns = metaData.getColumns(null, null, names[0], names[1])) {
+                    if (columns.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+}
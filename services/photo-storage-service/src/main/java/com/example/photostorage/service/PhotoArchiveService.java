@@ -0,0 +1,394 @@
+package com.example.photostorage.service;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.image.ImageHeaderSniffer;
+import com.example.common.image.ImageInfo;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.metrics.StorageMetrics;
+import com.example.photostorage.repository.PhotoRepository;
+import com.example.photostorage.service.ContentDeduplicationService.StoredContent;
+import com.example.photostorage.storage.BlobStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Bulk export and import of photos as ZIP archives, for moving or backing up a whole library in one request.
+ *
+ * Layout of an archive, in this order:
+ * - {@code metadata/<id>.json}       metadata of one photo (an {@link ArchivedPhoto}), including the path of its bytes
+ * - {@code photos/<id>-<filename>}   the original bytes of that photo
+ * - ... one pair per photo, oldest first ...
+ * - {@code manifest.jsonl}           the metadata of every photo again, one JSON object per line
+ *
+ * Both directions stream at constant memory, so the size of an archive is bounded by disk and network, not heap:
+ * - Export reads the rows a page at a time ({@link PhotoRepository#streamPhotos}) and copies each blob straight into
+ *   the response. The manifest lines are spooled to a temporary file and appended at the end.
+ * - Import reads the archive as it arrives (ZipInputStream: local headers only, no central directory needed).
+ *   Each photo's metadata comes right before its bytes, so a photo is stored as soon as its entry has been read, and
+ *   nothing is kept of earlier entries but the rows of the current batch. The manifest is not needed and is skipped.
+ *
+ * Photo bytes are stored uncompressed in the ZIP (photos are compressed already), metadata deflated.
+ * ZIP64 extensions are written where sizes require them; any current unzip tool reads the result.
+ *
+ * Imported photos pass the same checks as uploads (header sniffing, pixel limit), are deduplicated by content and
+ * keep their original upload time, but get new IDs. The SHA-256 in the metadata must match the bytes. Entries without
+ * metadata (e.g. a ZIP of plain image files) are imported under their file name. Importing the same archive twice
+ * adds its photos twice; their bytes are stored once.
+ */
+@Service
+@Slf4j
+public class PhotoArchiveService {
+
+    public static final String METADATA_DIRECTORY = "metadata/";
+    public static final String PHOTO_DIRECTORY = "photos/";
+    public static final String MANIFEST = "manifest.jsonl";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private final PhotoRepository photoRepository;
+    private final BlobStore blobStore;
+    private final PhotoStorageService photoStorageService;
+    private final ContentDeduplicationService deduplicationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final PhotoStorageProperties.ArchiveSettings settings;
+
+    public PhotoArchiveService(PhotoRepository photoRepository, BlobStore blobStore, PhotoStorageService photoStorageService,
+                               ContentDeduplicationService deduplicationService, ApplicationEventPublisher eventPublisher,
+                               StorageMetrics metrics, ObjectMapper objectMapper, PhotoStorageProperties properties) {
+        this.photoRepository = photoRepository;
+        this.blobStore = blobStore;
+        this.photoStorageService = photoStorageService;
+        this.deduplicationService = deduplicationService;
+        this.eventPublisher = eventPublisher;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getArchive();
+    }
+
+    /**
+     * Writes the photos uploaded in the given range, oldest first, as a ZIP archive.
+     * Photos whose bytes are missing from the BlobStore are left out (and logged); the archive is still complete.
+     *
+     * @param from Only photos uploaded at or after this time, or null.
+     * @param to Only photos uploaded before this time, or null.
+     * @param out Where the archive is written, e.g. the response body. Flushed, but not closed.
+     * @return What was exported.
+     * @throws IOException if a blob cannot be read or the archive cannot be written (e.g. the client went away).
+     * The archive is then incomplete, which unzip tools detect as it lacks its central directory.
+     */
+    public ExportResult exportPhotos(LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        long photos = 0;
+        long bytes = 0;
+        long skipped = 0;
+        Path manifest = Files.createTempFile("photo-export-", ".jsonl");
+        try (Stream<Photo> rows = photoRepository.streamPhotos(from, to, settings.getExportPageSize());
+             BufferedWriter manifestLines = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            // Not closed: that would close the response stream, which belongs to the servlet container
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8);
+            for (Iterator<Photo> it = rows.iterator(); it.hasNext(); ) {
+                Photo photo = it.next();
+                if (photo.getBlobKey() == null) {
+                    skipped++; // Legacy row whose bytes have not been migrated to the BlobStore yet
+                    continue;
+                }
+                InputStream content;
+                try {
+                    content = blobStore.open(photo.getBlobKey());
+                } catch (NoSuchFileException e) {
+                    log.warn("Photo {} left out of the export: its blob {} is missing.", photo.getId(), photo.getBlobKey());
+                    skipped++;
+                    continue;
+                }
+                try (content) {
+                    String path = photoPath(photo);
+                    byte[] metadata = objectMapper.writeValueAsBytes(ArchivedPhoto.of(photo, path));
+
+                    zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+                    zip.putNextEntry(entry(METADATA_DIRECTORY + photo.getId() + ".json", photo));
+                    zip.write(metadata);
+                    zip.closeEntry();
+
+                    zip.setLevel(Deflater.NO_COMPRESSION);
+                    zip.putNextEntry(entry(path, photo));
+                    bytes += content.transferTo(zip);
+                    zip.closeEntry();
+
+                    manifestLines.write(new String(metadata, StandardCharsets.UTF_8));
+                    manifestLines.newLine();
+                }
+                photos++;
+            }
+
+            manifestLines.flush();
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            Files.copy(manifest, zip);
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+        return new ExportResult(photos, bytes, skipped);
+    }
+
+    /**
+     * Imports the photos of a ZIP archive as it is read. Photo rows are inserted in batches of
+     * photo-storage.archive.import-batch-size; each photo's bytes are stored before its row is.
+     *
+     * A photo that is not acceptable (not a supported image, too large, checksum mismatch, ...) fails on its own.
+     * If the archive cannot be read any further (truncated upload, corrupt entry), the photos before that point are
+     * kept and the result carries the error.
+     *
+     * @param archive The ZIP archive, read until its last entry. The caller is responsible for closing it.
+     * @return What was imported.
+     * @throws RuntimeException if photo rows cannot be written to the database. Earlier batches stay imported.
+     */
+    public ImportResult importPhotos(InputStream archive) {
+        List<Photo> batch = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        int imported = 0;
+        int failed = 0;
+        String error = null;
+
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(archive, BUFFER_SIZE), StandardCharsets.UTF_8);
+        ArchivedPhoto metadata = null; // Of the photo entry expected next
+        String unreadableMetadataPath = null; // Photo entry to skip because its metadata could not be read
+        try {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                String name = entry.getName();
+                if (entry.isDirectory() || name.equals(MANIFEST)) {
+                    continue;
+                }
+                if (name.startsWith(METADATA_DIRECTORY)) {
+                    metadata = null;
+                    unreadableMetadataPath = null;
+                    try {
+                        metadata = readMetadata(zip);
+                    } catch (IllegalArgumentException e) {
+                        unreadableMetadataPath = name;
+                        failed++;
+                        reportFailure(failures, name + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (unreadableMetadataPath != null) {
+                    unreadableMetadataPath = null;
+                    continue; // Already reported with its metadata
+                }
+
+                ArchivedPhoto photoMetadata = metadata != null && name.equals(metadata.path()) ? metadata : null;
+                metadata = null;
+                try {
+                    batch.add(importPhoto(name, photoMetadata, zip));
+                } catch (IllegalArgumentException e) {
+                    failed++;
+                    reportFailure(failures, name + ": " + e.getMessage());
+                    continue;
+                }
+                if (batch.size() >= settings.getImportBatchSize()) {
+                    imported += saveBatch(batch);
+                }
+            }
+        } catch (IOException e) {
+            // Nothing after this point can be read reliably; keep what came before
+            log.warn("Import stopped after {} photos: {}", imported + batch.size(), e.toString());
+            error = "Archive could not be read past this point: " + (e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        imported += saveBatch(batch);
+        return new ImportResult(imported, failed, failures, error);
+    }
+
+    /**
+     * Sniffs and stores the bytes of one photo entry, returning its (unsaved) row.
+     *
+     * @throws IllegalArgumentException if the photo is not acceptable. Nothing has been stored then.
+     * @throws IOException if the entry cannot be read or its bytes cannot be stored.
+     */
+    private Photo importPhoto(String name, ArchivedPhoto metadata, ZipInputStream zip) throws IOException {
+        LongTaskTimer.Sample write = metrics.startWrite();
+        try {
+            Timer.Sample sniff = metrics.startStage();
+            byte[] header = ImageHeaderSniffer.readHeader(zip, photoStorageService.getSniffSize());
+            ImageInfo image;
+            try {
+                image = photoStorageService.inspectImage(header);
+            } catch (IllegalArgumentException e) {
+                metrics.recordError(StorageMetrics.STAGE_SNIFF, e);
+                throw e;
+            }
+            metrics.stopStage(sniff, StorageMetrics.STAGE_SNIFF, StorageMetrics.OPERATION_IMPORT);
+
+            String filename = metadata != null && metadata.filename() != null && !metadata.filename().isBlank()
+                    ? metadata.filename()
+                    : name.substring(name.lastIndexOf('/') + 1);
+            String description = metadata != null ? metadata.description() : null;
+            String declaredType = metadata != null && metadata.contentType() != null ? metadata.contentType() : image.format().getMimeType();
+            PhotoMetadata photoMetadata = PhotoStorageService.withSniffedContentType(
+                    new PhotoMetadata(filename, declaredType, description), image);
+            PhotoStorageService.checkColumnLengths(photoMetadata);
+
+            // The sniffed header, then the rest of the entry; ZipInputStream ends the stream at the end of the entry
+            Timer.Sample blobWrite = metrics.startStage();
+            StoredContent content;
+            try {
+                content = deduplicationService.store(
+                        new SequenceInputStream(new ByteArrayInputStream(header), StreamUtils.nonClosing(zip)));
+            } catch (IOException e) {
+                metrics.recordError(StorageMetrics.STAGE_BLOB_WRITE, e);
+                throw e;
+            }
+            metrics.stopStage(blobWrite, StorageMetrics.STAGE_BLOB_WRITE, StorageMetrics.OPERATION_IMPORT);
+            if (metadata != null && metadata.sha256() != null && !metadata.sha256().equalsIgnoreCase(content.contentHash())) {
+                deduplicationService.release(content.contentHash());
+                throw new IllegalArgumentException("Content does not match the SHA-256 in its metadata.");
+            }
+            metrics.recordPayloadSize(StorageMetrics.OPERATION_IMPORT, content.size());
+
+            Photo photo = PhotoStorageService.toPhoto(photoMetadata, image, content.contentHash(), content.size());
+            if (metadata != null) {
+                photo.setUploadTimestamp(metadata.uploadTimestamp()); // null: stamped with the import time on insert
+            }
+            return photo;
+        } finally {
+            write.stop();
+        }
+    }
+
+    /**
+     * Inserts the rows of a batch in one transaction and announces the photos. If the insert fails,
+     * the content references of the batch are dropped again. The batch is empty afterwards.
+     *
+     * @return The number of photos saved.
+     */
+    private int saveBatch(List<Photo> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Photo> saved;
+        Timer.Sample dbWrite = metrics.startStage();
+        try {
+            saved = photoRepository.saveAll(batch);
+        } catch (RuntimeException e) {
+            log.warn("Error saving a batch of {} imported photos: {}", batch.size(), e.getMessage());
+            metrics.recordError(StorageMetrics.STAGE_DB_WRITE, e);
+            batch.forEach(photo -> deduplicationService.release(photo.getBlobKey()));
+            batch.clear();
+            throw e;
+        }
+        metrics.stopStage(dbWrite, StorageMetrics.STAGE_DB_WRITE, StorageMetrics.OPERATION_IMPORT);
+        saved.forEach(photo -> eventPublisher.publishEvent(new PhotoStoredEvent(photo)));
+        batch.clear();
+        return saved.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the entry is too large or not an {@link ArchivedPhoto}.
+     */
+    private ArchivedPhoto readMetadata(ZipInputStream zip) throws IOException {
+        int maxSize = (int) settings.getMaxMetadataSize().toBytes();
+        byte[] json = zip.readNBytes(maxSize + 1);
+        if (json.length > maxSize) {
+            throw new IllegalArgumentException("Metadata is larger than " + settings.getMaxMetadataSize() + ".");
+        }
+        try {
+            return objectMapper.readValue(json, ArchivedPhoto.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unreadable metadata: " + e.getOriginalMessage());
+        }
+    }
+
+    private static void reportFailure(List<String> failures, String failure) {
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(failure);
+        }
+    }
+
+    /**
+     * @return The path of a photo's bytes in the archive: its ID (unique) and its filename (recognizable),
+     * the latter reduced to characters that are safe in any file system.
+     */
+    private static String photoPath(Photo photo) {
+        String filename = photo.getFilename().replaceAll("[^A-Za-z0-9._-]", "_");
+        if (filename.length() > 100) {
+            filename = filename.substring(filename.length() - 100); // Keep the extension
+        }
+        return PHOTO_DIRECTORY + photo.getId() + "-" + filename;
+    }
+
+    private static ZipEntry entry(String name, Photo photo) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTimeLocal(photo.getUploadTimestamp());
+        return entry;
+    }
+
+    /**
+     * Metadata of one photo in an archive: a {@code metadata/<id>.json} entry and one line of the manifest.
+     *
+     * @param path Entry holding the photo's bytes.
+     * @param id ID of the photo where it was exported; informational, imported photos get new IDs.
+     * @param sha256 Lower-case hex SHA-256 of the bytes, checked on import; null if unknown.
+     */
+    public record ArchivedPhoto(String path, Long id, String filename, String contentType, String description,
+                                Long sizeBytes, String sha256, Integer width, Integer height, Integer orientation,
+                                LocalDateTime captureTimestamp, LocalDateTime uploadTimestamp) {
+
+        static ArchivedPhoto of(Photo photo, String path) {
+            // Blob keys of photos are content hashes (see ContentDeduplicationService)
+            String sha256 = photo.getBlobKey().matches("[0-9a-f]{64}") ? photo.getBlobKey() : null;
+            return new ArchivedPhoto(path, photo.getId(), photo.getFilename(), photo.getContentType(),
+                    photo.getDescription(), photo.getSizeBytes(), sha256, photo.getWidth(), photo.getHeight(),
+                    photo.getOrientation(), photo.getCaptureTimestamp(), photo.getUploadTimestamp());
+        }
+    }
+
+    /**
+     * @param photos Photos written to the archive.
+     * @param bytes Photo bytes written (metadata not counted).
+     * @param skipped Photos in the range that were left out because their bytes are not in the BlobStore.
+     */
+    public record ExportResult(long photos, long bytes, long skipped) {
+    }
+
+    /**
+     * @param imported Photos stored.
+     * @param failed Photos rejected.
+     * @param failures Why, for the first 100 of them ("entry name: reason").
+     * @param error Why the archive could not be read to its end, or null if it could.
+     */
+    public record ImportResult(int imported, int failed, List<String> failures, String error) {
+    }
+}
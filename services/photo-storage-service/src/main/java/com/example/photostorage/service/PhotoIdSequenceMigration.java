@@ -0,0 +1,50 @@
+package com.example.photostorage.service;
+
+import com.example.photostorage.entity.Photo;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the 'photos_seq' sequence ahead of existing photo IDs.
+ *
+ * Photo IDs used to come from an IDENTITY column; they now come from a pooled sequence so inserts
+ * can be batched. On a database that already holds photos the freshly created sequence would start
+ * at 1 and collide with existing rows, so on startup (after Hibernate has created the sequence,
+ * before the web server accepts uploads) it is restarted above the highest existing ID if needed.
+ */
+@Component
+@DependsOn("entityManagerFactory") // The sequence is created by Hibernate's schema update
+@ConditionalOnProperty(prefix = "photo-storage", name = "align-id-sequence", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class PhotoIdSequenceMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PhotoIdSequenceMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void alignSequence() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM photos", Long.class);
+        Long nextValue = jdbcTemplate.queryForObject(nextValueSql(), Long.class);
+        // The pooled optimizer hands out IDs up to (value - allocationSize + 1), so leave a full block of headroom
+        if (maxId != null && nextValue != null && nextValue - Photo.ID_ALLOCATION_SIZE < maxId) {
+            long restartWith = maxId + Photo.ID_ALLOCATION_SIZE + 1;
+            jdbcTemplate.execute("ALTER SEQUENCE photos_seq RESTART WITH " + restartWith);
+            log.info("Restarted photos_seq at {} to stay above existing photo IDs.", restartWith);
+        }
+    }
+
+    private String nextValueSql() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(product)
+                ? "SELECT nextval('photos_seq')"
+                : "SELECT NEXT VALUE FOR photos_seq"; // SQL standard syntax, used by H2
+    }
+}
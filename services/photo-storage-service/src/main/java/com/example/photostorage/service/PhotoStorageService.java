@@ -1,60 +1,586 @@
 package com.example.photostorage.service;
 
+import com.example.common.dto.BatchUploadItemResult;
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoPage;
+import com.example.common.dto.PhotoSummary;
 import com.example.common.dto.PhotoUploadRequest; // Import the shared DTO
+import com.example.common.dto.SimilarPhoto;
+import com.example.common.dto.StorageStats;
+import com.example.common.image.ImageHeaderSniffer;
+import com.example.common.image.ImageInfo;
+import com.example.photostorage.config.PhotoStorageProperties;
 import com.example.photostorage.entity.Photo;
+import com.example.photostorage.event.PhotoDeletedEvent;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.journal.JournaledPhotoWriter;
+import com.example.photostorage.metrics.StorageMetrics;
 import com.example.photostorage.repository.PhotoRepository;
+import com.example.photostorage.search.HammingIndex;
+import com.example.photostorage.search.PhotoSearchIndex;
+import com.example.photostorage.search.SimilarPhotoIndex;
+import com.example.photostorage.stats.StorageStatistics;
+import com.example.photostorage.service.ContentDeduplicationService.StoredContent;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.StagedBlob;
+import com.example.photostorage.util.PhotoCursor;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional; // Import for transactional control
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service class responsible for the business logic of storing photos.
- * It transforms incoming DTOs into entities and interacts with the repository.
+ * It writes the image bytes to the BlobStore and the metadata to the database.
+ *
+ * Before anything is stored, the first bytes of every photo are sniffed ({@link ImageHeaderSniffer}):
+ * photos that are not a supported image or have too many pixels are rejected, the real format replaces
+ * the declared content type, and dimensions, orientation and capture time are stored with the metadata.
  */
 @Service // Marks this class as a Spring Service component
+@Slf4j
 public class PhotoStorageService {
 
     private final PhotoRepository photoRepository;
+    private final BlobStore blobStore;
+    private final ContentDeduplicationService deduplicationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageMetrics metrics;
+    private final JournaledPhotoWriter journal; // null unless photo-storage.journal.enabled=true
+    private final PhotoSearchIndex searchIndex;
+    private final SimilarPhotoIndex similarPhotoIndex;
+    private final StorageStatistics statistics;
+    private final int sniffSize;
+    private final long maxImagePixels;
 
-    // Spring will automatically inject an instance of PhotoRepository
-    public PhotoStorageService(PhotoRepository photoRepository) {
+    // Spring will automatically inject these dependencies
+    public PhotoStorageService(PhotoRepository photoRepository, BlobStore blobStore,
+                               ContentDeduplicationService deduplicationService,
+                               ApplicationEventPublisher eventPublisher, StorageMetrics metrics,
+                               Optional<JournaledPhotoWriter> journal, PhotoSearchIndex searchIndex,
+                               SimilarPhotoIndex similarPhotoIndex, StorageStatistics statistics,
+                               PhotoStorageProperties properties) {
         this.photoRepository = photoRepository;
+        this.blobStore = blobStore;
+        this.deduplicationService = deduplicationService;
+        this.eventPublisher = eventPublisher;
+        this.metrics = metrics;
+        this.journal = journal.orElse(null);
+        this.searchIndex = searchIndex;
+        this.similarPhotoIndex = similarPhotoIndex;
+        this.statistics = statistics;
+        this.sniffSize = (int) properties.getSniffSize().toBytes();
+        this.maxImagePixels = properties.getMaxImagePixels();
+    }
+
+    /**
+     * @return How many leading bytes of a photo {@link #inspectImage(byte[])} needs to see.
+     */
+    public int getSniffSize() {
+        return sniffSize;
+    }
+
+    /**
+     * Checks that the first bytes of a photo are those of a supported image that is not too large.
+     *
+     * @param header The first {@link #getSniffSize()} bytes of the photo (or all of it, if shorter).
+     * @return What the header tells about the image.
+     * @throws IllegalArgumentException if the photo is not a supported image, its header is malformed
+     * or it has too many pixels.
+     */
+    public ImageInfo inspectImage(byte[] header) {
+        ImageInfo image = ImageHeaderSniffer.sniff(header, Math.min(header.length, sniffSize))
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported image format; JPEG, PNG, GIF and WebP are accepted."));
+        if (image.pixelCount() > maxImagePixels) {
+            throw new IllegalArgumentException("Image is " + image.width() + "x" + image.height()
+                    + " pixels; at most " + maxImagePixels + " pixels are accepted.");
+        }
+        return image;
+    }
+
+    /**
+     * @return true if single-photo uploads are acknowledged from the write-ahead journal (see {@link JournaledPhotoWriter}).
+     * Their photo rows are then written later, so the Photo returned by {@link #storePhoto(PhotoMetadata, InputStream, long)}
+     * has no ID yet.
+     */
+    public boolean isJournaled() {
+        return journal != null;
     }
 
     /**
-     * Stores a photo in the database based on the provided PhotoUploadRequest.
-     * This method is transactional, ensuring data consistency.
+     * Stores a photo based on the provided PhotoUploadRequest.
      *
      * @param request The PhotoUploadRequest containing photo metadata and binary data.
      * @return The filename of the stored photo.
      * @throws RuntimeException if the photo cannot be stored.
      */
-    @Transactional // Ensures this method runs within a database transaction
     public String storePhoto(PhotoUploadRequest request) {
-        System.out.println("Storing photo: " + request.getFilename());
-
-        // 1. Convert DTO (PhotoUploadRequest) to Entity (Photo)
-        // Using Lombok's @Builder to create the Photo entity from the request data.
-        Photo photo = Photo.builder()
-                .filename(request.getFilename())
-                .contentType(request.getContentType())
-                .description(request.getDescription())
-                .imageData(request.getImageData())
-                // uploadTimestamp will be automatically set by @CreationTimestamp in the Photo entity
-                .build();
+        PhotoMetadata metadata = new PhotoMetadata(request.getFilename(), request.getContentType(), request.getDescription());
+        Photo savedPhoto = storePhoto(metadata, new ByteArrayInputStream(request.getImageData()), request.getImageData().length);
+        return savedPhoto.getFilename(); // Return the filename of the successfully stored photo
+    }
 
-        // 2. Save the Photo entity using the repository
+    /**
+     * Stores a photo whose bytes arrive as a stream (see the /stream endpoint).
+     * The bytes are written to the BlobStore first and only then is the metadata row inserted,
+     * so a database connection is held for the insert only, not for the whole upload.
+     * Identical content is stored once: a re-upload of the same bytes only adds a metadata row.
+     * This method is intentionally not @Transactional for the same reason; the insert itself
+     * runs in the repository's own transaction.
+     *
+     * Only the first {@link #getSniffSize()} bytes are read before the photo is accepted or rejected
+     * (see {@link #inspectImage(byte[])}).
+     *
+     * With the journal enabled ({@link #isJournaled()}) there is no insert here at all: the photo is appended to
+     * the write-ahead journal and its row is written later, in a batch, by the {@link JournaledPhotoWriter}.
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param imageData The image bytes; read until exhausted.
+     * @param contentLength The size of the image in bytes as announced by the client.
+     * @return The stored Photo; not saved yet (no ID) if the journal is enabled.
+     * @throws IllegalArgumentException if the photo is not an acceptable image.
+     * @throws RuntimeException if the photo cannot be stored.
+     */
+    public Photo storePhoto(PhotoMetadata metadata, InputStream imageData, long contentLength) {
+        log.debug("Storing photo: {}", metadata.getFilename());
+        LongTaskTimer.Sample write = metrics.startWrite();
         try {
-            Photo savedPhoto = photoRepository.save(photo);
-            System.out.println("Photo saved to DB with ID: " + savedPhoto.getId());
-            return savedPhoto.getFilename(); // Return the filename of the successfully stored photo
+            // 1. Sniff the header; nothing is stored for a photo that is rejected here
+            Timer.Sample sniff = metrics.startStage();
+            byte[] header;
+            ImageInfo image;
+            try {
+                header = ImageHeaderSniffer.readHeader(imageData, sniffSize);
+                image = inspectImage(header);
+            } catch (IOException | IllegalArgumentException e) {
+                metrics.recordError(StorageMetrics.STAGE_SNIFF, e);
+                if (e instanceof IllegalArgumentException invalid) {
+                    throw invalid;
+                }
+                throw new RuntimeException("Failed to read photo bytes: " + metadata.getFilename(), e);
+            }
+            metrics.stopStage(sniff, StorageMetrics.STAGE_SNIFF, StorageMetrics.OPERATION_SINGLE);
+            metadata = withSniffedContentType(metadata, image);
+
+            // 2. Write the bytes (the sniffed header, then the rest) to the blob store,
+            // or reference the existing copy of identical content
+            InputStream wholeImage = new SequenceInputStream(new ByteArrayInputStream(header), imageData);
+            StoredContent content;
+            Timer.Sample blobWrite = metrics.startStage();
+            try {
+                // Journaled content is pinned instead of referenced: its reference is added when the row is flushed
+                content = journal != null ? deduplicationService.storePinned(wholeImage) : deduplicationService.store(wholeImage);
+            } catch (IOException e) {
+                log.warn("Error writing photo to blob store: {}", e.getMessage());
+                metrics.recordError(StorageMetrics.STAGE_BLOB_WRITE, e);
+                throw new RuntimeException("Failed to store photo bytes: " + metadata.getFilename(), e);
+            }
+            metrics.stopStage(blobWrite, StorageMetrics.STAGE_BLOB_WRITE, StorageMetrics.OPERATION_SINGLE);
+            String blobKey = content.contentHash();
+            long size = content.size();
+            if (size != contentLength) {
+                if (journal != null) {
+                    deduplicationService.abandonPinned(blobKey);
+                } else {
+                    deduplicationService.release(blobKey);
+                }
+                throw new RuntimeException("Failed to store photo " + metadata.getFilename()
+                        + ": expected " + contentLength + " bytes but received " + size);
+            }
+            metrics.recordPayloadSize(StorageMetrics.OPERATION_SINGLE, size);
+            return journal != null
+                    ? journalPhoto(metadata, image, content)
+                    : savePhoto(metadata, image, content, StorageMetrics.OPERATION_SINGLE);
+        } finally {
+            write.stop();
+        }
+    }
+
+    /**
+     * Stores a photo whose bytes have already been received and staged in the BlobStore,
+     * e.g. the assembled file of a resumable upload session.
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param staged The staged image bytes. They are committed or discarded by this call.
+     * @return The stored Photo.
+     * @throws IllegalArgumentException if the photo is not an acceptable image.
+     * @throws RuntimeException if the photo cannot be stored.
+     */
+    public Photo storePhoto(PhotoMetadata metadata, StagedBlob staged) {
+        log.debug("Storing assembled photo: {}", metadata.getFilename());
+        LongTaskTimer.Sample write = metrics.startWrite();
+        try {
+            Timer.Sample sniff = metrics.startStage();
+            ImageInfo image;
+            try (InputStream input = staged.openStream()) {
+                image = inspectImage(ImageHeaderSniffer.readHeader(input, sniffSize));
+            } catch (IOException | IllegalArgumentException e) {
+                metrics.recordError(StorageMetrics.STAGE_SNIFF, e);
+                blobStore.discard(staged);
+                if (e instanceof IllegalArgumentException invalid) {
+                    throw invalid;
+                }
+                throw new RuntimeException("Failed to read photo bytes: " + metadata.getFilename(), e);
+            }
+            metrics.stopStage(sniff, StorageMetrics.STAGE_SNIFF, StorageMetrics.OPERATION_SESSION);
+            metadata = withSniffedContentType(metadata, image);
+
+            StoredContent content;
+            Timer.Sample blobWrite = metrics.startStage();
+            try {
+                content = deduplicationService.register(staged);
+            } catch (IOException e) {
+                log.warn("Error writing photo to blob store: {}", e.getMessage());
+                metrics.recordError(StorageMetrics.STAGE_BLOB_WRITE, e);
+                throw new RuntimeException("Failed to store photo bytes: " + metadata.getFilename(), e);
+            }
+            metrics.stopStage(blobWrite, StorageMetrics.STAGE_BLOB_WRITE, StorageMetrics.OPERATION_SESSION);
+            metrics.recordPayloadSize(StorageMetrics.OPERATION_SESSION, content.size());
+            return savePhoto(metadata, image, content, StorageMetrics.OPERATION_SESSION);
+        } finally {
+            write.stop();
+        }
+    }
+
+    /**
+     * Appends a photo whose content is pinned in the BlobStore to the write-ahead journal and waits for the fsync.
+     * The returned Photo is not saved; the JournaledPhotoWriter inserts its row and announces it later.
+     */
+    private Photo journalPhoto(PhotoMetadata metadata, ImageInfo image, StoredContent content) {
+        Timer.Sample journalAppend = metrics.startStage();
+        try {
+            journal.append(metadata, image, content);
+        } catch (RuntimeException e) {
+            metrics.recordError(StorageMetrics.STAGE_JOURNAL_APPEND, e);
+            throw e;
+        }
+        metrics.stopStage(journalAppend, StorageMetrics.STAGE_JOURNAL_APPEND, StorageMetrics.OPERATION_SINGLE);
+        log.debug("Photo {} journaled, blob key: {}{}", metadata.getFilename(), content.contentHash(), (content.duplicate() ? " (duplicate content)" : ""));
+        return toPhoto(metadata, image, content.contentHash(), content.size());
+    }
+
+    /**
+     * Inserts the metadata row for content that is already in the BlobStore and announces the new photo.
+     * If the insert fails, the reference to the content is dropped again.
+     */
+    private Photo savePhoto(PhotoMetadata metadata, ImageInfo image, StoredContent content, String operation) {
+        String blobKey = content.contentHash();
+
+        // 3. Convert DTO (PhotoMetadata) to Entity (Photo)
+        Photo photo = toPhoto(metadata, image, blobKey, content.size());
+
+        // 4. Save the Photo entity using the repository
+        Photo savedPhoto;
+        Timer.Sample dbWrite = metrics.startStage();
+        try {
+            savedPhoto = photoRepository.save(photo);
+            metrics.stopStage(dbWrite, StorageMetrics.STAGE_DB_WRITE, operation);
+            log.debug("Photo saved to DB with ID: {}, blob key: {}{}", savedPhoto.getId(), blobKey, (content.duplicate() ? " (duplicate content)" : ""));
         } catch (Exception e) {
-            // Log the error and re-throw a more specific exception if needed,
-            // or a generic runtime exception.
-            System.err.println("Error saving photo to database: " + e.getMessage());
-            throw new RuntimeException("Failed to store photo in database: " + request.getFilename(), e);
+            // The row was not written, so drop the reference it would have held.
+            log.warn("Error saving photo to database: {}", e.getMessage());
+            metrics.recordError(StorageMetrics.STAGE_DB_WRITE, e);
+            deduplicationService.release(blobKey);
+            throw new RuntimeException("Failed to store photo in database: " + metadata.getFilename(), e);
+        }
+
+        // 5. Let background work (e.g. thumbnail generation) pick the photo up
+        eventPublisher.publishEvent(new PhotoStoredEvent(savedPhoto));
+        return savedPhoto;
+    }
+
+    /**
+     * Builds the (unsaved) Photo entity from the request metadata and the sniffed image header.
+     * Using Lombok's @Builder; uploadTimestamp is set automatically when it is inserted (see Photo).
+     */
+    public static Photo toPhoto(PhotoMetadata metadata, ImageInfo image, String blobKey, long size) {
+        return Photo.builder()
+                .filename(metadata.getFilename())
+                .contentType(metadata.getContentType())
+                .description(metadata.getDescription())
+                .blobKey(blobKey)
+                .sizeBytes(size)
+                .width(image != null ? image.width() : null)
+                .height(image != null ? image.height() : null)
+                .orientation(image != null ? image.orientation() : null)
+                .captureTimestamp(image != null ? image.captureTime() : null)
+                .build();
+    }
+
+    /**
+     * Checks that the metadata fits the photo columns, for paths that write the row long after accepting the photo
+     * (journal, archive import), where a too long value would only fail then.
+     *
+     * @throws IllegalArgumentException if the filename or content type is missing, or a value is too long.
+     */
+    public static void checkColumnLengths(PhotoMetadata metadata) {
+        if (metadata.getFilename() == null || metadata.getFilename().length() > Photo.MAX_FILENAME_LENGTH) {
+            throw new IllegalArgumentException("Filename must be 1 to " + Photo.MAX_FILENAME_LENGTH + " characters.");
+        }
+        if (metadata.getContentType() == null || metadata.getContentType().length() > Photo.MAX_CONTENT_TYPE_LENGTH) {
+            throw new IllegalArgumentException("Content type must be 1 to " + Photo.MAX_CONTENT_TYPE_LENGTH + " characters.");
+        }
+        if (metadata.getDescription() != null && metadata.getDescription().length() > Photo.MAX_DESCRIPTION_LENGTH) {
+            throw new IllegalArgumentException("Description must be at most " + Photo.MAX_DESCRIPTION_LENGTH + " characters.");
         }
     }
 
-    // You could add other methods here for retrieving photos, deleting photos, etc.
-    // e.g., public Photo getPhotoById(Long id) { return photoRepository.findById(id).orElse(null); }
-}
\ No newline at end of file
+    /**
+     * @return The metadata with the content type of the sniffed format instead of the declared one.
+     */
+    static PhotoMetadata withSniffedContentType(PhotoMetadata metadata, ImageInfo image) {
+        String sniffed = image.format().getMimeType();
+        if (!sniffed.equalsIgnoreCase(metadata.getContentType())) {
+            log.debug("Photo {} was declared as {} but is {}", metadata.getFilename(), metadata.getContentType(), sniffed);
+        }
+        return new PhotoMetadata(metadata.getFilename(), sniffed, metadata.getDescription());
+    }
+
+    /**
+     * Stores many photos at once. The bytes of each photo are written to the BlobStore one after another;
+     * all metadata rows are then inserted in a single transaction, which Hibernate sends as JDBC batches
+     * (IDs come from a pooled sequence, see {@link Photo#ID_ALLOCATION_SIZE}).
+     *
+     * A photo that is not an acceptable image or whose bytes cannot be stored fails on its own;
+     * if the final insert fails, every photo that reached it fails. The result list has one entry per input photo, in input order.
+     *
+     * @param photos The photos to store.
+     * @return The outcome of each photo.
+     */
+    public List<BatchUploadItemResult> storePhotos(List<BatchPhoto> photos) {
+        BatchUploadItemResult[] results = new BatchUploadItemResult[photos.size()];
+        List<Photo> pending = new ArrayList<>();
+        List<Integer> pendingIndexes = new ArrayList<>();
+
+        LongTaskTimer.Sample write = metrics.startWrite();
+        try {
+            // 1. Sniff each photo and write its bytes (deduplicated) to the blob store; no database transaction is open meanwhile
+            for (int i = 0; i < photos.size(); i++) {
+                BatchPhoto batchPhoto = photos.get(i);
+                PhotoMetadata metadata = batchPhoto.metadata();
+                ImageInfo image;
+                StoredContent content;
+                try (InputStream imageData = batchPhoto.content().getInputStream()) {
+                    Timer.Sample sniff = metrics.startStage();
+                    byte[] header = ImageHeaderSniffer.readHeader(imageData, sniffSize);
+                    try {
+                        image = inspectImage(header);
+                    } catch (IllegalArgumentException e) {
+                        metrics.recordError(StorageMetrics.STAGE_SNIFF, e);
+                        results[i] = BatchUploadItemResult.failed(i, metadata.getFilename(), e.getMessage());
+                        continue;
+                    }
+                    metrics.stopStage(sniff, StorageMetrics.STAGE_SNIFF, StorageMetrics.OPERATION_BATCH);
+                    metadata = withSniffedContentType(metadata, image);
+
+                    Timer.Sample blobWrite = metrics.startStage();
+                    content = deduplicationService.store(new SequenceInputStream(new ByteArrayInputStream(header), imageData));
+                    metrics.stopStage(blobWrite, StorageMetrics.STAGE_BLOB_WRITE, StorageMetrics.OPERATION_BATCH);
+                } catch (IOException e) {
+                    log.warn("Error writing batch photo {} to blob store: {}", metadata.getFilename(), e.getMessage());
+                    metrics.recordError(StorageMetrics.STAGE_BLOB_WRITE, e);
+                    results[i] = BatchUploadItemResult.failed(i, metadata.getFilename(), "Failed to store photo bytes: " + e.getMessage());
+                    continue;
+                }
+                metrics.recordPayloadSize(StorageMetrics.OPERATION_BATCH, content.size());
+                pending.add(toPhoto(metadata, image, content.contentHash(), content.size()));
+                pendingIndexes.add(i);
+            }
+
+            // 2. Insert all rows in one transaction, batched by Hibernate
+            if (!pending.isEmpty()) {
+                Timer.Sample dbWrite = metrics.startStage();
+                try {
+                    List<Photo> saved = photoRepository.saveAll(pending);
+                    metrics.stopStage(dbWrite, StorageMetrics.STAGE_DB_WRITE, StorageMetrics.OPERATION_BATCH);
+                    for (int j = 0; j < saved.size(); j++) {
+                        int index = pendingIndexes.get(j);
+                        results[index] = BatchUploadItemResult.stored(index, saved.get(j).getFilename(), saved.get(j).getId());
+                    }
+                    log.debug("Batch of {} photos saved to DB.", saved.size());
+                    saved.forEach(photo -> eventPublisher.publishEvent(new PhotoStoredEvent(photo)));
+                } catch (Exception e) {
+                    log.warn("Error saving photo batch to database: {}", e.getMessage());
+                    metrics.recordError(StorageMetrics.STAGE_DB_WRITE, e);
+                    for (int j = 0; j < pending.size(); j++) {
+                        int index = pendingIndexes.get(j);
+                        deduplicationService.release(pending.get(j).getBlobKey());
+                        results[index] = BatchUploadItemResult.failed(index, pending.get(j).getFilename(),
+                                "Failed to store photo in database: " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            write.stop();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Looks up the metadata of a stored photo. The image bytes are not loaded.
+     *
+     * @param id The ID of the photo.
+     * @return The photo, or empty if no photo with that ID exists.
+     */
+    public Optional<Photo> findPhoto(Long id) {
+        return photoRepository.findById(id);
+    }
+
+    /**
+     * Lists the metadata of stored photos, newest first, one page at a time.
+     * Each page is a single index range scan that starts where the previous page ended (see
+     * {@link com.example.photostorage.repository.PhotoRepositoryCustom#findSummaries}), so walking the whole
+     * collection takes constant memory and every page costs about the same.
+     *
+     * @param contentType Only photos of this content type, or null for all.
+     * @param from Only photos uploaded at or after this time, or null.
+     * @param to Only photos uploaded before this time, or null.
+     * @param capturedFrom Only photos captured (EXIF) at or after this time, or null.
+     * @param capturedTo Only photos captured before this time, or null.
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     * @param limit Maximum number of photos on the page.
+     * @return The page, with a cursor for the next one if there may be more photos.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public PhotoPage listPhotos(String contentType, LocalDateTime from, LocalDateTime to,
+                                LocalDateTime capturedFrom, LocalDateTime capturedTo, String cursor, int limit) {
+        PhotoCursor after = cursor != null ? PhotoCursor.decode(cursor) : null;
+        // Ask for one extra row: if it exists there is a next page, and it is not returned on this one
+        List<PhotoSummary> items = photoRepository.findSummaries(contentType, from, to, capturedFrom, capturedTo,
+                after != null ? after.uploadTimestamp() : null,
+                after != null ? after.id() : null,
+                limit + 1);
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            PhotoSummary last = items.get(limit - 1);
+            nextCursor = new PhotoCursor(last.getUploadTimestamp(), last.getId()).encode();
+        }
+        return new PhotoPage(items, nextCursor);
+    }
+
+    /**
+     * Searches the filenames and descriptions of all photos, newest first, one page at a time.
+     * Matching is done by the in-memory {@link PhotoSearchIndex}; only the photos of the page are read from the database.
+     *
+     * @param query Free text; every word must start a word of the filename or description.
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     * @param limit Maximum number of photos on the page.
+     * @return The page, with a cursor for the next one if there may be more photos.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     * @throws IllegalStateException if the search index is not available (yet).
+     */
+    public PhotoPage searchPhotos(String query, String cursor, int limit) {
+        Long beforeId = null;
+        if (cursor != null) {
+            try {
+                beforeId = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        List<Long> ids = searchIndex.search(query, beforeId, limit + 1);
+        String nextCursor = null;
+        if (ids.size() > limit) {
+            ids = ids.subList(0, limit);
+            nextCursor = String.valueOf(ids.get(limit - 1));
+        }
+        // Put the rows back in the order of the hits; a photo deleted since it was matched is left out
+        Map<Long, PhotoSummary> summaries = photoRepository.findSummariesByIds(ids).stream()
+                .collect(Collectors.toMap(PhotoSummary::getId, Function.identity()));
+        List<PhotoSummary> items = ids.stream().map(summaries::get).filter(summary -> summary != null).toList();
+        return new PhotoPage(items, nextCursor);
+    }
+
+    /**
+     * Finds the photos that look like the given one: the same picture re-saved, resized or re-compressed.
+     * Matching is done by the in-memory {@link SimilarPhotoIndex}; only the matching photos are read from the database.
+     *
+     * @param photo The photo to compare with.
+     * @param maxDistance Largest Hamming distance between perceptual hashes, 0 to {@link HammingIndex#MAX_DISTANCE}.
+     * @param limit Maximum number of photos to return.
+     * @return The matching photos, closest first, or empty if the photo cannot be decoded and so not compared.
+     * @throws IllegalArgumentException if maxDistance is out of range.
+     * @throws IllegalStateException if the similarity index is not available (yet).
+     */
+    public Optional<List<SimilarPhoto>> findSimilarPhotos(Photo photo, int maxDistance, int limit) {
+        Optional<List<HammingIndex.Match>> matches = similarPhotoIndex.findSimilar(photo, maxDistance, limit);
+        if (matches.isEmpty()) {
+            return Optional.empty();
+        }
+        // Put the rows back in the order of the matches; a photo deleted since it was matched is left out
+        List<Long> ids = matches.get().stream().map(match -> (long) match.id()).toList();
+        Map<Long, PhotoSummary> summaries = photoRepository.findSummariesByIds(ids).stream()
+                .collect(Collectors.toMap(PhotoSummary::getId, Function.identity()));
+        return Optional.of(matches.get().stream()
+                .filter(match -> summaries.containsKey((long) match.id()))
+                .map(match -> new SimilarPhoto(summaries.get((long) match.id()), match.distance()))
+                .toList());
+    }
+
+    /**
+     * Returns how many photos are stored and how large they are: in total, per content type and per upload day.
+     * Answered from the running totals of {@link StorageStatistics}; no photo rows are read.
+     *
+     * @param from First upload day to report per day.
+     * @param to Last upload day to report per day.
+     * @return The statistics.
+     * @throws IllegalStateException if the statistics are not available (yet).
+     */
+    public StorageStats getStorageStats(LocalDate from, LocalDate to) {
+        return statistics.getStats(from, to);
+    }
+
+    /**
+     * @return The BlobStore holding the image bytes, for callers that stream them to a client.
+     */
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Deletes a photo. Its content is deleted too once no other photo references it.
+     * Of concurrent deletes of the same photo only the one that actually removes the row releases the content
+     * and publishes the event, so the content's reference count drops once.
+     *
+     * @param id The ID of the photo.
+     * @return true if the photo existed and was deleted by this call.
+     */
+    public boolean deletePhoto(Long id) {
+        Optional<Photo> photo = photoRepository.findById(id);
+        if (photo.isEmpty() || photoRepository.deleteRow(id) == 0) {
+            return false;
+        }
+        if (photo.get().getBlobKey() != null) {
+            deduplicationService.release(photo.get().getBlobKey());
+        }
+        eventPublisher.publishEvent(new PhotoDeletedEvent(photo.get()));
+        log.debug("Deleted photo with ID: {}", id);
+        return true;
+    }
+
+    /**
+     * One photo of a batch: its metadata plus a source that can be opened to read its bytes.
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param content The image bytes, e.g. a multipart file spooled to disk by the servlet container.
+     */
+    public record BatchPhoto(PhotoMetadata metadata, InputStreamSource content) {
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.photostorage.service;
+
+import com.example.common.util.ImageUtil;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.event.ContentDeletedEvent;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.FileRegion;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that generates and serves resized copies (derivatives) of stored photos,
+ * so gallery views never have to download full-resolution originals.
+ *
+ * After each upload the configured sizes are generated on a bounded worker pool
+ * (one thread per core by default). The original is decoded once with source subsampling,
+ * just large enough for the biggest missing size, and then scaled down step by step for the smaller ones.
+ *
+ * Derivatives are stored in the BlobStore under a key derived from the content hash and size,
+ * e.g. {@code <sha256>.w512.jpg}. Generation is therefore idempotent (an existing key is skipped)
+ * and duplicate uploads share their derivatives just like they share the original.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    private final BlobStore blobStore;
+    private final PhotoStorageProperties.DerivativeSettings settings;
+    private final ThreadPoolExecutor executor;
+
+    public ThumbnailService(BlobStore blobStore, PhotoStorageProperties properties) {
+        this.blobStore = blobStore;
+        this.settings = properties.getDerivatives();
+        int threads = settings.getWorkerThreads() > 0 ? settings.getWorkerThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("ThumbnailService initialized with {} workers, sizes {}", threads, settings.getSizes());
+    }
+
+    /**
+     * Queues derivative generation for a freshly stored photo.
+     * If the queue is full the photo is skipped; its derivatives are then created on first request.
+     */
+    @EventListener
+    public void onPhotoStored(PhotoStoredEvent event) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Photo photo = event.photo();
+        try {
+            executor.execute(() -> generateMissing(photo.getBlobKey(), photo.getContentType()));
+        } catch (RejectedExecutionException e) {
+            log.warn("Derivative queue full; thumbnails of photo {} will be generated on demand.", photo.getId());
+        }
+    }
+
+    /**
+     * Removes the derivatives of content that has just been deleted.
+     */
+    @EventListener
+    public void onContentDeleted(ContentDeletedEvent event) {
+        for (int size : settings.getSizes()) {
+            for (String extension : List.of("jpg", "png")) {
+                try {
+                    blobStore.delete(event.contentHash() + ".w" + size + "." + extension);
+                } catch (IOException e) {
+                    log.warn("Could not delete derivative of {}: {}", event.contentHash(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param size A requested derivative size.
+     * @return true if the size is one of the configured derivative sizes.
+     */
+    public boolean isSupportedSize(int size) {
+        return settings.getSizes().contains(size);
+    }
+
+    /**
+     * Returns the BlobStore key of a photo's derivative, generating it first if needed.
+     *
+     * @param photo The photo.
+     * @param size One of the configured derivative sizes.
+     * @return The derivative's BlobStore key, or empty if the photo cannot be decoded as an image.
+     * @throws RejectedExecutionException if the worker pool is saturated.
+     * @throws TimeoutException if generation takes longer than the configured on-demand timeout.
+     */
+    public Optional<String> getOrCreateThumbnail(Photo photo, int size) throws TimeoutException {
+        String key = derivativeKey(photo.getBlobKey(), photo.getContentType(), size);
+        if (blobStore.exists(key)) {
+            return Optional.of(key);
+        }
+        Future<?> generation = executor.submit(() -> generateMissing(photo.getBlobKey(), photo.getContentType()));
+        try {
+            generation.get(settings.getOnDemandTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating thumbnail", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Thumbnail generation failed", e.getCause());
+        }
+        return blobStore.exists(key) ? Optional.of(key) : Optional.empty();
+    }
+
+    /**
+     * @param contentType The content type of the original photo.
+     * @return The content type of its derivatives: PNG for formats that may carry transparency, JPEG otherwise.
+     */
+    public String derivativeContentType(String contentType) {
+        return keepsTransparency(contentType) ? "image/png" : "image/jpeg";
+    }
+
+    private String derivativeKey(String blobKey, String contentType, int size) {
+        return blobKey + ".w" + size + (keepsTransparency(contentType) ? ".png" : ".jpg");
+    }
+
+    private static boolean keepsTransparency(String contentType) {
+        return contentType != null && (contentType.startsWith("image/png") || contentType.startsWith("image/gif"));
+    }
+
+    /**
+     * Generates every configured derivative of the given content that does not exist yet.
+     * Runs on a worker thread.
+     */
+    private void generateMissing(String blobKey, String contentType) {
+        List<Integer> missing = settings.getSizes().stream()
+                .filter(size -> !blobStore.exists(derivativeKey(blobKey, contentType, size)))
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+        try {
+            // Decode once, just large enough for the biggest missing size, then scale down from there
+            BufferedImage current = decode(blobKey, missing.get(0));
+            boolean png = keepsTransparency(contentType);
+            for (int size : missing) {
+                current = ImageUtil.resizeImage(current, size);
+                BufferedImage output = png ? current : withoutAlpha(current);
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                ImageUtil.writeImage(output, png ? "png" : "jpeg", encoded);
+                blobStore.put(derivativeKey(blobKey, contentType, size), new ByteArrayInputStream(encoded.toByteArray()));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate derivatives of blob {}: {}", blobKey, e.getMessage());
+        }
+    }
+
+    private BufferedImage decode(String blobKey, int minLongSide) throws IOException {
+        Optional<FileRegion> region = blobStore.locate(blobKey);
+        if (region.isPresent() && region.get().position() == 0) {
+            // Random access straight on the file, no stream caching
+            try (ImageInputStream input = new FileImageInputStream(region.get().path().toFile())) {
+                return ImageUtil.readSubsampled(input, minLongSide);
+            }
+        }
+        try (InputStream in = blobStore.open(blobKey);
+             ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            return ImageUtil.readSubsampled(input, minLongSide);
+        }
+    }
+
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        // JPEG cannot store transparency; flatten onto white
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
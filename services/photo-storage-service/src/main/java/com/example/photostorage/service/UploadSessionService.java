@@ -0,0 +1,425 @@
+package com.example.photostorage.service;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.UploadSessionRequest;
+import com.example.common.dto.UploadSessionStatus;
+import com.example.common.image.ImageHeaderSniffer;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.entity.UploadSession;
+import com.example.photostorage.metrics.StorageMetrics;
+import com.example.photostorage.repository.UploadSessionRepository;
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.ContentHash;
+import com.example.photostorage.storage.FsyncPolicy;
+import com.example.photostorage.storage.StagedBlob;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Service behind resumable uploads: open a session, send numbered chunks (each with its own SHA-256)
+ * in any order and as often as needed, query which chunks have arrived, then commit.
+ *
+ * Each session owns a file under the uploads directory, preallocated to the full photo size.
+ * Chunks are written straight from the request stream to their position in that file, so nothing is
+ * buffered beyond a small copy buffer and a dropped connection only costs the chunk in flight.
+ * On commit the file is handed to the BlobStore as-is (hashed once, then moved) and stored like any other photo.
+ * Sessions that see no activity for the configured TTL are discarded by a background sweeper.
+ *
+ * Chunk writes of one session run in parallel under a shared lock (they touch disjoint regions of the file);
+ * commit, abort and expiry take the lock exclusively, so the file never moves while a chunk is being written.
+ * Like the deduplication locks, these are per process, which matches the per-node uploads directory.
+ */
+@Service
+@Slf4j
+public class UploadSessionService {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository sessionRepository;
+    private final PhotoStorageService photoStorageService;
+    private final BlobStore blobStore;
+    private final PhotoStorageProperties.UploadSettings settings;
+    private final FsyncPolicy fsyncPolicy;
+    private final Path directory;
+    private final StorageMetrics metrics;
+    private final ReentrantReadWriteLock[] fileLocks = new ReentrantReadWriteLock[LOCK_STRIPES];
+    private final ReentrantLock[] stateLocks = new ReentrantLock[LOCK_STRIPES]; // Guard the received-chunks bitmap
+
+    public UploadSessionService(UploadSessionRepository sessionRepository, PhotoStorageService photoStorageService,
+                                BlobStore blobStore, PhotoStorageProperties properties, StorageMetrics metrics) {
+        this.sessionRepository = sessionRepository;
+        this.photoStorageService = photoStorageService;
+        this.blobStore = blobStore;
+        this.settings = properties.getUploads();
+        this.fsyncPolicy = properties.getBlobStore().getFsyncPolicy();
+        this.directory = Paths.get(settings.getDirectory()).toAbsolutePath();
+        this.metrics = metrics;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            fileLocks[i] = new ReentrantReadWriteLock();
+            stateLocks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create upload session directory " + directory, e);
+        }
+        log.info("UploadSessionService initialized. Sessions are assembled in {}", directory);
+    }
+
+    /**
+     * Opens a resumable upload session and preallocates the file its chunks are written into.
+     *
+     * @param request The photo's metadata, its total size and optionally the chunk size the client wants.
+     * @return The status of the new (empty) session, including the chunk size actually used.
+     * @throws IllegalArgumentException if the request is invalid or the photo too large.
+     */
+    public UploadSessionStatus open(UploadSessionRequest request) {
+        if (request.getFilename() == null || request.getFilename().trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be empty.");
+        }
+        if (request.getContentType() == null || request.getContentType().trim().isEmpty()) {
+            throw new IllegalArgumentException("Content type cannot be empty.");
+        }
+        if (request.getTotalSize() <= 0 || request.getTotalSize() > settings.getMaxTotalSize().toBytes()) {
+            throw new IllegalArgumentException("Total size must be between 1 byte and " + settings.getMaxTotalSize() + ".");
+        }
+        long chunkSize = request.getChunkSize() != null ? request.getChunkSize() : settings.getDefaultChunkSize().toBytes();
+        if (chunkSize < settings.getMinChunkSize().toBytes() || chunkSize > settings.getMaxChunkSize().toBytes()) {
+            throw new IllegalArgumentException("Chunk size must be between " + settings.getMinChunkSize()
+                    + " and " + settings.getMaxChunkSize() + ".");
+        }
+        long chunkCount = (request.getTotalSize() + chunkSize - 1) / chunkSize;
+        if (chunkCount > UploadSession.MAX_CHUNK_COUNT) {
+            throw new IllegalArgumentException("Too many chunks (" + chunkCount + "); use a larger chunk size.");
+        }
+
+        UploadSession session = sessionRepository.save(UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .filename(request.getFilename())
+                .contentType(request.getContentType())
+                .description(request.getDescription())
+                .totalSize(request.getTotalSize())
+                .chunkSize(chunkSize)
+                .chunkCount((int) chunkCount)
+                .receivedChunks(new byte[0])
+                .receivedBytes(0)
+                .state(UploadSession.State.OPEN)
+                .expiresAt(LocalDateTime.now().plus(settings.getSessionTtl()))
+                .build());
+
+        // The row is written first: if the process dies before the file exists, the sweeper still cleans up
+        try (RandomAccessFile file = new RandomAccessFile(fileFor(session.getId()).toFile(), "rw")) {
+            file.setLength(session.getTotalSize()); // Sparse on most filesystems; chunks fill it in place
+        } catch (IOException e) {
+            sessionRepository.delete(session);
+            throw new RuntimeException("Failed to create upload session file for " + request.getFilename(), e);
+        }
+        log.debug("Opened upload session {} for {}: {} bytes in {} chunks", session.getId(), session.getFilename(), session.getTotalSize(), session.getChunkCount());
+        return toStatus(session);
+    }
+
+    /**
+     * @param sessionId The ID of the session.
+     * @return The session's progress, or empty if no such session exists (or it has expired).
+     */
+    public Optional<UploadSessionStatus> getStatus(String sessionId) {
+        return sessionRepository.findById(sessionId).map(UploadSessionService::toStatus);
+    }
+
+    /**
+     * Writes one chunk to its place in the session file and records it as received if its checksum matches.
+     * Sending a chunk again simply overwrites it, so clients can retry any chunk whose response they did not see.
+     *
+     * @param sessionId The ID of the session.
+     * @param index The chunk index, starting at 0.
+     * @param data The chunk bytes; exactly {@code length} bytes are read.
+     * @param length The Content-Length of the chunk.
+     * @param expectedSha256 Hex SHA-256 of the chunk as computed by the client.
+     * @return The session's progress after this chunk, or empty if no such session exists.
+     * @throws IllegalArgumentException if the index or length is wrong, the checksum does not match,
+     * or the first chunk does not start with the header of an acceptable image.
+     * @throws IllegalStateException if the session has already been committed.
+     * @throws IOException if the chunk cannot be received (e.g. the client went away) or written.
+     */
+    public Optional<UploadSessionStatus> writeChunk(String sessionId, int index, InputStream data, long length,
+                                                    String expectedSha256) throws IOException {
+        ReentrantReadWriteLock lock = fileLockFor(sessionId);
+        lock.readLock().lock();
+        try {
+            Optional<UploadSession> found = sessionRepository.findById(sessionId);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            UploadSession session = found.get();
+            if (session.getState() != UploadSession.State.OPEN) {
+                throw new IllegalStateException("Upload session " + sessionId + " is already committed.");
+            }
+            if (index < 0 || index >= session.getChunkCount()) {
+                throw new IllegalArgumentException("Chunk index must be between 0 and " + (session.getChunkCount() - 1) + ".");
+            }
+            long expectedLength = session.chunkLength(index);
+            if (length != expectedLength) {
+                throw new IllegalArgumentException("Chunk " + index + " must be " + expectedLength + " bytes, got " + length + ".");
+            }
+
+            String actualSha256;
+            Timer.Sample chunkWrite = metrics.startStage();
+            try {
+                actualSha256 = writeAt(fileFor(sessionId), index * session.getChunkSize(), data, expectedLength);
+            } catch (IOException e) {
+                // Part of the region may have been overwritten, so the chunk no longer counts as received
+                markChunk(sessionId, index, false);
+                metrics.recordError(StorageMetrics.STAGE_CHUNK_WRITE, e);
+                throw e;
+            }
+            metrics.stopStage(chunkWrite, StorageMetrics.STAGE_CHUNK_WRITE, StorageMetrics.OPERATION_SESSION);
+            boolean intact = actualSha256.equalsIgnoreCase(expectedSha256.trim());
+            // The first chunk holds the image header: a session that is not an acceptable image is turned away
+            // now rather than after the client has sent every other chunk
+            String rejection = intact && index == 0 ? inspectFirstChunk(sessionId, expectedLength) : null;
+            UploadSession updated = markChunk(sessionId, index, intact && rejection == null);
+            if (!intact) {
+                throw new IllegalArgumentException("Checksum mismatch for chunk " + index + "; send it again.");
+            }
+            if (rejection != null) {
+                throw new IllegalArgumentException(rejection);
+            }
+            return Optional.of(toStatus(updated));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the assembled photo once every chunk has arrived. Committing a session twice returns the same photo,
+     * so a client that lost the response can safely repeat the call.
+     * The session file is handed to the BlobStore; if storing the photo then fails, the session is discarded.
+     *
+     * @param sessionId The ID of the session.
+     * @return The stored photo, or empty if no such session exists.
+     * @throws IllegalStateException if chunks are still missing.
+     * @throws RuntimeException if the photo cannot be stored.
+     */
+    public Optional<Photo> commit(String sessionId) {
+        ReentrantReadWriteLock lock = fileLockFor(sessionId);
+        lock.writeLock().lock();
+        try {
+            Optional<UploadSession> found = sessionRepository.findById(sessionId);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            UploadSession session = found.get();
+            if (session.getState() == UploadSession.State.COMMITTED) {
+                return Optional.of(photoStorageService.findPhoto(session.getPhotoId())
+                        .orElseThrow(() -> new IllegalStateException("Upload session " + sessionId
+                                + " was committed, but its photo has since been deleted.")));
+            }
+            int missing = session.received().nextClearBit(0);
+            if (missing < session.getChunkCount()) {
+                throw new IllegalStateException("Upload session " + sessionId + " is missing chunk " + missing + ".");
+            }
+
+            StagedBlob staged;
+            try {
+                staged = blobStore.stage(fileFor(sessionId)); // Takes over the file; no copy on the same filesystem
+            } catch (IOException e) {
+                sessionRepository.delete(session);
+                throw new RuntimeException("Failed to store photo bytes: " + session.getFilename(), e);
+            }
+            Photo photo;
+            try {
+                photo = photoStorageService.storePhoto(
+                        new PhotoMetadata(session.getFilename(), session.getContentType(), session.getDescription()), staged);
+            } catch (RuntimeException e) {
+                sessionRepository.delete(session);
+                throw e;
+            }
+
+            session.setState(UploadSession.State.COMMITTED);
+            session.setPhotoId(photo.getId());
+            session.setExpiresAt(LocalDateTime.now().plus(settings.getSessionTtl()));
+            sessionRepository.save(session);
+            log.debug("Committed upload session {} as photo {}", sessionId, photo.getId());
+            return Optional.of(photo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discards a session and whatever chunks it has received. Committed photos are not affected.
+     *
+     * @param sessionId The ID of the session.
+     * @return true if the session existed.
+     */
+    public boolean abort(String sessionId) {
+        ReentrantReadWriteLock lock = fileLockFor(sessionId);
+        lock.writeLock().lock();
+        try {
+            Optional<UploadSession> found = sessionRepository.findById(sessionId);
+            found.ifPresent(this::discard);
+            return found.isPresent();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discards sessions whose TTL has passed without activity: abandoned uploads free their disk space,
+     * and committed sessions stop answering repeated commits.
+     */
+    @Scheduled(fixedDelayString = "${photo-storage.uploads.sweep-interval:15m}")
+    public void sweepExpiredSessions() {
+        List<UploadSession> expired = sessionRepository.findByExpiresAtBefore(LocalDateTime.now());
+        int discarded = 0;
+        for (UploadSession candidate : expired) {
+            ReentrantReadWriteLock lock = fileLockFor(candidate.getId());
+            lock.writeLock().lock();
+            try {
+                // Re-read under the lock: a chunk may have arrived since the query and extended the session
+                Optional<UploadSession> current = sessionRepository.findById(candidate.getId());
+                if (current.isPresent() && current.get().getExpiresAt().isBefore(LocalDateTime.now())) {
+                    discard(current.get());
+                    discarded++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (discarded > 0) {
+            log.info("Discarded {} expired upload sessions.", discarded);
+        }
+    }
+
+    private void discard(UploadSession session) {
+        try {
+            Files.deleteIfExists(fileFor(session.getId()));
+        } catch (IOException e) {
+            log.warn("Could not delete upload session file for {}: {}", session.getId(), e.getMessage());
+        }
+        sessionRepository.delete(session);
+    }
+
+    /**
+     * Sniffs the header at the start of the session file (see {@link PhotoStorageService#inspectImage}).
+     *
+     * @return Why the photo would be rejected, or null if it is acceptable.
+     */
+    private String inspectFirstChunk(String sessionId, long chunkLength) throws IOException {
+        try (InputStream input = Files.newInputStream(fileFor(sessionId))) {
+            int headerLength = (int) Math.min(chunkLength, photoStorageService.getSniffSize());
+            photoStorageService.inspectImage(ImageHeaderSniffer.readHeader(input, headerLength));
+            return null;
+        } catch (IllegalArgumentException e) {
+            return "Chunk 0 is not an acceptable image: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Records a chunk as received (or no longer received) and pushes the session's expiry forward.
+     */
+    private UploadSession markChunk(String sessionId, int index, boolean received) {
+        ReentrantLock lock = stateLockFor(sessionId);
+        lock.lock();
+        try {
+            UploadSession session = sessionRepository.findById(sessionId)
+                    .orElseThrow(() -> new IllegalStateException("Upload session " + sessionId + " disappeared."));
+            BitSet chunks = session.received();
+            if (received && !chunks.get(index)) {
+                chunks.set(index);
+                session.setReceivedBytes(session.getReceivedBytes() + session.chunkLength(index));
+            } else if (!received && chunks.get(index)) {
+                chunks.clear(index);
+                session.setReceivedBytes(session.getReceivedBytes() - session.chunkLength(index));
+            }
+            session.setReceived(chunks);
+            session.setExpiresAt(LocalDateTime.now().plus(settings.getSessionTtl()));
+            return sessionRepository.save(session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies exactly {@code length} bytes from the stream into the file at {@code position}, hashing them on the way.
+     *
+     * @return The hex SHA-256 of the bytes written.
+     * @throws EOFException if the stream ends early (e.g. the connection dropped).
+     */
+    private String writeAt(Path file, long position, InputStream data, long length) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            long written = 0;
+            while (written < length) {
+                int read = data.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+                if (read == -1) {
+                    throw new EOFException("Chunk ended after " + written + " of " + length + " bytes");
+                }
+                digest.update(buffer, 0, read);
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining()) {
+                    written += channel.write(wrapped, position + written);
+                }
+            }
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(true); // The chunk is acknowledged as received, so it must survive a crash
+            }
+        }
+        return ContentHash.toHex(digest);
+    }
+
+    private Path fileFor(String sessionId) {
+        return directory.resolve(sessionId + ".part");
+    }
+
+    private ReentrantReadWriteLock fileLockFor(String sessionId) {
+        return fileLocks[Math.floorMod(sessionId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private ReentrantLock stateLockFor(String sessionId) {
+        return stateLocks[Math.floorMod(sessionId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static UploadSessionStatus toStatus(UploadSession session) {
+        int nextMissing = session.received().nextClearBit(0);
+        boolean complete = nextMissing >= session.getChunkCount();
+        return UploadSessionStatus.builder()
+                .sessionId(session.getId())
+                .filename(session.getFilename())
+                .state(session.getState().name())
+                .totalSize(session.getTotalSize())
+                .chunkSize(session.getChunkSize())
+                .chunkCount(session.getChunkCount())
+                .receivedBytes(session.getReceivedBytes())
+                .receivedOffset(complete ? session.getTotalSize() : nextMissing * session.getChunkSize())
+                .nextMissingChunk(complete ? null : nextMissing)
+                .photoId(session.getPhotoId())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+}
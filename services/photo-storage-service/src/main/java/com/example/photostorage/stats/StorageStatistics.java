@@ -0,0 +1,360 @@
+package com.example.photostorage.stats;
+
+import com.example.common.dto.StorageStats;
+import com.example.photostorage.config.PhotoStorageProperties;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.entity.StorageStatsCheckpoint;
+import com.example.photostorage.event.PhotoDeletedEvent;
+import com.example.photostorage.event.PhotoStoredEvent;
+import com.example.photostorage.repository.StorageStatsCheckpointRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the stored photos (count, total size and a size histogram) per content type and per upload day,
+ * so GET /api/v1/photos/stats is answered from memory instead of by aggregating the photos table.
+ *
+ * Every stored or deleted photo ({@link PhotoStoredEvent}, {@link PhotoDeletedEvent}) adds to or subtracts from
+ * three sets of {@link LongAdder}s: per (content type, day), per content type and per day. LongAdders spread
+ * concurrent updates over striped cells, so uploads on many threads do not contend on one counter, and the
+ * statistics are read by summing the cells.
+ *
+ * The totals per (content type, day, size bucket) are written to the storage_stats_checkpoints table every
+ * photo-storage.stats.checkpoint-interval and on shutdown, only for the days that changed. On startup they are read
+ * back, and the days since the last checkpoint (plus one, for changes around midnight) are recounted from the photos
+ * table, which only reads those days' rows through the upload-timestamp index. Without a checkpoint, or with
+ * photo-storage.stats.full-reconcile, everything is recounted once. Until this is done, stats requests answer 503;
+ * changes made meanwhile are collected and added afterwards. Changes committed in the instant between collecting
+ * and the recount query may be counted twice, and after a crash, deletes or imports of photos from before the last
+ * checkpoint's day are lost. The next reconcile of those days corrects both.
+ *
+ * The totals are per instance: with several instances on one database, each counts and checkpoints only
+ * its own uploads, so run one per database or use full-reconcile.
+ */
+@Component
+@Slf4j
+public class StorageStatistics implements ApplicationRunner {
+
+    /**
+     * Exclusive upper bounds of the size buckets of the histogram, in bytes; the last bucket has no bound.
+     */
+    public static final List<Long> SIZE_BUCKET_LIMITS = List.of(
+            64L << 10, 256L << 10, 1L << 20, 4L << 20, 16L << 20, 64L << 20);
+
+    private static final int BUCKETS = SIZE_BUCKET_LIMITS.size() + 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StorageStatsCheckpointRepository checkpointRepository;
+    private final PhotoStorageProperties.StatsSettings settings;
+
+    private final ConcurrentHashMap<DayKey, Totals> byTypeAndDay = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Totals> byType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<LocalDate, Totals> byDay = new ConcurrentHashMap<>();
+
+    // Changes made until the startup reconcile is done, per key: counts, then bytes, per size bucket
+    private final Map<DayKey, long[]> pending = new HashMap<>(); // Guarded by this
+    private volatile boolean reconciling = true;
+    private volatile boolean ready;
+    private final Object checkpointLock = new Object();
+
+    private record DayKey(String contentType, LocalDate day) {
+    }
+
+    /**
+     * Photo count and bytes per size bucket of a group of photos.
+     */
+    private static final class Totals {
+        final LongAdder[] counts = new LongAdder[BUCKETS];
+        final LongAdder[] bytes = new LongAdder[BUCKETS];
+        volatile boolean dirty; // Changed since the last checkpoint; only used for the (content type, day) totals
+
+        Totals() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] = new LongAdder();
+                bytes[bucket] = new LongAdder();
+            }
+        }
+
+        void add(int bucket, long count, long size) {
+            counts[bucket].add(count);
+            bytes[bucket].add(size);
+            dirty = true;
+        }
+
+        StorageStats.Totals toDto() {
+            long photoCount = 0;
+            long totalBytes = 0;
+            Long[] histogram = new Long[BUCKETS];
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                histogram[bucket] = counts[bucket].sum();
+                photoCount += histogram[bucket];
+                totalBytes += bytes[bucket].sum();
+            }
+            return new StorageStats.Totals(photoCount, totalBytes, Arrays.asList(histogram));
+        }
+    }
+
+    public StorageStatistics(JdbcTemplate jdbcTemplate, StorageStatsCheckpointRepository checkpointRepository,
+                             PhotoStorageProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.checkpointRepository = checkpointRepository;
+        this.settings = properties.getStats();
+    }
+
+    /**
+     * Starts the reconcile once the application is up; it does not delay startup.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Thread reconcile = new Thread(this::reconcile, "storage-stats-reconcile");
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    @EventListener
+    public void onPhotoStored(PhotoStoredEvent event) {
+        record(event.photo(), 1);
+    }
+
+    @EventListener
+    public void onPhotoDeleted(PhotoDeletedEvent event) {
+        record(event.photo(), -1);
+    }
+
+    /**
+     * @return Whether the statistics can be read: they are enabled and the startup reconcile has finished.
+     */
+    public boolean isReady() {
+        return settings.isEnabled() && ready;
+    }
+
+    /**
+     * @param from First upload day to report per day.
+     * @param to Last upload day to report per day.
+     * @return The totals over all photos and per content type, and per day for the given days.
+     * @throws IllegalStateException if the statistics are not ready (see {@link #isReady()}).
+     */
+    public StorageStats getStats(LocalDate from, LocalDate to) {
+        if (!isReady()) {
+            throw new IllegalStateException(settings.isEnabled()
+                    ? "Storage statistics are still being counted. Try again shortly."
+                    : "Storage statistics are disabled.");
+        }
+        long photoCount = 0;
+        long totalBytes = 0;
+        long[] histogram = new long[BUCKETS];
+        Map<String, StorageStats.Totals> types = new TreeMap<>();
+        for (Map.Entry<String, Totals> entry : byType.entrySet()) {
+            StorageStats.Totals totals = entry.getValue().toDto();
+            if (totals.getPhotoCount() == 0) {
+                continue; // Every photo of this type has been deleted
+            }
+            types.put(entry.getKey(), totals);
+            photoCount += totals.getPhotoCount();
+            totalBytes += totals.getTotalBytes();
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                histogram[bucket] += totals.getSizeHistogram().get(bucket);
+            }
+        }
+        Map<LocalDate, StorageStats.Totals> days = new TreeMap<>();
+        for (Map.Entry<LocalDate, Totals> entry : byDay.entrySet()) {
+            if (!entry.getKey().isBefore(from) && !entry.getKey().isAfter(to)) {
+                StorageStats.Totals totals = entry.getValue().toDto();
+                if (totals.getPhotoCount() != 0) {
+                    days.put(entry.getKey(), totals);
+                }
+            }
+        }
+        StorageStats.Totals total = new StorageStats.Totals(photoCount, totalBytes, Arrays.stream(histogram).boxed().toList());
+        return new StorageStats(SIZE_BUCKET_LIMITS, total, types, days);
+    }
+
+    /**
+     * Writes the totals of the days that changed since the last checkpoint.
+     */
+    @Scheduled(fixedDelayString = "${photo-storage.stats.checkpoint-interval:1m}")
+    public void checkpoint() {
+        if (!ready) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            LocalDateTime now = LocalDateTime.now();
+            List<Totals> written = new ArrayList<>();
+            List<StorageStatsCheckpoint> rows = new ArrayList<>();
+            byTypeAndDay.forEach((key, totals) -> {
+                if (!totals.dirty) {
+                    return;
+                }
+                totals.dirty = false; // Before reading, so a change made while reading marks it again
+                written.add(totals);
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    rows.add(new StorageStatsCheckpoint(new StorageStatsCheckpoint.Key(key.contentType(), key.day(), bucket),
+                            totals.counts[bucket].sum(), totals.bytes[bucket].sum(), now));
+                }
+            });
+            if (rows.isEmpty()) {
+                return;
+            }
+            try {
+                checkpointRepository.saveAll(rows);
+                log.debug("Checkpointed storage statistics of {} content type/day pairs", written.size());
+            } catch (RuntimeException e) {
+                written.forEach(totals -> totals.dirty = true); // Retried with the next checkpoint
+                log.warn("Could not checkpoint storage statistics: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        checkpoint();
+    }
+
+    private void record(Photo photo, int sign) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        LocalDate day = photo.getUploadTimestamp() != null ? photo.getUploadTimestamp().toLocalDate() : LocalDate.now();
+        DayKey key = new DayKey(photo.getContentType(), day);
+        long size = photo.getSizeBytes() != null ? photo.getSizeBytes() : 0;
+        int bucket = bucketOf(size);
+        if (reconciling) {
+            synchronized (this) {
+                if (reconciling) {
+                    long[] changes = pending.computeIfAbsent(key, k -> new long[2 * BUCKETS]);
+                    changes[bucket] += sign;
+                    changes[BUCKETS + bucket] += sign * size;
+                    return;
+                }
+            }
+        }
+        add(key, bucket, sign, sign * size);
+    }
+
+    private void add(DayKey key, int bucket, long count, long size) {
+        totals(byTypeAndDay, key).add(bucket, count, size);
+        totals(byType, key.contentType()).add(bucket, count, size);
+        totals(byDay, key.day()).add(bucket, count, size);
+    }
+
+    private static <K> Totals totals(ConcurrentHashMap<K, Totals> map, K key) {
+        Totals totals = map.get(key); // A plain read for existing keys; computeIfAbsent may lock the bin
+        return totals != null ? totals : map.computeIfAbsent(key, k -> new Totals());
+    }
+
+    /**
+     * Loads the checkpoint, recounts the days since it from the photos table, and adds the changes made meanwhile.
+     */
+    private void reconcile() {
+        long start = System.nanoTime();
+        try {
+            Optional<LocalDateTime> lastCheckpoint = settings.isFullReconcile()
+                    ? Optional.empty()
+                    : checkpointRepository.findLastCheckpointTime();
+            // Recount from the day before the last checkpoint, which covers changes written just after midnight
+            LocalDate recountFrom = lastCheckpoint.map(time -> time.toLocalDate().minusDays(1)).orElse(null);
+
+            Map<DayKey, long[]> counted = new HashMap<>();
+            if (recountFrom != null) {
+                for (StorageStatsCheckpoint row : checkpointRepository.findAll()) {
+                    StorageStatsCheckpoint.Key key = row.getKey();
+                    long[] totals = counted.computeIfAbsent(new DayKey(key.contentType(), key.uploadDay()), k -> new long[2 * BUCKETS]);
+                    // Recounted days start from zero, so a day whose photos have all been deleted is written as zeros
+                    if (key.uploadDay().isBefore(recountFrom) && key.sizeBucket() < BUCKETS) {
+                        totals[key.sizeBucket()] += row.getPhotoCount();
+                        totals[BUCKETS + key.sizeBucket()] += row.getTotalBytes();
+                    }
+                }
+            }
+
+            // Changes to the recounted days made before the recount are in its result
+            synchronized (this) {
+                pending.keySet().removeIf(key -> recountFrom == null || !key.day().isBefore(recountFrom));
+            }
+            int recountedRows = recount(recountFrom, counted);
+
+            synchronized (this) {
+                counted.forEach((key, totals) -> install(key, totals, recountFrom == null || !key.day().isBefore(recountFrom)));
+                pending.forEach((key, changes) -> install(key, changes, true));
+                pending.clear();
+                reconciling = false;
+            }
+            ready = true;
+            log.info("Storage statistics reconciled in {} ms: {} content type/day pairs, {} recounted from {}",
+                    (System.nanoTime() - start) / 1_000_000, byTypeAndDay.size(), recountedRows,
+                    recountFrom != null ? recountFrom : "the beginning");
+        } catch (RuntimeException e) {
+            log.error("Reconciling the storage statistics failed; they stay unavailable until restart.", e);
+        }
+    }
+
+    /**
+     * Adds up the photos uploaded on or after the given day (all photos if null), per content type, day and size bucket.
+     *
+     * @return The number of (content type, day, size bucket) groups read.
+     */
+    private int recount(LocalDate from, Map<DayKey, long[]> counted) {
+        StringBuilder sizeBucket = new StringBuilder("CASE");
+        for (int bucket = 0; bucket < SIZE_BUCKET_LIMITS.size(); bucket++) {
+            sizeBucket.append(" WHEN COALESCE(size_bytes, 0) < ").append(SIZE_BUCKET_LIMITS.get(bucket)).append(" THEN ").append(bucket);
+        }
+        sizeBucket.append(" ELSE ").append(BUCKETS - 1).append(" END");
+        String sql = "SELECT content_type, upload_day, size_bucket, COUNT(*), SUM(size_bytes) FROM ("
+                + "SELECT content_type, CAST(upload_timestamp AS DATE) AS upload_day, " + sizeBucket + " AS size_bucket,"
+                + " COALESCE(size_bytes, 0) AS size_bytes FROM photos"
+                + (from != null ? " WHERE upload_timestamp >= ?" : "")
+                + ") recounted GROUP BY content_type, upload_day, size_bucket";
+        Object[] args = from != null ? new Object[]{from.atStartOfDay()} : new Object[0];
+        int[] rows = {0};
+        jdbcTemplate.query(sql, rs -> {
+            DayKey key = new DayKey(rs.getString(1), rs.getObject(2, LocalDate.class));
+            int bucket = rs.getInt(3);
+            long[] totals = counted.computeIfAbsent(key, k -> new long[2 * BUCKETS]);
+            totals[bucket] += rs.getLong(4);
+            totals[BUCKETS + bucket] += rs.getLong(5);
+            rows[0]++;
+        }, args);
+        return rows[0];
+    }
+
+    // Called with the monitor of this held, while changes still go to pending
+    private void install(DayKey key, long[] totals, boolean dirty) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (totals[bucket] != 0 || totals[BUCKETS + bucket] != 0) {
+                add(key, bucket, totals[bucket], totals[BUCKETS + bucket]);
+            }
+        }
+        // add() marked it changed; only recounted days and changes since startup differ from the checkpoint
+        totals(byTypeAndDay, key).dirty = dirty;
+    }
+
+    private static int bucketOf(long size) {
+        for (int bucket = 0; bucket < SIZE_BUCKET_LIMITS.size(); bucket++) {
+            if (size < SIZE_BUCKET_LIMITS.get(bucket)) {
+                return bucket;
+            }
+        }
+        return BUCKETS - 1;
+    }
+}
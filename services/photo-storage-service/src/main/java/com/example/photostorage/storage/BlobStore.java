@@ -0,0 +1,129 @@
+package com.example.photostorage.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Abstraction over the place where photo bytes are kept.
+ * The database only stores photo metadata plus the key returned here,
+ * so the storage backend can be swapped without touching the 'photos' table.
+ *
+ * Keys are opaque strings made of letters, digits, '.', '_' and '-'.
+ * Blobs are immutable: a key is written once and then only read or deleted.
+ */
+public interface BlobStore {
+
+    /**
+     * Receives a blob into a temporary location, computing its SHA-256 while the bytes stream in.
+     * The blob is not visible under any key until {@link #commit(StagedBlob, String)} is called.
+     *
+     * @param data The blob contents, read until exhausted. The caller is responsible for closing it.
+     * @return The staged blob with its size and content hash.
+     * @throws IOException if the blob cannot be written.
+     */
+    StagedBlob stage(InputStream data) throws IOException;
+
+    /**
+     * Like {@link #stage(InputStream)}, for a blob that has already been written to a local file
+     * (e.g. assembled from the chunks of a resumable upload). The store takes ownership of the file:
+     * it is moved or deleted by this call, whatever the outcome.
+     *
+     * @param file A complete file holding the blob contents.
+     * @return The staged blob with its size and content hash.
+     * @throws IOException if the file cannot be read or taken over.
+     */
+    default StagedBlob stage(Path file) throws IOException {
+        try (InputStream data = Files.newInputStream(file)) {
+            return stage(data);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Makes a staged blob visible under the given key. Readers never see a partial blob.
+     * Committing identical content under an existing key is harmless.
+     *
+     * @param staged A blob returned by {@link #stage(InputStream)}.
+     * @param key The key to store the blob under.
+     * @throws IOException if the blob cannot be moved into place.
+     */
+    void commit(StagedBlob staged, String key) throws IOException;
+
+    /**
+     * Throws away a staged blob that will not be committed (e.g. because it is a duplicate).
+     *
+     * @param staged A blob returned by {@link #stage(InputStream)}.
+     */
+    void discard(StagedBlob staged);
+
+    /**
+     * Writes a blob under the given key, reading the stream until it is exhausted.
+     * Implementations must never expose a partially written blob under the key.
+     *
+     * @param key The key to store the blob under.
+     * @param data The blob contents. The caller is responsible for closing it.
+     * @return The number of bytes written.
+     * @throws IOException if the blob cannot be written.
+     */
+    default long put(String key, InputStream data) throws IOException {
+        StagedBlob staged = stage(data);
+        try {
+            commit(staged, key);
+        } catch (IOException | RuntimeException e) {
+            discard(staged);
+            throw e;
+        }
+        return staged.size();
+    }
+
+    /**
+     * Opens a blob for reading.
+     *
+     * @param key The key of the blob.
+     * @return A stream over the blob contents. The caller must close it.
+     * @throws java.nio.file.NoSuchFileException if no blob exists under the key.
+     * @throws IOException if the blob cannot be opened.
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * @param key The key of the blob.
+     * @return The size of the blob in bytes.
+     * @throws java.nio.file.NoSuchFileException if no blob exists under the key.
+     * @throws IOException if the size cannot be read.
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * @param key The key of the blob.
+     * @return true if a blob exists under the key.
+     */
+    boolean exists(String key);
+
+    /**
+     * Deletes a blob.
+     *
+     * @param key The key of the blob.
+     * @return true if the blob existed and was deleted, false if there was nothing to delete.
+     * @throws IOException if the blob exists but cannot be deleted.
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Locates the blob on the local filesystem, if this backend keeps it in a plain file.
+     * Callers use this to stream the bytes without reading them into memory;
+     * backends that cannot offer it return empty and callers fall back to {@link #open(String)}.
+     *
+     * @param key The key of the blob.
+     * @return The file region holding the blob, or empty if the backend has no such file.
+     * @throws java.nio.file.NoSuchFileException if no blob exists under the key.
+     * @throws IOException if the blob cannot be located.
+     */
+    default Optional<FileRegion> locate(String key) throws IOException {
+        return Optional.empty();
+    }
+}
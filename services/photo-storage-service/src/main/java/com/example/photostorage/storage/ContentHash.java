@@ -0,0 +1,45 @@
+package com.example.photostorage.storage;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Utility class for the SHA-256 content hashes that blobs are stored under (lower-case hex).
+ * This class contains static methods and is not intended for instantiation.
+ */
+public class ContentHash {
+
+    // Private constructor to prevent instantiation
+    private ContentHash() {
+    }
+
+    /**
+     * @return A new SHA-256 digest, for hashing content while it streams through.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JVM is required to provide it
+        }
+    }
+
+    /**
+     * Completes the digest.
+     *
+     * @return The hash of everything fed to it, as lower-case hex.
+     */
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return The lower-case hex SHA-256 of the bytes.
+     */
+    public static String of(byte[] content) {
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        return toHex(digest);
+    }
+}
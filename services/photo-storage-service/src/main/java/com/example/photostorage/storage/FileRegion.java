@@ -0,0 +1,15 @@
+package com.example.photostorage.storage;
+
+import java.nio.file.Path;
+
+/**
+ * A contiguous byte range of a local file that holds a blob.
+ * Lets callers serve the blob straight from the file (sendfile / FileChannel.transferTo)
+ * instead of copying it through the heap.
+ *
+ * @param path The file containing the blob.
+ * @param position Offset of the first blob byte within the file.
+ * @param length Number of blob bytes.
+ */
+public record FileRegion(Path path, long position, long length) {
+}
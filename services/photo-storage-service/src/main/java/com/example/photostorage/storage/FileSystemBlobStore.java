@@ -0,0 +1,197 @@
+package com.example.photostorage.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * {@link BlobStore} that keeps every blob as a file on the local filesystem.
+ *
+ * Blobs live in two levels of shard directories derived from the key
+ * (e.g. {@code root/3f/a2/<key>}), so no single directory grows to millions of entries.
+ * Writes go to a temporary file under {@code root/tmp} first (hashed on the way in) and are
+ * then atomically renamed into place, so readers only ever see complete blobs.
+ */
+@Slf4j
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final Pattern VALID_KEY = Pattern.compile("[A-Za-z0-9._-]{1,200}");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path rootDirectory;
+    private final Path tempDirectory;
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * @param rootDirectory Directory under which all blobs are stored. Created if missing.
+     * @param fsyncPolicy How writes are made durable before they are acknowledged.
+     * @throws IOException if the directory layout cannot be created.
+     */
+    public FileSystemBlobStore(Path rootDirectory, FsyncPolicy fsyncPolicy) throws IOException {
+        this.rootDirectory = rootDirectory.toAbsolutePath();
+        this.tempDirectory = this.rootDirectory.resolve("tmp");
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(tempDirectory);
+        log.info("FileSystemBlobStore initialized at {} with fsync policy {}", this.rootDirectory, fsyncPolicy);
+    }
+
+    @Override
+    public StagedBlob stage(InputStream data) throws IOException {
+        Path temp = tempDirectory.resolve(UUID.randomUUID() + ".tmp");
+        MessageDigest digest = ContentHash.newDigest();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            // Hash and write in the same pass, so the bytes are only read once
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int read;
+            while ((read = data.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+                written += read;
+            }
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new StagedBlob(temp, written, ContentHash.toHex(digest));
+    }
+
+    /**
+     * Hashes the file in place and moves it into the temp directory, so the bytes are read once and never copied
+     * (as long as the file is on the same filesystem as the store).
+     */
+    @Override
+    public StagedBlob stage(Path file) throws IOException {
+        Path temp = tempDirectory.resolve(UUID.randomUUID() + ".tmp");
+        MessageDigest digest = ContentHash.newDigest();
+        long size = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    channel.force(true);
+                }
+            }
+            moveIntoPlace(file, temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new StagedBlob(temp, size, ContentHash.toHex(digest));
+    }
+
+    @Override
+    public void commit(StagedBlob staged, String key) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        moveIntoPlace(staged.file(), target);
+        if (fsyncPolicy == FsyncPolicy.DATA_AND_DIRECTORY) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    @Override
+    public void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.file());
+        } catch (IOException e) {
+            log.warn("FileSystemBlobStore: Could not delete staged blob {}: {}", staged.file(), e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return VALID_KEY.matcher(key).matches() && Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Optional<FileRegion> locate(String key) throws IOException {
+        Path path = resolve(key);
+        return Optional.of(new FileRegion(path, 0, Files.size(path)));
+    }
+
+    /**
+     * Maps a key to its file: two shard levels taken from a hash of the key, then the key itself.
+     */
+    Path resolve(String key) {
+        if (key == null || !VALID_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // Spread the high bits so short, similar keys still land in different shards
+        String level1 = String.format("%02x", (hash >>> 8) & 0xff);
+        String level2 = String.format("%02x", hash & 0xff);
+        return rootDirectory.resolve(level1).resolve(level2).resolve(key);
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Only happens if tmp/ is on another filesystem; fall back to a plain replace
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        // Opening a directory for reading and forcing it is how the rename is made durable on Linux.
+        // Some platforms (e.g. Windows) do not allow this, in which case the rename is left to the OS.
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.warn("FileSystemBlobStore: Could not fsync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The directory under which all blobs are stored.
+     */
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemBlobStore[" + rootDirectory + "]";
+    }
+}
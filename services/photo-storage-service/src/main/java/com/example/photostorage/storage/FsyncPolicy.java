@@ -0,0 +1,17 @@
+package com.example.photostorage.storage;
+
+/**
+ * Controls how hard {@link FileSystemBlobStore} works to make a write survive a crash
+ * before acknowledging it.
+ */
+public enum FsyncPolicy {
+
+    /** Leave flushing to the operating system. Fastest; a power loss can lose recent blobs. */
+    NONE,
+
+    /** Force the blob contents to disk before it is renamed into place. */
+    DATA,
+
+    /** Like {@link #DATA}, and also force the shard directory so the rename itself is durable. */
+    DATA_AND_DIRECTORY
+}
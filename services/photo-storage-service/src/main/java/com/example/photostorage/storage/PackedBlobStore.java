@@ -0,0 +1,699 @@
+package com.example.photostorage.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link BlobStore} for very many small blobs (avatars, thumbnails, screenshots).
+ *
+ * Blobs up to {@code packThreshold} bytes are appended to large segment files ({@code directory/0000000001.pack}, ...)
+ * instead of getting a file of their own, so storing one costs a sequential append rather than a file creation,
+ * two directory entries and an inode, and reading one costs a single positioned read. Larger blobs are passed on
+ * to a {@link FileSystemBlobStore}, which also still serves blobs written before this store was switched on.
+ *
+ * Segment records are self-describing: magic, type (put or delete), key length, data length, CRC32C of key and
+ * data, then the key and the data. Deletes append a tombstone. Where each live blob sits is kept in an in-memory
+ * index (roughly 200 bytes of heap per blob), which is written to a checkpoint file periodically and on close.
+ * On startup the checkpoint is loaded and only the records appended after it are replayed; a torn record at the
+ * end of the last segment (a crash mid-append) is cut off.
+ *
+ * A background thread checkpoints the index and compacts the oldest sealed segments once their share of dead
+ * records (deleted or overwritten blobs, tombstones) has reached {@code compactionGarbageRatio}: their live blobs
+ * are copied to the active segment, a checkpoint is written, and the old files are deleted one maintenance pass
+ * later, so reads that looked them up just before (including sendfile transfers) still find them. Compaction
+ * always takes a run of segments starting with the oldest: the tombstones it drops only ever cancel puts in the
+ * same or older segments, which go with them, so rebuilding the index without a checkpoint cannot bring a
+ * deleted blob back.
+ *
+ * Appends are serialized; with an fsync policy other than NONE, concurrent writers share each fsync.
+ */
+@Slf4j
+public class PackedBlobStore implements BlobStore, AutoCloseable {
+
+    private static final Pattern VALID_KEY = Pattern.compile("[A-Za-z0-9._-]{1,200}");
+    private static final int RECORD_MAGIC = 0x5041434B; // "PACK"
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // magic, type, key length, data length, CRC32C of key and data
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Short.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int CHECKPOINT_MAGIC = 0x5041434B + 1;
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final String CHECKPOINT_FILE = "index.checkpoint";
+
+    private final FileSystemBlobStore largeBlobs;
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final int packThreshold;
+    private final long segmentSize;
+    private final Duration checkpointInterval;
+    private final Duration compactionInterval;
+    private final double compactionGarbageRatio;
+
+    private final ConcurrentHashMap<String, PackEntry> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object syncLock = new Object();
+    private Segment active; // Guarded by this, like every append and index update
+    private volatile boolean dirty; // Appended to since the last checkpoint
+
+    // Only touched by the maintenance thread
+    private final List<Segment> retired = new ArrayList<>();
+    private long lastCompactionNanos = System.nanoTime();
+    private final Thread maintenance;
+    private volatile boolean closed;
+
+    /**
+     * Where a packed blob's bytes are.
+     *
+     * @param segment ID of the segment file.
+     * @param offset Position of the first data byte in the segment.
+     * @param length Number of data bytes.
+     * @param recordLength Length of the whole record (header, key and data), for the segment's live byte count.
+     */
+    private record PackEntry(int segment, long offset, int length, int recordLength) {
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicLong liveBytes = new AtomicLong();
+        volatile long size; // Bytes appended; only grows while the segment is active
+        volatile long syncedTo; // Guarded by syncLock
+
+        Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+            this.syncedTo = size;
+        }
+    }
+
+    /**
+     * Opens the store, loading the latest checkpoint and replaying the records written after it.
+     *
+     * @param largeBlobs Store for blobs above the threshold (and for blobs written before packing was enabled).
+     * @param directory Directory of the segment files and the checkpoint. Created if missing.
+     * @param fsyncPolicy How appends are made durable before they are acknowledged.
+     * @param packThreshold Blobs of at most this many bytes are packed.
+     * @param segmentSize A new segment is started once the active one reaches this size.
+     * @param checkpointInterval How often the index is checkpointed (if anything changed) and retired segments deleted.
+     * @param compactionInterval How often sealed segments are checked for compaction.
+     * @param compactionGarbageRatio Share of dead bytes from which the oldest sealed segments are compacted.
+     * @throws IOException if the directory, the segments or the checkpoint cannot be read.
+     */
+    public PackedBlobStore(FileSystemBlobStore largeBlobs, Path directory, FsyncPolicy fsyncPolicy, int packThreshold,
+                           long segmentSize, Duration checkpointInterval, Duration compactionInterval,
+                           double compactionGarbageRatio) throws IOException {
+        this.largeBlobs = largeBlobs;
+        this.directory = directory.toAbsolutePath();
+        this.fsyncPolicy = fsyncPolicy;
+        this.packThreshold = packThreshold;
+        this.segmentSize = segmentSize;
+        this.checkpointInterval = checkpointInterval;
+        this.compactionInterval = compactionInterval;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        Files.createDirectories(this.directory);
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                int id = Integer.parseInt(file.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.put(id, new Segment(id, file, channel, channel.size()));
+            }
+        }
+        recover();
+        for (PackEntry entry : index.values()) {
+            segments.get(entry.segment()).liveBytes.addAndGet(entry.recordLength());
+        }
+        Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        this.active = last == null || last.size >= segmentSize ? createSegment(last == null ? 1 : last.id + 1) : last;
+
+        log.info("PackedBlobStore opened at {}: {} blobs in {} segment(s), packing blobs up to {} bytes, large blobs in {}",
+                this.directory, index.size(), segments.size(), packThreshold, largeBlobs);
+        this.maintenance = new Thread(this::maintenanceLoop, "pack-maintenance");
+        maintenance.setDaemon(true);
+        maintenance.start();
+    }
+
+    /**
+     * Small blobs are read into memory and hashed there; anything longer than the threshold is handed to the
+     * large-blob store, the bytes read so far first.
+     */
+    @Override
+    public StagedBlob stage(InputStream data) throws IOException {
+        byte[] head = data.readNBytes(packThreshold + 1);
+        if (head.length > packThreshold) {
+            return largeBlobs.stage(new SequenceInputStream(new ByteArrayInputStream(head), data));
+        }
+        return new StagedBlob(null, head.length, ContentHash.of(head), head);
+    }
+
+    @Override
+    public StagedBlob stage(Path file) throws IOException {
+        if (Files.size(file) > packThreshold) {
+            return largeBlobs.stage(file);
+        }
+        try {
+            byte[] content = Files.readAllBytes(file);
+            return new StagedBlob(null, content.length, ContentHash.of(content), content);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public void commit(StagedBlob staged, String key) throws IOException {
+        if (staged.content() == null) {
+            largeBlobs.commit(staged, key);
+            return;
+        }
+        checkKey(key);
+        Segment segment;
+        long end;
+        synchronized (this) {
+            PackEntry existing = index.get(key);
+            if (existing != null) {
+                segment = segments.get(existing.segment()); // Identical content; only wait until it is durable
+                end = existing.offset() + existing.length();
+            } else {
+                PackEntry entry = appendPut(key, staged.content());
+                segment = active;
+                end = entry.offset() + entry.length();
+            }
+        }
+        sync(segment, end);
+    }
+
+    @Override
+    public void discard(StagedBlob staged) {
+        if (staged.content() == null) {
+            largeBlobs.discard(staged);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        Optional<byte[]> packed = readPacked(key);
+        return packed.isPresent() ? new ByteArrayInputStream(packed.get()) : largeBlobs.open(key);
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        PackEntry entry = index.get(key);
+        return entry != null ? entry.length() : largeBlobs.size(key);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return index.containsKey(key) || largeBlobs.exists(key);
+    }
+
+    /**
+     * Removes the blob from the index and appends a tombstone; the bytes are reclaimed by compaction.
+     * A copy in the large-blob store (left from before packing was enabled) is deleted as well.
+     */
+    @Override
+    public boolean delete(String key) throws IOException {
+        checkKey(key);
+        boolean packed;
+        long end = 0;
+        Segment segment;
+        synchronized (this) {
+            PackEntry entry = index.remove(key);
+            packed = entry != null;
+            if (packed) {
+                segments.get(entry.segment()).liveBytes.addAndGet(-entry.recordLength());
+                end = append(DELETE, key, new byte[0]) + HEADER_SIZE + key.length();
+            }
+            segment = active;
+        }
+        if (packed) {
+            sync(segment, end);
+        }
+        return largeBlobs.delete(key) || packed;
+    }
+
+    @Override
+    public Optional<FileRegion> locate(String key) throws IOException {
+        PackEntry entry = index.get(key);
+        if (entry == null) {
+            return largeBlobs.locate(key);
+        }
+        return Optional.of(new FileRegion(segments.get(entry.segment()).path, entry.offset(), entry.length()));
+    }
+
+    /**
+     * @return Number of packed blobs.
+     */
+    public int getPackedCount() {
+        return index.size();
+    }
+
+    /**
+     * @return Number of segment files, including compacted ones waiting to be deleted.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return Bytes in segment files that belong to no live blob (reclaimable by compaction).
+     */
+    public long getGarbageBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size - segment.liveBytes.get()).sum();
+    }
+
+    /**
+     * Stops the maintenance thread and writes a final checkpoint, so the next start replays nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        maintenance.interrupt();
+        try {
+            maintenance.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            checkpoint();
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        }
+        log.info("PackedBlobStore closed: {} blobs in {} segment(s)", index.size(), segments.size());
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBlobStore[" + directory + "]";
+    }
+
+    // --- Appends -------------------------------------------------------------------------------------------
+
+    // Called with the lock held. Returns the new entry, already in the index.
+    private PackEntry appendPut(String key, byte[] data) throws IOException {
+        long recordStart = append(PUT, key, data);
+        PackEntry entry = new PackEntry(active.id, recordStart + HEADER_SIZE + key.length(), data.length,
+                HEADER_SIZE + key.length() + data.length);
+        PackEntry previous = index.put(key, entry);
+        if (previous != null) {
+            segments.get(previous.segment()).liveBytes.addAndGet(-previous.recordLength());
+        }
+        active.liveBytes.addAndGet(entry.recordLength());
+        return entry;
+    }
+
+    // Called with the lock held. Writes one record at the end of the active segment and returns its position.
+    private long append(byte type, String key, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        CRC32C crc = new CRC32C();
+        crc.update(keyBytes);
+        crc.update(data);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + data.length)
+                .putInt(RECORD_MAGIC)
+                .put(type)
+                .putShort((short) keyBytes.length)
+                .putInt(data.length)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(data)
+                .flip();
+        if (active.size > 0 && active.size + record.remaining() > segmentSize) {
+            active = createSegment(active.id + 1);
+        }
+        long position = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, position + record.position());
+        }
+        active.size = position + record.limit();
+        dirty = true;
+        return position;
+    }
+
+    /**
+     * Waits until the segment is durable up to {@code end}. Whoever gets the lock first forces everything
+     * appended so far, so writers queued behind it usually find their record already covered.
+     */
+    private void sync(Segment segment, long end) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.NONE) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (segment.syncedTo >= end) {
+                return;
+            }
+            long target = segment.size;
+            segment.channel.force(false);
+            segment.syncedTo = target;
+        }
+    }
+
+    // Called with the lock held (or from the constructor)
+    private Segment createSegment(int id) throws IOException {
+        if (active != null && fsyncPolicy != FsyncPolicy.NONE) {
+            sync(active, active.size); // Checkpoints only force the active segment
+        }
+        Path path = directory.resolve(String.format("%010d", id) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (fsyncPolicy == FsyncPolicy.DATA_AND_DIRECTORY) {
+            forceDirectory();
+        }
+        Segment segment = new Segment(id, path, channel, 0);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    // --- Reads ---------------------------------------------------------------------------------------------
+
+    private Optional<byte[]> readPacked(String key) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            PackEntry entry = index.get(key);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(read(entry));
+            } catch (ClosedChannelException | NoSuchFileException e) {
+                // The segment was compacted and deleted since the lookup; the index has the new location
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private byte[] read(PackEntry entry) throws IOException {
+        Segment segment = segments.get(entry.segment());
+        if (segment == null) {
+            throw new NoSuchFileException("Segment " + entry.segment());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        while (buffer.hasRemaining()) {
+            if (segment.channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                throw new EOFException("Segment " + segment.path + " ends inside a blob");
+            }
+        }
+        return buffer.array();
+    }
+
+    // --- Recovery and checkpoints --------------------------------------------------------------------------
+
+    private void recover() throws IOException {
+        int fromSegment = 0;
+        long fromPosition = 0;
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpointFile)) {
+            try {
+                long[] position = loadCheckpoint(checkpointFile);
+                fromSegment = (int) position[0];
+                fromPosition = position[1];
+            } catch (IOException e) {
+                log.warn("PackedBlobStore: Checkpoint {} is unusable ({}); rebuilding the index from all segments",
+                        checkpointFile, e.toString());
+                index.clear();
+            }
+        }
+        int replayed = 0;
+        for (Segment segment : segments.tailMap(fromSegment).values()) {
+            replayed += replay(segment, segment.id == fromSegment ? fromPosition : 0, segment == segments.lastEntry().getValue());
+        }
+        if (replayed > 0) {
+            log.info("PackedBlobStore: Replayed {} record(s) written after the checkpoint", replayed);
+        }
+        // The checkpoint may list blobs appended while it was written; drop any whose bytes a crash cut off
+        index.values().removeIf(entry -> entry.offset() + entry.length() > segments.get(entry.segment()).size);
+    }
+
+    /**
+     * @return The segment and position the checkpoint is valid up to.
+     */
+    private long[] loadCheckpoint(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a pack index checkpoint");
+            }
+            int segment = in.readInt();
+            long position = in.readLong();
+            int keyLength;
+            while ((keyLength = in.readShort()) >= 0) {
+                byte[] key = in.readNBytes(keyLength);
+                PackEntry entry = new PackEntry(in.readInt(), in.readLong(), in.readInt(), in.readInt());
+                if (key.length != keyLength || !segments.containsKey(entry.segment())) {
+                    throw new IOException("Checkpoint refers to a missing segment or is truncated");
+                }
+                index.put(new String(key, StandardCharsets.US_ASCII), entry);
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Checkpoint checksum mismatch");
+            }
+            return new long[]{segment, position};
+        }
+    }
+
+    /**
+     * Applies the records of a segment from the given position to the index.
+     * An incomplete or corrupt record ends the replay of the segment; in the last segment it is cut off.
+     *
+     * @return Number of records applied.
+     */
+    private int replay(Segment segment, long from, boolean last) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = from;
+        int applied = 0;
+        while (true) {
+            header.clear();
+            if (segment.channel.read(header, position) < HEADER_SIZE || header.getInt(0) != RECORD_MAGIC) {
+                break;
+            }
+            byte type = header.get(4);
+            int keyLength = header.getShort(5);
+            int dataLength = header.getInt(7);
+            int checksum = header.getInt(11);
+            if (keyLength <= 0 || dataLength < 0 || position + HEADER_SIZE + keyLength + dataLength > segment.size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(keyLength + dataLength);
+            while (body.hasRemaining() && segment.channel.read(body, position + HEADER_SIZE + body.position()) > 0) {
+                // Keep reading until the whole record is in
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(body.array());
+            if (body.hasRemaining() || (int) crc.getValue() != checksum) {
+                break;
+            }
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.US_ASCII);
+            if (type == PUT) {
+                index.put(key, new PackEntry(segment.id, position + HEADER_SIZE + keyLength, dataLength,
+                        HEADER_SIZE + keyLength + dataLength));
+            } else {
+                index.remove(key);
+            }
+            position += HEADER_SIZE + keyLength + dataLength;
+            applied++;
+        }
+        if (position < segment.size) {
+            if (last) {
+                log.warn("PackedBlobStore: Cutting off {} bytes of incomplete records at the end of {}",
+                        segment.size - position, segment.path);
+                segment.channel.truncate(position);
+                segment.size = position;
+                segment.syncedTo = position;
+            } else {
+                log.error("PackedBlobStore: Corrupt record at {} of {}; the rest of that segment is ignored",
+                        position, segment.path);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Writes the index to the checkpoint file. Records appended after the position captured here are replayed
+     * on startup, so the index may be copied while appends go on.
+     */
+    private void checkpoint() throws IOException {
+        dirty = false;
+        Segment segment;
+        long position;
+        synchronized (this) {
+            segment = active;
+            position = active.size;
+        }
+        sync(segment, position); // The index must not point at bytes a crash could lose
+
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(segment.id);
+            out.writeLong(position);
+            for (Map.Entry<String, PackEntry> blob : index.entrySet()) {
+                PackEntry entry = blob.getValue();
+                out.writeShort(blob.getKey().length());
+                out.writeBytes(blob.getKey());
+                out.writeInt(entry.segment());
+                out.writeLong(entry.offset());
+                out.writeInt(entry.length());
+                out.writeInt(entry.recordLength());
+            }
+            out.writeShort(-1);
+            out.writeInt((int) crc.getValue());
+        }
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        try {
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (fsyncPolicy == FsyncPolicy.DATA_AND_DIRECTORY) {
+            forceDirectory();
+        }
+    }
+
+    // --- Maintenance ---------------------------------------------------------------------------------------
+
+    private void maintenanceLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(checkpointInterval.toMillis());
+            } catch (InterruptedException e) {
+                return; // close() writes the final checkpoint
+            }
+            try {
+                deleteRetiredSegments();
+                if (System.nanoTime() - lastCompactionNanos >= compactionInterval.toNanos()) {
+                    lastCompactionNanos = System.nanoTime();
+                    compact();
+                }
+                if (dirty) {
+                    checkpoint();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("PackedBlobStore: Maintenance failed, retrying in {}: {}", checkpointInterval, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Copies the live blobs of the oldest sealed segments to the active segment, then checkpoints, after which
+     * nothing refers to those segments any more; they are deleted on the next pass.
+     *
+     * The segments compacted are the longest run from the oldest one whose dead bytes, taken together, are at
+     * least {@code compactionGarbageRatio} of its size. A segment full of garbage behind a mostly live one is
+     * therefore only reclaimed along with it. Compacting it alone would drop its tombstones while the puts they
+     * cancel are still in the older segment, and a full replay (no usable checkpoint) would resurrect those blobs.
+     */
+    private void compact() throws IOException {
+        int activeId;
+        synchronized (this) {
+            activeId = active.id;
+        }
+        List<Segment> sealed = segments.values().stream() // In ID order, oldest first
+                .filter(segment -> segment.id != activeId && !retired.contains(segment))
+                .toList();
+        int count = 0;
+        long size = 0;
+        long liveBytes = 0;
+        for (int i = 0; i < sealed.size(); i++) {
+            size += sealed.get(i).size;
+            liveBytes += sealed.get(i).liveBytes.get();
+            if (size > 0 && 1.0 - (double) liveBytes / size >= compactionGarbageRatio) {
+                count = i + 1;
+            }
+        }
+        List<Segment> candidates = sealed.subList(0, count);
+        if (candidates.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = candidates.stream().map(segment -> segment.id).toList();
+        List<Map.Entry<String, PackEntry>> live = index.entrySet().stream()
+                .filter(blob -> ids.contains(blob.getValue().segment()))
+                .map(blob -> Map.entry(blob.getKey(), blob.getValue()))
+                .sorted(Comparator.comparingInt((Map.Entry<String, PackEntry> blob) -> blob.getValue().segment())
+                        .thenComparingLong(blob -> blob.getValue().offset()))
+                .toList();
+
+        long movedBytes = 0;
+        for (Map.Entry<String, PackEntry> blob : live) {
+            byte[] data = read(blob.getValue()); // Outside the lock: appends go on meanwhile
+            synchronized (this) {
+                if (blob.getValue().equals(index.get(blob.getKey()))) { // Not deleted or rewritten meanwhile
+                    appendPut(blob.getKey(), data);
+                    movedBytes += data.length;
+                }
+            }
+        }
+        checkpoint();
+        long reclaimed = candidates.stream().mapToLong(segment -> segment.size).sum() - movedBytes;
+        retired.addAll(candidates);
+        log.info("PackedBlobStore: Compacted {} segment(s), moved {} live blob(s) ({} bytes), reclaiming about {} bytes",
+                candidates.size(), live.size(), movedBytes, reclaimed);
+    }
+
+    private void deleteRetiredSegments() throws IOException {
+        for (Segment segment : retired) {
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        }
+        retired.clear();
+    }
+
+    // --- Helpers -------------------------------------------------------------------------------------------
+
+    private static void checkKey(String key) {
+        if (key == null || !VALID_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.warn("PackedBlobStore: Could not fsync directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
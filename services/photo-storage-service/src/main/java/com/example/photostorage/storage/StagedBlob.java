@@ -0,0 +1,35 @@
+package com.example.photostorage.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A blob that has been fully received and hashed but is not yet visible under any key.
+ * Produced by {@link BlobStore#stage(java.io.InputStream)} and then either
+ * committed under a key or discarded.
+ *
+ * @param file Temporary file holding the bytes, or null if they are held in memory.
+ * @param size Number of bytes received.
+ * @param sha256 Lower-case hex SHA-256 of the bytes, computed while they streamed in.
+ * @param content The bytes, for small blobs a backend keeps in memory until commit (see PackedBlobStore);
+ * null if they are in {@code file}.
+ */
+public record StagedBlob(Path file, long size, String sha256, byte[] content) {
+
+    /**
+     * A blob staged in a temporary file.
+     */
+    public StagedBlob(Path file, long size, String sha256) {
+        this(file, size, sha256, null);
+    }
+
+    /**
+     * @return A stream over the staged bytes, wherever they are held. The caller must close it.
+     */
+    public InputStream openStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.photostorage.util;
+
+import com.example.photostorage.storage.BlobStore;
+import com.example.photostorage.storage.FileRegion;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Utility class that writes a byte range of a blob to an HTTP response
+ * without loading the blob into the heap.
+ *
+ * In order of preference it uses:
+ * 1. Tomcat's sendfile support (the kernel copies file pages straight to the socket),
+ * 2. FileChannel.transferTo onto the response stream,
+ * 3. a plain bounded stream copy for backends that have no local file.
+ * Content already held in memory (see BlobCache) is written straight from its buffer.
+ * This class contains static methods and is not intended for instantiation.
+ */
+public class BlobResponseWriter {
+
+    // Request attributes defined by Tomcat's NIO connector for sendfile
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Private constructor to prevent instantiation
+    private BlobResponseWriter() {
+    }
+
+    /**
+     * Writes {@code count} bytes of the blob, starting at {@code offset}, as the response body.
+     * The caller must already have set status and headers; Content-Length is set here.
+     *
+     * @param blobStore The store holding the blob.
+     * @param blobKey The key of the blob.
+     * @param offset First byte of the blob to send.
+     * @param count Number of bytes to send.
+     * @param request The current request (used to detect sendfile support).
+     * @param response The response to write to.
+     * @throws IOException if the blob cannot be read or the client goes away.
+     */
+    public static void write(BlobStore blobStore, String blobKey, long offset, long count,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(count);
+        if (count == 0) {
+            return;
+        }
+
+        Optional<FileRegion> region = blobStore.locate(blobKey);
+        if (region.isPresent()) {
+            long start = region.get().position() + offset;
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat performs the transfer itself after the handler returns
+                request.setAttribute(SENDFILE_FILENAME, region.get().path().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, start + count); // exclusive
+                return;
+            }
+            transferFromFile(region.get(), start, count, response.getOutputStream());
+            return;
+        }
+
+        try (InputStream in = blobStore.open(blobKey)) {
+            StreamUtils.copyRange(in, response.getOutputStream(), offset, offset + count - 1);
+        }
+    }
+
+    /**
+     * Writes {@code count} bytes of already loaded (e.g. cached) blob content, starting at {@code offset},
+     * as the response body. The caller must already have set status and headers; Content-Length is set here.
+     *
+     * @param content The whole blob, positioned at 0; it is not modified.
+     * @param offset First byte of the blob to send.
+     * @param count Number of bytes to send.
+     * @param response The response to write to.
+     * @throws IOException if the client goes away.
+     */
+    public static void write(ByteBuffer content, long offset, long count, HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(count);
+        ByteBuffer range = content.duplicate();
+        range.position((int) offset).limit((int) (offset + count));
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        while (range.hasRemaining()) {
+            target.write(range);
+        }
+    }
+
+    private static void transferFromFile(FileRegion region, long start, long count, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(region.path(), StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new IOException("Blob file " + region.path() + " ended before the requested range");
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+}
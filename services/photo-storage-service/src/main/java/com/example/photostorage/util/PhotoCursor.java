@@ -0,0 +1,39 @@
+package com.example.photostorage.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the photo listing: the upload timestamp and ID of the last photo on a page.
+ * Handed to clients as an opaque URL-safe string, so the encoding can change without breaking the API contract.
+ *
+ * @param uploadTimestamp Upload timestamp of the last photo returned.
+ * @param id ID of the last photo returned.
+ */
+public record PhotoCursor(LocalDateTime uploadTimestamp, long id) {
+
+    /**
+     * @return The cursor as an opaque, URL-safe string.
+     */
+    public String encode() {
+        String raw = uploadTimestamp + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor A string produced by {@link #encode()}.
+     * @return The decoded cursor.
+     * @throws IllegalArgumentException if the string is not a valid cursor.
+     */
+    public static PhotoCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('_');
+            return new PhotoCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
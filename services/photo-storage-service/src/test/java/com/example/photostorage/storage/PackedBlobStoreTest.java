@@ -0,0 +1,387 @@
+package com.example.photostorage.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Recovery and compaction of {@link PackedBlobStore} on real segment files.
+ *
+ * Stores opened with {@link #quiet} never run maintenance on their own (only close() checkpoints), so a test
+ * controls exactly what is on disk; {@link #busy} stores checkpoint and compact every few milliseconds.
+ * Blobs are 1000 bytes under a 64-character key, so each record takes 1079 bytes.
+ */
+class PackedBlobStoreTest {
+
+    private static final int BLOB_SIZE = 1000;
+    private static final int RECORD_SIZE = 15 + 64 + BLOB_SIZE;
+
+    @TempDir
+    Path data;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void tornRecordAtTheEndIsCutOffAndAppendsContinueAfterTheLastGoodOne() throws Exception {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        try (PackedBlobStore store = quiet(64 * 1024)) {
+            for (int i = 0; i < 5; i++) {
+                put(store, blobs, blob());
+            }
+        }
+        // A crash mid-append: one more record made it to disk after the checkpoint, the next only partly
+        Path segment = packDirectory().resolve("0000000001.pack");
+        byte[] appended = blob();
+        byte[] torn = blob();
+        append(segment, record(1, keyOf(appended), appended));
+        long endOfGoodRecords = Files.size(segment);
+        byte[] tornRecord = record(1, keyOf(torn), torn);
+        append(segment, Arrays.copyOf(tornRecord, tornRecord.length / 2));
+        blobs.put(keyOf(appended), appended);
+
+        byte[] afterRestart = blob();
+        try (PackedBlobStore store = quiet(64 * 1024)) {
+            assertThat(Files.size(segment)).isEqualTo(endOfGoodRecords);
+            assertThat(store.exists(keyOf(torn))).isFalse();
+            assertContents(store, blobs);
+            put(store, blobs, afterRestart);
+        }
+        Files.delete(packDirectory().resolve("index.checkpoint"));
+        try (PackedBlobStore store = quiet(64 * 1024)) {
+            assertThat(store.getPackedCount()).isEqualTo(blobs.size());
+            assertContents(store, blobs);
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOffWithoutAnyCheckpoint() throws Exception {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        try (PackedBlobStore store = quiet(64 * 1024)) {
+            for (int i = 0; i < 3; i++) {
+                put(store, blobs, blob());
+            }
+        }
+        Files.delete(packDirectory().resolve("index.checkpoint"));
+        Path segment = packDirectory().resolve("0000000001.pack");
+        append(segment, new byte[]{0x50, 0x41, 0x43, 0x4B, 1, 0}); // Header cut off after the type
+
+        try (PackedBlobStore store = quiet(64 * 1024)) {
+            assertThat(Files.size(segment)).isEqualTo(3L * RECORD_SIZE);
+            assertThat(store.getPackedCount()).isEqualTo(3);
+            assertContents(store, blobs);
+        }
+    }
+
+    @Test
+    void missingCheckpointRebuildsTheIndexFromAllSegments() throws Exception {
+        Map<String, byte[]> blobs = writeHistoryAcrossSegments();
+        Files.delete(packDirectory().resolve("index.checkpoint"));
+
+        try (PackedBlobStore store = quiet(4096)) {
+            assertThat(store.getPackedCount()).isEqualTo(blobs.size());
+            assertContents(store, blobs);
+        }
+    }
+
+    @Test
+    void corruptCheckpointIsIgnoredAndTheIndexRebuiltFromAllSegments() throws Exception {
+        Map<String, byte[]> blobs = writeHistoryAcrossSegments();
+        Path checkpoint = packDirectory().resolve("index.checkpoint");
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(checkpoint, bytes);
+
+        try (PackedBlobStore store = quiet(4096)) {
+            assertThat(store.getPackedCount()).isEqualTo(blobs.size());
+            assertContents(store, blobs);
+        }
+
+        bytes = Files.readAllBytes(checkpoint);
+        Files.write(checkpoint, Arrays.copyOf(bytes, bytes.length - 7)); // Truncated
+        try (PackedBlobStore store = quiet(4096)) {
+            assertThat(store.getPackedCount()).isEqualTo(blobs.size());
+            assertContents(store, blobs);
+        }
+    }
+
+    /**
+     * A segment holding nothing but garbage (the tombstone of a blob among them) sits behind a mostly live one
+     * with that blob's put. Compacting the garbage segment on its own would drop the tombstone, and a rebuild
+     * without checkpoint would bring the deleted blob back.
+     */
+    @Test
+    void compactionNeverResurrectsDeletedBlobsOnARebuild() throws Exception {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        byte[] deletedEarly = blob();
+        List<byte[]> deletedLater = new ArrayList<>();
+        try (PackedBlobStore store = quiet(4096)) {
+            put(store, blobs, deletedEarly);        // Segment 1: deletedEarly, two live blobs
+            put(store, blobs, blob());
+            put(store, blobs, blob());
+            for (int i = 0; i < 3; i++) {           // Segment 2: three blobs deleted below, deletedEarly's tombstone
+                byte[] doomed = blob();
+                put(store, blobs, doomed);
+                deletedLater.add(doomed);
+                if (i == 0) {
+                    delete(store, blobs, deletedEarly);
+                }
+            }
+            put(store, blobs, blob());              // Segment 3 (active): one live blob, the other tombstones
+            for (byte[] doomed : deletedLater) {
+                delete(store, blobs, doomed);
+            }
+            assertThat(store.getSegmentCount()).isEqualTo(3);
+        }
+
+        try (PackedBlobStore store = busy(4096, 0.5)) {
+            awaitTrue("segments 1 and 2 compacted and deleted", () ->
+                    !Files.exists(packDirectory().resolve("0000000001.pack"))
+                            && !Files.exists(packDirectory().resolve("0000000002.pack")));
+            assertContents(store, blobs);
+        }
+        Files.delete(packDirectory().resolve("index.checkpoint"));
+
+        try (PackedBlobStore store = quiet(4096)) {
+            assertThat(store.exists(keyOf(deletedEarly))).isFalse();
+            for (byte[] doomed : deletedLater) {
+                assertThat(store.exists(keyOf(doomed))).isFalse();
+            }
+            assertThat(store.getPackedCount()).isEqualTo(blobs.size());
+            assertContents(store, blobs);
+        }
+    }
+
+    @Test
+    void mostlyLiveOldSegmentHoldsBackCompactionOfNewerGarbage() throws Exception {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        try (PackedBlobStore store = quiet(4096)) {
+            for (int i = 0; i < 3; i++) {           // Segment 1: all live
+                put(store, blobs, blob());
+            }
+            List<byte[]> doomed = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {           // Segment 2: all deleted
+                byte[] blob = blob();
+                put(store, blobs, blob);
+                doomed.add(blob);
+            }
+            put(store, blobs, blob());              // Segment 3 (active)
+            for (byte[] blob : doomed) {
+                delete(store, blobs, blob);
+            }
+        }
+        // Segment 2 alone is all garbage, segments 1 and 2 together half: below 0.6, nothing is compacted
+        try (PackedBlobStore store = busy(4096, 0.6)) {
+            Thread.sleep(200);
+            assertThat(store.getSegmentCount()).isEqualTo(3);
+            assertThat(Files.exists(packDirectory().resolve("0000000002.pack"))).isTrue();
+            assertContents(store, blobs);
+        }
+    }
+
+    @Test
+    void readsAndWritesGoOnWhileSegmentsAreCompacted() throws Exception {
+        Map<String, byte[]> live = new ConcurrentHashMap<>();
+        Map<String, byte[]> doomed = new LinkedHashMap<>();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicLong reads = new AtomicLong();
+
+        try (PackedBlobStore store = busy(16 * 1024, 0.3)) {
+            for (int i = 0; i < 300; i++) {
+                put(store, i % 2 == 0 ? live : doomed, blob());
+            }
+            List<String> keys = List.copyOf(live.keySet());
+
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(Thread.ofPlatform().name("reader-" + i).start(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        String key = keys.get(ThreadLocalRandom.current().nextInt(keys.size()));
+                        try (InputStream in = store.open(key)) {
+                            if (!Arrays.equals(in.readAllBytes(), live.get(key))) {
+                                failures.add(new AssertionError("Wrong content read for " + key));
+                            }
+                            reads.incrementAndGet();
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            Random writerRandom = new Random(7);
+            Thread writer = Thread.ofPlatform().name("writer").start(() -> {
+                for (int i = 0; i < 100; i++) {
+                    byte[] blob = new byte[BLOB_SIZE];
+                    writerRandom.nextBytes(blob);
+                    try {
+                        put(store, live, blob);
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+
+            long readsBefore = reads.get();
+            for (String key : doomed.keySet()) {
+                assertThat(store.delete(key)).isTrue();
+            }
+            awaitTrue("the oldest segment compacted and deleted",
+                    () -> !Files.exists(packDirectory().resolve("0000000001.pack")));
+            writer.join();
+            awaitTrue("reads during compaction", () -> reads.get() > readsBefore + 1000);
+            for (Thread reader : readers) {
+                reader.interrupt();
+                reader.join();
+            }
+
+            assertThat(failures).isEmpty();
+            assertThat(store.getPackedCount()).isEqualTo(live.size());
+            assertContents(store, live);
+        }
+        Files.delete(packDirectory().resolve("index.checkpoint"));
+
+        try (PackedBlobStore store = quiet(16 * 1024)) {
+            assertThat(store.getPackedCount()).isEqualTo(live.size());
+            assertContents(store, live);
+            for (String key : doomed.keySet()) {
+                assertThat(store.exists(key)).isFalse();
+            }
+        }
+    }
+
+    // --- Helpers -------------------------------------------------------------------------------------------
+
+    /**
+     * Segment 1 has three blobs, the second deleted in segment 2. Segment 2 has a blob that is deleted there
+     * too and written again in segment 3. Closed, so a checkpoint is on disk.
+     */
+    private Map<String, byte[]> writeHistoryAcrossSegments() throws IOException {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        try (PackedBlobStore store = quiet(4096)) {
+            List<byte[]> first = List.of(blob(), blob(), blob());
+            for (byte[] blob : first) {
+                put(store, blobs, blob);
+            }
+            byte[] rewritten = blob();
+            put(store, blobs, rewritten);
+            delete(store, blobs, first.get(1));
+            put(store, blobs, blob());
+            put(store, blobs, blob());
+            delete(store, blobs, rewritten);
+            put(store, blobs, blob());
+            put(store, blobs, blob());
+            put(store, blobs, rewritten);
+            assertThat(store.getSegmentCount()).isEqualTo(3);
+        }
+        return blobs;
+    }
+
+    private PackedBlobStore quiet(long segmentSize) throws IOException {
+        return open(segmentSize, Duration.ofHours(1), Duration.ofHours(1), 0.5);
+    }
+
+    private PackedBlobStore busy(long segmentSize, double garbageRatio) throws IOException {
+        return open(segmentSize, Duration.ofMillis(10), Duration.ZERO, garbageRatio);
+    }
+
+    private PackedBlobStore open(long segmentSize, Duration checkpointInterval, Duration compactionInterval,
+                                 double garbageRatio) throws IOException {
+        return new PackedBlobStore(new FileSystemBlobStore(data.resolve("large"), FsyncPolicy.NONE), packDirectory(),
+                FsyncPolicy.NONE, 64 * 1024, segmentSize, checkpointInterval, compactionInterval, garbageRatio);
+    }
+
+    private Path packDirectory() {
+        return data.resolve("pack");
+    }
+
+    private byte[] blob() {
+        byte[] blob = new byte[BLOB_SIZE];
+        random.nextBytes(blob);
+        return blob;
+    }
+
+    private static void put(PackedBlobStore store, Map<String, byte[]> blobs, byte[] blob) throws IOException {
+        StagedBlob staged = store.stage(new ByteArrayInputStream(blob));
+        assertThat(staged.content()).as("packed, not handed to the large-blob store").isNotNull();
+        store.commit(staged, staged.sha256());
+        blobs.put(staged.sha256(), blob);
+    }
+
+    private static void delete(PackedBlobStore store, Map<String, byte[]> blobs, byte[] blob) throws IOException {
+        assertThat(store.delete(keyOf(blob))).isTrue();
+        blobs.remove(keyOf(blob));
+    }
+
+    private static void assertContents(PackedBlobStore store, Map<String, byte[]> blobs) throws IOException {
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            try (InputStream in = store.open(blob.getKey())) {
+                assertThat(in.readAllBytes()).as(blob.getKey()).isEqualTo(blob.getValue());
+            }
+        }
+    }
+
+    private static String keyOf(byte[] blob) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(blob));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A segment record as PackedBlobStore writes it: magic, type, key length, data length, CRC32C, key, data.
+     */
+    private static byte[] record(int type, String key, byte[] blob) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        CRC32C crc = new CRC32C();
+        crc.update(keyBytes);
+        crc.update(blob);
+        return ByteBuffer.allocate(15 + keyBytes.length + blob.length)
+                .putInt(0x5041434B)
+                .put((byte) type)
+                .putShort((short) keyBytes.length)
+                .putInt(blob.length)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(blob)
+                .array();
+    }
+
+    private static void append(Path segment, byte[] bytes) throws IOException {
+        Files.write(segment, bytes, StandardOpenOption.APPEND);
+    }
+
+    private static void awaitTrue(String description, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waiting for " + description).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.photoupload.admission;
+
+import com.example.photoupload.config.PhotoUploadProperties;
+import com.example.photoupload.metrics.UploadMetrics;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Servlet filter that admits upload requests (POST/PUT under /api/v1/upload) only while there is room
+ * in the {@link InFlightByteBudget}, before a single byte of the body is read.
+ *
+ * Requests that cannot be admitted in time get 429 Too Many Requests with a Retry-After header, which clients
+ * (e.g. the desktop client's bulk uploader) honour before retrying. The reservation is held until the response
+ * is complete; for the asynchronous (Mono-returning) endpoints that is when the async request finishes,
+ * not when this filter returns.
+ */
+@Component
+@Slf4j
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String UPLOAD_PATH_PREFIX = "/api/v1/upload";
+
+    private final InFlightByteBudget budget;
+    private final PhotoUploadProperties uploadProperties;
+    private final UploadMetrics metrics;
+
+    public AdmissionControlFilter(InFlightByteBudget budget, PhotoUploadProperties uploadProperties, UploadMetrics metrics) {
+        this.budget = budget;
+        this.uploadProperties = uploadProperties;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !("POST".equals(method) || "PUT".equals(method)) || !request.getRequestURI().startsWith(UPLOAD_PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Without a Content-Length, assume the largest photo we accept
+        long contentLength = request.getContentLengthLong();
+        long charge = contentLength >= 0 ? contentLength : uploadProperties.getMaxImageSize().toBytes();
+
+        Optional<InFlightByteBudget.Reservation> reservation;
+        try {
+            reservation = budget.tryReserve(charge);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        if (reservation.isEmpty()) {
+            metrics.recordRejected(UploadMetrics.STAGE_ADMISSION, "budget_exhausted");
+            log.warn("Rejected upload of {} bytes: in-flight byte budget exhausted ({} bytes in flight, {} waiting)", charge, budget.getInFlightBytes(), budget.getQueueLength());
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, uploadProperties.getRetryAfter().toSeconds())));
+            response.setContentType("text/plain");
+            response.getWriter().write("Too many uploads in progress, retry later.");
+            return;
+        }
+
+        InFlightByteBudget.Reservation admitted = reservation.get();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(admitted));
+            } else {
+                admitted.release();
+            }
+        }
+    }
+
+    /**
+     * Gives the reservation back once an asynchronous request has finished, however it finished.
+     */
+    private record ReleaseOnCompletion(InFlightByteBudget.Reservation reservation) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            reservation.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            reservation.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            reservation.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Not re-dispatched asynchronously; nothing to do
+        }
+    }
+}
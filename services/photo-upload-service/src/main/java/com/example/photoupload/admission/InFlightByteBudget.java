@@ -0,0 +1,104 @@
+package com.example.photoupload.admission;
+
+import com.example.photoupload.config.PhotoUploadProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global budget for the request bytes this instance is working on at once.
+ *
+ * Each upload reserves its Content-Length before its body is read and gives it back when the response is done,
+ * so the memory held by uploads (request buffers, JSON byte arrays, relay buffers) stays bounded however bursty
+ * the traffic is. The budget is a fair semaphore counted in kilobytes: waiting uploads are admitted strictly in
+ * arrival order, so a large photo cannot be starved by a stream of small ones, and an upload that cannot be
+ * admitted within the configured timeout is turned away (the filter answers 429 Too Many Requests).
+ * A single request larger than the whole budget reserves the whole budget, i.e. it runs alone.
+ */
+@Component
+@Slf4j
+public class InFlightByteBudget {
+
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+    private final long admissionTimeoutMillis;
+    private final AtomicInteger admittedRequests = new AtomicInteger();
+
+    public InFlightByteBudget(PhotoUploadProperties properties) {
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, properties.getMaxInFlightBytes().toBytes() / BYTES_PER_PERMIT);
+        this.permits = new Semaphore(totalPermits, true); // Fair: FIFO admission
+        this.admissionTimeoutMillis = properties.getAdmissionTimeout().toMillis();
+        log.info("InFlightByteBudget initialized with {}, admission timeout {}", properties.getMaxInFlightBytes(), properties.getAdmissionTimeout());
+    }
+
+    /**
+     * Reserves room for a request, waiting up to the admission timeout.
+     *
+     * @param bytes The size of the request body.
+     * @return The reservation, to be released when the request is finished, or empty if there was no room in time.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public Optional<Reservation> tryReserve(long bytes) throws InterruptedException {
+        int needed = (int) Math.min(totalPermits, (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT);
+        if (!permits.tryAcquire(needed, admissionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return Optional.empty();
+        }
+        admittedRequests.incrementAndGet();
+        return Optional.of(new Reservation(needed));
+    }
+
+    /**
+     * @return The bytes currently reserved by admitted requests.
+     */
+    public long getInFlightBytes() {
+        return (long) (totalPermits - permits.availablePermits()) * BYTES_PER_PERMIT;
+    }
+
+    /**
+     * @return The total size of the budget in bytes.
+     */
+    public long getCapacityBytes() {
+        return (long) totalPermits * BYTES_PER_PERMIT;
+    }
+
+    /**
+     * @return The number of admitted requests that have not released their reservation yet.
+     */
+    public int getAdmittedRequests() {
+        return admittedRequests.get();
+    }
+
+    /**
+     * @return The number of requests waiting to be admitted.
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Room reserved by one admitted request. Releasing it more than once has no effect.
+     */
+    public final class Reservation {
+
+        private final int reservedPermits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(int reservedPermits) {
+            this.reservedPermits = reservedPermits;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release(reservedPermits);
+                admittedRequests.decrementAndGet();
+            }
+        }
+    }
+}
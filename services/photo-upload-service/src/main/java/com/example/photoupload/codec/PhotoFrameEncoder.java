@@ -0,0 +1,50 @@
+package com.example.photoupload.codec;
+
+import com.example.common.codec.PhotoFrame;
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoUploadRequest;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebClient encoder that writes {@link PhotoUploadRequest} bodies as {@link PhotoFrame}s
+ * ({@value PhotoFrame#MEDIA_TYPE}) when forwarding photos to the Photo Storage Service.
+ *
+ * The frame prefix is a fresh buffer and the image is wrapped, not copied; the two are joined into one buffer
+ * because WebClient expects a single buffer for a single value (it sets Content-Length from it).
+ * With Reactor Netty that join is a composite buffer, so the image bytes are still not copied.
+ */
+public class PhotoFrameEncoder extends AbstractEncoder<PhotoUploadRequest> {
+
+    public PhotoFrameEncoder() {
+        super(MimeType.valueOf(PhotoFrame.MEDIA_TYPE));
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return PhotoUploadRequest.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends PhotoUploadRequest> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(request -> encodeValue(request, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(PhotoUploadRequest request, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        PhotoMetadata metadata = new PhotoMetadata(request.getFilename(), request.getContentType(), request.getDescription());
+        byte[] imageData = request.getImageData();
+        DataBuffer prefix = bufferFactory.wrap(PhotoFrame.encodePrefix(metadata, imageData.length));
+        return bufferFactory.join(List.of(prefix, bufferFactory.wrap(imageData)));
+    }
+}
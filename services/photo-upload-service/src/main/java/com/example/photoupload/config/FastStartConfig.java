@@ -0,0 +1,26 @@
+package com.example.photoupload.config;
+
+import com.example.photoupload.admission.AdmissionControlFilter;
+import com.example.photoupload.controller.PhotoUploadController;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Part of the fast-start profile (application-fast-start.yml), in which every bean is created on first use
+ * instead of during startup.
+ *
+ * The upload controller is excluded, and with it the upload service, the storage cluster and its WebClient, so
+ * the first upload does not pay for them. Upload sessions and most of Actuator stay lazy.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("fast-start")
+public class FastStartConfig {
+
+    // Static: read before any other bean is created
+    @Bean
+    static LazyInitializationExcludeFilter eagerUploadBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(PhotoUploadController.class, AdmissionControlFilter.class);
+    }
+}
@@ -4,6 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration properties for connecting to the Photo Storage Service.
  * Binds properties prefixed with "photo-storage" from application.yml.
@@ -16,10 +20,132 @@ public class PhotoStorageServiceProperties {
     /**
      * The base URL of the Photo Storage Service API.
      * Example: http://localhost:8082 or http://photo-storage-service:8082 (in Docker)
+     * Ignored when {@link #nodes} is set.
      */
     private String serviceUrl;
 
-    // You could add other properties here if needed, e.g.,
-    // private int connectionTimeout;
-    // private int readTimeout;
-}
\ No newline at end of file
+    /**
+     * Base URLs of several Photo Storage Service instances that share the photos between them
+     * (see StorageCluster). Each photo goes to the nodes its routing key hashes to.
+     * Example: [http://storage-1:8082, http://storage-2:8082, http://storage-3:8082]
+     */
+    private List<String> nodes = new ArrayList<>();
+
+    /**
+     * How photos are spread over the {@link #nodes} and how many copies are written.
+     */
+    private ShardingSettings sharding = new ShardingSettings();
+
+    /**
+     * When a node that keeps failing is taken out of rotation.
+     */
+    private HealthSettings health = new HealthSettings();
+
+    /**
+     * Maximum number of open connections to the Photo Storage Service.
+     */
+    private int maxConnections = 100;
+
+    /**
+     * Maximum number of requests waiting for a free connection; beyond this they fail immediately.
+     */
+    private int pendingAcquireMaxCount = 500;
+
+    /**
+     * How long a request waits for a free connection before it fails.
+     */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How long establishing a new connection may take.
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * How long to wait for the response once the request has been sent
+     * (the storage service answers after the photo has been written).
+     */
+    private Duration responseTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Idle connections are closed after this time, so the pool never hands out a connection the server has dropped.
+     */
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    /**
+     * Body format used to forward photos received on POST /api/v1/upload to the Photo Storage Service.
+     */
+    private ForwardFormat forwardFormat = ForwardFormat.PHOTO_FRAME;
+
+    /**
+     * @return The storage nodes to use: {@link #nodes}, or {@link #serviceUrl} alone when no nodes are listed.
+     */
+    public List<String> getNodeUrls() {
+        return nodes.isEmpty() ? List.of(serviceUrl) : nodes;
+    }
+
+    /**
+     * Settings for spreading photos over several storage nodes ("photo-storage.sharding.*").
+     */
+    @Data
+    public static class ShardingSettings {
+
+        /**
+         * Points each node gets on the hash ring. More points spread the photos more evenly
+         * (at 160, no node is more than about 12% off the mean) at the cost of a larger ring to search.
+         */
+        private int virtualNodes = 160;
+
+        /**
+         * How many nodes each photo is written to: the first ones clockwise from its key on the ring.
+         */
+        private int replicationFactor = 1;
+
+        /**
+         * How many of those writes must succeed before the upload is acknowledged.
+         * Defaults to a majority of the replication factor. The remaining writes still complete in the background.
+         */
+        private Integer writeQuorum;
+
+        /**
+         * If a write has not reached its quorum after this long, one more copy is sent to the next node on the ring,
+         * and whichever answers first counts. Only for uploads whose body can be sent twice (JSON and batch);
+         * streamed bodies are read once. Unset (the default) disables hedging.
+         */
+        private Duration hedgeDelay;
+
+        /**
+         * @return The write quorum to use: {@link #writeQuorum} if set, otherwise a majority of the replicas.
+         */
+        public int effectiveWriteQuorum() {
+            return writeQuorum != null ? writeQuorum : replicationFactor / 2 + 1;
+        }
+    }
+
+    /**
+     * Settings for passive health checking of storage nodes ("photo-storage.health.*"): no probes are sent,
+     * the outcome of real requests is watched instead.
+     */
+    @Data
+    public static class HealthSettings {
+
+        /**
+         * A node is ejected after this many requests in a row have failed (connection errors, timeouts and 5xx
+         * answers; 4xx answers are the request's fault and do not count).
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * How long an ejected node gets no new photos. Afterwards it is tried again, and ejected again by its
+         * first failure. Ejected nodes are still used when no other node is left.
+         */
+        private Duration ejectionTime = Duration.ofSeconds(30);
+    }
+
+    public enum ForwardFormat {
+        /** The image as raw bytes behind a small binary header (application/x-photo-frame, see PhotoFrame). */
+        PHOTO_FRAME,
+        /** The image Base64-encoded in a JSON PhotoUploadRequest; for storage services that predate photo frames. */
+        JSON
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.photoupload.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the upload endpoints exposed by this service.
+ * Binds properties prefixed with "photo-upload" from application.yml.
+ */
+@Component // Makes this class a Spring managed component (a bean)
+@ConfigurationProperties(prefix = "photo-upload") // Binds properties starting with "photo-upload."
+@Data // Lombok annotation to automatically generate getters, setters, toString, equals, and hashCode methods
+public class PhotoUploadProperties {
+
+    /**
+     * The largest image accepted on the streaming upload endpoint and in application/x-photo-frame bodies.
+     * Example: 100MB
+     */
+    private DataSize maxImageSize = DataSize.ofMegabytes(100);
+
+    /**
+     * How much of each upload is inspected to determine its real format, dimensions and EXIF data
+     * before the rest of the body is read (see ImageValidator).
+     */
+    private DataSize sniffSize = DataSize.ofKilobytes(64);
+
+    /**
+     * The largest image, in pixels (width x height), accepted. Anything bigger is most likely a decompression
+     * bomb: a small file that would take gigabytes of memory to decode for its thumbnails.
+     */
+    private long maxImagePixels = 200_000_000L;
+
+    /**
+     * Size of the buffers used to relay the request body to the Photo Storage Service.
+     * Only a handful of these are alive per upload at any time, regardless of the image size.
+     */
+    private DataSize streamBufferSize = DataSize.ofKilobytes(64);
+
+    /**
+     * Total size of the request bodies this instance works on at any time (see InFlightByteBudget).
+     * Requests beyond it wait in line briefly and are then turned away with 429 Too Many Requests.
+     */
+    private DataSize maxInFlightBytes = DataSize.ofMegabytes(512);
+
+    /**
+     * How long a request may wait in line for room in the in-flight byte budget.
+     */
+    private Duration admissionTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Value of the Retry-After header sent with 429 responses.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+}
@@ -0,0 +1,49 @@
+package com.example.photoupload.config;
+
+import com.example.photoupload.codec.PhotoFrameEncoder;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Builds the WebClient used to talk to the Photo Storage Service.
+ * Connections come from a dedicated, bounded Reactor Netty pool, so a burst of uploads queues for a connection
+ * (up to a limit, then fails fast) instead of opening an unbounded number of sockets, and every call has
+ * connect and response timeouts. All values come from {@link PhotoStorageServiceProperties}.
+ * The client can also write {@link PhotoFrameEncoder photo frames}, the binary alternative to JSON uploads.
+ *
+ * The client has no base URL: StorageCluster derives one client per storage node from it, all sharing the pool
+ * (which keeps a separate set of up to max-connections connections per node).
+ */
+@Configuration
+@Slf4j
+public class StorageClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider photoStorageConnectionProvider(PhotoStorageServiceProperties properties) {
+        return ConnectionProvider.builder("photo-storage")
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .build();
+    }
+
+    @Bean
+    public WebClient photoStorageWebClient(WebClient.Builder webClientBuilder, ConnectionProvider photoStorageConnectionProvider,
+                                           PhotoStorageServiceProperties properties) {
+        HttpClient httpClient = HttpClient.create(photoStorageConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getResponseTimeout());
+        log.info("Photo Storage Service client: max {} connections per node, {} pending, forwarding uploads as {}", properties.getMaxConnections(), properties.getPendingAcquireMaxCount(), properties.getForwardFormat());
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.customCodecs().register(new PhotoFrameEncoder()))
+                .build();
+    }
+}
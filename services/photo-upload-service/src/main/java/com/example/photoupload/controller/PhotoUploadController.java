@@ -1,14 +1,43 @@
 package com.example.photoupload.controller;
 
+import com.example.common.dto.BatchUploadItemResult;
+import com.example.common.dto.BatchUploadResponse;
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.dto.PhotoMetadata;
 import com.example.common.dto.PhotoUploadRequest; // Import the shared DTO
+import com.example.common.image.ImageHeaderSniffer;
+import com.example.common.image.ImageInfo;
+import com.example.common.util.ImageUtil;
+import com.example.photoupload.config.PhotoUploadProperties;
+import com.example.photoupload.metrics.UploadMetrics;
+import com.example.photoupload.routing.RoutingKeys;
 import com.example.photoupload.service.PhotoUploadService;
+import com.example.photoupload.validation.ImageValidator;
+import com.example.photoupload.validation.RejectedImageException;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * REST Controller for handling photo upload requests from clients.
@@ -16,19 +45,28 @@ import reactor.core.publisher.Mono;
  */
 @RestController // Marks this class as a REST Controller, handling incoming web requests
 @RequestMapping("/api/v1/upload") // Base path for all endpoints in this controller
+@Slf4j
 public class PhotoUploadController {
 
     private final PhotoUploadService photoUploadService;
+    private final PhotoUploadProperties uploadProperties;
+    private final UploadMetrics metrics;
+    private final ImageValidator imageValidator;
 
     // Spring will automatically inject an instance of PhotoUploadService
     // because it's marked with @Service and this is a component
-    public PhotoUploadController(PhotoUploadService photoUploadService) {
+    public PhotoUploadController(PhotoUploadService photoUploadService, PhotoUploadProperties uploadProperties,
+                                 UploadMetrics metrics, ImageValidator imageValidator) {
         this.photoUploadService = photoUploadService;
+        this.uploadProperties = uploadProperties;
+        this.metrics = metrics;
+        this.imageValidator = imageValidator;
     }
 
     /**
      * Handles POST requests to upload a photo.
      * The photo data and metadata are expected in the request body as a PhotoUploadRequest JSON object.
+     * The content type is taken from the image's header (see {@link ImageValidator}), not from the request.
      *
      * @param request The PhotoUploadRequest object containing photo filename, content type, image data, and description.
      * @return A Mono<ResponseEntity<String>> indicating the success or failure of the upload.
@@ -38,32 +76,217 @@ public class PhotoUploadController {
         // --- Basic Input Validation ---
         // More sophisticated validation (e.g., using JSR-380 annotations like @NotNull, @Size)
         // could be added to the PhotoUploadRequest DTO and enabled here with @Valid.
+        Timer.Sample validation = metrics.startStage();
         if (request.getImageData() == null || request.getImageData().length == 0) {
-            System.out.println("Validation Error: Image data is empty for upload request.");
+            log.debug("Validation Error: Image data is empty for upload request.");
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "empty_image");
             return Mono.just(ResponseEntity.badRequest().body("Image data cannot be empty."));
         }
         if (request.getFilename() == null || request.getFilename().trim().isEmpty()) {
-            System.out.println("Validation Error: Filename is empty for upload request.");
+            log.debug("Validation Error: Filename is empty for upload request.");
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "empty_filename");
             return Mono.just(ResponseEntity.badRequest().body("Filename cannot be empty."));
         }
-        // You might also want to validate contentType here, e.g., only "image/jpeg", "image/png"
+        ImageInfo image;
+        try {
+            image = imageValidator.validate(request.getImageData(), request.getImageData().length);
+        } catch (RejectedImageException e) {
+            log.debug("Validation Error: {} for upload of {}", e.getMessage(), request.getFilename());
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, e.getReason());
+            return Mono.just(ResponseEntity.status(e.getStatus()).body(e.getMessage()));
+        }
+        request.setContentType(image.format().getMimeType());
+        metrics.stopStage(validation, UploadMetrics.STAGE_VALIDATION, UploadMetrics.ENDPOINT_JSON);
+        metrics.recordPayloadSize(UploadMetrics.ENDPOINT_JSON, request.getImageData().length);
 
-        System.out.println("Received upload request for file: " + request.getFilename() +
-                ", Size: " + (request.getImageData().length / 1024) + " KB");
+        log.debug("Received upload request for file: {}, Size: {} KB", request.getFilename(), (request.getImageData().length / 1024));
 
         // Delegate the actual photo saving logic to the PhotoUploadService
         return photoUploadService.uploadPhoto(request)
                 .map(response -> {
                     // If the upload to photo-storage-service was successful
-                    System.out.println("Upload successful for file: " + request.getFilename() + ". Storage service response: " + response);
+                    log.debug("Upload successful for file: {}. Storage service response: {}", request.getFilename(), response);
                     return ResponseEntity.ok("Upload successful: " + response);
                 })
                 .onErrorResume(e -> {
                     // If an error occurred during the upload process (e.g., network issue to storage service)
-                    System.err.println("Upload failed for file: " + request.getFilename() + ". Error: " + e.getMessage());
-                    // Log the full stack trace for debugging
-                    e.printStackTrace();
+                    // The exception is passed last, so the full stack trace is logged for debugging
+                    log.error("Upload failed for file: {}. Error: {}", request.getFilename(), e.getMessage(), e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * Handles POST requests that stream a photo as the raw request body.
+     * The metadata travels in the {@link PhotoHeaders} headers,
+     * and the image bytes are relayed to the Photo Storage Service buffer by buffer,
+     * so the whole image is never held in memory at once.
+     * Only the first bytes are read before anything is forwarded: they are sniffed (see {@link ImageValidator}),
+     * and an upload that is not an acceptable image is rejected without reading the rest of its body.
+     * The content type forwarded is the sniffed one; the Content-Type header of the request is ignored.
+     * The sniffed bytes also decide which storage nodes get the photo (see {@link RoutingKeys}).
+     *
+     * @param encodedFilename The URL-encoded filename from the X-Photo-Filename header.
+     * @param encodedDescription The optional URL-encoded description from the X-Photo-Description header.
+     * @param servletRequest The raw servlet request, used to read the body as a stream.
+     * @return A Mono<ResponseEntity<String>> indicating the success or failure of the upload.
+     */
+    @PostMapping("/stream")
+    public Mono<ResponseEntity<String>> uploadPhotoStream(
+            @RequestHeader(PhotoHeaders.FILENAME) String encodedFilename,
+            @RequestHeader(value = PhotoHeaders.DESCRIPTION, required = false) String encodedDescription,
+            HttpServletRequest servletRequest) {
+        PhotoMetadata metadata = new PhotoMetadata(
+                PhotoHeaders.decode(encodedFilename),
+                servletRequest.getContentType(),
+                PhotoHeaders.decode(encodedDescription)
+        );
+        long contentLength = servletRequest.getContentLengthLong();
+
+        // --- Basic Input Validation (on headers only, before any body byte is read) ---
+        Timer.Sample validation = metrics.startStage();
+        if (metadata.getFilename() == null || metadata.getFilename().trim().isEmpty()) {
+            log.debug("Validation Error: Filename is empty for streaming upload request.");
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "empty_filename");
+            return Mono.just(ResponseEntity.badRequest().body("Filename cannot be empty."));
+        }
+        if (contentLength < 0) {
+            // The storage service needs the exact length up front to stream the body through
+            log.debug("Validation Error: Missing Content-Length for streaming upload of {}", metadata.getFilename());
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "missing_content_length");
+            return Mono.just(ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body("Content-Length header is required."));
+        }
+        if (contentLength == 0) {
+            log.debug("Validation Error: Empty body for streaming upload of {}", metadata.getFilename());
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "empty_image");
+            return Mono.just(ResponseEntity.badRequest().body("Image data cannot be empty."));
+        }
+        if (!ImageUtil.isValidImageSize(contentLength, uploadProperties.getMaxImageSize().toBytes())) {
+            log.debug("Validation Error: Streaming upload of {} is too large: {} bytes (max {})",
+                    metadata.getFilename(), contentLength, uploadProperties.getMaxImageSize());
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "invalid_size");
+            return Mono.just(ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("Image must not be larger than " + uploadProperties.getMaxImageSize() + "."));
+        }
+        metrics.stopStage(validation, UploadMetrics.STAGE_VALIDATION, UploadMetrics.ENDPOINT_STREAM);
+        metrics.recordPayloadSize(UploadMetrics.ENDPOINT_STREAM, contentLength);
+
+        log.debug("Received streaming upload request for file: {}, Size: {} KB", metadata.getFilename(), contentLength / 1024);
+
+        // Reading the servlet input stream is blocking, so it happens on the bounded elastic scheduler.
+        // First only the header is read and sniffed; the rest of the body is not touched if it is rejected.
+        int headerLength = (int) Math.min(contentLength, imageValidator.getSniffSize());
+        return Mono.fromCallable(() -> ImageHeaderSniffer.readHeader(servletRequest.getInputStream(), headerLength))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(header -> {
+                    ImageInfo image = imageValidator.validate(header, header.length);
+                    PhotoMetadata sniffed = new PhotoMetadata(metadata.getFilename(), image.format().getMimeType(), metadata.getDescription());
+
+                    // The header goes first, then the rest of the body. DataBufferUtils.readInputStream only reads
+                    // the next buffer when WebClient asks for it, which keeps the number of live buffers per upload
+                    // small and independent of the image size.
+                    Flux<DataBuffer> imageData = Flux.concat(
+                            Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(header)),
+                            DataBufferUtils.readInputStream(
+                                            servletRequest::getInputStream,
+                                            DefaultDataBufferFactory.sharedInstance,
+                                            (int) uploadProperties.getStreamBufferSize().toBytes())
+                                    .subscribeOn(Schedulers.boundedElastic()));
+                    long routingKey = RoutingKeys.of(header, header.length, contentLength);
+                    return photoUploadService.uploadPhotoStream(sniffed, routingKey, contentLength, imageData);
+                })
+                .map(response -> {
+                    log.debug("Streaming upload successful for file: {}. Storage service response: {}", metadata.getFilename(), response);
+                    return ResponseEntity.ok("Upload successful: " + response);
+                })
+                .onErrorResume(RejectedImageException.class, e -> {
+                    log.debug("Validation Error: {} for streaming upload of {}", e.getMessage(), metadata.getFilename());
+                    metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, e.getReason());
+                    return Mono.just(ResponseEntity.status(e.getStatus()).body(e.getMessage()));
+                })
+                .onErrorResume(e -> {
+                    log.error("Streaming upload failed for file: {}. Error: {}", metadata.getFilename(), e.getMessage(), e);
                     return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage()));
                 });
     }
-}
\ No newline at end of file
+
+    /**
+     * Handles POST requests that upload many photos at once, e.g. from bulk-import jobs.
+     * Expects multipart/form-data with one "files" part per photo and optionally one "descriptions"
+     * part per photo, in the same order. Photos that fail validation (including the header sniffing of
+     * {@link ImageValidator}) are reported without being forwarded; the rest go to the Photo Storage Service
+     * in one request, with their sniffed content types, and are stored in one transaction.
+     *
+     * @param files The photo parts (part filename and Content-Type are used as metadata).
+     * @param descriptions Optional descriptions, matched to the files by position.
+     * @return A Mono<ResponseEntity<BatchUploadResponse>> with the outcome of every photo, in request order.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<BatchUploadResponse>> uploadPhotoBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "descriptions", required = false) List<String> descriptions) {
+        log.debug("Received batch upload request with {} photos.", files.size());
+
+        // --- Basic Input Validation, per item; only valid photos are forwarded ---
+        Timer.Sample validation = metrics.startStage();
+        BatchUploadItemResult[] results = new BatchUploadItemResult[files.size()];
+        List<MultipartFile> forwarded = new ArrayList<>();
+        List<String> forwardedContentTypes = new ArrayList<>();
+        List<String> forwardedDescriptions = new ArrayList<>();
+        List<Integer> forwardedIndexes = new ArrayList<>();
+        long maxImageSize = uploadProperties.getMaxImageSize().toBytes();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String filename = file.getOriginalFilename();
+            if (filename == null || filename.trim().isEmpty()) {
+                results[i] = BatchUploadItemResult.failed(i, filename, "Filename cannot be empty.");
+                metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "empty_filename");
+            } else if (!ImageUtil.isValidImageSize(file.getSize(), maxImageSize)) {
+                results[i] = BatchUploadItemResult.failed(i, filename,
+                        "Image must be between 1 byte and " + uploadProperties.getMaxImageSize() + ".");
+                metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "invalid_size");
+            } else {
+                ImageInfo image;
+                try {
+                    image = imageValidator.validate(file);
+                } catch (RejectedImageException e) {
+                    results[i] = BatchUploadItemResult.failed(i, filename, e.getMessage());
+                    metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, e.getReason());
+                    continue;
+                } catch (IOException e) {
+                    results[i] = BatchUploadItemResult.failed(i, filename, "Failed to read photo: " + e.getMessage());
+                    metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "unreadable");
+                    continue;
+                }
+                forwarded.add(file);
+                forwardedContentTypes.add(image.format().getMimeType());
+                forwardedDescriptions.add(descriptions != null && i < descriptions.size() ? descriptions.get(i) : null);
+                forwardedIndexes.add(i);
+                metrics.recordPayloadSize(UploadMetrics.ENDPOINT_BATCH, file.getSize());
+            }
+        }
+        metrics.stopStage(validation, UploadMetrics.STAGE_VALIDATION, UploadMetrics.ENDPOINT_BATCH);
+        if (forwarded.isEmpty()) {
+            return Mono.just(ResponseEntity.ok(BatchUploadResponse.of(Arrays.asList(results))));
+        }
+
+        return photoUploadService.uploadPhotoBatch(forwarded, forwardedContentTypes, forwardedDescriptions)
+                .map(storageResponse -> {
+                    // The storage service numbers items within the forwarded list; map them back to request positions
+                    for (BatchUploadItemResult item : storageResponse.getItems()) {
+                        item.setIndex(forwardedIndexes.get(item.getIndex()));
+                        results[item.getIndex()] = item;
+                    }
+                    return ResponseEntity.ok(BatchUploadResponse.of(Arrays.asList(results)));
+                })
+                .onErrorResume(e -> {
+                    log.error("Batch upload failed. Error: {}", e.getMessage(), e);
+                    for (int j = 0; j < forwarded.size(); j++) {
+                        int index = forwardedIndexes.get(j);
+                        results[index] = BatchUploadItemResult.failed(index, forwarded.get(j).getOriginalFilename(),
+                                "Upload failed: " + e.getMessage());
+                    }
+                    return Mono.just(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(BatchUploadResponse.of(Arrays.asList(results))));
+                });
+    }
+}
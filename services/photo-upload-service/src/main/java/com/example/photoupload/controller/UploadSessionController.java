@@ -0,0 +1,150 @@
+package com.example.photoupload.controller;
+
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.dto.UploadSessionRequest;
+import com.example.photoupload.config.PhotoUploadProperties;
+import com.example.photoupload.metrics.UploadMetrics;
+import com.example.photoupload.service.PhotoUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * REST Controller for resumable uploads, meant for large photos and unreliable links.
+ *
+ * Protocol:
+ * 1. POST /api/v1/upload/sessions with filename, contentType, description and totalSize (JSON)
+ *    returns the session ID and the chunk size to use.
+ * 2. PUT /api/v1/upload/sessions/{id}/chunks/{index} with the raw chunk bytes and its hex SHA-256
+ *    in the X-Chunk-SHA256 header, for every chunk, in any order; failed chunks are simply sent again.
+ * 3. After a dropped connection, GET /api/v1/upload/sessions/{id} tells which chunks are still missing.
+ * 4. POST /api/v1/upload/sessions/{id}/commit stores the photo.
+ *
+ * The session state and the chunks live in the Photo Storage Service; this controller relays the calls
+ * (chunk bodies are streamed through, never buffered in full) and passes its answers back unchanged,
+ * except that session IDs carry the ID of the storage node holding the session (see PhotoUploadService).
+ */
+@RestController
+@RequestMapping("/api/v1/upload/sessions") // Base path for upload session operations
+@Slf4j
+public class UploadSessionController {
+
+    private final PhotoUploadService photoUploadService;
+    private final PhotoUploadProperties uploadProperties;
+    private final UploadMetrics metrics;
+
+    public UploadSessionController(PhotoUploadService photoUploadService, PhotoUploadProperties uploadProperties,
+                                   UploadMetrics metrics) {
+        this.photoUploadService = photoUploadService;
+        this.uploadProperties = uploadProperties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Opens a resumable upload session.
+     *
+     * @param request The photo's metadata and total size, and optionally the desired chunk size.
+     * @return The session status (201), or the reason the session was refused.
+     */
+    @PostMapping
+    public Mono<ResponseEntity<String>> openSession(@RequestBody UploadSessionRequest request) {
+        return relay(photoUploadService.openUploadSession(request), "open upload session for " + request.getFilename());
+    }
+
+    /**
+     * @param sessionId The ID of the session.
+     * @return The session status, including the first missing chunk.
+     */
+    @GetMapping("/{sessionId}")
+    public Mono<ResponseEntity<String>> getSession(@PathVariable String sessionId) {
+        return relay(photoUploadService.getUploadSession(sessionId), "query upload session " + sessionId);
+    }
+
+    /**
+     * Streams one chunk to the Photo Storage Service.
+     *
+     * @param sessionId The ID of the session.
+     * @param index The chunk index, starting at 0.
+     * @param sha256 Hex SHA-256 of the chunk body.
+     * @param servletRequest The raw servlet request, used to read the body as a stream.
+     * @return The updated session status, or the reason the chunk was refused.
+     */
+    @PutMapping("/{sessionId}/chunks/{index}")
+    public Mono<ResponseEntity<String>> putChunk(@PathVariable String sessionId, @PathVariable int index,
+                                                 @RequestHeader(PhotoHeaders.CHUNK_SHA256) String sha256,
+                                                 HttpServletRequest servletRequest) {
+        long contentLength = servletRequest.getContentLengthLong();
+        if (contentLength < 0) {
+            metrics.recordRejected(UploadMetrics.STAGE_VALIDATION, "missing_content_length");
+            return Mono.just(ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).body("Content-Length header is required."));
+        }
+        metrics.recordPayloadSize(UploadMetrics.ENDPOINT_CHUNK, contentLength);
+
+        // Same relay as the /stream endpoint: blocking reads on the bounded elastic scheduler, one buffer at a time
+        Flux<DataBuffer> chunkData = DataBufferUtils.readInputStream(
+                        servletRequest::getInputStream,
+                        DefaultDataBufferFactory.sharedInstance,
+                        (int) uploadProperties.getStreamBufferSize().toBytes())
+                .subscribeOn(Schedulers.boundedElastic());
+
+        return relay(photoUploadService.uploadChunk(sessionId, index, sha256, contentLength, chunkData),
+                "upload chunk " + index + " of session " + sessionId);
+    }
+
+    /**
+     * Commits a session once all chunks have arrived. Safe to repeat.
+     *
+     * @param sessionId The ID of the session.
+     * @return 201 with a confirmation message, or 409 if chunks are still missing.
+     */
+    @PostMapping("/{sessionId}/commit")
+    public Mono<ResponseEntity<String>> commitSession(@PathVariable String sessionId) {
+        return relay(photoUploadService.commitUploadSession(sessionId), "commit upload session " + sessionId);
+    }
+
+    /**
+     * Abandons a session.
+     *
+     * @param sessionId The ID of the session.
+     * @return 204 if the session was discarded, 404 if it did not exist.
+     */
+    @DeleteMapping("/{sessionId}")
+    public Mono<ResponseEntity<String>> abortSession(@PathVariable String sessionId) {
+        return relay(photoUploadService.abortUploadSession(sessionId), "abort upload session " + sessionId);
+    }
+
+    /**
+     * Passes the storage service's status, content type and body back to the client.
+     * Its Location headers point into the storage service's API, so they are not forwarded.
+     */
+    private static Mono<ResponseEntity<String>> relay(Mono<ResponseEntity<String>> storageResponse, String action) {
+        return storageResponse
+                .map(response -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.getStatusCode());
+                    if (response.getHeaders().getContentType() != null) {
+                        builder.contentType(response.getHeaders().getContentType());
+                    }
+                    return builder.body(response.getBody());
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to {}. Error: {}", action, e.getMessage(), e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Failed to " + action + ": " + e.getMessage()));
+                });
+    }
+}
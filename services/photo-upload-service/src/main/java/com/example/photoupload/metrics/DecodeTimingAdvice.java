@@ -0,0 +1,54 @@
+package com.example.photoupload.metrics;
+
+import com.example.common.dto.PhotoUploadRequest;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Times the decode of {@link PhotoUploadRequest} bodies (JSON with Base64-decoding of the image, or a photo frame)
+ * as stage "decode" of {@link UploadMetrics}. Other request bodies are small and are not timed.
+ */
+@ControllerAdvice
+public class DecodeTimingAdvice extends RequestBodyAdviceAdapter {
+
+    private static final String SAMPLE_ATTRIBUTE = DecodeTimingAdvice.class.getName() + ".sample";
+
+    private final UploadMetrics metrics;
+
+    public DecodeTimingAdvice(UploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return PhotoUploadRequest.class.equals(targetType);
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(SAMPLE_ATTRIBUTE, metrics.startStage(), RequestAttributes.SCOPE_REQUEST);
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        Object sample = RequestContextHolder.currentRequestAttributes()
+                .getAttribute(SAMPLE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (sample instanceof Timer.Sample decode) {
+            metrics.stopStage(decode, UploadMetrics.STAGE_DECODE, UploadMetrics.ENDPOINT_JSON);
+        }
+        return body;
+    }
+}
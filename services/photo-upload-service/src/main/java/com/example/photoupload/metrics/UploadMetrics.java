@@ -0,0 +1,152 @@
+package com.example.photoupload.metrics;
+
+import com.example.photoupload.admission.InFlightByteBudget;
+import com.example.photoupload.routing.StorageNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Per-stage latency and throughput meters of the upload path, so a slow upload can be pinned on one stage
+ * (JSON decode, validation, forwarding to the Photo Storage Service) instead of only showing up in http.server.requests.
+ *
+ * Meters (all exported on /actuator/prometheus):
+ * - "photo.upload.stage" timer, tags stage=decode|validation|forward and endpoint=json|stream|batch|chunk|session
+ * - "photo.upload.payload.size" summary in bytes, tag endpoint
+ * - "photo.upload.errors" counter, tags stage and cause (http_&lt;status&gt; for storage service answers,
+ *   otherwise the exception's simple class name, e.g. PoolAcquireTimeoutException)
+ * - "photo.upload.rejected" counter, tags stage=admission|validation and reason
+ * - gauges "photo.upload.in.flight.bytes", "photo.upload.in.flight.requests" and "photo.upload.admission.queue",
+ *   read from the {@link InFlightByteBudget}
+ * - gauge "photo.upload.storage.node.ejected", tag node: 1 while that storage node is ejected, else 0
+ * - "photo.upload.storage.ejections" counter, tag node, and "photo.upload.storage.hedged" counter
+ *   (extra copies sent because a write was slow to reach its quorum)
+ *
+ * Histogram buckets for the timers and the summary are switched on in application.yml
+ * (management.metrics.distribution.percentiles-histogram), not here, so they can be turned off per deployment.
+ */
+@Component
+public class UploadMetrics {
+
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_VALIDATION = "validation";
+    public static final String STAGE_FORWARD = "forward";
+    public static final String STAGE_ADMISSION = "admission";
+
+    public static final String ENDPOINT_JSON = "json";
+    public static final String ENDPOINT_STREAM = "stream";
+    public static final String ENDPOINT_BATCH = "batch";
+    public static final String ENDPOINT_CHUNK = "chunk";
+    public static final String ENDPOINT_SESSION = "session";
+
+    private final MeterRegistry registry;
+
+    public UploadMetrics(MeterRegistry registry, InFlightByteBudget budget) {
+        this.registry = registry;
+        Gauge.builder("photo.upload.in.flight.bytes", budget, InFlightByteBudget::getInFlightBytes)
+                .description("Request bytes reserved by admitted uploads")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("photo.upload.in.flight.requests", budget, InFlightByteBudget::getAdmittedRequests)
+                .description("Uploads admitted and not yet finished")
+                .register(registry);
+        Gauge.builder("photo.upload.admission.queue", budget, InFlightByteBudget::getQueueLength)
+                .description("Uploads waiting for room in the in-flight byte budget")
+                .register(registry);
+    }
+
+    /**
+     * @return A running sample, to be passed to {@link #stopStage} when the stage is done.
+     */
+    public Timer.Sample startStage() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Records the time since {@code sample} was started as one execution of the given stage.
+     */
+    public void stopStage(Timer.Sample sample, String stage, String endpoint) {
+        sample.stop(Timer.builder("photo.upload.stage")
+                .description("Time spent in one stage of an upload")
+                .tag("stage", stage)
+                .tag("endpoint", endpoint)
+                .register(registry));
+    }
+
+    /**
+     * Times a call to the Photo Storage Service as stage "forward", from subscription until it completes,
+     * fails or is cancelled, and counts its failures by cause.
+     */
+    public <T> Mono<T> timeForward(Mono<T> call, String endpoint) {
+        return Mono.defer(() -> {
+            Timer.Sample forward = startStage();
+            return call
+                    .doOnError(e -> recordError(STAGE_FORWARD, e))
+                    .doFinally(signal -> stopStage(forward, STAGE_FORWARD, endpoint));
+        });
+    }
+
+    /**
+     * Registers the ejection gauge of every storage node (see StorageCluster).
+     */
+    public void registerStorageNodes(List<StorageNode> nodes) {
+        for (StorageNode node : nodes) {
+            Gauge.builder("photo.upload.storage.node.ejected", node, n -> n.isEjected() ? 1 : 0)
+                    .description("1 while the storage node is ejected after repeated failures")
+                    .tag("node", node.getUrl())
+                    .register(registry);
+        }
+    }
+
+    public void recordNodeEjected(String node) {
+        Counter.builder("photo.upload.storage.ejections")
+                .description("Storage nodes taken out of rotation after repeated failures")
+                .tag("node", node)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordHedgedWrite() {
+        Counter.builder("photo.upload.storage.hedged")
+                .description("Extra copies sent because a write had not reached its quorum within the hedge delay")
+                .register(registry)
+                .increment();
+    }
+
+    public void recordPayloadSize(String endpoint, long bytes) {
+        DistributionSummary.builder("photo.upload.payload.size")
+                .description("Size of uploaded request bodies")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void recordError(String stage, Throwable error) {
+        String cause = error instanceof WebClientResponseException response
+                ? "http_" + response.getStatusCode().value()
+                : error.getClass().getSimpleName();
+        Counter.builder("photo.upload.errors")
+                .description("Failed stages of an upload, by cause")
+                .tag("stage", stage)
+                .tag("cause", cause)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordRejected(String stage, String reason) {
+        Counter.builder("photo.upload.rejected")
+                .description("Uploads turned away before reaching the Photo Storage Service")
+                .tag("stage", stage)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+}
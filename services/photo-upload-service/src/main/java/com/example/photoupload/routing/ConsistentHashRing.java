@@ -0,0 +1,65 @@
+package com.example.photoupload.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring over the storage nodes. Every node owns {@code virtualNodes} points on a 64-bit ring,
+ * and a key belongs to the nodes met first going clockwise from it. Adding or removing a node only moves the keys
+ * next to its points (about 1/N of them), and the many points per node keep the share of each node close to even.
+ *
+ * The ring is immutable and lock-free to read: sorted arrays and a binary search.
+ */
+public class ConsistentHashRing {
+
+    private final long[] points;
+    private final StorageNode[] owners;
+    private final int nodeCount;
+
+    public ConsistentHashRing(List<StorageNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("The ring needs at least one node.");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Each node needs at least one virtual node.");
+        }
+        TreeMap<Long, StorageNode> ring = new TreeMap<>();
+        for (StorageNode node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(RoutingKeys.of(node.getUrl() + "#" + i), node); // A collision just costs a point
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new StorageNode[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, StorageNode> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+        this.nodeCount = nodes.size();
+    }
+
+    /**
+     * @param key A position on the ring (see {@link RoutingKeys}).
+     * @return All nodes, each once, in the order they are met going clockwise from the key.
+     * The first is the key's primary node, the following ones its replicas and then its fallbacks.
+     */
+    public List<StorageNode> walk(long key) {
+        int start = Arrays.binarySearch(points, key);
+        if (start < 0) {
+            start = -start - 1; // First point after the key
+        }
+        List<StorageNode> route = new ArrayList<>(nodeCount);
+        for (int i = 0; i < points.length && route.size() < nodeCount; i++) {
+            StorageNode owner = owners[(start + i) % points.length];
+            if (!route.contains(owner)) {
+                route.add(owner);
+            }
+        }
+        return route;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.photoupload.routing;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * One write to the storage nodes of a route, acknowledged once a quorum of them has stored it.
+ *
+ * The first {@code replicas} nodes of the route are written to at the same time. If the body can be sent again,
+ * a failed node is replaced by the next node of the route, and with a hedge delay one extra node is started if the
+ * quorum has not been reached by then. Writes still under way when the quorum is reached are left to finish;
+ * only a cancellation before that (the client went away) stops them.
+ *
+ * Single use: {@link StorageCluster} creates one per subscription.
+ */
+final class QuorumWrite<T> {
+
+    private final StorageCluster cluster;
+    private final List<StorageNode> route;
+    private final int quorum;
+    private final boolean replayable;
+    private final Duration hedgeDelay;
+    private final Function<StorageNode, Mono<T>> attempt;
+    private final BooleanSupplier bodyFailed;
+
+    private final Disposable.Composite attempts = Disposables.composite();
+    private MonoSink<T> sink;
+    private int next; // Index in the route of the next node to write to
+    private int pending;
+    private int succeeded;
+    private boolean done;
+
+    QuorumWrite(StorageCluster cluster, List<StorageNode> route, int quorum, boolean replayable, Duration hedgeDelay,
+                Function<StorageNode, Mono<T>> attempt, BooleanSupplier bodyFailed) {
+        this.cluster = cluster;
+        this.route = route;
+        this.quorum = quorum;
+        this.replayable = replayable;
+        this.hedgeDelay = hedgeDelay;
+        this.attempt = attempt;
+        this.bodyFailed = bodyFailed;
+    }
+
+    /**
+     * @param replicas How many nodes to write to from the start (at least the quorum, at most the route's length).
+     * @return A Mono emitting the answer of the node that completed the quorum.
+     */
+    Mono<T> run(int replicas) {
+        return Mono.create(sink -> {
+            this.sink = sink;
+            sink.onCancel(attempts);
+            synchronized (this) {
+                for (int i = 0; i < replicas && !done; i++) {
+                    launch();
+                }
+            }
+            if (replayable && hedgeDelay != null && route.size() > replicas) {
+                sink.onDispose(Mono.delay(hedgeDelay).subscribe(tick -> hedge()));
+            }
+        });
+    }
+
+    // Called with the lock held
+    private void launch() {
+        StorageNode node = route.get(next++);
+        pending++;
+        attempts.add(attempt.apply(node)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .subscribe(answer -> succeeded(node, answer.orElse(null)), error -> failed(node, error)));
+    }
+
+    private void succeeded(StorageNode node, T answer) {
+        cluster.recordSuccess(node);
+        synchronized (this) {
+            pending--;
+            succeeded++;
+            if (done || succeeded < quorum) {
+                return;
+            }
+            done = true;
+        }
+        if (answer != null) {
+            sink.success(answer);
+        } else {
+            sink.success();
+        }
+    }
+
+    private void failed(StorageNode node, Throwable error) {
+        // A body that could not be read (the client went away) is not the node's fault
+        boolean nodeAtFault = !bodyFailed.getAsBoolean();
+        if (nodeAtFault) {
+            cluster.recordFailure(node, error);
+        }
+        Throwable failure;
+        synchronized (this) {
+            pending--;
+            if (done) {
+                return;
+            }
+            if (!nodeAtFault || StorageCluster.isClientError(error)) {
+                // Any other node would refuse it just the same
+                failure = error;
+            } else {
+                if (replayable && next < route.size()) {
+                    launch();
+                }
+                if (done || succeeded + pending >= quorum) { // done: the replacement already settled it
+                    return;
+                }
+                failure = quorum == 1 ? error : new IllegalStateException("Only " + succeeded + " of " + quorum
+                        + " required copies could be stored. Last error from " + node + ": " + error.getMessage(), error);
+            }
+            done = true;
+        }
+        sink.error(failure);
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            if (done || next >= route.size()) {
+                return;
+            }
+            launch();
+        }
+        cluster.recordHedge();
+    }
+}
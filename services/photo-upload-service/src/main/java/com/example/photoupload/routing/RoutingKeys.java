@@ -0,0 +1,86 @@
+package com.example.photoupload.routing;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Positions on the {@link ConsistentHashRing}, for photos and for the nodes' virtual points.
+ *
+ * A photo's key is a hash of its first {@link #PREFIX_BYTES} bytes and its total size, both known before the rest
+ * of a streamed upload has been read. The same photo therefore always lands on the same nodes, whichever endpoint
+ * it arrives on, so the storage service's content deduplication keeps working with several nodes.
+ * (Keys only agree across endpoints if photo-upload.sniff-size is at least PREFIX_BYTES, as the streaming endpoint
+ * hashes the sniffed header.)
+ */
+public final class RoutingKeys {
+
+    /**
+     * Leading bytes of a photo that go into its key. Enough to cover the EXIF data, where two different photos
+     * of the same size already differ (capture time, thumbnail).
+     */
+    public static final int PREFIX_BYTES = 8 * 1024;
+
+    private RoutingKeys() {
+    }
+
+    /**
+     * @param data The photo, or at least its first {@link #PREFIX_BYTES} bytes.
+     * @param length Number of valid bytes in {@code data}.
+     * @param totalSize The size of the whole photo in bytes.
+     * @return The photo's position on the ring.
+     */
+    public static long of(byte[] data, int length, long totalSize) {
+        MessageDigest sha256 = sha256();
+        sha256.update(data, 0, Math.min(length, PREFIX_BYTES));
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            sha256.update((byte) (totalSize >>> shift));
+        }
+        return firstLong(sha256.digest());
+    }
+
+    /**
+     * Key of a multipart file, read from the file the servlet container spooled it to.
+     */
+    public static long of(MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            byte[] prefix = input.readNBytes(PREFIX_BYTES);
+            return of(prefix, prefix.length, file.getSize());
+        }
+    }
+
+    /**
+     * @return The position of a name on the ring, e.g. "http://storage-1:8082#17" for a node's 18th virtual point.
+     */
+    public static long of(String name) {
+        return firstLong(sha256().digest(name.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return A random key, for requests that carry no photo yet (opening an upload session).
+     */
+    public static long random() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    private static long firstLong(byte[] digest) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (digest[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
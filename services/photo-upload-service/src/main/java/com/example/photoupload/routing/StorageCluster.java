@@ -0,0 +1,261 @@
+package com.example.photoupload.routing;
+
+import com.example.photoupload.config.PhotoStorageServiceProperties;
+import com.example.photoupload.config.PhotoStorageServiceProperties.HealthSettings;
+import com.example.photoupload.config.PhotoStorageServiceProperties.ShardingSettings;
+import com.example.photoupload.metrics.UploadMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * The Photo Storage Service nodes this instance writes to, and how a photo finds its nodes.
+ *
+ * Photos are spread over the nodes with a {@link ConsistentHashRing} on their {@link RoutingKeys routing key}.
+ * Each photo is written to the first replication-factor nodes of its route and acknowledged once the write quorum
+ * has stored it (see {@link QuorumWrite}); nodes that keep failing are ejected for a while (see {@link StorageNode}).
+ * With a single node (photo-storage.service-url) all of this reduces to one plain call, as before.
+ *
+ * Upload sessions keep their chunks on one node, so they are not replicated: a session is opened on one node
+ * and every later call for it goes to that node.
+ */
+@Component
+@Slf4j
+public class StorageCluster {
+
+    /**
+     * Buffers a replicated stream reads ahead of its slowest replica.
+     */
+    private static final int SHARED_STREAM_PREFETCH = 4;
+
+    private final List<StorageNode> nodes;
+    private final Map<String, StorageNode> nodesById = new LinkedHashMap<>();
+    private final ConsistentHashRing ring;
+    private final int replicationFactor;
+    private final int writeQuorum;
+    private final Duration hedgeDelay;
+    private final HealthSettings health;
+    private final UploadMetrics metrics;
+
+    /**
+     * @param photoStorageWebClient The shared client (pool, timeouts, codecs; see StorageClientConfig),
+     * from which one client per node is derived.
+     * @param properties The node URLs and the sharding and health settings.
+     * @param metrics Counters for ejected nodes and hedged writes.
+     */
+    public StorageCluster(WebClient photoStorageWebClient, PhotoStorageServiceProperties properties, UploadMetrics metrics) {
+        List<String> urls = properties.getNodeUrls();
+        if (urls.isEmpty() || urls.contains(null)) {
+            throw new IllegalArgumentException("Set photo-storage.service-url or photo-storage.nodes.");
+        }
+        this.nodes = new ArrayList<>();
+        for (String url : urls) {
+            StorageNode node = new StorageNode(url, photoStorageWebClient.mutate().baseUrl(url).build());
+            if (nodesById.putIfAbsent(node.getId(), node) != null) {
+                throw new IllegalArgumentException("Storage node listed twice (or with the same ID): " + url);
+            }
+            nodes.add(node);
+        }
+
+        ShardingSettings sharding = properties.getSharding();
+        this.replicationFactor = sharding.getReplicationFactor();
+        this.writeQuorum = sharding.effectiveWriteQuorum();
+        if (replicationFactor < 1 || replicationFactor > nodes.size()) {
+            throw new IllegalArgumentException("photo-storage.sharding.replication-factor must be between 1 and the number of nodes ("
+                    + nodes.size() + "), was " + replicationFactor);
+        }
+        if (writeQuorum < 1 || writeQuorum > replicationFactor) {
+            throw new IllegalArgumentException("photo-storage.sharding.write-quorum must be between 1 and the replication factor ("
+                    + replicationFactor + "), was " + writeQuorum);
+        }
+        this.ring = new ConsistentHashRing(nodes, sharding.getVirtualNodes());
+        this.hedgeDelay = sharding.getHedgeDelay();
+        this.health = properties.getHealth();
+        this.metrics = metrics;
+        metrics.registerStorageNodes(nodes);
+        log.info("Storage nodes: {}; {} copies per photo, write quorum {}, hedge delay {}",
+                nodes, replicationFactor, writeQuorum, hedgeDelay != null ? hedgeDelay : "off");
+    }
+
+    public List<StorageNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param key A photo's routing key.
+     * @return All nodes in the order the photo tries them: its primary, its replicas, then the others.
+     * Ejected nodes are moved to the end, so they are only used when not enough healthy nodes are left.
+     */
+    public List<StorageNode> route(long key) {
+        List<StorageNode> route = ring.walk(key);
+        if (route.stream().noneMatch(StorageNode::isEjected)) {
+            return route;
+        }
+        List<StorageNode> healthyFirst = new ArrayList<>(route.size());
+        route.stream().filter(node -> !node.isEjected()).forEach(healthyFirst::add);
+        route.stream().filter(StorageNode::isEjected).forEach(healthyFirst::add);
+        return healthyFirst;
+    }
+
+    /**
+     * @param route A route as returned by {@link #route}.
+     * @return The nodes of the route that get a copy of the photo from the start.
+     */
+    public List<StorageNode> replicas(List<StorageNode> route) {
+        return route.subList(0, replicationFactor);
+    }
+
+    /**
+     * Writes a photo whose request can be sent more than once (its body is in memory or on disk).
+     *
+     * @param key The photo's routing key.
+     * @param call Sends the request with the given node's client.
+     * @return A Mono emitting the answer of the node that completed the write quorum.
+     */
+    public <T> Mono<T> write(long key, Function<WebClient, Mono<T>> call) {
+        return Mono.defer(() -> write(route(key), call));
+    }
+
+    /**
+     * Same as {@link #write(long, Function)}, for a route already looked up.
+     *
+     * @param route The photo's route (see {@link #route}).
+     * @param call Sends the request with the given node's client.
+     * @return A Mono emitting the answer of the node that completed the write quorum.
+     */
+    public <T> Mono<T> write(List<StorageNode> route, Function<WebClient, Mono<T>> call) {
+        return Mono.defer(() -> new QuorumWrite<T>(this, route, writeQuorum, true, hedgeDelay,
+                node -> call.apply(node.getClient()), () -> false).run(replicationFactor));
+    }
+
+    /**
+     * Writes a photo whose body can only be read once. With more than one copy the body is read at the pace
+     * of the slowest replica and each buffer is handed to all of them; failed replicas are not replaced
+     * and there is no hedging.
+     *
+     * @param key The photo's routing key.
+     * @param body The photo's bytes, read as the replicas ask for them.
+     * @param call Sends the request with the given node's client and body.
+     * @return A Mono emitting the answer of the node that completed the write quorum.
+     */
+    public <T> Mono<T> writeStream(long key, Flux<DataBuffer> body, BiFunction<WebClient, Flux<DataBuffer>, Mono<T>> call) {
+        return Mono.defer(() -> {
+            AtomicBoolean bodyFailed = new AtomicBoolean();
+            Flux<DataBuffer> source = body.doOnError(e -> bodyFailed.set(true));
+            List<StorageNode> route = route(key);
+            if (replicationFactor == 1) {
+                return new QuorumWrite<T>(this, route, 1, false, null,
+                        node -> call.apply(node.getClient(), source), bodyFailed::get).run(1);
+            }
+
+            // Copied out of the pooled buffers once, so every replica can wrap the same bytes
+            Flux<byte[]> shared = source
+                    .map(buffer -> {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        DataBufferUtils.release(buffer);
+                        return bytes;
+                    })
+                    .publish(SHARED_STREAM_PREFETCH)
+                    .autoConnect(replicationFactor);
+            return new QuorumWrite<T>(this, route, writeQuorum, false, null, node -> {
+                AtomicBoolean subscribed = new AtomicBoolean();
+                Flux<DataBuffer> replicaBody = shared
+                        .<DataBuffer>map(DefaultDataBufferFactory.sharedInstance::wrap)
+                        .doOnSubscribe(subscription -> subscribed.set(true));
+                return call.apply(node.getClient(), replicaBody)
+                        .doOnTerminate(() -> {
+                            // A replica that failed before asking for the body (e.g. connection refused) would
+                            // keep the others waiting for it to subscribe; a drain stands in for it
+                            if (!subscribed.get()) {
+                                shared.subscribe(bytes -> { }, error -> { });
+                            }
+                        });
+            }, bodyFailed::get).run(replicationFactor);
+        });
+    }
+
+    /**
+     * @return The node to open a new upload session on: the first healthy node of a random route.
+     */
+    public StorageNode sessionNode() {
+        return route(RoutingKeys.random()).get(0);
+    }
+
+    /**
+     * @param id A node ID (see {@link StorageNode#getId()}).
+     * @return The node, if it is still configured.
+     */
+    public Optional<StorageNode> node(String id) {
+        return Optional.ofNullable(nodesById.get(id));
+    }
+
+    /**
+     * Watches a call to one node whose answer is passed on whatever its status, for the node's health.
+     *
+     * @param bodyFailed Whether the request body failed to be read, in which case the node is not blamed.
+     */
+    public <T> Mono<ResponseEntity<T>> track(StorageNode node, Mono<ResponseEntity<T>> call, BooleanSupplier bodyFailed) {
+        return call
+                .doOnNext(response -> {
+                    if (response.getStatusCode().is5xxServerError()) {
+                        recordFailure(node, new IllegalStateException("HTTP " + response.getStatusCode().value()));
+                    } else {
+                        recordSuccess(node);
+                    }
+                })
+                .doOnError(e -> {
+                    if (!bodyFailed.getAsBoolean()) {
+                        recordFailure(node, e);
+                    }
+                });
+    }
+
+    public <T> Mono<ResponseEntity<T>> track(StorageNode node, Mono<ResponseEntity<T>> call) {
+        return track(node, call, () -> false);
+    }
+
+    /**
+     * @return Whether the error is a 4xx answer: the request was refused, any node would have done the same.
+     */
+    static boolean isClientError(Throwable error) {
+        return error instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError();
+    }
+
+    void recordSuccess(StorageNode node) {
+        node.recordSuccess();
+    }
+
+    void recordFailure(StorageNode node, Throwable error) {
+        if (isClientError(error)) {
+            return;
+        }
+        if (node.recordFailure(health.getFailureThreshold(), health.getEjectionTime())) {
+            log.warn("Storage node {} ejected for {} after repeated failures. Last error: {}",
+                    node, health.getEjectionTime(), error.getMessage());
+            metrics.recordNodeEjected(node.getUrl());
+        }
+    }
+
+    void recordHedge() {
+        metrics.recordHedgedWrite();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.photoupload.routing;
+
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Photo Storage Service instance: its URL, a client bound to it and its passive health state.
+ *
+ * Health is judged from real requests only. After a number of failures in a row the node is ejected for a while,
+ * which moves it to the back of every route (see {@link StorageCluster#route}); once that time is up it gets
+ * traffic again, on probation: its next failure ejects it again, its next success clears the record.
+ */
+public class StorageNode {
+
+    private final String url;
+    private final String id;
+    private final WebClient client;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long ejectedUntilNanos = System.nanoTime();
+
+    public StorageNode(String url, WebClient client) {
+        this.url = url;
+        this.id = String.format("%08x", (int) RoutingKeys.of(url));
+        this.client = client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return A short ID derived from the URL (8 hex digits), stable across restarts as long as the URL does not
+     * change. Used to tie upload sessions to the node that holds them.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return A WebClient with this node as base URL.
+     */
+    public WebClient getClient() {
+        return client;
+    }
+
+    public boolean isEjected() {
+        return ejectedUntilNanos - System.nanoTime() > 0;
+    }
+
+    void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * Counts a failed request.
+     *
+     * @return Whether this failure got the node ejected.
+     */
+    boolean recordFailure(int threshold, Duration ejectionTime) {
+        if (isEjected()) {
+            return false; // Requests that were already under way when it was ejected
+        }
+        if (consecutiveFailures.incrementAndGet() < threshold) {
+            return false;
+        }
+        ejectedUntilNanos = System.nanoTime() + ejectionTime.toNanos();
+        consecutiveFailures.set(threshold - 1); // On probation once it is back
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
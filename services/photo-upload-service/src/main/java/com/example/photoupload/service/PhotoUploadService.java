@@ -1,55 +1,356 @@
 package com.example.photoupload.service;
 
+import com.example.common.codec.PhotoFrame;
+import com.example.common.dto.BatchUploadItemResult;
+import com.example.common.dto.BatchUploadResponse;
+import com.example.common.dto.PhotoHeaders;
+import com.example.common.dto.PhotoMetadata;
 import com.example.common.dto.PhotoUploadRequest; // Import the shared DTO
+import com.example.common.dto.UploadSessionRequest;
 import com.example.photoupload.config.PhotoStorageServiceProperties;
+import com.example.photoupload.config.PhotoStorageServiceProperties.ForwardFormat;
+import com.example.photoupload.metrics.UploadMetrics;
+import com.example.photoupload.routing.RoutingKeys;
+import com.example.photoupload.routing.StorageCluster;
+import com.example.photoupload.routing.StorageNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+
 /**
  * Service class responsible for handling the business logic of uploading photos.
  * This includes forwarding photo data to the Photo Storage Service.
+ * With several storage nodes each photo goes to the nodes its routing key maps to (see {@link StorageCluster}).
  */
 @Service // Marks this class as a Spring Service component
+@Slf4j
 public class PhotoUploadService {
 
-    private final WebClient webClient; // WebClient for making HTTP requests
+    /**
+     * Separates the storage node's ID from its own session ID in the session IDs handed to clients.
+     */
+    private static final char SESSION_ID_SEPARATOR = '.';
+
+    private final StorageCluster storageCluster; // The storage nodes, each with its own WebClient
+    private final UploadMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final MediaType forwardContentType; // Body format of uploadPhoto, see PhotoStorageServiceProperties.forwardFormat
 
     /**
-     * Constructor for PhotoUploadService, injecting WebClient.Builder and PhotoStorageServiceProperties.
-     * WebClient is configured to target the Photo Storage Service.
+     * Constructor for PhotoUploadService, injecting the storage nodes to forward to.
      *
-     * @param webClientBuilder Spring-provided builder for WebClient.
-     * @param properties Configuration properties for Photo Storage Service URL.
+     * @param storageCluster The Photo Storage Service nodes and the routing of photos to them; their WebClients share
+     * one connection pool and its timeouts (see StorageClientConfig).
+     * @param metrics Meters for the time spent forwarding to the storage service and its failures.
+     * @param objectMapper Used to tag session IDs in session status responses with their node.
+     * @param storageProperties Settings of the storage service connection, including the forwarding format.
      */
-    public PhotoUploadService(WebClient.Builder webClientBuilder, PhotoStorageServiceProperties properties) {
-        // Build a WebClient instance with the base URL of the Photo Storage Service.
-        // The base URL is retrieved from the PhotoStorageServiceProperties,
-        // which reads it from application.yml (e.g., http://localhost:8082 or http://photo-storage-service:8082).
-        this.webClient = webClientBuilder.baseUrl(properties.getServiceUrl()).build();
-        System.out.println("PhotoUploadService initialized. Photo Storage Service URL: " + properties.getServiceUrl());
+    public PhotoUploadService(StorageCluster storageCluster, UploadMetrics metrics, ObjectMapper objectMapper,
+                              PhotoStorageServiceProperties storageProperties) {
+        this.storageCluster = storageCluster;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.forwardContentType = storageProperties.getForwardFormat() == ForwardFormat.JSON
+                ? MediaType.APPLICATION_JSON
+                : MediaType.parseMediaType(PhotoFrame.MEDIA_TYPE);
+        log.info("PhotoUploadService initialized.");
     }
 
     /**
      * Uploads a photo by sending the PhotoUploadRequest to the Photo Storage Service.
      * This operation is non-blocking and reactive, returning a Mono.
+     * The request is sent as a binary photo frame (raw image bytes, no Base64) unless
+     * photo-storage.forward-format is set to JSON. The request is routed on the image bytes
+     * (see {@link RoutingKeys}) and can be sent again to another node if one fails or is slow.
      *
      * @param request The PhotoUploadRequest containing the photo's filename, content type, image data, and description.
      * @return A Mono<String> that emits the response body from the Photo Storage Service upon success,
      * or an error signal if the request fails.
      */
     public Mono<String> uploadPhoto(PhotoUploadRequest request) {
-        System.out.println("Attempting to upload photo: " + request.getFilename() + " to Photo Storage Service.");
-
-        return webClient.post() // Initiate a POST request
-                .uri("/api/v1/photos") // Specify the relative URI path on the Photo Storage Service
-                // This combines with the base URL (e.g., http://localhost:8082/api/v1/photos)
-                .contentType(MediaType.APPLICATION_JSON) // Set the Content-Type header to application/json
-                .bodyValue(request) // Set the request body. Spring will serialize PhotoUploadRequest to JSON.
-                .retrieve() // Execute the request and retrieve the response
-                .bodyToMono(String.class) // Extract the response body as a Mono of String (e.g., the success message from photo-storage-service)
-                .doOnSuccess(response -> System.out.println("Successfully sent photo to Photo Storage Service. Response: " + response))
-                .doOnError(error -> System.err.println("Failed to send photo to Photo Storage Service for " + request.getFilename() + ". Error: " + error.getMessage()));
-    }
-}
\ No newline at end of file
+        log.debug("Attempting to upload photo: {} to Photo Storage Service.", request.getFilename());
+
+        long key = RoutingKeys.of(request.getImageData(), request.getImageData().length, request.getImageData().length);
+        return storageCluster.write(key, webClient -> webClient.post() // Initiate a POST request on one storage node
+                        .uri("/api/v1/photos") // Specify the relative URI path on the Photo Storage Service
+                        // This combines with the node's base URL (e.g., http://localhost:8082/api/v1/photos)
+                        .contentType(forwardContentType) // application/x-photo-frame or application/json
+                        .bodyValue(request) // Set the request body. The codec for the content type (PhotoFrameEncoder or Jackson) serializes it.
+                        .retrieve() // Execute the request and retrieve the response
+                        .bodyToMono(String.class)) // Extract the response body as a Mono of String (e.g., the success message from photo-storage-service)
+                .doOnSuccess(response -> log.debug("Successfully sent photo to Photo Storage Service. Response: {}", response))
+                .doOnError(error -> log.warn("Failed to send photo to Photo Storage Service for {}. Error: {}", request.getFilename(), error.getMessage()))
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_JSON));
+    }
+
+    /**
+     * Streams a photo to the Photo Storage Service without materializing it.
+     * The image bytes are forwarded as the raw request body, one buffer at a time,
+     * and the metadata is sent in the {@link PhotoHeaders} headers.
+     * With more than one copy per photo the buffers are handed to all replicas (see {@link StorageCluster#writeStream}).
+     *
+     * @param metadata The photo's filename, content type and description.
+     * @param routingKey The photo's routing key, from its first bytes and its size (see {@link RoutingKeys}).
+     * @param contentLength The exact size of the image in bytes.
+     * @param imageData The image bytes as a stream of buffers; each buffer is released once written.
+     * @return A Mono<String> that emits the response body from the Photo Storage Service upon success,
+     * or an error signal if the request fails.
+     */
+    public Mono<String> uploadPhotoStream(PhotoMetadata metadata, long routingKey, long contentLength, Flux<DataBuffer> imageData) {
+        log.debug("Attempting to stream photo: {} to Photo Storage Service.", metadata.getFilename());
+
+        return storageCluster.writeStream(routingKey, imageData, (webClient, body) -> webClient.post()
+                        .uri("/api/v1/photos/stream")
+                        .contentType(MediaType.parseMediaType(metadata.getContentType()))
+                        .contentLength(contentLength) // Known length avoids chunked encoding and lets the storage service stream it through
+                        .header(PhotoHeaders.FILENAME, PhotoHeaders.encode(metadata.getFilename()))
+                        .headers(headers -> {
+                            if (metadata.getDescription() != null) {
+                                headers.set(PhotoHeaders.DESCRIPTION, PhotoHeaders.encode(metadata.getDescription()));
+                            }
+                        })
+                        .body(BodyInserters.fromDataBuffers(body))
+                        .retrieve()
+                        .bodyToMono(String.class))
+                .doOnSuccess(response -> log.debug("Successfully streamed photo to Photo Storage Service. Response: {}", response))
+                .doOnError(error -> log.warn("Failed to stream photo to Photo Storage Service for {}. Error: {}", metadata.getFilename(), error.getMessage()))
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_STREAM));
+    }
+
+    /**
+     * Forwards a batch of photos to the Photo Storage Service.
+     * Each part is streamed from the file the servlet container spooled it to, so the batch is never held in memory.
+     * Photos that belong on the same storage nodes travel together, in one multipart request per group
+     * (a single request with a single node); a group that fails is reported as failed items, unless all groups fail.
+     *
+     * @param files The photos, with their original filenames.
+     * @param contentTypes The content types of the files, matched by position (as sniffed, not as declared).
+     * @param descriptions Descriptions matched to the files by position; entries may be null.
+     * @return A Mono<BatchUploadResponse> with the storage service's per-item results
+     * (indexes refer to positions within {@code files}), or an error signal if the request fails.
+     */
+    public Mono<BatchUploadResponse> uploadPhotoBatch(List<MultipartFile> files, List<String> contentTypes,
+                                                      List<String> descriptions) {
+        log.debug("Attempting to upload batch of {} photos to Photo Storage Service.", files.size());
+
+        // Group the photos by the nodes that get a copy; the first photo's route supplies the group's fallbacks
+        Map<List<StorageNode>, List<Integer>> groups = new LinkedHashMap<>();
+        Map<List<StorageNode>, List<StorageNode>> routes = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            List<StorageNode> route;
+            try {
+                route = storageCluster.route(RoutingKeys.of(files.get(i)));
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            List<StorageNode> replicas = storageCluster.replicas(route);
+            routes.putIfAbsent(replicas, route);
+            groups.computeIfAbsent(replicas, k -> new ArrayList<>()).add(i);
+        }
+
+        List<Mono<List<BatchUploadItemResult>>> requests = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        groups.forEach((replicas, indexes) -> {
+            MultipartBodyBuilder body = new MultipartBodyBuilder();
+            for (int i : indexes) {
+                body.part("files", files.get(i).getResource())
+                        .contentType(MediaType.parseMediaType(contentTypes.get(i)));
+                String description = i < descriptions.size() ? descriptions.get(i) : null;
+                body.part("descriptions", description != null ? description : "");
+            }
+            MultiValueMap<String, HttpEntity<?>> parts = body.build(); // Re-readable, so it can go to another node
+
+            requests.add(storageCluster.write(routes.get(replicas), webClient -> webClient.post()
+                            .uri("/api/v1/photos/batch")
+                            .contentType(MediaType.MULTIPART_FORM_DATA)
+                            .body(BodyInserters.fromMultipartData(parts))
+                            .retrieve()
+                            .bodyToMono(BatchUploadResponse.class))
+                    .map(response -> {
+                        // The storage node numbers items within its group; map them back to positions in files
+                        for (BatchUploadItemResult item : response.getItems()) {
+                            item.setIndex(indexes.get(item.getIndex()));
+                        }
+                        return response.getItems();
+                    })
+                    .onErrorResume(e -> {
+                        log.warn("Failed to send {} photos of a batch to {}. Error: {}", indexes.size(), replicas, e.getMessage());
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                        return Mono.just(indexes.stream()
+                                .map(i -> BatchUploadItemResult.failed(i, files.get(i).getOriginalFilename(), "Upload failed: " + e.getMessage()))
+                                .toList());
+                    }));
+        });
+
+        return Flux.merge(requests)
+                .flatMapIterable(items -> items)
+                .collectSortedList(Comparator.comparingInt(BatchUploadItemResult::getIndex))
+                .flatMap(items -> failures.size() == groups.size()
+                        ? Mono.<BatchUploadResponse>error(failures.get(0))
+                        : Mono.just(BatchUploadResponse.of(items)))
+                .doOnSuccess(response -> log.debug("Batch sent to Photo Storage Service: {} stored, {} failed.", response.getStoredCount(), response.getFailedCount()))
+                .doOnError(error -> log.warn("Failed to send photo batch to Photo Storage Service. Error: {}", error.getMessage()))
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_BATCH));
+    }
+
+    /**
+     * Opens a resumable upload session on the Photo Storage Service.
+     * The session endpoints answer with meaningful statuses (400, 404, 409, ...) that clients act on,
+     * so these methods hand back the storage service's whole response instead of failing on non-2xx codes.
+     *
+     * A session lives on one storage node. The session ID handed to the client is prefixed with that node's ID
+     * ("&lt;node&gt;.&lt;session&gt;"), which is how later calls for the session find their way back to it.
+     *
+     * @param request The photo's metadata and total size, and optionally the desired chunk size.
+     * @return A Mono emitting the storage service's response (status, headers and body).
+     */
+    public Mono<ResponseEntity<String>> openUploadSession(UploadSessionRequest request) {
+        log.debug("Opening upload session for photo: {} ({} bytes)", request.getFilename(), request.getTotalSize());
+        StorageNode node = storageCluster.sessionNode();
+        return storageCluster.track(node, node.getClient().post()
+                        .uri("/api/v1/photos/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(request)
+                        .exchangeToMono(response -> response.toEntity(String.class)))
+                .map(response -> withNodeSessionId(node, response))
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_SESSION));
+    }
+
+    /**
+     * @param sessionId The ID of the session.
+     * @return A Mono emitting the storage service's response with the session status.
+     */
+    public Mono<ResponseEntity<String>> getUploadSession(String sessionId) {
+        return onSessionNode(sessionId, (webClient, id) -> webClient.get()
+                .uri("/api/v1/photos/uploads/{sessionId}", id)
+                .exchangeToMono(response -> response.toEntity(String.class)));
+    }
+
+    /**
+     * Streams one chunk of a resumable upload to the Photo Storage Service, buffer by buffer.
+     *
+     * @param sessionId The ID of the session.
+     * @param index The chunk index.
+     * @param sha256 Hex SHA-256 of the chunk, checked by the storage service.
+     * @param contentLength The exact size of the chunk in bytes.
+     * @param chunkData The chunk bytes as a stream of buffers; each buffer is released once written.
+     * @return A Mono emitting the storage service's response with the updated session status.
+     */
+    public Mono<ResponseEntity<String>> uploadChunk(String sessionId, int index, String sha256,
+                                                    long contentLength, Flux<DataBuffer> chunkData) {
+        AtomicBoolean bodyFailed = new AtomicBoolean(); // A client that went away is not the node's fault
+        Flux<DataBuffer> body = chunkData.doOnError(e -> bodyFailed.set(true));
+        return onSessionNode(sessionId, (webClient, id) -> webClient.put()
+                        .uri("/api/v1/photos/uploads/{sessionId}/chunks/{index}", id, index)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .contentLength(contentLength)
+                        .header(PhotoHeaders.CHUNK_SHA256, sha256)
+                        .body(BodyInserters.fromDataBuffers(body))
+                        .exchangeToMono(response -> response.toEntity(String.class)),
+                bodyFailed::get)
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_CHUNK));
+    }
+
+    /**
+     * @param sessionId The ID of the session.
+     * @return A Mono emitting the storage service's response to the commit.
+     */
+    public Mono<ResponseEntity<String>> commitUploadSession(String sessionId) {
+        log.debug("Committing upload session {}", sessionId);
+        return onSessionNode(sessionId, (webClient, id) -> webClient.post()
+                        .uri("/api/v1/photos/uploads/{sessionId}/commit", id)
+                        .exchangeToMono(response -> response.toEntity(String.class)))
+                .transform(call -> metrics.timeForward(call, UploadMetrics.ENDPOINT_SESSION));
+    }
+
+    /**
+     * @param sessionId The ID of the session.
+     * @return A Mono emitting the storage service's response to the abort.
+     */
+    public Mono<ResponseEntity<String>> abortUploadSession(String sessionId) {
+        return onSessionNode(sessionId, (webClient, id) -> webClient.delete()
+                .uri("/api/v1/photos/uploads/{sessionId}", id)
+                .exchangeToMono(response -> response.toEntity(String.class)));
+    }
+
+    private Mono<ResponseEntity<String>> onSessionNode(String sessionId,
+                                                       BiFunction<WebClient, String, Mono<ResponseEntity<String>>> call) {
+        return onSessionNode(sessionId, call, () -> false);
+    }
+
+    /**
+     * Sends a session call to the node holding the session, named by the prefix of the session ID.
+     * IDs without a prefix (sessions opened before there were several nodes) are accepted while there is only one node.
+     */
+    private Mono<ResponseEntity<String>> onSessionNode(String sessionId,
+                                                       BiFunction<WebClient, String, Mono<ResponseEntity<String>>> call,
+                                                       BooleanSupplier bodyFailed) {
+        int separator = sessionId.indexOf(SESSION_ID_SEPARATOR);
+        Optional<StorageNode> node;
+        String nodeSessionId;
+        if (separator < 0) {
+            List<StorageNode> nodes = storageCluster.getNodes();
+            node = nodes.size() == 1 ? Optional.of(nodes.get(0)) : Optional.empty();
+            nodeSessionId = sessionId;
+        } else {
+            node = storageCluster.node(sessionId.substring(0, separator));
+            nodeSessionId = sessionId.substring(separator + 1);
+        }
+        if (node.isEmpty()) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload session not found: " + sessionId));
+        }
+        return storageCluster.track(node.get(), call.apply(node.get().getClient(), nodeSessionId), bodyFailed)
+                .map(response -> withNodeSessionId(node.get(), response));
+    }
+
+    /**
+     * Prefixes the sessionId of a session status in a JSON response with the node's ID; other responses are
+     * returned as they are.
+     */
+    private ResponseEntity<String> withNodeSessionId(StorageNode node, ResponseEntity<String> response) {
+        MediaType contentType = response.getHeaders().getContentType();
+        if (response.getBody() == null || contentType == null || !MediaType.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return response;
+        }
+        try {
+            JsonNode status = objectMapper.readTree(response.getBody());
+            if (!(status instanceof ObjectNode object) || !status.path("sessionId").isTextual()) {
+                return response;
+            }
+            object.put("sessionId", node.getId() + SESSION_ID_SEPARATOR + status.get("sessionId").asText());
+            return ResponseEntity.status(response.getStatusCode())
+                    .contentType(contentType)
+                    .body(objectMapper.writeValueAsString(object));
+        } catch (JsonProcessingException e) {
+            return response;
+        }
+    }
+}
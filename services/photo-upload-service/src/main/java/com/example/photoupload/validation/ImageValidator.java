@@ -0,0 +1,79 @@
+package com.example.photoupload.validation;
+
+import com.example.common.image.ImageHeaderSniffer;
+import com.example.common.image.ImageInfo;
+import com.example.photoupload.config.PhotoUploadProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Checks that an upload really is an image of a supported format and acceptable size by sniffing its first
+ * bytes (see {@link ImageHeaderSniffer}). Nothing is decoded, and on the streaming endpoint nothing past
+ * the sniffed bytes has been read yet, so junk is turned away before it costs bandwidth or storage.
+ *
+ * The format found here replaces whatever Content-Type the client declared.
+ */
+@Component
+public class ImageValidator {
+
+    private final int sniffSize;
+    private final long maxImagePixels;
+
+    public ImageValidator(PhotoUploadProperties properties) {
+        this.sniffSize = (int) properties.getSniffSize().toBytes();
+        this.maxImagePixels = properties.getMaxImagePixels();
+    }
+
+    /**
+     * @return How many leading bytes of an upload {@link #validate(byte[], int)} looks at.
+     */
+    public int getSniffSize() {
+        return sniffSize;
+    }
+
+    /**
+     * Validates an image from its first bytes.
+     *
+     * @param data The image, or at least its first {@link #getSniffSize()} bytes.
+     * @param length Number of valid bytes in {@code data}.
+     * @return What the header tells about the image.
+     * @throws RejectedImageException if it is not a supported image (415), its header is malformed (400)
+     * or it has too many pixels (413).
+     */
+    public ImageInfo validate(byte[] data, int length) {
+        Optional<ImageInfo> image;
+        try {
+            image = ImageHeaderSniffer.sniff(data, Math.min(length, sniffSize));
+        } catch (IllegalArgumentException e) {
+            throw new RejectedImageException(HttpStatus.BAD_REQUEST, "malformed_header", e.getMessage());
+        }
+        if (image.isEmpty()) {
+            throw new RejectedImageException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "unsupported_format",
+                    "Unsupported image format; JPEG, PNG, GIF and WebP are accepted.");
+        }
+        if (image.get().pixelCount() > maxImagePixels) {
+            throw new RejectedImageException(HttpStatus.PAYLOAD_TOO_LARGE, "too_many_pixels",
+                    "Image is " + image.get().width() + "x" + image.get().height() + " pixels; at most "
+                            + maxImagePixels + " pixels are accepted.");
+        }
+        return image.get();
+    }
+
+    /**
+     * Validates a multipart file (spooled to disk by the servlet container) from its first bytes.
+     *
+     * @throws RejectedImageException as {@link #validate(byte[], int)}.
+     * @throws IOException if the file cannot be read.
+     */
+    public ImageInfo validate(MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            byte[] header = ImageHeaderSniffer.readHeader(input, sniffSize);
+            return validate(header, header.length);
+        }
+    }
+}
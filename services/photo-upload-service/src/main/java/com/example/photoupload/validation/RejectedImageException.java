@@ -0,0 +1,27 @@
+package com.example.photoupload.validation;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown by {@link ImageValidator} when an upload is not an acceptable image.
+ * Carries the status to answer with and a short reason used as the "reason" tag of the rejection counter.
+ */
+public class RejectedImageException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final String reason;
+
+    public RejectedImageException(HttpStatus status, String reason, String message) {
+        super(message);
+        this.status = status;
+        this.reason = reason;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
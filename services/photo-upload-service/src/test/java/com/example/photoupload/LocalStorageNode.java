@@ -0,0 +1,71 @@
+package com.example.photoupload;
+
+import com.example.photostorage.PhotoStorageApplication;
+import com.example.photostorage.repository.PhotoRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * A photo-storage-service instance started in the test JVM, on a free port, with its own in-memory H2 database
+ * and data directories: a storage node for the upload service under test.
+ *
+ * On this classpath the storage service's application.yml is shadowed by the upload service's own, so the instance
+ * reads test-storage-node.yml instead (as the load-test harness does with loadtest-storage.yml).
+ */
+public final class LocalStorageNode implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final String url;
+
+    private LocalStorageNode(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.url = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    /**
+     * @param dataDirectory Where the node keeps its blobs and upload sessions.
+     * @param args Further settings as command-line arguments, e.g. "--photo-storage.journal.enabled=true".
+     * @return The running node; close it when done.
+     */
+    public static LocalStorageNode start(Path dataDirectory, String... args) {
+        String[] arguments = new String[args.length + 4];
+        arguments[0] = "--spring.config.location=classpath:/test-storage-node.yml";
+        arguments[1] = "--spring.datasource.url=jdbc:h2:mem:storage-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        arguments[2] = "--photo-storage.blob-store.root-directory=" + dataDirectory.resolve("blobs").toAbsolutePath();
+        arguments[3] = "--photo-storage.uploads.directory=" + dataDirectory.resolve("uploads").toAbsolutePath();
+        System.arraycopy(args, 0, arguments, 4, args.length);
+        return new LocalStorageNode(new SpringApplicationBuilder(PhotoStorageApplication.class).run(arguments));
+    }
+
+    /**
+     * @return The base URL of the node, e.g. http://localhost:53124.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The number of photo rows the node holds.
+     */
+    public long photoCount() {
+        return context.getBean(PhotoRepository.class).count();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
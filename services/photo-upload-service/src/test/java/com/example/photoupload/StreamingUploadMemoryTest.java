@@ -0,0 +1,178 @@
+package com.example.photoupload;
+
+import com.example.common.dto.PhotoHeaders;
+import com.example.photostorage.entity.Photo;
+import com.example.photostorage.repository.PhotoRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A photo larger than the whole heap goes through POST /api/v1/upload/stream and on to a storage node's
+ * POST /api/v1/photos/stream (both services run in this JVM), and the heap the two hold on to while it does
+ * stays within a few buffers' worth: neither side materializes the image.
+ *
+ * The test JVM's heap is capped in build.gradle, below {@link #UPLOAD_SIZE}. What is measured is the live heap,
+ * sampled right after forced collections while the upload runs, against the same before it started; garbage
+ * from the relayed buffers is not counted, anything kept per upload is.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "photo-upload.max-image-size=2GB",
+                "photo-storage.response-timeout=5m"
+        })
+class StreamingUploadMemoryTest {
+
+    private static final long UPLOAD_SIZE = 1L << 30; // 1 GB
+    private static final long MAX_HEAP_GROWTH = 64L << 20;
+
+    @TempDir
+    static Path data;
+
+    private static LocalStorageNode storage;
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void storageNode(DynamicPropertyRegistry registry) {
+        storage = LocalStorageNode.start(data);
+        registry.add("photo-storage.service-url", storage::getUrl);
+    }
+
+    @AfterAll
+    static void stopStorageNode() {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    @Test
+    void streamedUploadLargerThanTheHeapKeepsTheHeapFlat() throws Exception {
+        assertThat(Runtime.getRuntime().maxMemory()).isLessThan(UPLOAD_SIZE);
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/upload/stream"))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "image/png")
+                .header(PhotoHeaders.FILENAME, PhotoHeaders.encode("huge.png"))
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> new PngInputStream(UPLOAD_SIZE)), UPLOAD_SIZE))
+                .build();
+
+        LiveHeapSampler sampler = new LiveHeapSampler();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } finally {
+            sampler.stop();
+        }
+
+        assertThat(response.statusCode()).as("response: %s", response.body()).isEqualTo(200);
+        List<Photo> stored = storage.getBean(PhotoRepository.class).findAll();
+        assertThat(stored).singleElement()
+                .satisfies(photo -> assertThat(photo.getSizeBytes()).isEqualTo(UPLOAD_SIZE));
+        assertThat(sampler.peakGrowth())
+                .as("live heap growth while uploading %d MB", UPLOAD_SIZE >> 20)
+                .isLessThan(MAX_HEAP_GROWTH);
+    }
+
+    /**
+     * Samples the live heap (heap in use right after a full collection) every 100 ms on a background thread.
+     */
+    private static final class LiveHeapSampler {
+
+        private final long baseline = liveHeap();
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile long peak = baseline;
+
+        LiveHeapSampler() {
+            thread = new Thread(() -> {
+                while (running) {
+                    peak = Math.max(peak, liveHeap());
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "live-heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+        }
+
+        long peakGrowth() {
+            return peak - baseline;
+        }
+
+        private static long liveHeap() {
+            System.gc();
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+
+    /**
+     * A PNG of the given length generated on the fly: signature, IHDR of a 2000x1500 image and one IDAT chunk
+     * holding the rest. The image data is zeros and not decodable; only the header is ever looked at.
+     */
+    private static final class PngInputStream extends InputStream {
+
+        private final byte[] header;
+        private final long length;
+        private long position;
+
+        PngInputStream(long length) {
+            this.length = length;
+            this.header = ByteBuffer.allocate(41)
+                    .put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'})
+                    .putInt(13).put("IHDR".getBytes()).putInt(2000).putInt(1500)
+                    .put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0).putInt(0) // RGB, CRC not checked
+                    .putInt((int) Math.min(Integer.MAX_VALUE, length - 41)).put("IDAT".getBytes())
+                    .array();
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) {
+            if (position >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(count, length - position);
+            int fromHeader = (int) Math.max(0, Math.min(n, header.length - position));
+            System.arraycopy(header, (int) Math.min(position, header.length), buffer, offset, fromHeader);
+            Arrays.fill(buffer, offset + fromHeader, offset + n, (byte) 0);
+            position += n;
+            return n;
+        }
+    }
+}
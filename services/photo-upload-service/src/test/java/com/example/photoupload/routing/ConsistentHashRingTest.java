@@ -0,0 +1,85 @@
+package com.example.photoupload.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ConsistentHashRingTest {
+
+    private static final int VIRTUAL_NODES = 160;
+    private static final int KEYS = 200_000;
+
+    @Test
+    void keysAreSpreadEvenlyOverTheNodes() {
+        List<StorageNode> nodes = nodes(5);
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+
+        Map<StorageNode, Integer> primaries = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            primaries.merge(ring.walk(random.nextLong()).get(0), 1, Integer::sum);
+        }
+
+        double mean = (double) KEYS / nodes.size();
+        assertThat(primaries).hasSize(nodes.size());
+        primaries.forEach((node, keys) -> assertThat(keys / mean).as("share of %s", node).isCloseTo(1.0, within(0.15)));
+    }
+
+    @Test
+    void walkListsEveryNodeOnce() {
+        List<StorageNode> nodes = nodes(4);
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(ring.walk(random.nextLong())).containsExactlyInAnyOrderElementsOf(nodes);
+        }
+        assertThat(ring.walk(Long.MAX_VALUE)).containsExactlyInAnyOrderElementsOf(nodes); // Wraps around
+    }
+
+    @Test
+    void routesDoNotDependOnTheOrderNodesAreListedIn() {
+        List<StorageNode> nodes = nodes(3);
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+        ConsistentHashRing reversed = new ConsistentHashRing(nodes.reversed(), VIRTUAL_NODES);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            long key = random.nextLong();
+            assertThat(reversed.walk(key)).isEqualTo(ring.walk(key));
+        }
+    }
+
+    @Test
+    void addingANodeOnlyMovesKeysToThatNode() {
+        List<StorageNode> nodes = nodes(5);
+        ConsistentHashRing before = new ConsistentHashRing(nodes.subList(0, 4), VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+
+        int moved = 0;
+        Random random = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            long key = random.nextLong();
+            StorageNode primary = after.walk(key).get(0);
+            if (primary != before.walk(key).get(0)) {
+                assertThat(primary).isSameAs(nodes.get(4));
+                moved++;
+            }
+        }
+        assertThat((double) moved / KEYS).isCloseTo(1.0 / nodes.size(), within(0.05));
+    }
+
+    private static List<StorageNode> nodes(int count) {
+        return new ArrayList<>(IntStream.rangeClosed(1, count)
+                .mapToObj(i -> new StorageNode("http://storage-" + i + ":8082", null))
+                .toList());
+    }
+}
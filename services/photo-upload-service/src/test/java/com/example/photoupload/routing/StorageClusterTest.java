@@ -0,0 +1,393 @@
+package com.example.photoupload.routing;
+
+import com.example.common.dto.PhotoMetadata;
+import com.example.common.dto.PhotoUploadRequest;
+import com.example.photoupload.LocalStorageNode;
+import com.example.photoupload.admission.InFlightByteBudget;
+import com.example.photoupload.config.PhotoStorageServiceProperties;
+import com.example.photoupload.config.PhotoUploadProperties;
+import com.example.photoupload.config.StorageClientConfig;
+import com.example.photoupload.metrics.UploadMetrics;
+import com.example.photoupload.service.PhotoUploadService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link StorageCluster} and {@link QuorumWrite} against real storage nodes: three photo-storage-service instances
+ * started in this JVM on free ports (see {@link LocalStorageNode}). Unreachable URLs and {@link StubStorageNode}s
+ * stand in for the failures a real node cannot be made to show on cue. Each test builds its own cluster over some
+ * of them and writes through {@link PhotoUploadService}, as the upload endpoints do.
+ *
+ * The storage nodes are shared by all tests, so the photos a test stores are counted as differences.
+ */
+class StorageClusterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int PHOTO_SIZE = 16 * 1024;
+
+    @TempDir
+    static Path data;
+
+    private static final List<LocalStorageNode> storageNodes = new ArrayList<>();
+    private static final AtomicLong photoIds = new AtomicLong();
+
+    private final List<StubStorageNode> stubs = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ConnectionProvider connections;
+    private StorageCluster cluster;
+    private PhotoUploadService uploadService;
+
+    @BeforeAll
+    static void startStorageNodes() {
+        for (int i = 0; i < 3; i++) {
+            storageNodes.add(LocalStorageNode.start(data.resolve("node-" + i)));
+        }
+    }
+
+    @AfterAll
+    static void stopStorageNodes() {
+        storageNodes.forEach(LocalStorageNode::close);
+    }
+
+    @AfterEach
+    void closeClusterAndStubs() {
+        if (connections != null) {
+            connections.dispose();
+        }
+        stubs.forEach(StubStorageNode::close);
+    }
+
+    @Test
+    void photoIsAcknowledgedByTheQuorumAndStoredOnEveryReplica() {
+        PhotoStorageServiceProperties properties = properties(storageNodes.get(0).getUrl(),
+                storageNodes.get(1).getUrl(), storageNodes.get(2).getUrl());
+        properties.getSharding().setReplicationFactor(3); // Write quorum: a majority, 2
+        connect(properties);
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        assertThat(upload(photo())).startsWith("Photo stored successfully");
+
+        // The third copy may still be under way when the quorum answers
+        awaitPhotoCounts(before, Map.of(storageNodes.get(0), 1L, storageNodes.get(1), 1L, storageNodes.get(2), 1L));
+    }
+
+    @Test
+    void streamedPhotoIsCopiedToEachReplicaAndNoOtherNode() {
+        PhotoStorageServiceProperties properties = properties(storageNodes.get(0).getUrl(),
+                storageNodes.get(1).getUrl(), storageNodes.get(2).getUrl());
+        properties.getSharding().setReplicationFactor(2);
+        connect(properties);
+        byte[] photo = photo();
+        long key = keyOf(photo);
+        List<StorageNode> replicas = cluster.replicas(cluster.route(key));
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        // Several buffers, as the streaming endpoint relays them; each replica must get all of them
+        Flux<DataBuffer> body = Flux.range(0, PHOTO_SIZE / 1024)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(photo, i * 1024, (i + 1) * 1024)));
+        String response = uploadService.uploadPhotoStream(new PhotoMetadata("photo.jpg", "image/jpeg", null),
+                key, photo.length, body).block(TIMEOUT);
+
+        assertThat(response).startsWith("Photo stored successfully");
+        Map<LocalStorageNode, Long> expected = new HashMap<>();
+        storageNodes.forEach(node -> expected.put(node, 0L));
+        replicas.forEach(replica -> expected.put(storageNode(replica), 1L));
+        awaitPhotoCounts(before, expected);
+    }
+
+    @Test
+    void writeFailsWhenFewerReplicasThanTheQuorumAreReachable() throws IOException {
+        List<String> unreachable = unreachableUrls(2);
+        PhotoStorageServiceProperties properties = properties(storageNodes.get(0).getUrl(), unreachable.get(0), unreachable.get(1));
+        properties.getSharding().setReplicationFactor(3);
+        properties.getSharding().setWriteQuorum(2);
+        connect(properties);
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        assertThatThrownBy(() -> upload(photo()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("of 2 required copies could be stored");
+
+        // The reachable replica still keeps its copy
+        awaitPhotoCounts(before, Map.of(storageNodes.get(0), 1L));
+    }
+
+    @Test
+    void writeSucceedsWithUnreachableReplicasAsLongAsTheQuorumIsReached() throws IOException {
+        PhotoStorageServiceProperties properties = properties(storageNodes.get(0).getUrl(), storageNodes.get(1).getUrl(), unreachableUrl());
+        properties.getSharding().setReplicationFactor(3);
+        properties.getSharding().setWriteQuorum(2);
+        connect(properties);
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        assertThat(upload(photo())).startsWith("Photo stored successfully");
+
+        awaitPhotoCounts(before, Map.of(storageNodes.get(0), 1L, storageNodes.get(1), 1L));
+    }
+
+    @Test
+    void writeFailsOverToTheNextNodeOfTheRouteWhenItsNodeIsDown() throws IOException {
+        String unreachable = unreachableUrl();
+        connect(properties(unreachable, storageNodes.get(0).getUrl(), storageNodes.get(1).getUrl()));
+        byte[] photo = photosRoutedTo(unreachable, 1).get(0);
+        LocalStorageNode fallback = storageNode(cluster.route(keyOf(photo)).get(1));
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        assertThat(upload(photo)).startsWith("Photo stored successfully");
+
+        awaitPhotoCounts(before, Map.of(fallback, 1L));
+    }
+
+    @Test
+    void streamedWriteIsNotSentToAnotherNodeWhenItsNodeIsDown() throws IOException {
+        String unreachable = unreachableUrl();
+        connect(properties(unreachable, storageNodes.get(0).getUrl()));
+        byte[] photo = photosRoutedTo(unreachable, 1).get(0);
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        // The body is read once, so there is nothing to send a second node
+        assertThatThrownBy(() -> uploadService.uploadPhotoStream(new PhotoMetadata("photo.jpg", "image/jpeg", null),
+                keyOf(photo), photo.length, Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(photo))).block(TIMEOUT))
+                .isInstanceOf(WebClientRequestException.class);
+        assertThat(photoCounts()).isEqualTo(before);
+    }
+
+    @Test
+    void slowNodeIsHedgedWithTheNextNodeOfTheRoute() throws IOException {
+        StubStorageNode slow = stub();
+        slow.setDelay(Duration.ofSeconds(5));
+        PhotoStorageServiceProperties properties = properties(slow.getUrl(), storageNodes.get(0).getUrl(), storageNodes.get(1).getUrl());
+        properties.getSharding().setHedgeDelay(Duration.ofMillis(200));
+        connect(properties);
+        byte[] photo = photosRoutedTo(slow.getUrl(), 1).get(0);
+        LocalStorageNode hedge = storageNode(cluster.route(keyOf(photo)).get(1));
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        long start = System.nanoTime();
+        assertThat(upload(photo)).startsWith("Photo stored successfully");
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+        assertThat(slow.getRequests()).isEqualTo(1);
+        assertThat(meterRegistry.get("photo.upload.storage.hedged").counter().count()).isEqualTo(1.0);
+        awaitPhotoCounts(before, Map.of(hedge, 1L));
+    }
+
+    @Test
+    void failingNodeIsEjectedAndTriedAgainAfterTheEjectionTime() throws IOException {
+        StubStorageNode flaky = stub();
+        flaky.setStatus(503);
+        PhotoStorageServiceProperties properties = properties(flaky.getUrl(), storageNodes.get(0).getUrl());
+        properties.getHealth().setFailureThreshold(2);
+        properties.getHealth().setEjectionTime(Duration.ofMillis(500));
+        connect(properties);
+        // Picked while the node is healthy: once it is ejected, routes put it last
+        List<byte[]> photos = photosRoutedTo(flaky.getUrl(), 6);
+        long key = keyOf(photos.get(0));
+        StorageNode node = cluster.route(key).get(0);
+
+        // Each failure is made up for by the other node; the second one in a row ejects the node
+        assertThat(upload(photos.get(0))).startsWith("Photo stored successfully");
+        assertThat(node.isEjected()).isFalse();
+        assertThat(upload(photos.get(1))).startsWith("Photo stored successfully");
+        assertThat(node.isEjected()).isTrue();
+        assertThat(cluster.route(key)).last().isSameAs(node);
+        assertThat(ejections()).isEqualTo(1.0);
+
+        // While ejected it gets no photos
+        int requests = flaky.getRequests();
+        assertThat(upload(photos.get(2))).startsWith("Photo stored successfully");
+        assertThat(flaky.getRequests()).isEqualTo(requests);
+
+        // Back after the ejection time, on probation: its next failure ejects it again
+        await(() -> !node.isEjected());
+        assertThat(cluster.route(key).get(0)).isSameAs(node);
+        assertThat(upload(photos.get(3))).startsWith("Photo stored successfully");
+        assertThat(node.isEjected()).isTrue();
+        assertThat(ejections()).isEqualTo(2.0);
+
+        // Once it answers again, a success clears its record: a single failure no longer ejects it
+        flaky.setStatus(201);
+        await(() -> !node.isEjected());
+        assertThat(upload(photos.get(4))).isEqualTo("Stub answered 201");
+        flaky.setStatus(503);
+        assertThat(upload(photos.get(5))).startsWith("Photo stored successfully");
+        assertThat(node.isEjected()).isFalse();
+    }
+
+    @Test
+    void photosAreSpreadOverTheNodesByTheirRoutingKeys() {
+        connect(properties(storageNodes.get(0).getUrl(), storageNodes.get(1).getUrl(), storageNodes.get(2).getUrl()));
+        Map<LocalStorageNode, Long> before = photoCounts();
+
+        Map<LocalStorageNode, Long> expected = new HashMap<>();
+        for (int i = 0; i < 60; i++) {
+            byte[] photo = photo();
+            expected.merge(storageNode(cluster.route(keyOf(photo)).get(0)), 1L, Long::sum);
+            assertThat(upload(photo)).startsWith("Photo stored successfully");
+        }
+
+        assertThat(expected).hasSize(storageNodes.size()); // Every node owns some of the photos
+        awaitPhotoCounts(before, expected);
+    }
+
+    private PhotoStorageServiceProperties properties(String... nodeUrls) {
+        PhotoStorageServiceProperties properties = new PhotoStorageServiceProperties();
+        properties.setNodes(List.of(nodeUrls));
+        properties.setConnectTimeout(Duration.ofSeconds(2));
+        properties.setResponseTimeout(Duration.ofSeconds(10));
+        return properties;
+    }
+
+    /**
+     * Builds the cluster and the upload service on top of it, as the application context would.
+     */
+    private void connect(PhotoStorageServiceProperties properties) {
+        StorageClientConfig clientConfig = new StorageClientConfig();
+        connections = clientConfig.photoStorageConnectionProvider(properties);
+        WebClient webClient = clientConfig.photoStorageWebClient(WebClient.builder(), connections, properties);
+        UploadMetrics metrics = new UploadMetrics(meterRegistry, new InFlightByteBudget(new PhotoUploadProperties()));
+        cluster = new StorageCluster(webClient, properties, metrics);
+        uploadService = new PhotoUploadService(cluster, metrics, new ObjectMapper(), properties);
+    }
+
+    private String upload(byte[] photo) {
+        return uploadService.uploadPhoto(new PhotoUploadRequest("photo.jpg", "image/jpeg", photo, null)).block(TIMEOUT);
+    }
+
+    private StubStorageNode stub() throws IOException {
+        StubStorageNode stub = new StubStorageNode();
+        stubs.add(stub);
+        return stub;
+    }
+
+    /**
+     * @return The URL of a port nothing listens on, so connections to it are refused.
+     */
+    private static String unreachableUrl() throws IOException {
+        return unreachableUrls(1).get(0);
+    }
+
+    /**
+     * @return URLs of distinct ports nothing listens on: each is taken by a socket until all are picked, then freed.
+     */
+    private static List<String> unreachableUrls(int count) throws IOException {
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                sockets.add(new ServerSocket(0));
+            }
+            return sockets.stream().map(socket -> "http://localhost:" + socket.getLocalPort()).toList();
+        } finally {
+            for (ServerSocket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * @return A distinct photo: a JPEG header with a unique comment, then random bytes.
+     */
+    private static byte[] photo() {
+        byte[] photo = new byte[PHOTO_SIZE];
+        new Random().nextBytes(photo);
+        ByteBuffer.wrap(photo)
+                .putShort((short) 0xFFD8) // SOI
+                .putShort((short) 0xFFFE).putShort((short) (2 + Long.BYTES)).putLong(photoIds.incrementAndGet()) // COM
+                .putShort((short) 0xFFC0).putShort((short) 17) // SOF0: precision, height, width, 3 components
+                .put((byte) 8).putShort((short) 300).putShort((short) 400)
+                .put((byte) 3).put(new byte[]{1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+        return photo;
+    }
+
+    /**
+     * @return Photos whose route starts at the given node.
+     */
+    private List<byte[]> photosRoutedTo(String nodeUrl, int count) {
+        List<byte[]> photos = new ArrayList<>();
+        while (photos.size() < count) {
+            byte[] photo = photo();
+            if (cluster.route(keyOf(photo)).get(0).getUrl().equals(nodeUrl)) {
+                photos.add(photo);
+            }
+        }
+        return photos;
+    }
+
+    /**
+     * The key {@link PhotoUploadService#uploadPhoto} routes a photo on.
+     */
+    private static long keyOf(byte[] photo) {
+        return RoutingKeys.of(photo, photo.length, photo.length);
+    }
+
+    private static LocalStorageNode storageNode(StorageNode node) {
+        return storageNodes.stream()
+                .filter(storage -> storage.getUrl().equals(node.getUrl()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static Map<LocalStorageNode, Long> photoCounts() {
+        Map<LocalStorageNode, Long> counts = new HashMap<>();
+        storageNodes.forEach(node -> counts.put(node, node.photoCount()));
+        return counts;
+    }
+
+    /**
+     * Waits until the storage nodes hold the expected number of photos more than before
+     * (nodes not listed: none more), and fails if they do not within {@link #TIMEOUT}.
+     */
+    private static void awaitPhotoCounts(Map<LocalStorageNode, Long> before, Map<LocalStorageNode, Long> added) {
+        Map<LocalStorageNode, Long> expected = new HashMap<>(before);
+        added.forEach((node, count) -> expected.merge(node, count, Long::sum));
+        await(() -> photoCounts().equals(expected));
+        assertThat(photoCounts()).isEqualTo(expected);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private double ejections() {
+        return meterRegistry.find("photo.upload.storage.ejections").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+}